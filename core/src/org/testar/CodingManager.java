@@ -32,11 +32,9 @@
 package org.testar;
 
 import java.util.*;
-import java.util.zip.CRC32;
 
 import org.testar.monkey.alayer.*;
 import org.testar.monkey.alayer.actions.ActionRoles;
-import org.testar.monkey.alayer.exceptions.NoSuchTagException;
 
 /**
  * Core coding manager.
@@ -67,12 +65,6 @@ public class CodingManager {
 	public static final String ID_PREFIX_WIDGET = "W";
 	public static final String ID_PREFIX_ACTION = "A";
 	
-	private static final Tag<?>[] TAGS_CONCRETE_ID = new Tag<?>[]{Tags.Role,Tags.Title,/*Tags.Shape,*/Tags.Enabled, Tags.Path};
-	private static final Tag<?>[] TAGS_ABSTRACT_ID = new Tag<?>[]{Tags.Role};
-	private static final Tag<?>[] TAGS_ABSTRACT_R_ID = new Tag<?>[]{Tags.Role};
-	private static final Tag<?>[] TAGS_ABSTRACT_R_T_ID = new Tag<?>[]{Tags.Role,Tags.Title};
-	private static final Tag<?>[] TAGS_ABSTRACT_R_T_P_ID = new Tag<?>[]{Tags.Role,Tags.Title,Tags.Path};
-
 	public static final Role[] ROLES_ABSTRACT_ACTION = new Role[]{ // discard parameters
 		/// ActionRoles.MouseMove, 
 		ActionRoles.Type,
@@ -80,19 +72,38 @@ public class CodingManager {
 		ActionRoles.KeyUp
 	};
 
-	// two arrays to hold the tags that will be used in constructing the concrete and abstract state id's
-	private static Tag<?>[] customTagsForConcreteId = new Tag<?>[]{};
-	private static Tag<?>[] customTagsForAbstractId = new Tag<?>[]{};
+	/**
+	 * Textual format of the identifiers.
+	 * LEGACY: hashcode(text) + length(text) + crc32(text), compatible with existing state models.
+	 * HASH128: two 64 bit hash lanes, lower collision probability.
+	 */
+	public enum IdFormat { LEGACY, HASH128 }
+
+	// the default coder, holding the tags that will be used in constructing the concrete and abstract state id's
+	// and the id format. It is replaced, never modified, so it is read without locking
+	private static volatile IdCoder defaultCoder = new IdCoder();
 	private static Tag<?>[] defaultAbstractStateTags = new Tag<?>[] {StateManagementTags.WidgetControlType};
 
+	/**
+	 * Returns the coder used by the static methods of the coding manager.
+	 * Sessions keep the returned coder to be independent of later changes of the default one.
+	 * @return
+	 */
+	public static IdCoder getDefault() { return defaultCoder; }
+
+	/**
+	 * Replaces the coder used by the static methods of the coding manager.
+	 * @param coder
+	 */
+	public static synchronized void setDefault(IdCoder coder) { defaultCoder = Objects.requireNonNull(coder); }
+
     /**
      * Set the array of tags that should be used in constructing the concrete state id's.
      *
      * @param tags array
      */
 	public static synchronized void setCustomTagsForConcreteId(Tag<?>[] tags) {
-		customTagsForConcreteId = tags;
-		Arrays.sort(customTagsForConcreteId,Comparator.comparing(Tag::name));
+		defaultCoder = defaultCoder.withCustomTagsForConcreteId(tags);
 	}
 
     /**
@@ -101,23 +112,74 @@ public class CodingManager {
      * @param tags
      */
 	public static synchronized void setCustomTagsForAbstractId(Tag<?>[] tags) {
-		customTagsForAbstractId = tags;
-		Arrays.sort(customTagsForAbstractId, Comparator.comparing(Tag::name));
+		defaultCoder = defaultCoder.withCustomTagsForAbstractId(tags);
 	}
 
+	/**
+	 * Set the textual format of the widget, state and action identifiers.
+	 * @param format
+	 */
+	public static synchronized void setIdFormat(IdFormat format) {
+		defaultCoder = defaultCoder.withIdFormat(format);
+	}
+
+	/**
+	 * Returns the textual format currently used for the identifiers
+	 * @return
+	 */
+	public static IdFormat getIdFormat() { return defaultCoder.getIdFormat(); }
+
 	/**
 	 * Returns the tags that are currently being used to create a custom abstract state id
 	 * @return
 	 */
 	public static Tag<?>[] getCustomTagsForAbstractId() {
-		return customTagsForAbstractId;
+		return defaultCoder.getCustomTagsForAbstractId();
 	}
 
 	/**
 	 * Returns the tags that are currently being used to create a custom abstract state id
 	 * @return
 	 */
-	public static Tag<?>[] getCustomTagsForConcreteId() { return customTagsForConcreteId;}
+	public static Tag<?>[] getCustomTagsForConcreteId() { return defaultCoder.getCustomTagsForConcreteId();}
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread reused the identifiers
+	 * computed for a widget of the previous state.
+	 * @return
+	 */
+	public static long getWidgetIdCacheHitsOfLastState() { return defaultCoder.getWidgetIdCacheHitsOfLastState(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread needed new identifiers.
+	 * @return
+	 */
+	public static long getWidgetIdCacheMissesOfLastState() { return defaultCoder.getWidgetIdCacheMissesOfLastState(); }
+
+	/**
+	 * Returns the number of widget identifiers reused by the current thread since it started.
+	 * @return
+	 */
+	public static long getWidgetIdCacheHits() { return defaultCoder.getWidgetIdCacheHits(); }
+
+	/**
+	 * Returns the number of widget identifiers computed by the current thread since it started.
+	 * @return
+	 */
+	public static long getWidgetIdCacheMisses() { return defaultCoder.getWidgetIdCacheMisses(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread were folded into the state identifiers
+	 * through the aggregate hashes of a subtree that was already coded.
+	 * @return
+	 */
+	public static long getSubtreeCacheHitsOfLastState() { return defaultCoder.getSubtreeCacheHitsOfLastState(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread were folded into the state identifiers one by one.
+	 * @return
+	 */
+	public static long getSubtreeCacheMissesOfLastState() { return defaultCoder.getSubtreeCacheMissesOfLastState(); }
 
 	/**
 	 * Returns the default tags for use in creating the abstract state id
@@ -143,170 +205,28 @@ public class CodingManager {
 	 * An identifier (alphanumeric) for a widget is calculated based on
 	 * the concatenation of a set of accessibility properties (e.g. ROLE, TITLE, ENABLED and PATH).
 	 * An example for an enabled "ok" button could be: Buttonoktrue0,0,1 ("0,0,1" being the path in the widget-tree).
+	 * Widgets with the same property values as a widget of the previous state reuse its identifiers.
  	 *
 	 */
-	public static synchronized void buildIDs(Widget widget){
-		if (widget.parent() != null){
-			widget.set(Tags.ConcreteID, ID_PREFIX_WIDGET + ID_PREFIX_CONCRETE + CodingManager.codify(widget, CodingManager.TAGS_CONCRETE_ID));
-			widget.set(Tags.AbstractID, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R + CodingManager.codify(widget, CodingManager.TAGS_ABSTRACT_ID));
-			widget.set(Tags.Abstract_R_ID, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R + CodingManager.codify(widget, CodingManager.TAGS_ABSTRACT_R_ID));
-			widget.set(Tags.Abstract_R_T_ID, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R_T + CodingManager.codify(widget, CodingManager.TAGS_ABSTRACT_R_T_ID));
-			widget.set(Tags.Abstract_R_T_P_ID, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R_T_P + CodingManager.codify(widget, CodingManager.TAGS_ABSTRACT_R_T_P_ID));
-			widget.set(Tags.ConcreteIDCustom, ID_PREFIX_WIDGET + ID_PREFIX_CONCRETE_CUSTOM + CodingManager.codify(widget, customTagsForConcreteId));
-			widget.set(Tags.AbstractIDCustom, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_CUSTOM + CodingManager.codify(widget, customTagsForAbstractId));
-		} else if (widget instanceof State) { // UI root
-			StringBuilder concreteId, abstractId, abstractRoleId, abstractRoleTitleId, abstractRoleTitlePathId, concreteIdCustom, abstractIdCustom;
-			concreteId = new StringBuilder(abstractId = new StringBuilder(abstractRoleId = new StringBuilder(abstractRoleTitleId = new StringBuilder(abstractRoleTitlePathId = new StringBuilder(concreteIdCustom = new StringBuilder(abstractIdCustom = new StringBuilder()))))));
-			for (Widget childWidget : (State) widget){
-				if (childWidget != widget){
-					buildIDs(childWidget);
-					concreteId.append(childWidget.get(Tags.ConcreteID));
-					abstractId.append(childWidget.get(Tags.AbstractID));
-					abstractRoleId.append(childWidget.get(Tags.Abstract_R_ID));
-					abstractRoleTitleId.append(childWidget.get(Tags.Abstract_R_T_ID));
-					abstractRoleTitlePathId.append(childWidget.get(Tags.Abstract_R_T_P_ID));
-					concreteIdCustom.append(childWidget.get(Tags.ConcreteIDCustom));
-					abstractIdCustom.append(childWidget.get(Tags.AbstractIDCustom));
-				}
-			}
-			widget.set(Tags.ConcreteID, ID_PREFIX_STATE + ID_PREFIX_CONCRETE + CodingManager.lowCollisionID(concreteId.toString()));
-			widget.set(Tags.AbstractID, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT + CodingManager.lowCollisionID(abstractId.toString()));
-			widget.set(Tags.Abstract_R_ID, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_R + CodingManager.lowCollisionID(abstractRoleId.toString()));
-			widget.set(Tags.Abstract_R_T_ID, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_R_T + CodingManager.lowCollisionID(abstractRoleTitleId.toString()));
-			widget.set(Tags.Abstract_R_T_P_ID, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_R_T_P + CodingManager.lowCollisionID(abstractRoleTitlePathId.toString()));
-			widget.set(Tags.ConcreteIDCustom, ID_PREFIX_STATE + ID_PREFIX_CONCRETE_CUSTOM + CodingManager.lowCollisionID(concreteIdCustom.toString()));
-			widget.set(Tags.AbstractIDCustom, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_CUSTOM + CodingManager.lowCollisionID(abstractIdCustom.toString()));
-		}	
+	public static void buildIDs(Widget widget){
+		defaultCoder.buildIDs(widget);
 	}
-	
+
 	/**
 	 * Builds IDs (abstract, concrete) for a set of actions.
 	 * @param state Current State of the SUT
 	 * @param actions The actions.
 	 */
-	public static synchronized void buildIDs(State state, Set<Action> actions){
-	    for (Action a : actions) {
-	        a.set(Tags.ConcreteID, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE +
-	                CodingManager.codify(state.get(Tags.ConcreteID), a));
-	        a.set(Tags.ConcreteIDCustom, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE_CUSTOM +
-	                CodingManager.codify(state.get(Tags.ConcreteIDCustom), a));
-	        a.set(Tags.AbstractID, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT +
-	                CodingManager.codify(state.get(Tags.ConcreteID), a, ROLES_ABSTRACT_ACTION));
-	    }
-
-		// for the custom abstract action identifier, we first sort the actions by their path in the widget tree
-		// and then set their ids using incremental counters
-		Map<Role, Integer> roleCounter = new HashMap<>();
-		actions.stream().
-				filter(action -> {
-					try {
-						action.get(Tags.OriginWidget).get(Tags.Path);
-						return true;
-					}
-					catch (NoSuchTagException ex) {
-						System.out.println("Coding Action AbstractIDCustom: No origin widget found for action role: " + action.get(Tags.Role));
-						System.out.println("Coding Action AbstractIDCustom: " + action.get(Tags.Desc));
-						return false;
-					}
-				}).
-				sorted(Comparator.comparing(action -> action.get(Tags.OriginWidget).get(Tags.Path))).
-				forEach(
-					action -> {
-						updateRoleCounter(action, roleCounter);
-						action.set(Tags.AbstractIDCustom, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT_CUSTOM +
-							lowCollisionID(state.get(Tags.AbstractIDCustom) + getAbstractActionIdentifier(action, roleCounter)));
-				}
-		);
+	public static void buildIDs(State state, Set<Action> actions){
+		defaultCoder.buildIDs(state, actions);
 	}
 
 	/**
 	 * Builds IDs (abstract, concrete, precise) for an environment action.
 	 * @param action An action.
 	 */
-	public static synchronized void buildEnvironmentActionIDs(State state, Action action){		
-		action.set(Tags.ConcreteID, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE +
-				   CodingManager.codify(state.get(Tags.ConcreteID), action));
-		action.set(Tags.ConcreteIDCustom, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE_CUSTOM +
-					CodingManager.codify(state.get(Tags.ConcreteIDCustom), action));
-		action.set(Tags.AbstractID, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT +
-				   CodingManager.codify(state.get(Tags.ConcreteID), action, ROLES_ABSTRACT_ACTION));
-		action.set(Tags.AbstractIDCustom, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT_CUSTOM +
-					CodingManager.codify(state.get(Tags.AbstractIDCustom), action, ROLES_ABSTRACT_ACTION));
-	}
-
-	/**
-	 * This method will increment or initialize a role counter mapping for a given action.
-	 * @param action
-	 * @param roleCounter
-	 */
-	private static void updateRoleCounter(Action action, Map<Role, Integer> roleCounter) {
-		Role role;
-		try {
-			role = action.get(Tags.OriginWidget).get(Tags.Role);
-		}
-		catch (NoSuchTagException e) {
-			role = action.get(Tags.Role, Roles.Invalid);
-		}
-		// if the role as key is not present, this will initialize with 1, otherwise it will increment with 1
-		roleCounter.merge(role, 1, Integer::sum);
-	}
-
-	/**
-	 * This method will return a string that identifies each action (abstractly).
-	 * @param action
-	 * @param roleCounter
-	 * @return
-	 */
-	private static String getAbstractActionIdentifier(Action action, Map<Role, Integer> roleCounter) {
-		Role role;
-		try {
-			role = action.get(Tags.OriginWidget).get(Tags.Role);
-		}
-		catch (NoSuchTagException e) {
-			role = action.get(Tags.Role, Roles.Invalid);
-		}
-		return role.toString() + roleCounter.getOrDefault(role, 999);
-	}
-	
-	// ###############
-	//  STATES CODING
-	// ###############
-	
-	private static String codify(Widget state, Tag<?>... tags){
-		return lowCollisionID(getTaggedString(state, tags));
-	}
-
-	private static String getTaggedString(Widget leaf, Tag<?>... tags){
-		StringBuilder sb = new StringBuilder();
-		for(Tag<?> t : tags) {
-			sb.append(leaf.get(t, null));
-			// check if we are dealing with a state management tag and, if so, if it has child tags
-			// that we need to incorporate
-			if (StateManagementTags.isStateManagementTag(t) && StateManagementTags.getTagGroup(t).equals(StateManagementTags.Group.ControlPattern)) {
-				StateManagementTags.getChildTags(t).stream().sorted(Comparator.comparing(Tag::name)).forEach(tag -> sb.append(leaf.get(tag, null)));
-			}
-		}
-		return sb.toString();
-	}
-
-	// ################
-	//  ACTIONS CODING
-	// ################
-
-	private static String codify(String stateID, Action action, Role... discardParameters){
-		return lowCollisionID(stateID + action.toString(discardParameters));
-	}	
-	
-	// ############
-	//  IDS CODING
-	// ############
-
-	private static String lowCollisionID(String text){ // reduce ID collision probability
-		CRC32 crc32 = new CRC32();
-		crc32.update(text.getBytes());
-		return Integer.toUnsignedString(text.hashCode(), Character.MAX_RADIX) +
-			   Integer.toHexString(text.length()) +
-			   crc32.getValue();
+	public static void buildEnvironmentActionIDs(State state, Action action){
+		defaultCoder.buildEnvironmentActionIDs(state, action);
 	}
 
 	// #####################################
@@ -318,18 +238,7 @@ public class CodingManager {
 	 * @return String A unique hash
 	 */
 	public static String getAbstractStateModelHash(String applicationName, String applicationVersion) {
-		// we calculate the hash using the tags that are used in constructing the custom abstract state id
-		// for now, an easy way is to order them alphabetically by name
-		Tag<?>[] abstractTags = getCustomTagsForAbstractId().clone();
-		Arrays.sort(abstractTags, Comparator.comparing(Tag::name));
-		StringBuilder hashInput = new StringBuilder();
-		for (Tag<?> tag : abstractTags) {
-			hashInput.append(tag.name());
-		}
-		// we add the application name and version to the hash input
-		hashInput.append(applicationName);
-		hashInput.append(applicationVersion);
-		return lowCollisionID(hashInput.toString());
+		return defaultCoder.getAbstractStateModelHash(applicationName, applicationVersion);
 	}
 
 	// #################
@@ -359,7 +268,9 @@ public class CodingManager {
 				break;
 		}
 
-		for (Widget w : state){
+		WidgetArray widgets = state.widgets();
+		for (int i = 0; i < widgets.size(); i++){
+			Widget w = widgets.get(i);
 			if (widgetID.equals(w.get(t)))
 				return w;
 		}
@@ -0,0 +1,565 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2016 - 2020 Universitat Politecnica de Valencia - www.upv.es
+* Copyright (c) 2018 - 2020 Open Universiteit - www.ou.nl
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+package org.testar;
+
+import java.util.*;
+
+import org.testar.CodingManager.IdFormat;
+import org.testar.monkey.alayer.*;
+import org.testar.monkey.alayer.exceptions.NoSuchTagException;
+
+import static org.testar.CodingManager.*;
+
+/**
+ * Builds the identifiers of widgets, states and actions for an immutable coding configuration:
+ * the textual format of the identifiers and the custom tags of the concrete and abstract state identifiers.
+ * An IdCoder can be shared between threads without locking, every thread codes with its own hashers
+ * and widget identifier cache. Sessions that run in the same JVM with different settings use their own coder,
+ * CodingManager is the facade to the default one.
+ */
+public final class IdCoder {
+
+	// the widget identifier tags, in the order in which they are computed
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final Tag<String>[] ID_TAGS = new Tag[]{Tags.ConcreteID, Tags.AbstractID, Tags.Abstract_R_ID,
+			Tags.Abstract_R_T_ID, Tags.Abstract_R_T_P_ID, Tags.ConcreteIDCustom, Tags.AbstractIDCustom};
+	private static final String[] WIDGET_ID_PREFIXES = new String[]{
+			ID_PREFIX_WIDGET + ID_PREFIX_CONCRETE, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R,
+			ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R_T, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_R_T_P,
+			ID_PREFIX_WIDGET + ID_PREFIX_CONCRETE_CUSTOM, ID_PREFIX_WIDGET + ID_PREFIX_ABSTRACT_CUSTOM};
+	private static final String[] STATE_ID_PREFIXES = new String[]{
+			ID_PREFIX_STATE + ID_PREFIX_CONCRETE, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_R,
+			ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_R_T, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_R_T_P,
+			ID_PREFIX_STATE + ID_PREFIX_CONCRETE_CUSTOM, ID_PREFIX_STATE + ID_PREFIX_ABSTRACT_CUSTOM};
+
+	private static final Tag<?>[] TAGS_CONCRETE_ID = new Tag<?>[]{Tags.Role,Tags.Title,/*Tags.Shape,*/Tags.Enabled, Tags.Path};
+	private static final Tag<?>[] TAGS_ABSTRACT_ID = new Tag<?>[]{Tags.Role};
+	private static final Tag<?>[] TAGS_ABSTRACT_R_ID = new Tag<?>[]{Tags.Role};
+	private static final Tag<?>[] TAGS_ABSTRACT_R_T_ID = new Tag<?>[]{Tags.Role,Tags.Title};
+	private static final Tag<?>[] TAGS_ABSTRACT_R_T_P_ID = new Tag<?>[]{Tags.Role,Tags.Title,Tags.Path};
+
+	// smaller subtrees and runs of widgets are cheaper to fold again than to look up
+	static final int MIN_SUBTREE_SIZE = 16;
+	private static final int MIN_RUN_SIZE = 8;
+	private static final long SUBTREE_PRIME_1 = 0xff51afd7ed558ccdL;
+	private static final long SUBTREE_PRIME_2 = 0xc4ceb9fe1a85ec53L;
+
+	private final IdFormat format;
+	private final Tag<?>[] customTagsForConcreteId;
+	private final Tag<?>[] customTagsForAbstractId;
+	// the identifiers of a widget only depend on the values of its fingerprint tags: the union of the tags
+	// of all the identifiers, with the child tags of control patterns already expanded
+	private final Tag<?>[] fingerprintTags;
+	// per identifier in ID_TAGS, the indices of its tags in fingerprintTags
+	private final int[][] idTagIndices;
+	private final int minSubtreeSize;
+
+	// the hashers and the widget id cache are kept per thread, so building ids does not need a lock
+	private final ThreadLocal<Hashers> hashers = ThreadLocal.withInitial(Hashers::new);
+
+	private static final class Hashers {
+		final IdHasher widget = new IdHasher();
+		final IdHasher fingerprint = new IdHasher();
+		final IdHasher[] state = new IdHasher[ID_TAGS.length];
+		final IdHasher run = new IdHasher();
+		final WidgetIdCache cache = new WidgetIdCache();
+		String[] values = new String[0];
+
+		// the layout of the widget tree of the state being coded, indexed in breadth first order
+		int[] first = new int[1], parent = new int[0], level = parent, size = parent, height = parent, cleanRoot = parent;
+		long[] treeHigh = new long[0], treeLow = treeHigh;
+		String[][] ids = new String[0][];
+		WidgetIdCache.Subtree[] subtrees = new WidgetIdCache.Subtree[0];
+
+		Hashers() {
+			for (int i = 0; i < state.length; i++)
+				state[i] = new IdHasher();
+		}
+
+		String[] values(int size) {
+			if (values.length < size)
+				values = new String[size];
+			return values;
+		}
+
+		void layout(int n) {
+			if (parent.length < n) {
+				first = new int[n + 1];
+				parent = new int[n];
+				level = new int[n];
+				size = new int[n];
+				height = new int[n];
+				cleanRoot = new int[n];
+				treeHigh = new long[n];
+				treeLow = new long[n];
+				ids = new String[n][];
+				subtrees = new WidgetIdCache.Subtree[n];
+			}
+		}
+	}
+
+	/**
+	 * Creates a coder with the LEGACY identifier format and without custom tags.
+	 */
+	public IdCoder() {
+		this(IdFormat.LEGACY, new Tag<?>[]{}, new Tag<?>[]{});
+	}
+
+	/**
+	 * Creates a coder. The custom tags are copied and sorted by name.
+	 * @param format the textual format of the identifiers
+	 * @param customTagsForConcreteId the tags of the custom concrete state identifier
+	 * @param customTagsForAbstractId the tags of the custom abstract state identifier
+	 */
+	public IdCoder(IdFormat format, Tag<?>[] customTagsForConcreteId, Tag<?>[] customTagsForAbstractId) {
+		this(format, customTagsForConcreteId, customTagsForAbstractId, MIN_SUBTREE_SIZE);
+	}
+
+	/**
+	 * @param minSubtreeSize the number of widgets from which the aggregate hashes of a subtree are reused
+	 */
+	IdCoder(IdFormat format, Tag<?>[] customTagsForConcreteId, Tag<?>[] customTagsForAbstractId, int minSubtreeSize) {
+		this.format = Objects.requireNonNull(format);
+		this.minSubtreeSize = minSubtreeSize;
+		this.customTagsForConcreteId = sortedByName(customTagsForConcreteId);
+		this.customTagsForAbstractId = sortedByName(customTagsForAbstractId);
+
+		Tag<?>[][] idTags = new Tag<?>[][]{TAGS_CONCRETE_ID, TAGS_ABSTRACT_ID, TAGS_ABSTRACT_R_ID, TAGS_ABSTRACT_R_T_ID,
+			TAGS_ABSTRACT_R_T_P_ID, expandChildTags(this.customTagsForConcreteId), expandChildTags(this.customTagsForAbstractId)};
+		Map<Tag<?>, Integer> union = new LinkedHashMap<>();
+		idTagIndices = new int[idTags.length][];
+		for (int i = 0; i < idTags.length; i++) {
+			idTagIndices[i] = new int[idTags[i].length];
+			for (int j = 0; j < idTags[i].length; j++) {
+				idTagIndices[i][j] = union.computeIfAbsent(idTags[i][j], t -> union.size());
+			}
+		}
+		fingerprintTags = union.keySet().toArray(new Tag<?>[0]);
+	}
+
+	private static Tag<?>[] sortedByName(Tag<?>[] tags) {
+		Tag<?>[] sorted = tags.clone();
+		Arrays.sort(sorted, Comparator.comparing(Tag::name));
+		return sorted;
+	}
+
+	/**
+	 * @return a coder like this one, with the given tags for the custom concrete state identifier
+	 */
+	public IdCoder withCustomTagsForConcreteId(Tag<?>[] tags) {
+		return new IdCoder(format, tags, customTagsForAbstractId, minSubtreeSize);
+	}
+
+	/**
+	 * @return a coder like this one, with the given tags for the custom abstract state identifier
+	 */
+	public IdCoder withCustomTagsForAbstractId(Tag<?>[] tags) {
+		return new IdCoder(format, customTagsForConcreteId, tags, minSubtreeSize);
+	}
+
+	/**
+	 * @return a coder like this one, with the given textual format of the identifiers
+	 */
+	public IdCoder withIdFormat(IdFormat format) {
+		return new IdCoder(format, customTagsForConcreteId, customTagsForAbstractId, minSubtreeSize);
+	}
+
+	public IdFormat getIdFormat() { return format; }
+
+	/**
+	 * @return a copy of the tags of the custom concrete state identifier, sorted by name
+	 */
+	public Tag<?>[] getCustomTagsForConcreteId() { return customTagsForConcreteId.clone(); }
+
+	/**
+	 * @return a copy of the tags of the custom abstract state identifier, sorted by name
+	 */
+	public Tag<?>[] getCustomTagsForAbstractId() { return customTagsForAbstractId.clone(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread reused the identifiers
+	 * computed for a widget of the previous state.
+	 */
+	public long getWidgetIdCacheHitsOfLastState() { return hashers.get().cache.stateHits(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread needed new identifiers.
+	 */
+	public long getWidgetIdCacheMissesOfLastState() { return hashers.get().cache.stateMisses(); }
+
+	/**
+	 * Returns the number of widget identifiers reused by the current thread since it started.
+	 */
+	public long getWidgetIdCacheHits() { return hashers.get().cache.totalHits(); }
+
+	/**
+	 * Returns the number of widget identifiers computed by the current thread since it started.
+	 */
+	public long getWidgetIdCacheMisses() { return hashers.get().cache.totalMisses(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread were folded into the state identifiers
+	 * through the aggregate hashes of a subtree that was already coded, without folding their identifiers again.
+	 */
+	public long getSubtreeCacheHitsOfLastState() { return hashers.get().cache.stateSubtreeHits(); }
+
+	/**
+	 * Returns how many widgets of the last state built by the current thread were folded into the state identifiers one by one.
+	 */
+	public long getSubtreeCacheMissesOfLastState() { return hashers.get().cache.stateSubtreeMisses(); }
+
+	/**
+	 * Returns the number of widgets folded through the aggregate hashes of a subtree by the current thread since it started.
+	 */
+	public long getSubtreeCacheHits() { return hashers.get().cache.totalSubtreeHits(); }
+
+	/**
+	 * Returns the number of widgets folded one by one by the current thread since it started.
+	 */
+	public long getSubtreeCacheMisses() { return hashers.get().cache.totalSubtreeMisses(); }
+
+	// ###########################################
+	//  Widgets/States and Actions IDs management
+	// ###########################################
+
+	/**
+	 * Builds IDs for a widget or state, see {@link CodingManager#buildIDs(Widget)}.
+	 * @param widget A widget or a State (widget-tree, or widget with children)
+	 */
+	public void buildIDs(Widget widget){
+		Hashers h = hashers.get();
+		if (widget.parent() != null){
+			readValues(h, widget);
+			setWidgetIDs(widget, codifyValues(h));
+		} else if (widget instanceof State) { // UI root
+			h.cache.startState(this);
+			for (IdHasher stateHasher : h.state)
+				stateHasher.reset(format);
+			foldWidgets(h, ((State) widget).widgets());
+			for (int i = 0; i < ID_TAGS.length; i++)
+				widget.set(ID_TAGS[i], STATE_ID_PREFIXES[i] + h.state[i].digest());
+		}
+	}
+
+	/**
+	 * Codes the widgets of a state and folds their identifiers into the state hashers, in breadth first order.
+	 *
+	 * Widgets whose fingerprint was already seen in the previous state reuse its identifiers. The widgets of a subtree
+	 * at the same depth are consecutive in breadth first order, so the state identifiers fold a subtree as one run of
+	 * identifiers per depth. Once a subtree is seen again with the same fingerprint, the hash of each of its runs is
+	 * kept as a segment, and later states append the segments instead of folding the identifiers of the subtree again.
+	 */
+	private void foldWidgets(Hashers h, WidgetArray widgets){
+		int n = widgets.size();
+		h.layout(n);
+		int[] first = h.first, parent = h.parent, level = h.level, size = h.size, height = h.height, cleanRoot = h.cleanRoot;
+		long[] treeHigh = h.treeHigh, treeLow = h.treeLow;
+
+		// the children of the widget at index i are at the indices first[i] to first[i + 1] - 1
+		first[0] = 1;
+		level[0] = 0;
+		for (int i = 0; i < n; i++) {
+			first[i + 1] = first[i] + widgets.get(i).childCount();
+			for (int c = first[i]; c < first[i + 1]; c++) {
+				parent[c] = i;
+				level[c] = level[i] + 1;
+			}
+		}
+
+		// bottom up: the identifiers of the widgets and the fingerprints of their subtrees
+		for (int i = n - 1; i > 0; i--) {
+			Widget widget = widgets.get(i);
+			IdHasher fingerprint = readValues(h, widget);
+			long high = fingerprint.high(), low = fingerprint.low();
+			String[] ids = h.cache.get(high, low);
+			if (ids == null) {
+				ids = codifyValues(h);
+				h.cache.put(high, low, ids);
+			}
+			setWidgetIDs(widget, ids);
+			h.ids[i] = ids;
+
+			int subtreeSize = 1, subtreeHeight = 1;
+			for (int c = first[i]; c < first[i + 1]; c++) {
+				high = high * SUBTREE_PRIME_1 + treeHigh[c];
+				low = low * SUBTREE_PRIME_2 + treeLow[c];
+				subtreeSize += size[c];
+				subtreeHeight = Math.max(subtreeHeight, height[c] + 1);
+			}
+			treeHigh[i] = IdHasher.mix(high ^ subtreeSize);
+			treeLow[i] = IdHasher.mix(low + subtreeHeight);
+			size[i] = subtreeSize;
+			height[i] = subtreeHeight;
+		}
+
+		// top down: the widgets below the topmost subtrees that were already coded
+		cleanRoot[0] = -1;
+		for (int i = 1; i < n; i++) {
+			WidgetIdCache.Subtree subtree = null;
+			if (size[i] >= minSubtreeSize) {
+				// also the subtrees below a known one, so they are kept for the next state
+				subtree = h.cache.subtree(treeHigh[i], treeLow[i]);
+				if (subtree == null)
+					h.cache.putSubtree(treeHigh[i], treeLow[i], height[i]);
+			}
+			if (cleanRoot[parent[i]] >= 0) {
+				cleanRoot[i] = cleanRoot[parent[i]];
+			} else if (subtree != null) {
+				cleanRoot[i] = i;
+				h.subtrees[i] = subtree;
+			} else {
+				cleanRoot[i] = -1;
+			}
+		}
+
+		// the state identifiers, per run of widgets of the same known subtree at the same depth
+		int hits = 0, misses = 0;
+		for (int i = 1; i < n;) {
+			int root = cleanRoot[i], count = 1;
+			if (root >= 0) {
+				WidgetIdCache.Subtree subtree = h.subtrees[root];
+				int depth = level[i] - level[root];
+				count = subtree.counts[depth];
+				if (count == 0) {
+					count = 1;
+					while (i + count < n && cleanRoot[i + count] == root && level[i + count] == level[i])
+						count++;
+					subtree.counts[depth] = count;
+				}
+				if (count >= MIN_RUN_SIZE) {
+					IdHasher.Segment[] segments = subtree.segments[depth];
+					if (segments == null)
+						subtree.segments[depth] = segments = segments(h, i, count);
+					for (int t = 0; t < segments.length; t++)
+						h.state[t].append(segments[t]);
+					hits += count;
+					i += count;
+					continue;
+				}
+			}
+			for (int end = i + count; i < end; i++) {
+				String[] ids = h.ids[i];
+				for (int t = 0; t < ids.length; t++)
+					h.state[t].update(ids[t]);
+			}
+			misses += count;
+		}
+		h.cache.countFolded(hits, misses);
+	}
+
+	/**
+	 * @return per identifier, the hash of the identifiers of the widgets from index from to from + count - 1.
+	 */
+	private IdHasher.Segment[] segments(Hashers h, int from, int count){
+		IdHasher.Segment[] segments = new IdHasher.Segment[ID_TAGS.length];
+		for (int t = 0; t < segments.length; t++) {
+			IdHasher run = h.run.reset(format);
+			for (int i = from; i < from + count; i++)
+				run.update(h.ids[i][t]);
+			segments[t] = run.segment();
+		}
+		return segments;
+	}
+
+	private static void setWidgetIDs(Widget widget, String[] ids){
+		for (int i = 0; i < ID_TAGS.length; i++)
+			widget.set(ID_TAGS[i], ids[i]);
+	}
+
+	/**
+	 * Builds IDs (abstract, concrete) for a set of actions.
+	 * @param state Current State of the SUT
+	 * @param actions The actions.
+	 */
+	public void buildIDs(State state, Set<Action> actions){
+		for (Action a : actions) {
+			a.set(Tags.ConcreteID, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE +
+					codify(state.get(Tags.ConcreteID), a));
+			a.set(Tags.ConcreteIDCustom, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE_CUSTOM +
+					codify(state.get(Tags.ConcreteIDCustom), a));
+			a.set(Tags.AbstractID, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT +
+					codify(state.get(Tags.ConcreteID), a, ROLES_ABSTRACT_ACTION));
+		}
+
+		// for the custom abstract action identifier, we first sort the actions by their path in the widget tree
+		// and then set their ids using incremental counters
+		Map<Role, Integer> roleCounter = new HashMap<>();
+		actions.stream().
+				filter(action -> {
+					try {
+						action.get(Tags.OriginWidget).get(Tags.Path);
+						return true;
+					}
+					catch (NoSuchTagException ex) {
+						System.out.println("Coding Action AbstractIDCustom: No origin widget found for action role: " + action.get(Tags.Role));
+						System.out.println("Coding Action AbstractIDCustom: " + action.get(Tags.Desc));
+						return false;
+					}
+				}).
+				sorted(Comparator.comparing(action -> action.get(Tags.OriginWidget).get(Tags.Path))).
+				forEach(
+					action -> {
+						updateRoleCounter(action, roleCounter);
+						action.set(Tags.AbstractIDCustom, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT_CUSTOM +
+							lowCollisionID(state.get(Tags.AbstractIDCustom) + getAbstractActionIdentifier(action, roleCounter)));
+				}
+		);
+	}
+
+	/**
+	 * Builds IDs (abstract, concrete, precise) for an environment action.
+	 * @param action An action.
+	 */
+	public void buildEnvironmentActionIDs(State state, Action action){
+		action.set(Tags.ConcreteID, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE +
+				codify(state.get(Tags.ConcreteID), action));
+		action.set(Tags.ConcreteIDCustom, ID_PREFIX_ACTION + ID_PREFIX_CONCRETE_CUSTOM +
+				codify(state.get(Tags.ConcreteIDCustom), action));
+		action.set(Tags.AbstractID, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT +
+				codify(state.get(Tags.ConcreteID), action, ROLES_ABSTRACT_ACTION));
+		action.set(Tags.AbstractIDCustom, ID_PREFIX_ACTION + ID_PREFIX_ABSTRACT_CUSTOM +
+				codify(state.get(Tags.AbstractIDCustom), action, ROLES_ABSTRACT_ACTION));
+	}
+
+	/**
+	 * This method will increment or initialize a role counter mapping for a given action.
+	 * @param action
+	 * @param roleCounter
+	 */
+	private static void updateRoleCounter(Action action, Map<Role, Integer> roleCounter) {
+		// if the role as key is not present, this will initialize with 1, otherwise it will increment with 1
+		roleCounter.merge(actionRole(action), 1, Integer::sum);
+	}
+
+	/**
+	 * This method will return a string that identifies each action (abstractly).
+	 * @param action
+	 * @param roleCounter
+	 * @return
+	 */
+	private static String getAbstractActionIdentifier(Action action, Map<Role, Integer> roleCounter) {
+		Role role = actionRole(action);
+		return role.toString() + roleCounter.getOrDefault(role, 999);
+	}
+
+	private static Role actionRole(Action action) {
+		try {
+			return action.get(Tags.OriginWidget).get(Tags.Role);
+		}
+		catch (NoSuchTagException e) {
+			return action.get(Tags.Role, Roles.Invalid);
+		}
+	}
+
+	// ###############
+	//  STATES CODING
+	// ###############
+
+	/**
+	 * Reads the textual values of the fingerprint tags of a widget into the values buffer of the hashers.
+	 * @return the fingerprint hasher, holding the fingerprint of the values
+	 */
+	private IdHasher readValues(Hashers h, Widget leaf){
+		String[] values = h.values(fingerprintTags.length);
+		IdHasher fingerprint = h.fingerprint.reset(IdFormat.HASH128);
+		for (int i = 0; i < fingerprintTags.length; i++) {
+			values[i] = String.valueOf(leaf.get(fingerprintTags[i], null));
+			fingerprint.updateDelimited(values[i]);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Computes the identifiers of a widget from the values previously read by readValues.
+	 */
+	private String[] codifyValues(Hashers h){
+		String[] ids = new String[ID_TAGS.length];
+		for (int i = 0; i < ID_TAGS.length; i++) {
+			IdHasher hasher = h.widget.reset(format);
+			for (int index : idTagIndices[i])
+				hasher.update(h.values[index]);
+			ids[i] = WIDGET_ID_PREFIXES[i] + hasher.digest();
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the tags in coding order: state management tags of the control pattern group
+	 * are followed by their child tags, sorted by name.
+	 */
+	private static Tag<?>[] expandChildTags(Tag<?>[] tags){
+		List<Tag<?>> expanded = new ArrayList<>();
+		for(Tag<?> t : tags) {
+			expanded.add(t);
+			if (StateManagementTags.isStateManagementTag(t) && StateManagementTags.getTagGroup(t).equals(StateManagementTags.Group.ControlPattern)) {
+				StateManagementTags.getChildTags(t).stream().sorted(Comparator.comparing(Tag::name)).forEach(expanded::add);
+			}
+		}
+		return expanded.toArray(new Tag<?>[0]);
+	}
+
+	// ################
+	//  ACTIONS CODING
+	// ################
+
+	private String codify(String stateID, Action action, Role... discardParameters){
+		return hashers.get().widget.reset(format).update(stateID).update(action.toString(discardParameters)).digest();
+	}
+
+	// ############
+	//  IDS CODING
+	// ############
+
+	private String lowCollisionID(String text){ // reduce ID collision probability
+		return hashers.get().widget.reset(format).update(text).digest();
+	}
+
+	/**
+	 * This method will return the unique hash to identify the abstract state model
+	 * @return String A unique hash
+	 */
+	public String getAbstractStateModelHash(String applicationName, String applicationVersion) {
+		// we calculate the hash using the tags that are used in constructing the custom abstract state id,
+		// which are kept ordered alphabetically by name
+		StringBuilder hashInput = new StringBuilder();
+		for (Tag<?> tag : customTagsForAbstractId) {
+			hashInput.append(tag.name());
+		}
+		// we add the application name and version to the hash input
+		hashInput.append(applicationName);
+		hashInput.append(applicationVersion);
+		// models built with other id formats must not be mixed with the existing ones
+		if (format != IdFormat.LEGACY) {
+			hashInput.append(format.name());
+		}
+		return lowCollisionID(hashInput.toString());
+	}
+}
@@ -0,0 +1,318 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2016 - 2020 Universitat Politecnica de Valencia - www.upv.es
+* Copyright (c) 2018 - 2020 Open Universiteit - www.ou.nl
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+
+package org.testar;
+
+import java.util.zip.CRC32;
+
+/**
+ * Streaming hasher used by the <code>CodingManager</code> to build identifiers.
+ *
+ * Text is folded into the running hash piece by piece, so the identifier of a
+ * concatenation can be computed without building the concatenated string.
+ * In <code>LEGACY</code> format the digest is exactly
+ * hashcode(text) + length(text) + crc32(text), the format TESTAR has always used.
+ * In <code>HASH128</code> format two independent 64 bit polynomial lanes are kept and the
+ * digest is their base 36 representation.
+ *
+ * The hash of a piece of text can be kept as a {@link Segment} and appended later to another
+ * hasher, which gives the same digest as folding the text again: both hashcode and crc32 of a
+ * concatenation can be computed from the hashes of its parts.
+ *
+ * Instances are not thread safe; the <code>CodingManager</code> keeps them per thread.
+ */
+final class IdHasher {
+
+	private static final long LANE1_PRIME = 0xc2b2ae3d27d4eb4fL;
+	private static final long LANE2_PRIME = 0x9e3779b97f4a7c15L;
+	// delimiters are folded as values above the char range, so they never collide with text
+	private static final long DELIMITER = 0x10000L;
+
+	// reversed crc32 polynomial, and x^(2^k) modulo the polynomial for k = 0..31
+	private static final int CRC_POLY = 0xedb88320;
+	private static final int[] X2N = new int[32];
+	static {
+		int p = 1 << 30; // x^1
+		X2N[0] = p;
+		for (int k = 1; k < X2N.length; k++)
+			X2N[k] = p = multmodp(p, p);
+	}
+
+	private static final int BUFFER_SIZE = 512;
+
+	/**
+	 * The hash of a piece of text, with the factors that appending it multiplies the hash of the preceding text with.
+	 */
+	static final class Segment {
+		final CodingManager.IdFormat format;
+		final long length;
+		// LEGACY: the hashcode, 31^length, the crc32, x^(8 * bytes) modulo the crc32 polynomial and the number of bytes
+		final int hash, hashShift, crc, crcShift;
+		final long bytes;
+		// HASH128: the lanes and the lane primes to the power of length
+		final long lane1, lane1Shift, lane2, lane2Shift;
+
+		private Segment(CodingManager.IdFormat format, long length, int hash, int crc, long bytes, long lane1, long lane2) {
+			this.format = format;
+			this.length = length;
+			this.hash = hash;
+			this.crc = crc;
+			this.bytes = bytes;
+			this.lane1 = lane1;
+			this.lane2 = lane2;
+			if (format == CodingManager.IdFormat.LEGACY) {
+				hashShift = (int) pow(31, length);
+				crcShift = x2nmodp(bytes, 3);
+				lane1Shift = lane2Shift = 0;
+			} else {
+				hashShift = crcShift = 0;
+				lane1Shift = pow(LANE1_PRIME, length);
+				lane2Shift = pow(LANE2_PRIME, length);
+			}
+		}
+	}
+
+	private final CRC32 crc32 = new CRC32();
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int buffered;
+
+	private CodingManager.IdFormat format = CodingManager.IdFormat.LEGACY;
+	private int hash;
+	private long length;
+	private long bytes;
+	private long lane1;
+	private long lane2;
+	// the crc32 of the text up to the last appended segment; crc32 only holds the text folded since then
+	private boolean appended;
+	private int appendedCrc;
+	private long appendedBytes;
+
+	IdHasher reset(CodingManager.IdFormat format) {
+		this.format = format;
+		hash = 0;
+		length = 0;
+		bytes = 0;
+		lane1 = 0;
+		lane2 = 0;
+		appended = false;
+		appendedCrc = 0;
+		appendedBytes = 0;
+		buffered = 0;
+		crc32.reset();
+		return this;
+	}
+
+	/**
+	 * Folds the textual representation of a value, as <code>StringBuilder.append(Object)</code> would.
+	 */
+	IdHasher update(Object value) {
+		return update(String.valueOf(value));
+	}
+
+	IdHasher update(String text) {
+		int n = text.length();
+		length += n;
+		if (format == CodingManager.IdFormat.LEGACY) {
+			updateLegacy(text, n);
+		} else {
+			long l1 = lane1, l2 = lane2;
+			for (int i = 0; i < n; i++) {
+				char c = text.charAt(i);
+				l1 = l1 * LANE1_PRIME + c;
+				l2 = l2 * LANE2_PRIME + c;
+			}
+			lane1 = l1;
+			lane2 = l2;
+		}
+		return this;
+	}
+
+	/**
+	 * Folds the text followed by its length, so the boundaries between consecutive texts take part in the hash.
+	 * Only meaningful in <code>HASH128</code> format, used for fingerprints.
+	 */
+	IdHasher updateDelimited(String text) {
+		update(text);
+		long n = DELIMITER + text.length();
+		lane1 = lane1 * LANE1_PRIME + n;
+		lane2 = lane2 * LANE2_PRIME + n;
+		return this;
+	}
+
+	private void updateLegacy(String text, int n) {
+		int h = hash;
+		boolean ascii = true;
+		for (int i = 0; i < n; i++) {
+			char c = text.charAt(i);
+			h = 31 * h + c;
+			ascii &= c < 0x80;
+		}
+		hash = h;
+
+		if (!ascii) {
+			// keep the platform encoding of String.getBytes() for non ASCII text
+			flush();
+			byte[] encoded = text.getBytes();
+			crc32.update(encoded);
+			bytes += encoded.length;
+			return;
+		}
+		bytes += n;
+		for (int i = 0; i < n; i++) {
+			if (buffered == BUFFER_SIZE)
+				flush();
+			buffer[buffered++] = (byte) text.charAt(i);
+		}
+	}
+
+	private void flush() {
+		if (buffered > 0) {
+			crc32.update(buffer, 0, buffered);
+			buffered = 0;
+		}
+	}
+
+	/**
+	 * @return the crc32 of all the text folded since the last reset
+	 */
+	private int crc() {
+		flush();
+		int crc = (int) crc32.getValue();
+		if (appended)
+			crc ^= multmodp(x2nmodp(bytes - appendedBytes, 3), appendedCrc);
+		return crc;
+	}
+
+	/**
+	 * @return the hash of all the text folded since the last reset, to be appended to other hashers.
+	 */
+	Segment segment() {
+		if (format == CodingManager.IdFormat.LEGACY)
+			return new Segment(format, length, hash, crc(), bytes, 0, 0);
+		return new Segment(format, length, 0, 0, 0, lane1, lane2);
+	}
+
+	/**
+	 * Folds the text of a segment, as if the text itself was folded.
+	 */
+	IdHasher append(Segment segment) {
+		if (segment.format != format)
+			throw new IllegalArgumentException("Cannot append a " + segment.format + " segment to a " + format + " hash");
+		length += segment.length;
+		if (format == CodingManager.IdFormat.LEGACY) {
+			hash = hash * segment.hashShift + segment.hash;
+			appendedCrc = multmodp(segment.crcShift, crc()) ^ segment.crc;
+			bytes += segment.bytes;
+			appendedBytes = bytes;
+			appended = true;
+			crc32.reset();
+		} else {
+			lane1 = lane1 * segment.lane1Shift + segment.lane1;
+			lane2 = lane2 * segment.lane2Shift + segment.lane2;
+		}
+		return this;
+	}
+
+	/**
+	 * @return the identifier of all the text folded since the last reset.
+	 */
+	String digest() {
+		if (format == CodingManager.IdFormat.LEGACY) {
+			return Integer.toUnsignedString(hash, Character.MAX_RADIX) +
+				   Long.toHexString(length) +
+				   Integer.toUnsignedLong(crc());
+		}
+		return Long.toUnsignedString(high(), Character.MAX_RADIX) +
+			   Long.toUnsignedString(low(), Character.MAX_RADIX);
+	}
+
+	/**
+	 * @return the high 64 bits of the <code>HASH128</code> digest.
+	 */
+	long high() {
+		return mix(lane1 ^ length);
+	}
+
+	/**
+	 * @return the low 64 bits of the <code>HASH128</code> digest.
+	 */
+	long low() {
+		return mix(lane2 + length);
+	}
+
+	// murmur3 finalizer, spreads the lane bits over the whole word
+	static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	private static long pow(long base, long exponent) {
+		long result = 1;
+		for (; exponent != 0; exponent >>>= 1) {
+			if ((exponent & 1) != 0)
+				result *= base;
+			base *= base;
+		}
+		return result;
+	}
+
+	// a * b modulo the crc32 polynomial, a must not be zero (zlib's multmodp)
+	private static int multmodp(int a, int b) {
+		int m = 1 << 31;
+		int p = 0;
+		for (;;) {
+			if ((a & m) != 0) {
+				p ^= b;
+				if ((a & (m - 1)) == 0)
+					break;
+			}
+			m >>>= 1;
+			b = (b & 1) != 0 ? (b >>> 1) ^ CRC_POLY : b >>> 1;
+		}
+		return p;
+	}
+
+	// x^(n * 2^k) modulo the crc32 polynomial (zlib's x2nmodp)
+	private static int x2nmodp(long n, int k) {
+		int p = 1 << 31; // x^0
+		while (n != 0) {
+			if ((n & 1) != 0)
+				p = multmodp(X2N[k & 31], p);
+			n >>>= 1;
+			k++;
+		}
+		return p;
+	}
+}
@@ -48,6 +48,7 @@ import org.testar.monkey.alayer.State;
 import org.testar.monkey.alayer.Tags;
 import org.testar.monkey.alayer.Verdict;
 import org.testar.monkey.alayer.Widget;
+import org.testar.monkey.alayer.WidgetArray;
 
 import java.awt.*;
 import java.util.Iterator;
@@ -300,7 +301,9 @@ public class ProtocolUtil {
 		double minZIndex = Double.MAX_VALUE,
 				maxZIndex = Double.MIN_VALUE,
 				zindex;
-		for (Widget w : state){
+		WidgetArray widgets = state.widgets();
+		for (int i = 0; i < widgets.size(); i++){
+			Widget w = widgets.get(i);
 			zindex = w.get(Tags.ZIndex).doubleValue();
 			if (zindex < minZIndex)
 				minZIndex = zindex;
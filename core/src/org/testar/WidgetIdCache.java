@@ -0,0 +1,203 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2016 - 2020 Universitat Politecnica de Valencia - www.upv.es
+* Copyright (c) 2018 - 2020 Open Universiteit - www.ou.nl
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+
+package org.testar;
+
+import java.util.HashMap;
+
+/**
+ * Memoizes the identifiers of the widgets of consecutive states, and the aggregate hashes of their subtrees.
+ *
+ * Widgets are looked up by a 128 bit fingerprint of all the tag values that take part in
+ * their identifiers, subtrees by a fingerprint of the fingerprints of their widgets.
+ * Only the entries used by the previous and the current state are kept,
+ * so widgets that disappear from the GUI are evicted after one state.
+ *
+ * Instances are not thread safe; the <code>CodingManager</code> keeps one per thread.
+ */
+final class WidgetIdCache {
+
+	private static final class Entry {
+		private final Fingerprint key;
+		final String[] ids;
+
+		private Entry(Fingerprint key, String[] ids) {
+			this.key = key;
+			this.ids = ids;
+		}
+	}
+
+	/**
+	 * The aggregate hashes of a subtree. The widgets of a subtree at the same depth are consecutive
+	 * in breadth first order; per depth below the root of the subtree, the number of widgets and,
+	 * once the subtree is seen again, the segments of the state identifiers that fold their identifiers.
+	 */
+	static final class Subtree {
+		private final Fingerprint key;
+		final int[] counts;
+		final IdHasher.Segment[][] segments;
+
+		private Subtree(Fingerprint key, int height) {
+			this.key = key;
+			counts = new int[height];
+			segments = new IdHasher.Segment[height][];
+		}
+	}
+
+	private static final class Fingerprint {
+		long high, low;
+
+		Fingerprint(long high, long low) {
+			this.high = high;
+			this.low = low;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (low ^ (low >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Fingerprint))
+				return false;
+			Fingerprint other = (Fingerprint) o;
+			return high == other.high && low == other.low;
+		}
+	}
+
+	private HashMap<Fingerprint, Entry> previous = new HashMap<>();
+	private HashMap<Fingerprint, Entry> current = new HashMap<>();
+	private HashMap<Fingerprint, Subtree> previousSubtrees = new HashMap<>();
+	private HashMap<Fingerprint, Subtree> currentSubtrees = new HashMap<>();
+	private final Fingerprint probe = new Fingerprint(0, 0);
+	private Object configuration;
+
+	private long stateHits, stateMisses;
+	private long totalHits, totalMisses;
+	private long stateSubtreeHits, stateSubtreeMisses;
+	private long totalSubtreeHits, totalSubtreeMisses;
+
+	/**
+	 * Starts the coding of a new state. Entries computed with another coding configuration are discarded.
+	 * @param configuration the coding configuration the identifiers are computed with
+	 */
+	void startState(Object configuration) {
+		if (this.configuration != configuration) {
+			this.configuration = configuration;
+			current.clear();
+			currentSubtrees.clear();
+		}
+		HashMap<Fingerprint, Entry> swap = previous;
+		previous = current;
+		current = swap;
+		current.clear();
+		HashMap<Fingerprint, Subtree> swapSubtrees = previousSubtrees;
+		previousSubtrees = currentSubtrees;
+		currentSubtrees = swapSubtrees;
+		currentSubtrees.clear();
+		stateHits = stateMisses = 0;
+		stateSubtreeHits = stateSubtreeMisses = 0;
+	}
+
+	/**
+	 * @return the identifiers of a widget with the given fingerprint, or null if they are not known.
+	 */
+	String[] get(long high, long low) {
+		probe.high = high;
+		probe.low = low;
+		Entry entry = current.get(probe);
+		if (entry == null) {
+			entry = previous.get(probe);
+			if (entry != null)
+				current.put(entry.key, entry);
+		}
+		if (entry == null) {
+			stateMisses++;
+			totalMisses++;
+			return null;
+		}
+		stateHits++;
+		totalHits++;
+		return entry.ids;
+	}
+
+	void put(long high, long low, String[] ids) {
+		Fingerprint key = new Fingerprint(high, low);
+		current.put(key, new Entry(key, ids));
+	}
+
+	/**
+	 * @return the subtree with the given fingerprint of the previous or the current state, or null if it is new.
+	 */
+	Subtree subtree(long high, long low) {
+		probe.high = high;
+		probe.low = low;
+		Subtree subtree = currentSubtrees.get(probe);
+		if (subtree == null) {
+			subtree = previousSubtrees.get(probe);
+			if (subtree != null)
+				currentSubtrees.put(subtree.key, subtree);
+		}
+		return subtree;
+	}
+
+	/**
+	 * Registers a new subtree of the current state.
+	 * @param height the number of levels of the subtree, including its root
+	 */
+	Subtree putSubtree(long high, long low, int height) {
+		Fingerprint key = new Fingerprint(high, low);
+		Subtree subtree = new Subtree(key, height);
+		currentSubtrees.put(key, subtree);
+		return subtree;
+	}
+
+	/**
+	 * Counts the widgets whose identifiers were folded into the state identifiers through the segments of a subtree (hits),
+	 * or one by one (misses).
+	 */
+	void countFolded(int subtreeHits, int subtreeMisses) {
+		stateSubtreeHits += subtreeHits;
+		totalSubtreeHits += subtreeHits;
+		stateSubtreeMisses += subtreeMisses;
+		totalSubtreeMisses += subtreeMisses;
+	}
+
+	long stateHits() { return stateHits; }
+	long stateMisses() { return stateMisses; }
+	long totalHits() { return totalHits; }
+	long totalMisses() { return totalMisses; }
+	long stateSubtreeHits() { return stateSubtreeHits; }
+	long stateSubtreeMisses() { return stateSubtreeMisses; }
+	long totalSubtreeHits() { return totalSubtreeHits; }
+	long totalSubtreeMisses() { return totalSubtreeMisses; }
+}
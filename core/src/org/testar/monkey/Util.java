@@ -457,9 +457,26 @@ public final class Util {
 		return candidates.get(0);
 	}
 
+	/**
+	 * Returns the spatial index of the widgets of a state, by the bounds of their shape, ranked in the order of the widget tree.
+	 * The state keeps the index with its widgets until its widget tree changes, see State.spatialIndex().
+	 */
+	public static SpatialIndex<Widget> spatialIndex(State state) {
+		return Assert.notNull(state).spatialIndex();
+	}
+
+	/**
+	 * Returns the widgets that their hit tester hits at a point. A widget with a shape is only hit inside its bounds.
+	 */
 	public static Set<Widget> widgetsFromPoint(State state, double x, double y) {
+		WidgetArray widgets = Assert.notNull(state).widgets();
 		Set<Widget> ret = new HashSet<Widget>();
-		for (Widget w : Assert.notNull(state)) {
+		for (Widget w : widgets.spatialIndex().allAt(x, y)) {
+			if (w.get(Tags.HitTester, Util.FalseTester).apply(x, y)) {
+				ret.add(w);
+			}
+		}
+		for (Widget w : widgets.unshaped()) {
 			if (w.get(Tags.HitTester, Util.FalseTester).apply(x, y)) {
 				ret.add(w);
 			}
@@ -468,20 +485,8 @@ public final class Util {
 	}
 
 	public static Set<Widget> widgetsFromArea(State state, Rect area) {
-		Assert.notNull(state);
-		Set<Widget> ret = new HashSet<Widget>();
-		Shape shape;
-		Rect rect;
-		for (Widget w : state) {
-			shape = w.get(Tags.Shape);
-			if (shape != null) {
-				rect = Rect.from(shape.x(), shape.y(), shape.width(), shape.height());
-				if (Rect.intersect(rect, area)) {
-					ret.add(w);
-				}
-			}
-		}
-		return ret;
+		Assert.notNull(state, area);
+		return new HashSet<Widget>(state.spatialIndex().intersecting(area));
 	}
 
 	public static boolean isAncestorOf(Widget ancestor, Widget of) {
@@ -152,6 +152,29 @@ public class AWTCanvas implements Image, Canvas {
 		return new AWTCanvas(0, 0, bi, StorageFormat.PNG, 1);
 	}
 
+	/**
+	 * Reconstructs a screenshot that was stored as a frame of a differential screenshot container.
+	 * @param reference the frame reference, container#frame, see FrameContainer
+	 */
+	public static AWTCanvas fromFrame(String reference) throws IOException{
+		Assert.isTrue(FrameContainer.isReference(reference));
+		FrameContainer.Reader reader = new FrameContainer.Reader(new File(FrameContainer.containerOf(reference)));
+
+		try{
+			return fromFrame(reader, FrameContainer.frameOf(reference));
+		}finally{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reconstructs a screenshot of an open container. Reading frames in order reuses the work done for the previous one.
+	 */
+	public static AWTCanvas fromFrame(FrameContainer.Reader reader, int frame) throws IOException{
+		Assert.notNull(reader);
+		return new AWTCanvas(0, 0, reader.read(frame), StorageFormat.PNG, 1);
+	}
+
 	private static final long serialVersionUID = -5041497503329308870L;
 	protected transient BufferedImage img;
 	private StorageFormat format;
@@ -0,0 +1,543 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.monkey.alayer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.testar.monkey.Assert;
+
+/**
+ * Container of consecutive screenshots that are stored as the differences with the screenshot before them.
+ *
+ * A screenshot is cut in tiles of TILE_SIZE x TILE_SIZE pixels, which are compared, by hash, with the tiles
+ * of the previous screenshot. Only the tiles that changed are stored, so a screenshot in which only a tooltip
+ * or a caret changed takes a few tiles. Every KEYFRAME_INTERVAL screenshots, when the size changes, or when
+ * most tiles changed, the screenshot is stored in full as a keyframe, which bounds the work of reading a
+ * screenshot back: from the keyframe before it on.
+ *
+ * The container is a sequence of frames, each preceded by its length:
+ * <pre>
+ * "TDF2" { length:int number:int type:byte width:int height:int [tiles:int tile:int*] deflated:byte* }*
+ * </pre>
+ * The tiles of a keyframe are not listed: all of them are stored. The pixels of the stored tiles are deflated
+ * together, row by row, as the difference of every ARGB byte with the byte of the pixel on its left.
+ *
+ * Frames are found by their number, not by their position, as a frame that could not be written is missing
+ * from the container. The frame after a missing one is written as a keyframe.
+ *
+ * A screenshot in a container is referred to as container#frame, see reference().
+ */
+public final class FrameContainer {
+
+	public static final String EXTENSION = "tdf";
+	public static final int TILE_SIZE = 32;
+	public static final int KEYFRAME_INTERVAL = 50;
+
+	private static final byte[] MAGIC = {'T', 'D', 'F', '2'};
+	private static final byte KEYFRAME = 0;
+	private static final byte DELTA = 1;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private FrameContainer() {}
+
+	/**
+	 * @return the reference to a frame of a container
+	 */
+	public static String reference(String container, int frame) {
+		return container + "#" + frame;
+	}
+
+	/**
+	 * @return whether a screenshot path refers to a frame of a container
+	 */
+	public static boolean isReference(String path) {
+		if (path == null) {
+			return false;
+		}
+		int hash = path.lastIndexOf('#');
+		return hash > 0 && path.startsWith("." + EXTENSION, hash - EXTENSION.length() - 1);
+	}
+
+	/**
+	 * @return the container of a frame reference
+	 */
+	public static String containerOf(String reference) {
+		Assert.isTrue(isReference(reference));
+		return reference.substring(0, reference.lastIndexOf('#'));
+	}
+
+	/**
+	 * @return the frame number of a frame reference
+	 */
+	public static int frameOf(String reference) {
+		Assert.isTrue(isReference(reference));
+		return Integer.parseInt(reference.substring(reference.lastIndexOf('#') + 1));
+	}
+
+	// the ARGB pixels of the image, without a copy when the image is backed by a plain int buffer
+	static int[] pixels(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB && image.getRaster().getDataBuffer() instanceof DataBufferInt
+				&& image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0) {
+			int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			if (data.length == width * height) {
+				return data;
+			}
+		}
+		return image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	/**
+	 * A screenshot as it was compared with the one before it: its pixels, and the tiles that are stored.
+	 */
+	public static final class Frame {
+		private final int number;
+		private final boolean keyframe;
+		private final int width;
+		private final int height;
+		private final int[] pixels;
+		private final int[] tiles;
+
+		private Frame(int number, boolean keyframe, int width, int height, int[] pixels, int[] tiles) {
+			this.number = number;
+			this.keyframe = keyframe;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+			this.tiles = tiles;
+		}
+
+		public int getNumber() { return number; }
+		public boolean isKeyframe() { return keyframe; }
+
+		/**
+		 * @return the screenshot of the frame, for when it is needed before the frame is written
+		 */
+		public BufferedImage image() {
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+			return image;
+		}
+
+		/**
+		 * @return the number of tiles that are stored
+		 */
+		public int getTileCount() { return tiles.length; }
+	}
+
+	/**
+	 * Writes the frames of a container.
+	 *
+	 * Comparing a screenshot with the previous one, diff(), is cheap and decides the frame number, so it is
+	 * done in the order of the screenshots. Compressing and writing the frame, write(), may be done later,
+	 * by another thread, as long as the frames are written in the order they were compared in. A frame may be
+	 * left out, when it could not be queued or written; the next frame is then written as a keyframe.
+	 */
+	public static final class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final int keyframeInterval;
+		private final Deflater deflater;
+		private int frames;
+		// the number of the frame that follows the last one written, a delta of any other frame is written in full
+		private int next;
+		private int sinceKeyframe;
+		private int width = -1;
+		private int height = -1;
+		private long[] tileHashes;
+
+		/**
+		 * @param out the container stream, which the writer closes
+		 * @param keyframeInterval the maximum number of frames from one keyframe to the next
+		 * @param level the deflate level of the tiles
+		 * @throws IOException
+		 */
+		public Writer(OutputStream out, int keyframeInterval, int level) throws IOException {
+			Assert.notNull(out);
+			Assert.isTrue(keyframeInterval > 0);
+			this.out = new DataOutputStream(out);
+			this.keyframeInterval = keyframeInterval;
+			this.deflater = new Deflater(level);
+			this.out.write(MAGIC);
+		}
+
+		public Writer(OutputStream out) throws IOException {
+			this(out, KEYFRAME_INTERVAL, 1);
+		}
+
+		/**
+		 * Compares a screenshot with the previous one. The screenshot must not change until it is written.
+		 * @param image
+		 * @return the frame to write
+		 */
+		public synchronized Frame diff(BufferedImage image) {
+			Assert.notNull(image);
+			int w = image.getWidth();
+			int h = image.getHeight();
+			int[] pixels = pixels(image);
+			long[] hashes = tileHashes(pixels, w, h);
+
+			boolean keyframe = w != width || h != height || sinceKeyframe + 1 >= keyframeInterval;
+			int[] changed = new int[hashes.length];
+			int count = 0;
+			if (!keyframe) {
+				for (int tile = 0; tile < hashes.length; tile++) {
+					if (hashes[tile] != tileHashes[tile]) {
+						changed[count++] = tile;
+					}
+				}
+				// when most of the screen changed, a keyframe costs as much and shortens the way back
+				keyframe = count * 2 > hashes.length;
+			}
+			int[] tiles;
+			if (keyframe) {
+				tiles = new int[hashes.length];
+				for (int tile = 0; tile < tiles.length; tile++) {
+					tiles[tile] = tile;
+				}
+				sinceKeyframe = 0;
+			} else {
+				tiles = Arrays.copyOf(changed, count);
+				sinceKeyframe++;
+			}
+			width = w;
+			height = h;
+			tileHashes = hashes;
+			return new Frame(frames++, keyframe, w, h, pixels, tiles);
+		}
+
+		/**
+		 * Compresses and appends a frame. A delta of a frame that was not written is written as a keyframe.
+		 * @param frame a frame returned by diff(), in the order they were returned
+		 * @return the number of bytes written
+		 * @throws IOException
+		 */
+		public long write(Frame frame) throws IOException {
+			boolean keyframe = frame.keyframe || frame.number != next;
+			int[] tiles = frame.tiles;
+			if (keyframe && !frame.keyframe) {
+				int columns = (frame.width + TILE_SIZE - 1) / TILE_SIZE;
+				int rows = (frame.height + TILE_SIZE - 1) / TILE_SIZE;
+				tiles = new int[columns * rows];
+				for (int tile = 0; tile < tiles.length; tile++) {
+					tiles[tile] = tile;
+				}
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(bytes);
+			data.writeInt(frame.number);
+			data.writeByte(keyframe ? KEYFRAME : DELTA);
+			data.writeInt(frame.width);
+			data.writeInt(frame.height);
+			if (!keyframe) {
+				data.writeInt(tiles.length);
+				for (int tile : tiles) {
+					data.writeInt(tile);
+				}
+			}
+			deflater.reset();
+			byte[] row = new byte[TILE_SIZE * 4];
+			byte[] buffer = new byte[64 * 1024];
+			int columns = (frame.width + TILE_SIZE - 1) / TILE_SIZE;
+			for (int tile : tiles) {
+				int x0 = (tile % columns) * TILE_SIZE;
+				int y0 = (tile / columns) * TILE_SIZE;
+				int x1 = Math.min(x0 + TILE_SIZE, frame.width);
+				int y1 = Math.min(y0 + TILE_SIZE, frame.height);
+				for (int y = y0; y < y1; y++) {
+					int length = filter(frame.pixels, y * frame.width, x0, x1, row);
+					deflater.setInput(row, 0, length);
+					while (!deflater.needsInput()) {
+						data.write(buffer, 0, deflater.deflate(buffer));
+					}
+				}
+			}
+			deflater.finish();
+			while (!deflater.finished()) {
+				data.write(buffer, 0, deflater.deflate(buffer));
+			}
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			// the frame can be read back as soon as it is written
+			out.flush();
+			next = frame.number + 1;
+			return 4L + bytes.size();
+		}
+
+		public int getFrameCount() {
+			return frames;
+		}
+
+		@Override
+		public void close() throws IOException {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the frames of a container back.
+	 *
+	 * The last screenshot read is kept, so reading the frames in order only applies every frame once.
+	 */
+	public static final class Reader implements Closeable {
+		private final RandomAccessFile file;
+		private final List<Integer> numbers = new ArrayList<>();
+		private final List<Long> offsets = new ArrayList<>();
+		private final List<Boolean> keyframes = new ArrayList<>();
+		private final Inflater inflater = new Inflater();
+		private int current = -1;
+		private int width;
+		private int height;
+		private int[] pixels;
+
+		/**
+		 * Opens a container and finds its frames. A frame that was not completely written is ignored.
+		 * @param container
+		 * @throws IOException
+		 */
+		public Reader(File container) throws IOException {
+			file = new RandomAccessFile(container, "r");
+			try {
+				byte[] magic = new byte[MAGIC.length];
+				file.readFully(magic);
+				if (!Arrays.equals(magic, MAGIC)) {
+					throw new IOException("Not a frame container: " + container);
+				}
+				long length = file.length();
+				long offset = MAGIC.length;
+				while (offset + 9 <= length) {
+					file.seek(offset);
+					int frameLength = file.readInt();
+					if (frameLength <= 4 || offset + 4 + frameLength > length) {
+						break;
+					}
+					int number = file.readInt();
+					if (!numbers.isEmpty() && number <= numbers.get(numbers.size() - 1)) {
+						break;
+					}
+					numbers.add(number);
+					offsets.add(offset + 4);
+					keyframes.add(file.readByte() == KEYFRAME);
+					offset += 4 + frameLength;
+				}
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the number of frames in the container, which is less than the number of the last frame
+		 * when frames are missing
+		 */
+		public int getFrameCount() {
+			return offsets.size();
+		}
+
+		/**
+		 * Reconstructs a frame from the keyframe before it, or from the last frame read.
+		 * @param frame the frame number
+		 * @return the screenshot
+		 * @throws IOException
+		 */
+		public BufferedImage read(int frame) throws IOException {
+			// the frames are stored in the order of their numbers
+			int position = Collections.binarySearch(numbers, frame);
+			if (position < 0) {
+				throw new IOException("No frame " + frame + " in the container");
+			}
+			int start = position;
+			while (!keyframes.get(start)) {
+				start--;
+				if (start < 0) {
+					throw new IOException("No keyframe before frame " + frame);
+				}
+			}
+			if (current >= start && current <= position) {
+				start = current + 1;
+			}
+			for (int i = start; i <= position; i++) {
+				apply(i);
+			}
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+			return image;
+		}
+
+		private void apply(int position) throws IOException {
+			long offset = offsets.get(position);
+			long end = position + 1 < offsets.size() ? offsets.get(position + 1) - 4 : file.length();
+			byte[] bytes = new byte[(int) (end - offset)];
+			file.seek(offset);
+			file.readFully(bytes);
+			DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+			int frame = data.readInt();
+			boolean keyframe = data.readByte() == KEYFRAME;
+			int w = data.readInt();
+			int h = data.readInt();
+			int columns = (w + TILE_SIZE - 1) / TILE_SIZE;
+			int rows = (h + TILE_SIZE - 1) / TILE_SIZE;
+			int[] tiles;
+			if (keyframe) {
+				tiles = new int[columns * rows];
+				for (int tile = 0; tile < tiles.length; tile++) {
+					tiles[tile] = tile;
+				}
+				width = w;
+				height = h;
+				pixels = new int[w * h];
+			} else {
+				if (pixels == null || w != width || h != height) {
+					throw new IOException("Frame " + frame + " does not follow the frame before it");
+				}
+				tiles = new int[data.readInt()];
+				for (int i = 0; i < tiles.length; i++) {
+					tiles[i] = data.readInt();
+				}
+			}
+			int header = bytes.length - data.available();
+			inflater.reset();
+			inflater.setInput(bytes, header, bytes.length - header);
+			byte[] row = new byte[TILE_SIZE * 4];
+			try {
+				for (int tile : tiles) {
+					int x0 = (tile % columns) * TILE_SIZE;
+					int y0 = (tile / columns) * TILE_SIZE;
+					int x1 = Math.min(x0 + TILE_SIZE, w);
+					int y1 = Math.min(y0 + TILE_SIZE, h);
+					int length = (x1 - x0) * 4;
+					for (int y = y0; y < y1; y++) {
+						for (int read = 0; read < length; ) {
+							int n = inflater.inflate(row, read, length - read);
+							if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+								throw new EOFException("Frame " + frame + " is truncated");
+							}
+							read += n;
+						}
+						unfilter(row, pixels, y * w, x0, x1);
+					}
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Frame " + frame + " is corrupt", e);
+			}
+			current = position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			inflater.end();
+			file.close();
+		}
+	}
+
+	/**
+	 * Hashes the tiles of a screenshot, row by row, as they are compared between the frames of a container.
+	 * Two screenshots of the same size with equal hashes look the same.
+	 * @param image
+	 * @return the hash of each tile
+	 */
+	public static long[] tileHashes(BufferedImage image) {
+		Assert.notNull(image);
+		return tileHashes(pixels(image), image.getWidth(), image.getHeight());
+	}
+
+	private static long[] tileHashes(int[] pixels, int width, int height) {
+		int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		long[] hashes = new long[columns * rows];
+		for (int tile = 0; tile < hashes.length; tile++) {
+			hashes[tile] = tileHash(pixels, width, height, tile % columns, tile / columns);
+		}
+		return hashes;
+	}
+
+	private static long tileHash(int[] pixels, int width, int height, int column, int row) {
+		int x0 = column * TILE_SIZE;
+		int y0 = row * TILE_SIZE;
+		int x1 = Math.min(x0 + TILE_SIZE, width);
+		int y1 = Math.min(y0 + TILE_SIZE, height);
+		long hash = FNV_OFFSET;
+		for (int y = y0; y < y1; y++) {
+			for (int i = y * width + x0, end = y * width + x1; i < end; i++) {
+				hash = (hash ^ pixels[i]) * FNV_PRIME;
+			}
+		}
+		return hash;
+	}
+
+	// the ARGB bytes of a tile row, minus the bytes of the pixel on their left
+	private static int filter(int[] pixels, int rowStart, int x0, int x1, byte[] row) {
+		int left = 0;
+		int j = 0;
+		for (int i = rowStart + x0, end = rowStart + x1; i < end; i++) {
+			int pixel = pixels[i];
+			row[j++] = (byte) ((pixel >>> 24) - (left >>> 24));
+			row[j++] = (byte) ((pixel >>> 16) - (left >>> 16));
+			row[j++] = (byte) ((pixel >>> 8) - (left >>> 8));
+			row[j++] = (byte) (pixel - left);
+			left = pixel;
+		}
+		return j;
+	}
+
+	private static void unfilter(byte[] row, int[] pixels, int rowStart, int x0, int x1) {
+		int a = 0, r = 0, g = 0, b = 0;
+		int j = 0;
+		for (int i = rowStart + x0, end = rowStart + x1; i < end; i++) {
+			a = (a + row[j++]) & 0xff;
+			r = (r + row[j++]) & 0xff;
+			g = (g + row[j++]) & 0xff;
+			b = (b + row[j++]) & 0xff;
+			pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+}
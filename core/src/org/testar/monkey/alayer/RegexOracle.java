@@ -0,0 +1,382 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.monkey.alayer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.testar.monkey.Assert;
+
+/**
+ * A regular expression that is matched against many string values, such as the suspicious titles oracle
+ * and the click filter against the tag values of all the widgets of every state.
+ *
+ * The expression is compiled once. The literal fragments that every alternative of the expression requires
+ * are searched for in one pass over the value (Aho-Corasick), and only values that contain one of them are
+ * matched against the expression itself. Expressions with groups, inline flags or alternatives without a
+ * literal fragment are always matched against the expression. The outcome for every distinct value is kept
+ * in a bounded cache, as the same titles show up state after state.
+ *
+ * Like Matcher.matches(), the whole value has to match the expression. Instances are thread safe and are
+ * shared by the threads that evaluate the widgets of a state: the cache and the counters do not lock.
+ */
+public final class RegexOracle {
+
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	private final String name;
+	private final String regex;
+	private final Pattern pattern;
+	private final Literals literals;
+
+	// The cache has two generations of about half the cache size each. Values are added to the young
+	// generation, and move back to it when they are found in the old one. A full young generation becomes
+	// the old one, which drops the values that were not used since the previous turn, like a least
+	// recently used cache would.
+	private final int generationSize;
+	private volatile Map<String, Boolean> young, old;
+
+	// evaluations since the last report; only the values that were not cached are timed
+	private final LongAdder evaluations = new LongAdder(), cached = new LongAdder(), prefiltered = new LongAdder(),
+			matched = new LongAdder(), nanos = new LongAdder();
+
+	private RegexOracle(String name, String regex, int cacheSize){
+		this.name = name;
+		this.regex = regex;
+		this.pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+		List<String> fragments = requiredLiterals(regex);
+		this.literals = fragments == null ? null : new Literals(fragments);
+		this.generationSize = (cacheSize + 1) / 2;
+		this.young = new ConcurrentHashMap<String, Boolean>();
+		this.old = new ConcurrentHashMap<String, Boolean>();
+	}
+
+	/**
+	 * @param name the name under which the evaluations are reported, such as the setting of the expression
+	 * @param regex
+	 * @return the compiled oracle
+	 * @throws java.util.regex.PatternSyntaxException if the expression is not valid
+	 */
+	public static RegexOracle compile(String name, String regex){
+		return compile(name, regex, DEFAULT_CACHE_SIZE);
+	}
+
+	public static RegexOracle compile(String name, String regex, int cacheSize){
+		Assert.notNull(name);
+		Assert.notNull(regex);
+		Assert.isTrue(cacheSize >= 0);
+		return new RegexOracle(name, regex, cacheSize);
+	}
+
+	/**
+	 * For oracles that are configured in the settings, which may change between runs.
+	 * @return the current oracle if it has the same expression, or else a newly compiled one
+	 */
+	public static RegexOracle recompile(RegexOracle current, String name, String regex){
+		if(current != null && current.regex.equals(regex) && current.name.equals(name))
+			return current;
+		return compile(name, regex);
+	}
+
+	public String name(){ return name; }
+
+	public String regex(){ return regex; }
+
+	/**
+	 * @return whether the expression uses the literal prefilter
+	 */
+	public boolean isPrefiltered(){ return literals != null; }
+
+	/**
+	 * @param value
+	 * @return whether the whole value matches the expression
+	 */
+	public boolean matches(String value){
+		Assert.notNull(value);
+		evaluations.increment();
+		Boolean result = cached(value);
+		if(result != null){
+			cached.increment();
+		}else{
+			long start = System.nanoTime();
+			boolean rejected = literals != null && !literals.foundIn(value);
+			result = !rejected && pattern.matcher(value).matches();
+			cache(value, result);
+			nanos.add(System.nanoTime() - start);
+			if(rejected)
+				prefiltered.increment();
+		}
+		if(result)
+			matched.increment();
+		return result;
+	}
+
+	private Boolean cached(String value){
+		if(generationSize == 0)
+			return null;
+		Boolean result = young.get(value);
+		if(result == null){
+			result = old.get(value);
+			if(result != null)
+				cache(value, result);
+		}
+		return result;
+	}
+
+	private void cache(String value, Boolean result){
+		if(generationSize == 0)
+			return;
+		Map<String, Boolean> generation = young;
+		generation.put(value, result);
+		if(generation.size() > generationSize){
+			synchronized(this){
+				if(young == generation){
+					old = generation;
+					young = new ConcurrentHashMap<String, Boolean>();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the evaluations since the previous report, and starts counting anew. The time is the time
+	 * spent on the values that were not cached.
+	 * @return a line such as "SuspiciousTitles: 120 values in 0.081 ms (100 cached, 18 prefiltered, 1 matched)"
+	 */
+	public String report(){
+		return String.format("%s: %d values in %.3f ms (%d cached, %d prefiltered, %d matched)",
+				name, evaluations.sumThenReset(), nanos.sumThenReset() / 1e6, cached.sumThenReset(),
+				prefiltered.sumThenReset(), matched.sumThenReset());
+	}
+
+	@Override
+	public String toString(){
+		return name + " = " + regex;
+	}
+
+	/**
+	 * The literal fragments of which every match of the expression contains at least one: the longest
+	 * literal run of every top level alternative.
+	 * @return the fragments, or null if some alternative has no literal run or the expression is not simple
+	 * enough to tell
+	 */
+	static List<String> requiredLiterals(String regex){
+		List<String> fragments = new ArrayList<String>();
+		StringBuilder run = new StringBuilder();
+		String longest = "";
+		int i = 0;
+		while(i <= regex.length()){
+			char c = i < regex.length() ? regex.charAt(i) : '|';
+			if(c == '|'){
+				if(run.length() > longest.length())
+					longest = run.toString();
+				if(longest.isEmpty())
+					return null;
+				fragments.add(longest);
+				run.setLength(0);
+				longest = "";
+				i++;
+			}else if(c == '(' || c == ')'){
+				return null;
+			}else if(c == '\\'){
+				if(i + 1 >= regex.length())
+					return null;
+				char escaped = regex.charAt(i + 1);
+				if(Character.isLetterOrDigit(escaped)){
+					// a predefined class, boundary or control character: breaks the run
+					if("dDsSwWbBhHvVRXtnrfaeAzZG".indexOf(escaped) < 0)
+						return null;
+					if(run.length() > longest.length())
+						longest = run.toString();
+					run.setLength(0);
+				}else{
+					run.append(escaped);
+				}
+				i += 2;
+			}else if(c == '['){
+				int end = endOfClass(regex, i);
+				if(end < 0)
+					return null;
+				if(run.length() > longest.length())
+					longest = run.toString();
+				run.setLength(0);
+				i = end + 1;
+			}else if(c == '*' || c == '?' || c == '{' || c == '+'){
+				// the previous atom is optional, or may repeat
+				if(c != '+' && run.length() > 0)
+					run.setLength(run.length() - 1);
+				if(run.length() > longest.length())
+					longest = run.toString();
+				run.setLength(0);
+				if(c == '{'){
+					i = regex.indexOf('}', i);
+					if(i < 0)
+						return null;
+				}
+				i++;
+				// lazy and possessive quantifiers
+				if(i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+					i++;
+			}else if(c == '.' || c == '^' || c == '$'){
+				if(run.length() > longest.length())
+					longest = run.toString();
+				run.setLength(0);
+				i++;
+			}else{
+				run.append(c);
+				i++;
+			}
+		}
+		return fragments;
+	}
+
+	// the index of the closing bracket of the character class that starts at the given index, or -1
+	private static int endOfClass(String regex, int start){
+		int depth = 0;
+		int i = start;
+		while(i < regex.length()){
+			char c = regex.charAt(i);
+			if(c == '\\'){
+				i += 2;
+				continue;
+			}
+			if(c == '['){
+				depth++;
+				i++;
+				// a closing bracket right after the opening one (or its negation) is a member of the class
+				if(i < regex.length() && regex.charAt(i) == '^')
+					i++;
+				if(i < regex.length() && regex.charAt(i) == ']')
+					i++;
+				continue;
+			}
+			if(c == ']' && --depth == 0)
+				return i;
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Aho-Corasick automaton that tells whether a value contains any of a set of fragments.
+	 */
+	private static final class Literals {
+
+		// per state: the characters of its transitions in ascending order, their target states,
+		// the state to continue from when no transition matches, and whether some fragment ends in it
+		private final char[][] keys;
+		private final int[][] targets;
+		private final int[] fail;
+		private final boolean[] output;
+
+		Literals(List<String> fragments){
+			List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+			List<Boolean> ends = new ArrayList<Boolean>();
+			trie.add(new TreeMap<Character, Integer>());
+			ends.add(false);
+			for(String fragment : fragments){
+				int state = 0;
+				for(int i = 0; i < fragment.length(); i++){
+					Integer next = trie.get(state).get(fragment.charAt(i));
+					if(next == null){
+						next = trie.size();
+						trie.get(state).put(fragment.charAt(i), next);
+						trie.add(new TreeMap<Character, Integer>());
+						ends.add(false);
+					}
+					state = next;
+				}
+				ends.set(state, true);
+			}
+
+			int size = trie.size();
+			keys = new char[size][];
+			targets = new int[size][];
+			fail = new int[size];
+			output = new boolean[size];
+			for(int s = 0; s < size; s++){
+				keys[s] = new char[trie.get(s).size()];
+				targets[s] = new int[trie.get(s).size()];
+				int k = 0;
+				for(Map.Entry<Character, Integer> transition : trie.get(s).entrySet()){
+					keys[s][k] = transition.getKey();
+					targets[s][k++] = transition.getValue();
+				}
+				output[s] = ends.get(s);
+			}
+
+			// breadth first, so the fail state of a state is complete before the state itself
+			Deque<Integer> queue = new ArrayDeque<Integer>();
+			for(int target : targets[0])
+				queue.add(target);
+			while(!queue.isEmpty()){
+				int s = queue.poll();
+				output[s] |= output[fail[s]];
+				for(int k = 0; k < keys[s].length; k++){
+					int target = targets[s][k];
+					int f = fail[s];
+					int next;
+					while((next = next(f, keys[s][k])) < 0 && f != 0)
+						f = fail[f];
+					fail[target] = next < 0 ? 0 : next;
+					queue.add(target);
+				}
+			}
+		}
+
+		private int next(int state, char c){
+			int k = Arrays.binarySearch(keys[state], c);
+			return k < 0 ? -1 : targets[state][k];
+		}
+
+		boolean foundIn(String value){
+			int state = 0;
+			for(int i = 0; i < value.length(); i++){
+				char c = value.charAt(i);
+				int next;
+				while((next = next(state, c)) < 0 && state != 0)
+					state = fail[state];
+				state = next < 0 ? 0 : next;
+				if(output[state])
+					return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.monkey.alayer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.testar.monkey.Assert;
+
+/**
+ * Spatial index of items with a rectangle on the screen, such as the widgets of a state or the top level
+ * containers of a window, for hit testing and area queries.
+ *
+ * The items are ranked in the order they are added: the first item is on top of all the others. The index
+ * is a hierarchy of uniform grids. Every item is stored in the grid whose cells are at least as large as its
+ * rectangle, so it takes at most 2x2 cells, and a point query looks at one cell per grid, in which the items
+ * are kept in rank order. An index is built once and not changed afterwards.
+ *
+ * @param <T> the type of the items
+ */
+public final class SpatialIndex<T> implements Serializable {
+
+	private static final long serialVersionUID = -1725520846328342178L;
+
+	// cells per side of the finest grid, at most
+	private static final int MAX_SIDE = 1024;
+
+	private final Object[] items;
+	private final double[] xs, ys, widths, heights;
+	private final double minX, minY, maxX, maxY, cellWidth, cellHeight;
+	// per grid, from fine to coarse: the number of cells per side, and the items of every cell in rank order
+	private final int[] sides;
+	private final int[][] cellStarts;
+	private final int[][] cellItems;
+
+	public static <T> Builder<T> newBuilder(){ return new Builder<T>(); }
+
+	public static final class Builder<T>{
+		private final List<T> items = new ArrayList<T>();
+		private final List<Rect> rects = new ArrayList<Rect>();
+
+		/**
+		 * Adds an item below the items that were added before.
+		 * @param item
+		 * @param rect the rectangle of the item on the screen
+		 * @return this builder
+		 */
+		public Builder<T> add(T item, Rect rect){
+			Assert.notNull(item, rect);
+			items.add(item);
+			rects.add(rect);
+			return this;
+		}
+
+		public SpatialIndex<T> build(){
+			return new SpatialIndex<T>(items, rects);
+		}
+	}
+
+	private SpatialIndex(List<T> items, List<Rect> rects){
+		int n = items.size();
+		this.items = items.toArray();
+		xs = new double[n];
+		ys = new double[n];
+		widths = new double[n];
+		heights = new double[n];
+		double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+		double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < n; i++){
+			Rect r = rects.get(i);
+			xs[i] = r.x();
+			ys[i] = r.y();
+			widths[i] = Math.max(0, r.width());
+			heights[i] = Math.max(0, r.height());
+			x0 = Math.min(x0, xs[i]);
+			y0 = Math.min(y0, ys[i]);
+			x1 = Math.max(x1, xs[i] + widths[i]);
+			y1 = Math.max(y1, ys[i] + heights[i]);
+		}
+		if(n == 0){
+			x0 = y0 = x1 = y1 = 0;
+		}
+		minX = x0;
+		minY = y0;
+		maxX = x1;
+		maxY = y1;
+
+		int side = (int)Math.min(MAX_SIDE, Math.max(1, Math.ceil(Math.sqrt(n))));
+		cellWidth = maxX > minX ? (maxX - minX) / side : 1;
+		cellHeight = maxY > minY ? (maxY - minY) / side : 1;
+		// every grid has cells twice as large as the one before, the last one has a single cell
+		int levels = 1;
+		while(((side + (1 << (levels - 1)) - 1) >> (levels - 1)) > 1)
+			levels++;
+		sides = new int[levels];
+		for(int level = 0; level < levels; level++)
+			sides[level] = (side + (1 << level) - 1) >> level;
+
+		// the grid of an item is the finest one with cells at least as large as the item
+		int[] itemLevels = new int[n];
+		int[][] counts = new int[levels][];
+		for(int level = 0; level < levels; level++)
+			counts[level] = new int[sides[level] * sides[level] + 1];
+		for(int i = 0; i < n; i++){
+			int level = 0;
+			while(level < levels - 1 && (widths[i] > cellWidth * (1 << level) || heights[i] > cellHeight * (1 << level)))
+				level++;
+			itemLevels[i] = level;
+			int s = sides[level];
+			for(int cy = cell(ys[i], minY, cellHeight, level, s), cy1 = cell(ys[i] + heights[i], minY, cellHeight, level, s); cy <= cy1; cy++)
+				for(int cx = cell(xs[i], minX, cellWidth, level, s), cx1 = cell(xs[i] + widths[i], minX, cellWidth, level, s); cx <= cx1; cx++)
+					counts[level][cy * s + cx + 1]++;
+		}
+		cellStarts = new int[levels][];
+		cellItems = new int[levels][];
+		for(int level = 0; level < levels; level++){
+			int[] starts = counts[level];
+			for(int c = 1; c < starts.length; c++)
+				starts[c] += starts[c - 1];
+			cellStarts[level] = starts;
+			cellItems[level] = new int[starts[starts.length - 1]];
+		}
+		// filled in rank order, so the items of every cell are in rank order
+		int[][] next = new int[levels][];
+		for(int level = 0; level < levels; level++)
+			next[level] = Arrays.copyOf(cellStarts[level], cellStarts[level].length - 1);
+		for(int i = 0; i < n; i++){
+			int level = itemLevels[i];
+			int s = sides[level];
+			for(int cy = cell(ys[i], minY, cellHeight, level, s), cy1 = cell(ys[i] + heights[i], minY, cellHeight, level, s); cy <= cy1; cy++)
+				for(int cx = cell(xs[i], minX, cellWidth, level, s), cx1 = cell(xs[i] + widths[i], minX, cellWidth, level, s); cx <= cx1; cx++)
+					cellItems[level][next[level][cy * s + cx]++] = i;
+		}
+	}
+
+	private static int cell(double coordinate, double min, double cellSize, int level, int side){
+		int c = (int)Math.floor((coordinate - min) / (cellSize * (1 << level)));
+		return c < 0 ? 0 : (c >= side ? side - 1 : c);
+	}
+
+	// same as Rect.contains
+	private boolean contains(int i, double x, double y){
+		return x >= xs[i] && y >= ys[i] && x <= xs[i] + widths[i] && y <= ys[i] + heights[i];
+	}
+
+	// same as Rect.intersect
+	private boolean intersects(int i, double x, double y, double width, double height){
+		return !(xs[i] + widths[i] < x || ys[i] + heights[i] < y || x + width < xs[i] || y + height < ys[i]);
+	}
+
+	private boolean inBounds(double x, double y){
+		return items.length > 0 && x >= minX && y >= minY && x <= maxX && y <= maxY;
+	}
+
+	public int size(){ return items.length; }
+
+	@SuppressWarnings("unchecked")
+	public T get(int rank){ return (T)items[rank]; }
+
+	/**
+	 * @return the topmost item whose rectangle contains the point, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public T at(double x, double y){
+		int best = rankAt(x, y);
+		return best == -1 ? null : (T)items[best];
+	}
+
+	/**
+	 * @return the rank of the topmost item whose rectangle contains the point, or -1
+	 */
+	public int rankAt(double x, double y){
+		if(!inBounds(x, y))
+			return -1;
+		int best = Integer.MAX_VALUE;
+		for(int level = 0; level < sides.length; level++){
+			int s = sides[level];
+			int c = cell(y, minY, cellHeight, level, s) * s + cell(x, minX, cellWidth, level, s);
+			int[] cellItemsOfLevel = cellItems[level];
+			for(int j = cellStarts[level][c], end = cellStarts[level][c + 1]; j < end; j++){
+				int i = cellItemsOfLevel[j];
+				if(i >= best)
+					break;
+				if(contains(i, x, y)){
+					best = i;
+					break;
+				}
+			}
+		}
+		return best == Integer.MAX_VALUE ? -1 : best;
+	}
+
+	/**
+	 * @return whether an item above the given one, by rank, contains the point
+	 */
+	public boolean obstructed(int rank, double x, double y){
+		int top = rankAt(x, y);
+		return top != -1 && top < rank;
+	}
+
+	/**
+	 * @return the items whose rectangle contains the point, from the top down
+	 */
+	public List<T> allAt(double x, double y){
+		if(!inBounds(x, y))
+			return Collections.emptyList();
+		int[] found = new int[8];
+		int count = 0;
+		for(int level = 0; level < sides.length; level++){
+			int s = sides[level];
+			int c = cell(y, minY, cellHeight, level, s) * s + cell(x, minX, cellWidth, level, s);
+			for(int j = cellStarts[level][c], end = cellStarts[level][c + 1]; j < end; j++){
+				int i = cellItems[level][j];
+				if(contains(i, x, y)){
+					if(count == found.length)
+						found = Arrays.copyOf(found, count * 2);
+					found[count++] = i;
+				}
+			}
+		}
+		return toItems(found, count);
+	}
+
+	/**
+	 * @return the items whose rectangle intersects the area, as Rect.intersect, from the top down
+	 */
+	public List<T> intersecting(Rect area){
+		Assert.notNull(area);
+		if(items.length == 0)
+			return Collections.emptyList();
+		double x = area.x(), y = area.y(), width = area.width(), height = area.height();
+		BitSet seen = new BitSet(items.length);
+		int[] found = new int[8];
+		int count = 0;
+		for(int level = 0; level < sides.length; level++){
+			int s = sides[level];
+			int cx0 = cell(x, minX, cellWidth, level, s), cx1 = cell(x + width, minX, cellWidth, level, s);
+			int cy0 = cell(y, minY, cellHeight, level, s), cy1 = cell(y + height, minY, cellHeight, level, s);
+			for(int cy = cy0; cy <= cy1; cy++){
+				for(int cx = cx0; cx <= cx1; cx++){
+					int c = cy * s + cx;
+					for(int j = cellStarts[level][c], end = cellStarts[level][c + 1]; j < end; j++){
+						int i = cellItems[level][j];
+						if(!seen.get(i) && intersects(i, x, y, width, height)){
+							seen.set(i);
+							if(count == found.length)
+								found = Arrays.copyOf(found, count * 2);
+							found[count++] = i;
+						}
+					}
+				}
+			}
+		}
+		return toItems(found, count);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<T> toItems(int[] ranks, int count){
+		Arrays.sort(ranks, 0, count);
+		List<T> ret = new ArrayList<T>(count);
+		for(int j = 0; j < count; j++)
+			ret.add((T)items[ranks[j]]);
+		return ret;
+	}
+}
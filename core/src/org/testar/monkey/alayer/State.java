@@ -33,6 +33,8 @@
  */
 package org.testar.monkey.alayer;
 
+import java.util.stream.Stream;
+
 /**
  * A state describes an <code>SUT</code>'s state. It includes the currently
  * visible widgets which form a widget tree. Each of these widgets has
@@ -44,4 +46,24 @@ package org.testar.monkey.alayer;
  * the system itself. For example
  *
  */
-public interface State extends Widget, Iterable<Widget>{ }
+public interface State extends Widget, Iterable<Widget>{
+
+	/**
+	 * Returns the widgets of the state, flattened in the order the state iterates them.
+	 * Implementations keep the array until their widget tree changes.
+	 * @return the widgets of the state
+	 */
+	default WidgetArray widgets(){ return WidgetArray.of(this); }
+
+	/**
+	 * Returns the spatial index of the widgets of the state, by the bounds of their shape. The index is kept
+	 * with the widgets, so it is built once and dropped when the widget tree changes.
+	 * @return the index of the widgets that have a shape
+	 */
+	default SpatialIndex<Widget> spatialIndex(){ return widgets().spatialIndex(); }
+
+	/**
+	 * @return the widgets of the state, in the order the state iterates them
+	 */
+	default Stream<Widget> stream(){ return widgets().stream(); }
+}
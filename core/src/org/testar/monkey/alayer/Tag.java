@@ -37,6 +37,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.testar.monkey.Assert;
@@ -47,7 +50,23 @@ import org.testar.monkey.Util;
  * They have a name and a type and are associated with values who must be of that type. 
  */
 public final class Tag<T> implements Serializable{
+
+	/**
+	 * How expensive it is to obtain the value of a tag that has not been fetched yet.
+	 * Fetchers may delay the values of tags that are not <code>CHEAP</code> until they are explicitly asked for.
+	 */
+	public enum Cost {
+		/** The value is already available or can be derived from data in memory */
+		CHEAP,
+		/** The value requires a call into the accessibility API, the browser or the operating system */
+		NATIVE_CALL,
+		/** The value requires capturing or processing a screenshot */
+		SCREENSHOT
+	}
+
 	private final static ConcurrentHashMap<Tag<?>, Tag<?>> existingTags = new ConcurrentHashMap<Tag<?>, Tag<?>>();
+	private final static ConcurrentHashMap<String, Tag<?>[]> tagsByName = new ConcurrentHashMap<String, Tag<?>[]>();
+	private static int nextOrdinal = 0;
 
 	/**
 	 * Returns a tag object which is identified by <code>name</code> and <code>valueType</code>. 
@@ -58,17 +77,72 @@ public final class Tag<T> implements Serializable{
 	@SuppressWarnings("unchecked")
 	public static <T> Tag<T> from(String name, Class<T> valueType){
 		Assert.notNull(name, valueType);
-		Tag<T> ret = new Tag<T>(name, valueType);
-		Tag<T> existing = (Tag<T>)existingTags.putIfAbsent(ret, ret);
-		if(existing != null)
+		return (Tag<T>)intern(new Tag<T>(name, valueType), null);
+	}
+
+	/**
+	 * Returns the tag identified by <code>name</code> and <code>valueType</code>, declaring the cost of fetching its values.
+	 * The cost of a tag is declared once: tags that were only looked up before are <code>CHEAP</code> until then.
+	 * @param name The name of the tag
+	 * @param valueType The type of the values that are associated with this tag.
+	 * @param cost The cost of fetching a value of this tag.
+	 * @return A tag object.
+	 * @throws IllegalArgumentException if the tag was declared with a different cost before
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Tag<T> from(String name, Class<T> valueType, Cost cost){
+		Assert.notNull(name, valueType, cost);
+		return (Tag<T>)intern(new Tag<T>(name, valueType), cost);
+	}
+
+	/**
+	 * Returns all the tags with the given name, regardless of their value type, in the order they were created.
+	 * @param name The name of the tags
+	 * @return An unmodifiable list, empty if no tag has that name.
+	 */
+	public static List<Tag<?>> byName(String name){
+		Assert.notNull(name);
+		Tag<?>[] ret = tagsByName.get(name);
+		return ret == null ? Collections.<Tag<?>>emptyList() : Collections.unmodifiableList(Arrays.asList(ret));
+	}
+
+	private static Tag<?> intern(Tag<?> tag, Cost cost){
+		Tag<?> existing = existingTags.get(tag);
+		if(existing != null && cost == null)
+			return existing;
+		synchronized(existingTags){
+			existing = existingTags.get(tag);
+			if(existing == null){
+				existing = tag;
+				tag.ordinal = nextOrdinal++;
+				tag.cost = Cost.CHEAP;
+				Tag<?>[] named = tagsByName.get(tag.name);
+				if(named == null){
+					named = new Tag<?>[]{ tag };
+				}else{
+					named = Arrays.copyOf(named, named.length + 1);
+					named[named.length - 1] = tag;
+				}
+				tagsByName.put(tag.name, named);
+				existingTags.put(tag, tag);
+			}
+			if(cost != null){
+				if(existing.costDeclared && existing.cost != cost)
+					throw new IllegalArgumentException("Tag <" + tag.name + "> was declared with cost " + existing.cost + ", not " + cost);
+				existing.cost = cost;
+				existing.costDeclared = true;
+			}
 			return existing;
-		return ret;
+		}
 	}
 
 	private static final long serialVersionUID = -1215427100999751182L;
 	private final Class<T> clazz;
 	private final String name;
 	private int hashcode;
+	private transient int ordinal = -1;
+	private transient volatile Cost cost = Cost.CHEAP;
+	private transient boolean costDeclared;
 
 	private Tag(String name, Class<T> clazz){
 		this.clazz = clazz;
@@ -87,6 +161,20 @@ public final class Tag<T> implements Serializable{
 	 * @return value type
 	 */
 	public Class<T> type() { return clazz; }
+
+	/**
+	 * A dense number that identifies this tag within the running TESTAR instance.
+	 * Ordinals are assigned in interning order and are not stable across runs, so they must not be persisted.
+	 * @return the ordinal of the tag
+	 */
+	public int ordinal() { return ordinal; }
+
+	/**
+	 * The cost of fetching a value of this tag. Tags are <code>CHEAP</code> unless declared with a different cost.
+	 * @return the cost class of the tag
+	 */
+	public Cost cost() { return cost; }
+
 	public String toString(){ return name; }
 	
 	public int hashCode(){
@@ -113,8 +201,7 @@ public final class Tag<T> implements Serializable{
 	}
 	
 	private Object readResolve() throws ObjectStreamException{
-		Tag<?> existing = existingTags.putIfAbsent(this, this);		
-		return existing == null ? this : existing;
+		return intern(this, null);
 	}
 	
 	// by urueda
@@ -0,0 +1,122 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2013 - 2020 Universitat Politecnica de Valencia - www.upv.es
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+package org.testar.monkey.alayer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tags that the widgets of a platform can fetch, grouped by cost.
+ *
+ * Platform widgets list their tags through a domain instead of compiling a query set on every call.
+ * The tag sets the domain is built from may grow while tag classes are loaded; the domain is rebuilt when they do.
+ */
+public final class TagDomain {
+
+	private final Set<Tag<?>>[] tagSets;
+
+	private static final class Snapshot {
+		final int size;
+		final Set<Tag<?>> tags;
+		// per cost, the tags that cost at most that much
+		final Tag<?>[][] upToCost = new Tag<?>[Tag.Cost.values().length][];
+
+		Snapshot(int size, Set<Tag<?>> tags) {
+			this.size = size;
+			this.tags = tags;
+			for (Tag.Cost cost : Tag.Cost.values()) {
+				List<Tag<?>> upTo = new ArrayList<>();
+				for (Tag<?> tag : tags) {
+					if (tag.cost().compareTo(cost) <= 0)
+						upTo.add(tag);
+				}
+				upToCost[cost.ordinal()] = upTo.toArray(new Tag<?>[0]);
+			}
+		}
+	}
+
+	private volatile Snapshot snapshot = new Snapshot(-1, Collections.emptySet());
+
+	/**
+	 * @param tagSets the sets of tags of the domain, such as <code>Tags.tagSet()</code>
+	 */
+	@SafeVarargs
+	public TagDomain(Set<Tag<?>>... tagSets) {
+		this.tagSets = tagSets.clone();
+	}
+
+	private Snapshot snapshot() {
+		int size = 0;
+		for (Set<Tag<?>> tagSet : tagSets)
+			size += tagSet.size();
+		Snapshot ret = snapshot;
+		if (ret.size != size) {
+			Set<Tag<?>> tags = new HashSet<>();
+			for (Set<Tag<?>> tagSet : tagSets)
+				tags.addAll(tagSet);
+			ret = new Snapshot(size, tags);
+			snapshot = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return whether the tag belongs to the domain
+	 */
+	public boolean contains(Tag<?> tag) {
+		return snapshot().tags.contains(tag);
+	}
+
+	/**
+	 * Lists the tags with a value of a widget that cost at most <code>maxCost</code>:
+	 * the tags of the domain, followed by the other tags set on the widget.
+	 * @param widget the widget
+	 * @param widgetTags the tag values set on or cached by the widget, read after the domain tags have been fetched
+	 * @param maxCost the highest cost of the listed tags
+	 * @return the listed tags, a copy
+	 */
+	public List<Tag<?>> list(Taggable widget, Map<Tag<?>, ?> widgetTags, Tag.Cost maxCost) {
+		Snapshot domain = snapshot();
+		List<Tag<?>> ret = new ArrayList<>();
+		for (Tag<?> tag : domain.upToCost[maxCost.ordinal()]) {
+			if (widget.get(tag, null) != null)
+				ret.add(tag);
+		}
+		for (Tag<?> tag : new ArrayList<>(widgetTags.keySet())) {
+			if (!domain.tags.contains(tag) && tag.cost().compareTo(maxCost) <= 0 && widget.get(tag, null) != null)
+				ret.add(tag);
+		}
+		return Collections.unmodifiableList(ret);
+	}
+}
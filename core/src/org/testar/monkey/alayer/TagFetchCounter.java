@@ -0,0 +1,77 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2013, 2014, 2015, 2016, 2017 Universitat Politecnica de Valencia - www.upv.es
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+
+package org.testar.monkey.alayer;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how many tag values were fetched from the underlying accessibility API, browser or operating system,
+ * grouped by the cost class of the tag. Values that were already cached are not counted.
+ */
+public final class TagFetchCounter {
+
+	private static final Tag.Cost[] costs = Tag.Cost.values();
+	private static final LongAdder[] counters = new LongAdder[costs.length];
+
+	static {
+		for(int i = 0; i < counters.length; i++)
+			counters[i] = new LongAdder();
+	}
+
+	private TagFetchCounter() {}
+
+	/**
+	 * Records that the value of <code>tag</code> had to be fetched.
+	 */
+	public static void count(Tag<?> tag) {
+		counters[tag.cost().ordinal()].increment();
+	}
+
+	/**
+	 * @return the number of fetches of tags of the given cost since the last drain.
+	 */
+	public static long fetches(Tag.Cost cost) {
+		return counters[cost.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of fetches per cost class since the last drain and starts counting again from zero.
+	 * Used to report the fetches triggered by each step.
+	 */
+	public static EnumMap<Tag.Cost, Long> drain() {
+		EnumMap<Tag.Cost, Long> ret = new EnumMap<>(Tag.Cost.class);
+		for(Tag.Cost cost : costs)
+			ret.put(cost, counters[cost.ordinal()].sumThenReset());
+		return ret;
+	}
+
+}
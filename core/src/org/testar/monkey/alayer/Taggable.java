@@ -33,6 +33,9 @@
  */
 package org.testar.monkey.alayer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.testar.monkey.alayer.exceptions.NoSuchTagException;
 
 /**
@@ -70,10 +73,36 @@ public interface Taggable {
 	<T> T get(Tag<T> tag, T defaultValue);
 	
 	/**
-	 * Returns an <code>Iterable</code> over all tags currently attached to this object.
-	 * @return Iterable over all attached tags
+	 * Returns an <code>Iterable</code> over the {@link Tag.Cost#CHEAP} tags attached to this object.
+	 * @return Iterable over the attached cheap tags
+	 * @see #tags(Tag.Cost)
 	 */
 	Iterable<Tag<?>> tags();
+
+	/**
+	 * Returns an <code>Iterable</code> over the tags attached to this object whose values cost at most
+	 * <code>maxCost</code> to fetch. Costlier tags are left out, also when their value has already been requested,
+	 * so the result does not depend on which tags were read before.
+	 * @param maxCost the highest cost of the tags to list
+	 * @return Iterable over the attached tags up to the given cost
+	 */
+	default Iterable<Tag<?>> tags(Tag.Cost maxCost) {
+		List<Tag<?>> ret = new ArrayList<>();
+		for (Tag<?> tag : tags()) {
+			if (tag.cost().compareTo(maxCost) <= 0)
+				ret.add(tag);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns an <code>Iterable</code> over all tags attached to this object, fetching the expensive ones.
+	 * Meant for consumers that copy every tag, such as the state model.
+	 * @return Iterable over all attached tags
+	 */
+	default Iterable<Tag<?>> allTags() {
+		return tags(Tag.Cost.SCREENSHOT);
+	}
     
 	/**
 	 * Attach <code>tag</code> to this object and associate it with <code>value</code>
@@ -87,4 +116,46 @@ public interface Taggable {
 	 * @param tag tag to remove
 	 */
 	void remove(Tag<?> tag);
+
+	/**
+	 * Retrieves the value of a boolean <code>tag</code>, implementations may avoid boxing.
+	 * @see #get(Tag, Object)
+	 */
+	default boolean getBoolean(Tag<Boolean> tag, boolean defaultValue) {
+		Boolean value = get(tag, null);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Retrieves the value of a double <code>tag</code>, implementations may avoid boxing.
+	 * @see #get(Tag, Object)
+	 */
+	default double getDouble(Tag<Double> tag, double defaultValue) {
+		Double value = get(tag, null);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Retrieves the value of a long <code>tag</code>, implementations may avoid boxing.
+	 * @see #get(Tag, Object)
+	 */
+	default long getLong(Tag<Long> tag, long defaultValue) {
+		Long value = get(tag, null);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Attach a boolean <code>tag</code> to this object, implementations may avoid boxing.
+	 */
+	default void setBoolean(Tag<Boolean> tag, boolean value) { set(tag, value); }
+
+	/**
+	 * Attach a double <code>tag</code> to this object, implementations may avoid boxing.
+	 */
+	default void setDouble(Tag<Double> tag, double value) { set(tag, value); }
+
+	/**
+	 * Attach a long <code>tag</code> to this object, implementations may avoid boxing.
+	 */
+	default void setLong(Tag<Long> tag, long value) { set(tag, value); }
 }
@@ -33,20 +33,53 @@
  */
 package org.testar.monkey.alayer;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.testar.monkey.Assert;
 import org.testar.monkey.Util;
 import org.testar.monkey.alayer.exceptions.NoSuchTagException;
 
+/**
+ * Base implementation of <code>Taggable</code>.
+ *
+ * Tag values are kept in a small open addressed table keyed by the tag ordinal.
+ * Boolean, double and long values set through the primitive setters are stored unboxed.
+ * The serialized form is the original <code>Map&lt;Tag&lt;?&gt;, Object&gt;</code> of tag values,
+ * so previously stored sequences can still be read.
+ */
 public class TaggableBase implements Taggable, Serializable {
 	private static final long serialVersionUID = 3941511707954247582L;
-	private Map<Tag<?>, Object> tagValues = Util.newHashMap();
-	boolean allFetched;
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("tagValues", Map.class),
+			new ObjectStreamField("allFetched", boolean.class)
+	};
+
+	// markers for slots without an object value
+	private static final Object NO_VALUE = new Object();
+	private static final Object PRIMITIVE = new Object();
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	// ordinal + 1 of the tag in each slot, 0 for free slots
+	private transient int[] keys = new int[INITIAL_CAPACITY];
+	private transient Tag<?>[] slotTags = new Tag<?>[INITIAL_CAPACITY];
+	private transient Object[] values = new Object[INITIAL_CAPACITY];
+	// unboxed values, only allocated once a primitive value is set
+	private transient long[] primitives;
+	private transient int size;
+	// per cost, the view returned by tags(Tag.Cost)
+	private transient Iterable<Tag<?>>[] tagViews;
+	// the number of cost classes, from CHEAP on, whose tags of the tag domain have all been fetched
+	private transient int fetchedCosts;
 	
 	public final <T> T get(Tag<T> tag) throws NoSuchTagException {
 		T ret = get(tag, null);
@@ -58,26 +91,89 @@ public class TaggableBase implements Taggable, Serializable {
 	@SuppressWarnings("unchecked")
 	public final <T> T get(Tag<T> tag, T defaultValue) {
 		Assert.notNull(tag);
-		T ret = (T) tagValues.get(tag);
-		if(ret == null && !allFetched && !tagValues.containsKey(tag)){
+		int slot = slotOf(tag);
+		Object ret;
+		if(keys[slot] != 0){
+			ret = values[slot];
+			if(ret == PRIMITIVE){
+				ret = box(tag, primitives[slot]);
+				values[slot] = ret;
+			}
+		}else if(tag.cost().ordinal() < fetchedCosts){
+			ret = NO_VALUE;
+		}else{
+			TagFetchCounter.count(tag);
 			ret = fetch(tag);
-			tagValues.put(tag, ret);
+			put(tag, ret == null ? NO_VALUE : ret);
 		}
+		return ret == NO_VALUE || ret == null ? defaultValue : (T) ret;
+	}
+
+	/**
+	 * Retrieves a boolean tag value without boxing.
+	 */
+	@Override
+	public final boolean getBoolean(Tag<Boolean> tag, boolean defaultValue) {
+		int slot = slotOf(Assert.notNull(tag));
+		if(keys[slot] != 0 && values[slot] == PRIMITIVE)
+			return primitives[slot] != 0;
+		Boolean ret = get(tag, null);
+		return ret == null ? defaultValue : ret;
+	}
+
+	/**
+	 * Retrieves a double tag value without boxing.
+	 */
+	@Override
+	public final double getDouble(Tag<Double> tag, double defaultValue) {
+		int slot = slotOf(Assert.notNull(tag));
+		if(keys[slot] != 0 && values[slot] == PRIMITIVE)
+			return Double.longBitsToDouble(primitives[slot]);
+		Double ret = get(tag, null);
+		return ret == null ? defaultValue : ret;
+	}
+
+	/**
+	 * Retrieves a long tag value without boxing.
+	 */
+	@Override
+	public final long getLong(Tag<Long> tag, long defaultValue) {
+		int slot = slotOf(Assert.notNull(tag));
+		if(keys[slot] != 0 && values[slot] == PRIMITIVE)
+			return primitives[slot];
+		Long ret = get(tag, null);
 		return ret == null ? defaultValue : ret;
 	}
 
+	/**
+	 * Returns a view over the <code>CHEAP</code> tags with a value.
+	 * @see #tags(Tag.Cost)
+	 */
 	public final Iterable<Tag<?>> tags() {
-		Set<Tag<?>> ret =new HashSet<Tag<?>>();
-		
-		if(!allFetched){
-			for(Tag<?> t : tagDomain())
-				get(t, null);
-			allFetched = true;
+		return tags(Tag.Cost.CHEAP);
+	}
+
+	/**
+	 * Returns a view over the tags with a value that cost at most <code>maxCost</code>. The first call for a cost
+	 * fetches the tags of the tag domain up to that cost; costlier tags are left out, also when they have been
+	 * requested through <code>get</code>. The view is not a copy: tags set while iterating may or may not be visited.
+	 */
+	@SuppressWarnings("unchecked")
+	public final Iterable<Tag<?>> tags(Tag.Cost maxCost) {
+		Assert.notNull(maxCost);
+		if(fetchedCosts <= maxCost.ordinal()){
+			for(Tag<?> t : tagDomain()){
+				if(t.cost().compareTo(maxCost) <= 0)
+					get(t, null);
+			}
+			fetchedCosts = maxCost.ordinal() + 1;
 		}
-		
-		for(Tag<?> t : tagValues.keySet()){
-			if(tagValues.get(t) != null)
-				ret.add(t);
+		if(tagViews == null)
+			tagViews = new Iterable[Tag.Cost.values().length];
+		Iterable<Tag<?>> ret = tagViews[maxCost.ordinal()];
+		if(ret == null){
+			ret = () -> new TagIterator(maxCost);
+			tagViews[maxCost.ordinal()] = ret;
 		}
 		return ret;
 	}
@@ -88,8 +184,151 @@ public class TaggableBase implements Taggable, Serializable {
 	public <T> void set(Tag<T> tag, T value) {
 		Assert.notNull(tag, value);
 		Assert.isTrue(tag.type().isInstance(value), "Value not of type required by this tag!");
-		tagValues.put(tag, value);
+		put(tag, value);
+	}
+
+	@Override
+	public final void setBoolean(Tag<Boolean> tag, boolean value) {
+		putPrimitive(Assert.notNull(tag), value ? 1 : 0);
+	}
+
+	@Override
+	public final void setDouble(Tag<Double> tag, double value) {
+		putPrimitive(Assert.notNull(tag), Double.doubleToRawLongBits(value));
+	}
+
+	@Override
+	public final void setLong(Tag<Long> tag, long value) {
+		putPrimitive(Assert.notNull(tag), value);
+	}
+
+	public void remove(Tag<?> tag) { put(Assert.notNull(tag), NO_VALUE); }
+
+	// #####################
+	//  Tag values table
+	// #####################
+
+	private int slotOf(Tag<?> tag) {
+		int key = tag.ordinal() + 1;
+		int mask = keys.length - 1;
+		int slot = (key * 0x9e3779b9) >>> 16 & mask;
+		while(keys[slot] != 0 && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
 	}
 
-	public void remove(Tag<?> tag) { tagValues.put(Assert.notNull(tag), null); }
+	private void put(Tag<?> tag, Object value) {
+		int slot = slotOf(tag);
+		if(keys[slot] == 0){
+			if(2 * (size + 1) > keys.length){
+				grow();
+				slot = slotOf(tag);
+			}
+			keys[slot] = tag.ordinal() + 1;
+			slotTags[slot] = tag;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	private void putPrimitive(Tag<?> tag, long value) {
+		put(tag, PRIMITIVE);
+		if(primitives == null)
+			primitives = new long[keys.length];
+		primitives[slotOf(tag)] = value;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		Tag<?>[] oldTags = slotTags;
+		Object[] oldValues = values;
+		long[] oldPrimitives = primitives;
+		int capacity = oldKeys.length * 2;
+		keys = new int[capacity];
+		slotTags = new Tag<?>[capacity];
+		values = new Object[capacity];
+		primitives = oldPrimitives == null ? null : new long[capacity];
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != 0){
+				int slot = slotOf(oldTags[i]);
+				keys[slot] = oldKeys[i];
+				slotTags[slot] = oldTags[i];
+				values[slot] = oldValues[i];
+				if(oldPrimitives != null)
+					primitives[slot] = oldPrimitives[i];
+			}
+		}
+	}
+
+	private static Object box(Tag<?> tag, long value) {
+		if(tag.type() == Double.class)
+			return Double.longBitsToDouble(value);
+		if(tag.type() == Boolean.class)
+			return value != 0;
+		return value;
+	}
+
+	private final class TagIterator implements Iterator<Tag<?>> {
+		private final Tag.Cost maxCost;
+		private final int[] iteratedKeys = keys;
+		private final Tag<?>[] iteratedTags = slotTags;
+		private final Object[] iteratedValues = values;
+		private int next;
+
+		private TagIterator(Tag.Cost maxCost) {
+			this.maxCost = maxCost;
+			next = advance(0);
+		}
+
+		private int advance(int from) {
+			while(from < iteratedKeys.length && (iteratedKeys[from] == 0 || iteratedValues[from] == NO_VALUE ||
+					iteratedTags[from].cost().compareTo(maxCost) > 0))
+				from++;
+			return from;
+		}
+
+		public boolean hasNext() { return next < iteratedKeys.length; }
+
+		public Tag<?> next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Tag<?> ret = iteratedTags[next];
+			next = advance(next + 1);
+			return ret;
+		}
+	}
+
+	// #####################
+	//  Serialization
+	// #####################
+
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		Map<Tag<?>, Object> tagValues = Util.newHashMap();
+		for(int i = 0; i < keys.length; i++){
+			if(keys[i] != 0){
+				Object value = values[i];
+				if(value == PRIMITIVE)
+					value = box(slotTags[i], primitives[i]);
+				tagValues.put(slotTags[i], value == NO_VALUE ? null : value);
+			}
+		}
+		ObjectOutputStream.PutField fields = oos.putFields();
+		fields.put("tagValues", tagValues);
+		fields.put("allFetched", fetchedCosts > 0);
+		oos.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = ois.readFields();
+		keys = new int[INITIAL_CAPACITY];
+		slotTags = new Tag<?>[INITIAL_CAPACITY];
+		values = new Object[INITIAL_CAPACITY];
+		Map<Tag<?>, Object> tagValues = (Map<Tag<?>, Object>) fields.get("tagValues", null);
+		if(tagValues != null){
+			for(Map.Entry<Tag<?>, Object> entry : tagValues.entrySet())
+				put(entry.getKey(), entry.getValue() == null ? NO_VALUE : entry.getValue());
+		}
+		fetchedCosts = fields.get("allFetched", false) ? 1 : 0;
+	}
 }
@@ -54,7 +54,7 @@ public final class Tags extends TagsBase {
 
 	/** Usually attached to widgets. Returns a <code>HitTester</code> object which allows to
 	 * is visible at a specific location determine whether the widget */
-	public static final Tag<HitTester> HitTester = from("HitTester", HitTester.class);
+	public static final Tag<HitTester> HitTester = from("HitTester", HitTester.class, Tag.Cost.NATIVE_CALL);
 	
 	
 	/** Usually attached to widgets. Returns a <code>Shape</code> object which allows to 
@@ -167,7 +167,7 @@ public final class Tags extends TagsBase {
 	
 	/** Usually attached to an object of {@link State}. The value is a screenshot of the state. */
 	//public static final Tag<Image> Screenshot = from("Screenshot", Image.class);
-	public static final Tag<String> ScreenshotPath = from("ScreenshotPath", String.class);
+	public static final Tag<String> ScreenshotPath = from("ScreenshotPath", String.class, Tag.Cost.SCREENSHOT);
 		
 	/** Usually attached to a {@link State} object. The value is an outcome of a test oracle for that state. It is
 	 * used to mark states as 'suspicious' or 'erroneous' */
@@ -200,7 +200,7 @@ public final class Tags extends TagsBase {
 
 	/** A list of process handles. Usually attached to a system. Process handles allow to  obtain information about and stop the processes that they refer to. */ 
 	@SuppressWarnings("unchecked")
-	public static final Tag<Iterator<ProcessHandle>> ProcessHandles = from("ProcessHandles", (Class<Iterator<ProcessHandle>>)(Class<?>)Iterator.class);
+	public static final Tag<Iterator<ProcessHandle>> ProcessHandles = from("ProcessHandles", (Class<Iterator<ProcessHandle>>)(Class<?>)Iterator.class, Tag.Cost.NATIVE_CALL);
 
 	/** A list of currently running processes and their names. Usually attached to a state. */ 
 	@SuppressWarnings("unchecked")
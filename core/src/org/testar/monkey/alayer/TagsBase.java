@@ -47,6 +47,12 @@ public abstract class TagsBase {
 		tagSet.add(ret);
 		return ret;
 	}
+
+	protected static <T> Tag<T> from(String name, Class<T> valueType, Tag.Cost cost) {
+		Tag<T> ret = Tag.from(name, valueType, cost);
+		tagSet.add(ret);
+		return ret;
+	}
 		
 	public static Set<Tag<?>> tagSet() {
 		return Collections.unmodifiableSet(tagSet);
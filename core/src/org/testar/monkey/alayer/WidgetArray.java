@@ -0,0 +1,199 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.monkey.alayer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import org.testar.monkey.Assert;
+
+/**
+ * The widgets of a widget tree, flattened into arrays.
+ *
+ * The widgets are indexed in breadth first order, the order in which a state iterates its widgets, and
+ * are also available in pre-order, depth first. The arrays are built with a single pass over the tree,
+ * so traversing them does not allocate anything per widget. A state keeps its array until its widget
+ * tree changes, see State.widgets(), and with it the spatial index of the widgets.
+ */
+public final class WidgetArray implements Iterable<Widget> {
+
+	public static final WidgetArray EMPTY = new WidgetArray(new Widget[0]);
+
+	private final Widget[] breadthFirst;
+	// built on first use
+	private volatile Widget[] preOrder;
+	private volatile Shapes shapes;
+
+	// the widgets with a shape by their bounds, and the widgets without one
+	private static final class Shapes {
+		final SpatialIndex<Widget> index;
+		final List<Widget> unshaped;
+
+		Shapes(SpatialIndex<Widget> index, List<Widget> unshaped){
+			this.index = index;
+			this.unshaped = unshaped;
+		}
+	}
+
+	private WidgetArray(Widget[] breadthFirst){
+		this.breadthFirst = breadthFirst;
+	}
+
+	/**
+	 * Flattens the tree below, and including, a widget.
+	 * @param root
+	 * @return the widgets of the tree
+	 */
+	public static WidgetArray of(Widget root){
+		Assert.notNull(root);
+		// the array is its own queue: the children of a widget are appended when it is reached
+		Widget[] widgets = new Widget[16];
+		widgets[0] = root;
+		int size = 1;
+		for(int head = 0; head < size; head++){
+			Widget w = widgets[head];
+			int childCount = w.childCount();
+			if(size + childCount > widgets.length)
+				widgets = Arrays.copyOf(widgets, Math.max(widgets.length * 2, size + childCount));
+			for(int i = 0; i < childCount; i++)
+				widgets[size++] = w.child(i);
+		}
+		return new WidgetArray(size == widgets.length ? widgets : Arrays.copyOf(widgets, size));
+	}
+
+	public int size(){ return breadthFirst.length; }
+
+	/**
+	 * @param index
+	 * @return the widget at an index in breadth first order, the index of the root is 0
+	 */
+	public Widget get(int index){ return breadthFirst[index]; }
+
+	/**
+	 * @param index
+	 * @return the widget at an index in pre-order, the index of the root is 0
+	 */
+	public Widget preOrder(int index){ return preOrder()[index]; }
+
+	private Widget[] preOrder(){
+		Widget[] ret = preOrder;
+		if(ret == null){
+			ret = new Widget[breadthFirst.length];
+			if(ret.length > 0){
+				Widget[] stack = new Widget[16];
+				int top = 0, size = 0;
+				stack[top++] = breadthFirst[0];
+				while(top > 0){
+					Widget w = stack[--top];
+					ret[size++] = w;
+					int childCount = w.childCount();
+					if(top + childCount > stack.length)
+						stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + childCount));
+					for(int i = childCount - 1; i >= 0; i--)
+						stack[top++] = w.child(i);
+				}
+			}
+			preOrder = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the spatial index of the widgets, by the bounds of their shape, ranked in breadth first order.
+	 * The index is built on first use.
+	 * @return the index of the widgets that have a shape
+	 */
+	public SpatialIndex<Widget> spatialIndex(){ return shapes().index; }
+
+	/**
+	 * @return the widgets without a shape, which the spatial index does not hold, in breadth first order
+	 */
+	public List<Widget> unshaped(){ return shapes().unshaped; }
+
+	private Shapes shapes(){
+		Shapes ret = shapes;
+		if(ret == null){
+			SpatialIndex.Builder<Widget> builder = SpatialIndex.newBuilder();
+			List<Widget> unshaped = new ArrayList<Widget>();
+			for(Widget w : breadthFirst){
+				Shape shape = w.get(Tags.Shape, null);
+				if(shape != null)
+					builder.add(w, Rect.from(shape.x(), shape.y(), shape.width(), shape.height()));
+				else
+					unshaped.add(w);
+			}
+			ret = new Shapes(builder.build(), Collections.unmodifiableList(unshaped));
+			shapes = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the widgets in breadth first order
+	 */
+	public Iterator<Widget> iterator(){
+		return new Iterator<Widget>(){
+			int next = 0;
+			public boolean hasNext(){ return next < breadthFirst.length; }
+			public Widget next(){
+				if(next >= breadthFirst.length)
+					throw new NoSuchElementException();
+				return breadthFirst[next++];
+			}
+		};
+	}
+
+	/**
+	 * @return the widgets in breadth first order
+	 */
+	public Stream<Widget> stream(){ return Arrays.stream(breadthFirst); }
+
+	/**
+	 * @return the widgets in pre-order
+	 */
+	public Stream<Widget> preOrderStream(){ return Arrays.stream(preOrder()); }
+
+	/**
+	 * @return an unmodifiable view of the widgets in breadth first order
+	 */
+	public List<Widget> asList(){
+		return new AbstractList<Widget>(){
+			public Widget get(int index){ return breadthFirst[index]; }
+			public int size(){ return breadthFirst.length; }
+		};
+	}
+}
@@ -50,7 +50,8 @@ import org.testar.monkey.alayer.exceptions.ActionFailedException;
 public final class PasteText extends TaggableBase implements Action {
 
 	private static final long serialVersionUID = 1033277478070938602L;
-	private static final CharsetEncoder CharEncoder = Charset.forName("UTF-32").newEncoder();
+	// encoders are not thread safe
+	private static final ThreadLocal<CharsetEncoder> CharEncoder = ThreadLocal.withInitial(() -> Charset.forName("UTF-32").newEncoder());
 	private final String text;
 
 	public PasteText(String text) {
@@ -73,7 +74,7 @@ public final class PasteText extends TaggableBase implements Action {
 	}
 
 	public static void checkEncoder(String text) {
-		if (!CharEncoder.canEncode(text))
+		if (!CharEncoder.get().canEncode(text))
 			throw new IllegalArgumentException("This string is not an UTF-32 string!");
 	}
 
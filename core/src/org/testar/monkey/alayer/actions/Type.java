@@ -53,7 +53,8 @@ import org.testar.monkey.alayer.exceptions.ActionFailedException;
 public final class Type extends TaggableBase implements Action {
 
 	private static final long serialVersionUID = 2555715152455716781L;
-	private static final CharsetEncoder asciiEncoder = Charset.forName("US-ASCII").newEncoder();
+	// encoders are not thread safe, and type actions are compiled by the threads of the action derivation
+	private static final ThreadLocal<CharsetEncoder> asciiEncoder = ThreadLocal.withInitial(() -> Charset.forName("US-ASCII").newEncoder());
 	private final String text;
 	
 	public Type(String text){
@@ -102,7 +103,7 @@ public final class Type extends TaggableBase implements Action {
 	}
 		
 	public static void checkAscii(String text){
-	    if (!asciiEncoder.canEncode(text))
+	    if (!asciiEncoder.get().canEncode(text))
 	    	throw new IllegalArgumentException("This string is not an ascii string!");
 	}
 	
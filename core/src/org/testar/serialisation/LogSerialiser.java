@@ -31,7 +31,7 @@
 package org.testar.serialisation;
 
 import java.io.PrintStream;
-import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
 
 import org.testar.monkey.Assert;
 
@@ -41,34 +41,61 @@ import org.testar.monkey.Assert;
  * @author Urko Rueda Molina (alias: urueda)
  *
  */
-public class LogSerialiser extends Thread {
+public class LogSerialiser {
 
-	private static PrintStream log;
-	private static int logLevel;
-	private static int logTimes;
+	private static volatile PrintStream log;
+	private static volatile int logLevel;
 	private static final int FLUSH_INTERVAL = 100;
-	private static LinkedList<LogRecord> logSavingQueue =  new LinkedList<LogRecord>();
-	private static LogSerialiser singletonLogSerialiser;
-	private static boolean alive;
+	private static volatile SerialisationPipeline.Channel<String> channel;
 
 	private LogSerialiser(){}
 	
+	// log messages are mostly ASCII, so the characters printed stand for the bytes written
+	private static class LogSink implements SerialisationPipeline.Sink<String> {
+		private final PrintStream log;
+		private int logTimes;
+
+		LogSink(PrintStream log){ this.log = log; }
+
+		@Override
+		public long write(String string){
+			log.print(string);
+			logTimes++;
+			if (logTimes >= FLUSH_INTERVAL){
+				logTimes = 0;
+				log.flush();
+			}
+			return string.length();
+		}
+
+		@Override
+		public long close(){
+			log.flush();
+			log.close();
+			return 0;
+		}
+	}
+
 	public static void start(PrintStream log, int logLevel){
-		Assert.isTrue(!alive);
-		Assert.isTrue(logSavingQueue.isEmpty());
+		Assert.isTrue(!isAlive());
+		Assert.notNull(log);
 		LogSerialiser.log = log;
 		LogSerialiser.logLevel = logLevel;
-		logTimes = 0;
-		alive = true;
-		//ExecutorService exeSrv = Executors.newFixedThreadPool(1);
-		//exeSrv.execute(singletonLogManager);	
-		singletonLogSerialiser = new LogSerialiser();
-		singletonLogSerialiser.setPriority(Thread.MIN_PRIORITY);
-		singletonLogSerialiser.start();		
+		channel = SerialisationPipeline.shared().open("LogSerialiser", new LogSink(log), true);
+	}
+
+	private static boolean isAlive(){
+		SerialisationPipeline.Channel<String> current = channel;
+		return current != null && current.isOpen();
 	}
 	
-	public static void finish(){
-		alive = false;
+	/**
+	 * Stops accepting log messages.
+	 * @return a future that completes when the messages have been written and the log has been closed
+	 */
+	public static CompletableFuture<Void> finish(){
+		SerialisationPipeline.Channel<String> current = channel;
+		return current == null ? CompletableFuture.completedFuture(null) : current.close();
 	}
 	
 	// by Sebastian Bauersfeld
@@ -79,56 +106,14 @@ public class LogSerialiser extends Thread {
 		public int significance(){ return significance; }
 	}
 	
-	private static class LogRecord{
-		public String logS; public LogLevel logL;
-		public LogRecord(String logS, LogLevel logL){ this.logS = logS; this.logL = logL;}
-	}
-	
-	@Override
-	public void run(){
-		while (alive || !logSavingQueue.isEmpty()){
-			while(alive && logSavingQueue.isEmpty()){
-				try {
-					Thread.sleep(1000); // 1 second
-				} catch (InterruptedException e1) {}
-			}
-			if (!logSavingQueue.isEmpty()){
-				LogRecord logR;
-				synchronized(logSavingQueue){
-					logR = logSavingQueue.removeFirst();
-				}
-				logthis(logR.logS, logR.logL);
-			}
-		}
-		log.flush();
-		log.close();
-		synchronized(log){
-			//System.out.println("<" + singletonLogSerialiser.getName() + "> LogSerialiser finished");
-			singletonLogSerialiser = null;
-			log.notifyAll();
-		}
-	}
-	
 	public static void log(String logS){
-		if (alive)
-			log(logS,LogLevel.Info);
+		log(logS,LogLevel.Info);
 	}
 	
 	public static void log(String logS, LogLevel logLevel){
-		if(alive && logLevel.significance() <= LogSerialiser.logLevel){
-			synchronized(logSavingQueue){
-				logSavingQueue.add(new LogRecord(logS,logLevel));
-			}
-		}
-	}
-	
-	private static void logthis(String string, LogLevel level){
-		Assert.notNull(log);
-		log.print(string);
-		logTimes++;
-		if (logTimes >= FLUSH_INTERVAL){
-			logTimes = 0;
-			log.flush();
+		SerialisationPipeline.Channel<String> current = channel;
+		if(current != null && logLevel.significance() <= LogSerialiser.logLevel){
+			current.submit(String.valueOf(logS));
 		}
 	}
 	
@@ -141,26 +126,19 @@ public class LogSerialiser extends Thread {
 	}
 	
 	public static void exit(){
-		if (singletonLogSerialiser != null){
-			LogSerialiser.finish();
-			try {
-				synchronized(log){
-					while (singletonLogSerialiser != null){
-						try {
-							log.wait(10);
-						} catch (InterruptedException e) {
-							System.out.println("LogSerialiser exit interrupted");
-						}
-					}
-				}
-			} catch (Exception e) {} // log may be set to null when we try to sync on it	
-			//System.out.println("LogManager exited");
-			log = null;
-		}
+		finish().join();
 	}
 	
 	public static int queueLength(){
-		return logSavingQueue.size();
+		SerialisationPipeline.Channel<String> current = channel;
+		return current == null ? 0 : current.getQueueDepth();
 	}
 	
+	/**
+	 * @return the channel of the current, or last, log, for its metrics
+	 */
+	public static SerialisationPipeline.Channel<?> getChannel(){
+		return channel;
+	}
+
 }
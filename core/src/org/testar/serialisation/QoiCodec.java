@@ -0,0 +1,219 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.serialisation;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Lossless encoder for the Quite OK Image format (https://qoiformat.org/qoi-specification.pdf).
+ * A single pass that codes every pixel as a run, a reference to a recently seen colour, a small difference
+ * to the previous pixel or the colour itself. It needs no entropy coder, which makes it several times faster
+ * than PNG on screenshots. Browsers do not show QOI images.
+ */
+final class QoiCodec implements ScreenshotCodec {
+
+	private static final int OP_INDEX = 0x00;
+	private static final int OP_DIFF = 0x40;
+	private static final int OP_LUMA = 0x80;
+	private static final int OP_RUN = 0xc0;
+	private static final int OP_RGB = 0xfe;
+	private static final int OP_RGBA = 0xff;
+	private static final int MASK = 0xc0;
+	private static final byte[] MAGIC = {'q', 'o', 'i', 'f'};
+	private static final byte[] END = {0, 0, 0, 0, 0, 0, 0, 1};
+
+	@Override
+	public String extension() {
+		return "qoi";
+	}
+
+	@Override
+	public boolean isViewable() {
+		return false;
+	}
+
+	@Override
+	public void encode(BufferedImage image, OutputStream os) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = ScreenshotCodec.pixels(image);
+		boolean alpha = !ScreenshotCodec.isOpaque(pixels);
+
+		// the worst case is one RGBA operation for every pixel
+		byte[] bytes = new byte[14 + pixels.length * (alpha ? 5 : 4) + END.length];
+		int p = 0;
+		System.arraycopy(MAGIC, 0, bytes, p, MAGIC.length);
+		p += MAGIC.length;
+		p = writeInt(bytes, p, width);
+		p = writeInt(bytes, p, height);
+		bytes[p++] = (byte) (alpha ? 4 : 3);
+		bytes[p++] = 0; // sRGB with linear alpha
+
+		int[] index = new int[64];
+		int previous = 0xff000000;
+		int run = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			int pixel = pixels[i];
+			if (pixel == previous) {
+				run++;
+				if (run == 62 || i == pixels.length - 1) {
+					bytes[p++] = (byte) (OP_RUN | (run - 1));
+					run = 0;
+				}
+				continue;
+			}
+			if (run > 0) {
+				bytes[p++] = (byte) (OP_RUN | (run - 1));
+				run = 0;
+			}
+
+			int hash = hash(pixel);
+			if (index[hash] == pixel) {
+				bytes[p++] = (byte) (OP_INDEX | hash);
+			} else {
+				index[hash] = pixel;
+				if ((pixel >>> 24) == (previous >>> 24)) {
+					int dr = (byte) ((pixel >> 16) - (previous >> 16));
+					int dg = (byte) ((pixel >> 8) - (previous >> 8));
+					int db = (byte) (pixel - previous);
+					int drdg = dr - dg;
+					int dbdg = db - dg;
+					if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+						bytes[p++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+					} else if (dg >= -32 && dg <= 31 && drdg >= -8 && drdg <= 7 && dbdg >= -8 && dbdg <= 7) {
+						bytes[p++] = (byte) (OP_LUMA | (dg + 32));
+						bytes[p++] = (byte) ((drdg + 8) << 4 | (dbdg + 8));
+					} else {
+						bytes[p++] = (byte) OP_RGB;
+						bytes[p++] = (byte) (pixel >> 16);
+						bytes[p++] = (byte) (pixel >> 8);
+						bytes[p++] = (byte) pixel;
+					}
+				} else {
+					bytes[p++] = (byte) OP_RGBA;
+					bytes[p++] = (byte) (pixel >> 16);
+					bytes[p++] = (byte) (pixel >> 8);
+					bytes[p++] = (byte) pixel;
+					bytes[p++] = (byte) (pixel >>> 24);
+				}
+			}
+			previous = pixel;
+		}
+		System.arraycopy(END, 0, bytes, p, END.length);
+		p += END.length;
+		os.write(bytes, 0, p);
+	}
+
+	/**
+	 * Reads a QOI image.
+	 * @param is
+	 * @return the image, as TYPE_INT_ARGB
+	 * @throws IOException if the stream does not hold a QOI image
+	 */
+	static BufferedImage decode(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("Not a QOI image");
+		}
+		int width = in.readInt();
+		int height = in.readInt();
+		in.readUnsignedByte(); // channels, the pixels are decoded as RGBA anyway
+		in.readUnsignedByte(); // colour space
+
+		int[] pixels = new int[width * height];
+		int[] index = new int[64];
+		int pixel = 0xff000000;
+		for (int i = 0; i < pixels.length; ) {
+			int b = in.readUnsignedByte();
+			if (b == OP_RGB) {
+				pixel = (pixel & 0xff000000) | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+			} else if (b == OP_RGBA) {
+				int rgb = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+				pixel = in.readUnsignedByte() << 24 | rgb;
+			} else if ((b & MASK) == OP_INDEX) {
+				pixel = index[b];
+			} else if ((b & MASK) == OP_DIFF) {
+				pixel = withChannels(pixel, ((b >> 4) & 3) - 2, ((b >> 2) & 3) - 2, (b & 3) - 2);
+			} else if ((b & MASK) == OP_LUMA) {
+				int dg = (b & 0x3f) - 32;
+				int next = in.readUnsignedByte();
+				pixel = withChannels(pixel, dg + ((next >> 4) & 0x0f) - 8, dg, dg + (next & 0x0f) - 8);
+			} else {
+				int run = (b & 0x3f) + 1;
+				while (run-- > 0 && i < pixels.length) {
+					pixels[i++] = pixel;
+				}
+				continue;
+			}
+			index[hash(pixel)] = pixel;
+			pixels[i++] = pixel;
+		}
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+
+	@Override
+	public String toString() {
+		return "qoi";
+	}
+
+	private static int hash(int pixel) {
+		int r = (pixel >> 16) & 0xff;
+		int g = (pixel >> 8) & 0xff;
+		int b = pixel & 0xff;
+		int a = pixel >>> 24;
+		return (r * 3 + g * 5 + b * 7 + a * 11) & 63;
+	}
+
+	private static int withChannels(int pixel, int dr, int dg, int db) {
+		int r = (((pixel >> 16) & 0xff) + dr) & 0xff;
+		int g = (((pixel >> 8) & 0xff) + dg) & 0xff;
+		int b = ((pixel & 0xff) + db) & 0xff;
+		return (pixel & 0xff000000) | r << 16 | g << 8 | b;
+	}
+
+	private static int writeInt(byte[] bytes, int p, int value) {
+		bytes[p++] = (byte) (value >>> 24);
+		bytes[p++] = (byte) (value >>> 16);
+		bytes[p++] = (byte) (value >>> 8);
+		bytes[p++] = (byte) value;
+		return p;
+	}
+}
@@ -0,0 +1,156 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.serialisation;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.testar.monkey.alayer.AWTCanvas;
+
+/**
+ * Image format in which the screenshots are stored.
+ *
+ * The codec is chosen with the ScreenshotFormat setting:
+ * <ul>
+ * <li>png: the ImageIO PNG writer</li>
+ * <li>png:level: a PNG writer that favours speed, deflating at the given level between 0 (store) and 9</li>
+ * <li>qoi: the lossless Quite OK Image format, much faster than PNG at a somewhat larger size</li>
+ * <li>jpeg:quality: lossy JPEG at the given quality between 0 and 1</li>
+ * </ul>
+ */
+public interface ScreenshotCodec {
+
+	ScreenshotCodec PNG = new ScreenshotCodec() {
+		@Override
+		public String extension() {
+			return "png";
+		}
+
+		@Override
+		public boolean isViewable() {
+			return true;
+		}
+
+		@Override
+		public void encode(BufferedImage image, OutputStream os) throws IOException {
+			AWTCanvas.saveAsPng(image, os);
+		}
+
+		@Override
+		public String toString() {
+			return "png";
+		}
+	};
+
+	/**
+	 * @return the file extension of the format, without the dot
+	 */
+	String extension();
+
+	/**
+	 * @return whether browsers can show the format, which the HTML reports and the state model analysis rely on
+	 */
+	boolean isViewable();
+
+	void encode(BufferedImage image, OutputStream os) throws IOException;
+
+	/**
+	 * @param format png, png:level, qoi or jpeg:quality
+	 * @return the codec for the format
+	 * @throws IllegalArgumentException if the format is not known
+	 */
+	static ScreenshotCodec from(String format) {
+		String[] parts = format.trim().toLowerCase().split(":", 2);
+		try {
+			switch (parts[0]) {
+			case "png":
+				return parts.length == 1 ? PNG : new PngCodec(Integer.parseInt(parts[1]));
+			case "qoi":
+				if (parts.length == 1)
+					return new QoiCodec();
+				break;
+			case "jpg":
+			case "jpeg":
+				return new JpegCodec(parts.length == 1 ? 1 : Double.parseDouble(parts[1]));
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Unknown screenshot format <" + format + ">, expected png, png:level, qoi or jpeg:quality");
+	}
+
+	/**
+	 * Returns the pixels of an image as packed ARGB values, row by row,
+	 * without copying them when the image already stores them that way.
+	 */
+	static int[] pixels(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		Raster raster = image.getRaster();
+		if ((image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == width
+				&& raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0) {
+			DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+			if (buffer.getNumBanks() == 1 && buffer.getOffset() == 0 && buffer.getData().length == width * height) {
+				int[] data = buffer.getData();
+				if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+					return data;
+				}
+				int[] opaque = new int[data.length];
+				for (int i = 0; i < data.length; i++) {
+					opaque[i] = data[i] | 0xff000000;
+				}
+				return opaque;
+			}
+		}
+		return image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	/**
+	 * @return whether all the pixels are fully opaque, so the alpha channel does not need to be stored
+	 */
+	static boolean isOpaque(int[] pixels) {
+		for (int pixel : pixels) {
+			if ((pixel >>> 24) != 0xff) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -31,135 +31,359 @@
 
 package org.testar.serialisation;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.testar.monkey.Assert;
 import org.testar.monkey.alayer.AWTCanvas;
+import org.testar.monkey.alayer.FrameContainer;
 
 /**
  * SUT screenshots serialiser
  *
+ * Screenshots are encoded once, by the workers of the serialisation pipeline, in the format of the selected
+ * codec. The encoded bytes are written to the screenshot file and shared with the state model.
+ *
+ * The screenshots of a run are kept in a content addressed store, see ScreenshotStore, so a screenshot that
+ * several states or actions show is saved once. The folder of every sequence holds an index file that maps
+ * the state and action identifiers to the blobs.
+ *
+ * In differential mode the state screenshots of a sequence are not stored as blobs, but as the tiles that
+ * changed since the previous state, in one frame container per sequence, see FrameContainer. Their paths are
+ * frame references, which AWTCanvas.fromFrame reads back.
  */
-public class ScreenshotSerialiser extends Thread {
+public class ScreenshotSerialiser {
 
 	public static final String SCRSHOTS = "scrshots";
+	public static final String INDEX = "index.txt";
+	public static final String FRAMES = "frames." + FrameContainer.EXTENSION;
 	private static String testSequenceFolder = null;
 	private static String scrshotOutputFolder = null;
-	private static LinkedList<ScrshotRecord> scrshotSavingQueue =  new LinkedList<ScrshotRecord>();
-	private static final int QUEUE_LIMIT = 16;
-	private static ScreenshotSerialiser singletonScreenshotSerialiser;
-	private static boolean alive;
-	private static boolean queueBoost;
+	private static volatile ScreenshotCodec codec = ScreenshotCodec.PNG;
+	private static volatile int similarityDistance = -1;
+	private static volatile ScreenshotStore store;
+	private static volatile PrintWriter index;
+	// blob paths of the screenshots of the current sequence, by state or state_action identifier
+	private static final Map<String, String> paths = new ConcurrentHashMap<>();
+	private static volatile SerialisationPipeline.Channel<ScrshotRecord> channel;
+	private static volatile boolean differential = false;
+	private static volatile FrameContainer.Writer frames;
+	private static volatile String framesPath;
+	private static volatile SerialisationPipeline.Channel<FrameContainer.Frame> framesChannel;
+	// screenshots that are waiting to be saved, so they are not saved twice and their bytes can be shared
+	private static final Map<String, ScrshotRecord> pending = new ConcurrentHashMap<>();
+	// frames that are waiting to be written, by frame reference, so they can be shown before that
+	private static final Map<String, FrameContainer.Frame> pendingFrames = new ConcurrentHashMap<>();
 
 	private static class ScrshotRecord{
 		String scrshotPath;
 		AWTCanvas scrshot;
-		public ScrshotRecord(String scrshotPath, AWTCanvas scrshot){this.scrshotPath = scrshotPath; this.scrshot = scrshot;}
+		ScreenshotCodec codec;
+		CompletableFuture<byte[]> encoded = new CompletableFuture<>();
+		public ScrshotRecord(String scrshotPath, AWTCanvas scrshot, ScreenshotCodec codec){this.scrshotPath = scrshotPath; this.scrshot = scrshot; this.codec = codec;}
+	}
+
+	// screenshots do not depend on each other, so they are encoded by as many workers as the pipeline has
+	private static class ScrshotSink implements SerialisationPipeline.Sink<ScrshotRecord> {
+		private final PrintWriter index;
+
+		ScrshotSink(PrintWriter index){ this.index = index; }
+
+		@Override
+		public long write(ScrshotRecord r){
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				r.codec.encode(r.scrshot.image(), bytes);
+				byte[] encoded = bytes.toByteArray();
+				r.encoded.complete(encoded);
+				Files.write(new File(r.scrshotPath).toPath(), encoded);
+				return encoded.length;
+			} catch (IOException e) {
+				r.encoded.completeExceptionally(e);
+				LogSerialiser.log("I/O exception saving screenshot <" + r.scrshotPath + ">\n", LogSerialiser.LogLevel.Critical);
+				return 0;
+			} finally {
+				pending.remove(r.scrshotPath);
+			}
+		}
+
+		@Override
+		public long close(){
+			if (index != null)
+				index.close();
+			return 0;
+		}
+	}
+
+	// the frames of a container depend on the ones before them, so they are written in order
+	private static class FrameSink implements SerialisationPipeline.Sink<FrameContainer.Frame> {
+		private final FrameContainer.Writer writer;
+		private final String path;
+
+		FrameSink(FrameContainer.Writer writer, String path){ this.writer = writer; this.path = path; }
+
+		@Override
+		public long write(FrameContainer.Frame frame){
+			try {
+				return writer.write(frame);
+			} catch (IOException e) {
+				LogSerialiser.log("I/O exception saving frame " + frame.getNumber() + " to <" + path + ">\n", LogSerialiser.LogLevel.Critical);
+				return 0;
+			} finally {
+				pendingFrames.remove(FrameContainer.reference(path, frame.getNumber()));
+			}
+		}
+
+		@Override
+		public long close(){
+			try {
+				writer.close();
+			} catch (IOException e) {
+				LogSerialiser.log("I/O exception closing <" + path + ">\n", LogSerialiser.LogLevel.Critical);
+			}
+			return 0;
+		}
 	}
 
 	private ScreenshotSerialiser(){}
-	private ScreenshotSerialiser(String scrshotOutputFolder, String testSequenceFolder){
-		ScreenshotSerialiser.testSequenceFolder = testSequenceFolder;
-		ScreenshotSerialiser.scrshotOutputFolder = scrshotOutputFolder;
-		(new File(scrshotOutputFolder + File.separator + testSequenceFolder)).mkdirs();
+
+	/**
+	 * Sets the format of the screenshots that are saved from now on.
+	 * @param codec
+	 */
+	public static void setCodec(ScreenshotCodec codec){
+		Assert.notNull(codec);
+		ScreenshotSerialiser.codec = codec;
 	}
 
-	public static void start(String outputFolder, String testSequenceFolder){
-		Assert.isTrue(!alive);
-		Assert.isTrue(scrshotSavingQueue.isEmpty());
-		alive = true; queueBoost = false;
-		singletonScreenshotSerialiser = new ScreenshotSerialiser(outputFolder, testSequenceFolder);
-		singletonScreenshotSerialiser.setPriority(Thread.MIN_PRIORITY);
-		singletonScreenshotSerialiser.start();
+	public static ScreenshotCodec getCodec(){
+		return codec;
 	}
 
-	public static void finish(){
-		alive = false;
+	/**
+	 * Sets how different screenshots may be to be stored as one, from the next sequence on.
+	 * @param distance the maximum Hamming distance between the difference hashes of the screenshots,
+	 * or -1 to only store identical screenshots as one
+	 */
+	public static void setSimilarityDistance(int distance){
+		Assert.isTrue(distance >= -1 && distance <= 64);
+		similarityDistance = distance;
 	}
 
-	public static boolean isSavingQueueEmpty() {
-		if(scrshotSavingQueue.isEmpty())
-			return true;
-		return false;
-	}
-
-	@Override
-	public void run(){		
-		while (alive || !scrshotSavingQueue.isEmpty()){
-			while(alive && scrshotSavingQueue.isEmpty()){
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e1) {}
-			}
-			if (!scrshotSavingQueue.isEmpty()){
-				if (!queueBoost && scrshotSavingQueue.size() > QUEUE_LIMIT){
-					this.setPriority(NORM_PRIORITY);
-					queueBoost = true;
-				} else if (queueBoost && scrshotSavingQueue.size() < QUEUE_LIMIT/2){
-					this.setPriority(MIN_PRIORITY);
-					queueBoost = false;
-				}
-				ScrshotRecord r;
-				synchronized(scrshotSavingQueue){
-					r = scrshotSavingQueue.removeFirst();
-				}
-				try {
-					r.scrshot.saveAsPng(r.scrshotPath);
-				} catch (IOException e) {
-					LogSerialiser.log("I/O exception saving screenshot <" + r.scrshotPath + ">\n", LogSerialiser.LogLevel.Critical);
-				}
-			}
+	/**
+	 * Sets whether the state screenshots are stored as the differences with the previous state, from the next sequence on.
+	 * @param differential
+	 */
+	public static void setDifferential(boolean differential){
+		ScreenshotSerialiser.differential = differential;
+	}
+
+	public static boolean isDifferential(){
+		return differential;
+	}
+
+	public static void start(String outputFolder, String testSequenceFolder){
+		Assert.isTrue(!isAlive());
+		ScreenshotSerialiser.testSequenceFolder = testSequenceFolder;
+		ScreenshotSerialiser.scrshotOutputFolder = outputFolder;
+		File sequenceFolder = new File(outputFolder + File.separator + testSequenceFolder);
+		sequenceFolder.mkdirs();
+		ScreenshotStore current = store;
+		if (current == null || !current.getBlobFolder().getParentFile().equals(new File(outputFolder))
+				|| current.getSimilarityDistance() != similarityDistance)
+			store = new ScreenshotStore(outputFolder, similarityDistance);
+		paths.clear();
+		try {
+			index = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(new File(sequenceFolder, INDEX), true), StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			index = null;
+			LogSerialiser.log("I/O exception creating screenshot index <" + sequenceFolder + ">\n", LogSerialiser.LogLevel.Critical);
 		}
-		synchronized(testSequenceFolder){
-			singletonScreenshotSerialiser = null;
-			testSequenceFolder.notifyAll();
+		channel = SerialisationPipeline.shared().open("ScreenshotSerialiser", new ScrshotSink(index), false);
+		frames = null;
+		framesChannel = null;
+		if (differential){
+			File container = new File(sequenceFolder, FRAMES);
+			try {
+				frames = new FrameContainer.Writer(new BufferedOutputStream(new FileOutputStream(container)));
+				framesPath = container.getPath();
+				framesChannel = SerialisationPipeline.shared().open("ScreenshotSerialiser.frames", new FrameSink(frames, framesPath), true);
+			} catch (IOException e) {
+				frames = null;
+				LogSerialiser.log("I/O exception creating <" + container + ">, saving full screenshots\n", LogSerialiser.LogLevel.Critical);
+			}
 		}
 	}
 
+	private static boolean isAlive(){
+		SerialisationPipeline.Channel<ScrshotRecord> current = channel;
+		return current != null && current.isOpen();
+	}
+
+	/**
+	 * Stops accepting screenshots.
+	 * @return a future that completes when the screenshots have been saved
+	 */
+	public static CompletableFuture<Void> finish(){
+		SerialisationPipeline.Channel<ScrshotRecord> current = channel;
+		SerialisationPipeline.Channel<FrameContainer.Frame> currentFrames = framesChannel;
+		return CompletableFuture.allOf(
+				current == null ? CompletableFuture.completedFuture(null) : current.close(),
+				currentFrames == null ? CompletableFuture.completedFuture(null) : currentFrames.close());
+	}
+
+	public static boolean isSavingQueueEmpty() {
+		return queueLength() == 0;
+	}
+
 	public static String saveStateshot(String stateID, AWTCanvas stateshot){
-		String statePath = scrshotOutputFolder + File.separator + testSequenceFolder + File.separator + stateID + ".png";
-		if (!new File(statePath).exists())
-			savethis(statePath,stateshot);
-		return statePath;
+		FrameContainer.Writer writer = frames;
+		if (writer != null)
+			return saveFrame(writer, stateID, stateshot);
+		return savethis(stateID, stateshot);
 	}
 
 	public static String saveActionshot(String stateID, String actionID, final AWTCanvas actionshot){
-		String actionPath = scrshotOutputFolder + File.separator + testSequenceFolder + File.separator + stateID + "_" + actionID + ".png";
-		if (!new File(actionPath).exists())
-			savethis(actionPath,actionshot);
-		return actionPath;
+		return savethis(stateID + "_" + actionID, actionshot);
+	}
+
+	/**
+	 * @return the path of the blob that holds the screenshot of an action in the current sequence, or null
+	 */
+	public static String getActionshotPath(String stateID, String actionID){
+		return paths.get(stateID + "_" + actionID);
+	}
+
+	/**
+	 * @param scrshotPath the path returned by saveStateshot or saveActionshot
+	 * @return whether the screenshot is saved, or being saved, in a format browsers can show
+	 */
+	public static boolean isStored(String scrshotPath){
+		if (scrshotPath == null)
+			return false;
+		if (FrameContainer.isReference(scrshotPath))
+			return new File(FrameContainer.containerOf(scrshotPath)).exists();
+		ScrshotRecord r = pending.get(scrshotPath);
+		if (r != null)
+			return r.codec.isViewable();
+		ScreenshotCodec current = codec;
+		return current.isViewable() && scrshotPath.endsWith("." + current.extension()) && new File(scrshotPath).exists();
+	}
+
+	/**
+	 * Returns the encoded bytes of a screenshot that was saved, or is being saved, so it does not have to be encoded again.
+	 * @param scrshotPath the path returned by saveStateshot or saveActionshot
+	 * @return the bytes, or null if there is no such screenshot or browsers cannot show its format
+	 */
+	public static byte[] getScreenshotBytes(String scrshotPath){
+		if (scrshotPath == null)
+			return null;
+		ScrshotRecord r = pending.get(scrshotPath);
+		try {
+			if (r != null)
+				return r.codec.isViewable() ? r.encoded.join() : null;
+			ScreenshotCodec current = codec;
+			File file = new File(scrshotPath);
+			if (current.isViewable() && scrshotPath.endsWith("." + current.extension()) && file.exists())
+				return Files.readAllBytes(file.toPath());
+		} catch (IOException | CompletionException e) {
+			LogSerialiser.log("Unable to read screenshot <" + scrshotPath + ">\n", LogSerialiser.LogLevel.Debug);
+		}
+		return null;
+	}
+
+	/**
+	 * Reconstructs a state screenshot that was saved as a frame, or that is waiting to be written.
+	 * @param reference the frame reference returned by saveStateshot
+	 * @return the screenshot
+	 * @throws IOException if the frame is not in its container
+	 */
+	public static AWTCanvas getFrame(String reference) throws IOException{
+		FrameContainer.Frame frame = pendingFrames.get(reference);
+		if (frame != null)
+			return new AWTCanvas(0, 0, frame.image(), AWTCanvas.StorageFormat.PNG, 1);
+		return AWTCanvas.fromFrame(reference);
+	}
+
+	private static String savethis(String id, AWTCanvas scrshot){
+		ScreenshotCodec currentCodec = codec;
+		ScreenshotStore currentStore = store;
+		if (currentStore == null)
+			return scrshotOutputFolder + File.separator + testSequenceFolder + File.separator + id + "." + currentCodec.extension();
+
+		String key = currentStore.keyOf(scrshot.image());
+		String scrshotPath = currentStore.pathOf(key, currentCodec);
+		SerialisationPipeline.Channel<ScrshotRecord> current = channel;
+		if (current != null && !new File(scrshotPath).exists()){
+			ScrshotRecord r = new ScrshotRecord(scrshotPath, scrshot, currentCodec);
+			if (pending.putIfAbsent(scrshotPath, r) == null && !current.submit(r))
+				pending.remove(scrshotPath);
+		}
+		if (!scrshotPath.equals(paths.put(id, scrshotPath))){
+			PrintWriter currentIndex = index;
+			if (currentIndex != null)
+				currentIndex.println(id + "\t" + new File(scrshotPath).getName());
+		}
+		return scrshotPath;
 	}
 
-	private static void savethis(String scrshotPath, AWTCanvas scrshot){
-		if (alive){
-			synchronized(scrshotSavingQueue){
-				scrshotSavingQueue.add(new ScrshotRecord(scrshotPath,scrshot));
+	private static String saveFrame(FrameContainer.Writer writer, String id, AWTCanvas scrshot){
+		FrameContainer.Frame frame;
+		String reference;
+		// the frame numbers follow the order of the submitted frames. A frame that is not submitted is missing
+		// from the container, the writer then writes the next frame as a keyframe
+		synchronized (writer){
+			frame = writer.diff(scrshot.image());
+			reference = FrameContainer.reference(framesPath, frame.getNumber());
+			pendingFrames.put(reference, frame);
+			SerialisationPipeline.Channel<FrameContainer.Frame> current = framesChannel;
+			if (current == null || !current.submit(frame)){
+				pendingFrames.remove(reference);
+				LogSerialiser.log("Frame " + frame.getNumber() + " of <" + framesPath + "> was not saved\n", LogSerialiser.LogLevel.Critical);
 			}
 		}
+		paths.put(id, reference);
+		PrintWriter currentIndex = index;
+		if (currentIndex != null)
+			currentIndex.println(id + "\t" + FrameContainer.reference(FRAMES, frame.getNumber()));
+		return reference;
 	}
 
 	public static void exit(){
-		if (singletonScreenshotSerialiser != null){
-			ScreenshotSerialiser.finish();
-			try {
-				synchronized(testSequenceFolder){
-					while (singletonScreenshotSerialiser != null){
-						try {
-							testSequenceFolder.wait(10);
-						} catch (InterruptedException e) {
-							System.out.println("ScreenshotSerialiser exit interrupted");
-						}
-					}
-				}
-			} catch (Exception e) {} // testSequenceFolder may be set to null when we try to sync on it
-			testSequenceFolder = null;
-		}
-	}	
+		finish().join();
+	}
 
 	public static int queueLength(){
-		return scrshotSavingQueue.size();
-	}	
+		SerialisationPipeline.Channel<ScrshotRecord> current = channel;
+		SerialisationPipeline.Channel<FrameContainer.Frame> currentFrames = framesChannel;
+		return (current == null ? 0 : current.getQueueDepth()) + (currentFrames == null ? 0 : currentFrames.getQueueDepth());
+	}
+
+	/**
+	 * @return the channel of the current, or last, test sequence, for its metrics
+	 */
+	public static SerialisationPipeline.Channel<?> getChannel(){
+		return channel;
+	}
+
+	/**
+	 * @return the channel of the frame container of the current, or last, test sequence, or null when it is not differential
+	 */
+	public static SerialisationPipeline.Channel<?> getFramesChannel(){
+		return framesChannel;
+	}
 
 }
@@ -0,0 +1,219 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.serialisation;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content addressed store of the screenshots of a test run.
+ *
+ * A screenshot is stored once, as a blob named after a hash of its pixels, however many states or actions
+ * show it. Optionally, screenshots that only differ in details, such as a clock or a blinking caret, are
+ * stored as one as well: when the difference hash (dHash) of a new screenshot is within a given Hamming
+ * distance of the dHash of a stored screenshot of the same size, the stored blob is used.
+ *
+ * The near duplicates are not searched among all the stored screenshots. The dHash is cut in d + 1 segments,
+ * for a distance d, and two dHashes within distance d are equal in at least one segment, so only the
+ * screenshots that share a segment with the new one are compared. There are at most MAX_SEGMENTS segments,
+ * so a screenshot at a distance of more than MAX_SEGMENTS - 1 may not be found, and is stored on its own.
+ */
+final class ScreenshotStore {
+
+	static final String BLOBS = "blobs";
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// every segment has at least 8 bits of the 64 of a dHash, so that the screenshots are spread over the buckets
+	static final int MAX_SEGMENTS = 8;
+
+	private static final class Blob {
+		final String key;
+		final int width;
+		final int height;
+		final long dHash;
+
+		Blob(String key, int width, int height, long dHash) {
+			this.key = key;
+			this.width = width;
+			this.height = height;
+			this.dHash = dHash;
+		}
+	}
+
+	private final File blobFolder;
+	private final int similarityDistance;
+	private final int segments;
+	// blobs of this run, for the near duplicate search, by the value of each segment of their dHash
+	private final List<Map<Long, List<Blob>>> buckets = new ArrayList<>();
+
+	/**
+	 * @param outputFolder the screenshots folder of the run, the blobs are stored in a subfolder
+	 * @param similarityDistance the maximum Hamming distance between the dHashes of screenshots that are
+	 * stored as one, or -1 to only store identical screenshots as one
+	 */
+	ScreenshotStore(String outputFolder, int similarityDistance) {
+		this.blobFolder = new File(outputFolder, BLOBS);
+		this.similarityDistance = similarityDistance;
+		this.segments = similarityDistance < 0 ? 0 : Math.min(similarityDistance + 1, MAX_SEGMENTS);
+		for (int segment = 0; segment < segments; segment++) {
+			buckets.add(new HashMap<>());
+		}
+		blobFolder.mkdirs();
+	}
+
+	File getBlobFolder() {
+		return blobFolder;
+	}
+
+	int getSimilarityDistance() {
+		return similarityDistance;
+	}
+
+	/**
+	 * Returns the key of the blob that stores a screenshot: the key of a near duplicate that is already
+	 * stored, or else the hash of its pixels.
+	 * @param image
+	 * @return
+	 */
+	String keyOf(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = ScreenshotCodec.pixels(image);
+		if (similarityDistance < 0) {
+			return toKey(pixelHash(width, height, pixels));
+		}
+
+		long dHash = dHash(width, height, pixels);
+		synchronized (this) {
+			String key = nearDuplicate(width, height, dHash);
+			if (key == null) {
+				key = toKey(pixelHash(width, height, pixels));
+				add(key, width, height, dHash);
+			}
+			return key;
+		}
+	}
+
+	/**
+	 * @return the key of a stored screenshot of the same size within the similarity distance, or null
+	 */
+	synchronized String nearDuplicate(int width, int height, long dHash) {
+		for (int segment = 0; segment < segments; segment++) {
+			List<Blob> bucket = buckets.get(segment).get(segment(dHash, segment));
+			if (bucket == null) {
+				continue;
+			}
+			for (Blob blob : bucket) {
+				if (blob.width == width && blob.height == height && Long.bitCount(blob.dHash ^ dHash) <= similarityDistance) {
+					return blob.key;
+				}
+			}
+		}
+		return null;
+	}
+
+	synchronized void add(String key, int width, int height, long dHash) {
+		Blob blob = new Blob(key, width, height, dHash);
+		for (int segment = 0; segment < segments; segment++) {
+			buckets.get(segment).computeIfAbsent(segment(dHash, segment), value -> new ArrayList<>()).add(blob);
+		}
+	}
+
+	// the bits of a segment of a dHash, the segments differ at most one bit in length
+	private long segment(long dHash, int segment) {
+		int from = segment * 64 / segments;
+		int bits = (segment + 1) * 64 / segments - from;
+		return bits == 64 ? dHash : (dHash >>> from) & ((1L << bits) - 1);
+	}
+
+	String pathOf(String key, ScreenshotCodec codec) {
+		return blobFolder.getPath() + File.separator + key + "." + codec.extension();
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the size and the pixels of an image.
+	 */
+	static long pixelHash(int width, int height, int[] pixels) {
+		long hash = FNV_OFFSET;
+		hash = (hash ^ width) * FNV_PRIME;
+		hash = (hash ^ height) * FNV_PRIME;
+		for (int pixel : pixels) {
+			hash = (hash ^ pixel) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Difference hash: the image is reduced to 9x8 grey values, and every bit tells whether a grey value
+	 * is brighter than its right neighbour. Similar images have hashes at a small Hamming distance.
+	 */
+	static long dHash(int width, int height, int[] pixels) {
+		long[] sums = new long[9 * 8];
+		long[] counts = new long[9 * 8];
+		int[] columns = new int[width];
+		for (int x = 0; x < width; x++) {
+			columns[x] = (int) ((long) x * 9 / width);
+		}
+		for (int y = 0; y < height; y++) {
+			int row = (int) ((long) y * 8 / height) * 9;
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				int pixel = pixels[offset + x];
+				// integer approximation of the luma
+				int grey = (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+				sums[row + columns[x]] += grey;
+				counts[row + columns[x]]++;
+			}
+		}
+		long hash = 0;
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				int cell = row * 9 + column;
+				// compare the averages of the cells without dividing
+				long left = sums[cell] * counts[cell + 1];
+				long right = sums[cell + 1] * counts[cell];
+				hash = (hash << 1) | (left > right ? 1 : 0);
+			}
+		}
+		return hash;
+	}
+
+	private static String toKey(long hash) {
+		String hex = Long.toHexString(hash);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+}
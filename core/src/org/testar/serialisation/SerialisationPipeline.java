@@ -0,0 +1,343 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.serialisation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.testar.monkey.Assert;
+
+/**
+ * I/O pipeline shared by the test, screenshot and log serialisers.
+ *
+ * Every serialiser opens a channel, and producers append records to the lock-free queue of that channel.
+ * A channel with records to write is handed to a small pool of worker threads, which park while there
+ * is nothing to write and are unparked by the producers, so no thread polls. Records of an ordered channel
+ * are written by one worker at a time, in the order they were appended. Records of an unordered channel
+ * are written by as many workers as are available.
+ *
+ * Closing a channel returns a future that completes as soon as the last record has been written and the
+ * sink has been closed, so the end of a sequence does not have to wait for a polling interval.
+ */
+public final class SerialisationPipeline {
+
+	public static final int DEFAULT_WORKERS = 2;
+
+	// records an ordered channel writes before it lets the other channels have a turn
+	private static final int BATCH = 64;
+
+	private static final SerialisationPipeline shared = new SerialisationPipeline(DEFAULT_WORKERS);
+
+	/**
+	 * Writes the records of a channel, always called from a worker thread.
+	 * Sinks report their own I/O errors, the pipeline only keeps the numbers.
+	 */
+	public interface Sink<T> {
+
+		/**
+		 * @return the number of bytes written
+		 */
+		long write(T record);
+
+		/**
+		 * @return the number of bytes written while flushing
+		 */
+		long close();
+	}
+
+	/**
+	 * Stream of records into one sink.
+	 */
+	public static final class Channel<T> {
+
+		private final SerialisationPipeline pipeline;
+		private final String name;
+		private final Sink<T> sink;
+		private final boolean ordered;
+		private final ConcurrentLinkedQueue<T> records = new ConcurrentLinkedQueue<>();
+		// records that have not been written yet, plus one while the channel is open
+		private final AtomicInteger pending = new AtomicInteger(1);
+		private final AtomicBoolean open = new AtomicBoolean(true);
+		// ordered channels only: true while the channel is waiting for or being drained by a worker
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+		private final AtomicInteger depth = new AtomicInteger();
+		private final AtomicInteger maxDepth = new AtomicInteger();
+		private final AtomicLong recordsWritten = new AtomicLong();
+		private final AtomicLong bytesWritten = new AtomicLong();
+		private volatile long closedAt;
+		private volatile long flushLatency = -1;
+
+		private Channel(SerialisationPipeline pipeline, String name, Sink<T> sink, boolean ordered) {
+			this.pipeline = pipeline;
+			this.name = name;
+			this.sink = sink;
+			this.ordered = ordered;
+		}
+
+		/**
+		 * Appends a record to the channel.
+		 * @param record
+		 * @return false if the channel has been closed and the record is dropped
+		 */
+		public boolean submit(T record) {
+			Assert.notNull(record);
+			int current;
+			do {
+				current = pending.get();
+				if (current == 0 || !open.get()) {
+					return false;
+				}
+			} while (!pending.compareAndSet(current, current + 1));
+
+			records.add(record);
+			maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+			if (!ordered) {
+				pipeline.schedule(this);
+			} else if (scheduled.compareAndSet(false, true)) {
+				pipeline.schedule(this);
+			}
+			return true;
+		}
+
+		/**
+		 * Stops accepting records. The records that were already submitted are still written.
+		 * @return a future that completes when all the records have been written and the sink has been closed
+		 */
+		public CompletableFuture<Void> close() {
+			if (open.compareAndSet(true, false)) {
+				closedAt = System.nanoTime();
+				release();
+			}
+			return completion;
+		}
+
+		/**
+		 * Closes the channel and waits until it has been flushed.
+		 */
+		public void closeAndWait() {
+			close().join();
+		}
+
+		public boolean isOpen() {
+			return open.get();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of records that are waiting to be written
+		 */
+		public int getQueueDepth() {
+			return depth.get();
+		}
+
+		public int getMaxQueueDepth() {
+			return maxDepth.get();
+		}
+
+		public long getRecordsWritten() {
+			return recordsWritten.get();
+		}
+
+		public long getBytesWritten() {
+			return bytesWritten.get();
+		}
+
+		/**
+		 * @return the nanoseconds between closing the channel and closing its sink, or -1 while it is not flushed
+		 */
+		public long getFlushLatency() {
+			return flushLatency;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + recordsWritten.get() + " records, " + bytesWritten.get() + " bytes, "
+					+ "queue depth " + depth.get() + " (max " + maxDepth.get() + ")"
+					+ (flushLatency < 0 ? "" : ", flushed in " + flushLatency / 1000000 + " ms");
+		}
+
+		// called by a worker
+		private void drain() {
+			if (!ordered) {
+				T record = records.poll();
+				if (record != null) {
+					write(record);
+				}
+				return;
+			}
+			for (int i = 0; i < BATCH; i++) {
+				T record = records.poll();
+				if (record == null) {
+					scheduled.set(false);
+					// a producer may have appended a record after the poll, but before the flag was cleared
+					if (!records.isEmpty() && scheduled.compareAndSet(false, true)) {
+						pipeline.schedule(this);
+					}
+					return;
+				}
+				write(record);
+			}
+			pipeline.schedule(this);
+		}
+
+		private void write(T record) {
+			depth.decrementAndGet();
+			try {
+				bytesWritten.addAndGet(sink.write(record));
+				recordsWritten.incrementAndGet();
+			} catch (RuntimeException e) {
+				report("SerialisationPipeline - " + name + " failed writing a record: " + e);
+			} finally {
+				release();
+			}
+		}
+
+		private void report(String message) {
+			// a failing log must not report its failures to itself
+			if (this == LogSerialiser.getChannel())
+				System.out.println(message);
+			else
+				LogSerialiser.log(message + "\n", LogSerialiser.LogLevel.Critical);
+		}
+
+		private void release() {
+			if (pending.decrementAndGet() == 0) {
+				try {
+					bytesWritten.addAndGet(sink.close());
+				} catch (RuntimeException e) {
+					report("SerialisationPipeline - " + name + " failed closing: " + e);
+				} finally {
+					flushLatency = System.nanoTime() - closedAt;
+					completion.complete(null);
+				}
+			}
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Channel<?>> ready = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Thread> idle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger started = new AtomicInteger();
+	private final AtomicInteger workerNumber = new AtomicInteger();
+	private volatile int workers;
+
+	SerialisationPipeline(int workers) {
+		setWorkers(workers);
+	}
+
+	public static SerialisationPipeline shared() {
+		return shared;
+	}
+
+	/**
+	 * Sets the number of worker threads. Workers are started when there are records to write,
+	 * and surplus workers stop once they are done with their current record.
+	 * @param workers
+	 */
+	public void setWorkers(int workers) {
+		Assert.isTrue(workers > 0);
+		this.workers = workers;
+		// let surplus workers notice
+		for (Thread thread : idle) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public <T> Channel<T> open(String name, Sink<T> sink, boolean ordered) {
+		Assert.notNull(name, sink);
+		return new Channel<>(this, name, sink, ordered);
+	}
+
+	private void schedule(Channel<?> channel) {
+		ready.add(channel);
+		Thread thread = idle.poll();
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		} else {
+			startWorker();
+		}
+	}
+
+	private void startWorker() {
+		int current;
+		do {
+			current = started.get();
+			if (current >= workers) {
+				return;
+			}
+		} while (!started.compareAndSet(current, current + 1));
+
+		Thread thread = new Thread(this::work, "SerialisationPipeline-" + workerNumber.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void work() {
+		Thread self = Thread.currentThread();
+		while (true) {
+			int current = started.get();
+			if (current > workers) {
+				if (started.compareAndSet(current, current - 1)) {
+					// hand over the channels that are still waiting
+					Thread thread = ready.isEmpty() ? null : idle.poll();
+					if (thread != null) {
+						LockSupport.unpark(thread);
+					}
+					return;
+				}
+				continue;
+			}
+			Channel<?> channel = ready.poll();
+			if (channel != null) {
+				channel.drain();
+				continue;
+			}
+			// a producer that schedules after this check finds this worker in the idle queue and unparks it
+			idle.add(self);
+			if (ready.isEmpty() && started.get() <= workers) {
+				LockSupport.park(this);
+			}
+			idle.remove(self);
+		}
+	}
+}
@@ -28,143 +28,144 @@
  * POSSIBILITY OF SUCH DAMAGE.
  *******************************************************************************************************/
 
-
 package org.testar.serialisation;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.util.LinkedList;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
 
 import org.testar.monkey.Assert;
 import org.testar.monkey.alayer.TaggableBase;
 
+import com.google.common.io.CountingOutputStream;
+
 /**
  * Tests serialiser..
  */
-public class TestSerialiser extends Thread {
+public class TestSerialiser {
 
-	private static ObjectOutputStream test;
-	private static int fragmentTimes;
 	private static final int FLUSH_INTERVAL = 16;
-	private static LinkedList<TaggableBase> testSavingQueue =  new LinkedList<>();
-	private static final int QUEUE_LIMIT = 16;
-	private static TestSerialiser singletonTestSerialiser;
-	private static boolean alive;
-	private static boolean queueBoost;
+	private static volatile SerialisationPipeline.Channel<TaggableBase> channel;
 
 	private TestSerialiser(){}
 
-	public static void start(ObjectOutputStream test){
-		Assert.isTrue(!alive);
-		Assert.isTrue(testSavingQueue.isEmpty());
-		TestSerialiser.test = test;
-		fragmentTimes = 0;
-		alive = true; queueBoost = false;
-		singletonTestSerialiser = new TestSerialiser();
-		singletonTestSerialiser.setPriority(Thread.MIN_PRIORITY);
-		singletonTestSerialiser.start();		
-	}
+	private static class TestSink implements SerialisationPipeline.Sink<TaggableBase> {
+		private final ObjectOutputStream test;
+		private final CountingOutputStream counter; // null when the stream was handed over ready-made
+		private int fragmentTimes;
+		private long counted;
 
-	public static void finish(){
-		alive = false;
-	}
+		TestSink(ObjectOutputStream test, CountingOutputStream counter){ this.test = test; this.counter = counter; }
 
-	public static boolean isSavingQueueEmpty() {
-		if(testSavingQueue.isEmpty())
-			return true;
-		return false;
-	}
-
-	@Override
-	public void run(){
-		while (alive || !testSavingQueue.isEmpty()){
-			while(alive && testSavingQueue.isEmpty()){
-				try {
-					Thread.sleep(1000); // 1 second
-				} catch (InterruptedException e1) {}
+		@Override
+		public long write(TaggableBase fragment){
+			try {
+				test.writeObject(fragment);
+			} catch (IOException e) {
+				LogSerialiser.log("TestSerialiser - exception writing fragment: " + e.getMessage(), LogSerialiser.LogLevel.Critical);
 			}
-			if (!testSavingQueue.isEmpty()){
-				if (!queueBoost && testSavingQueue.size() > QUEUE_LIMIT){
-					this.setPriority(NORM_PRIORITY);
-					queueBoost = true;
-				} else if (queueBoost && testSavingQueue.size() < QUEUE_LIMIT/2){
-					this.setPriority(MIN_PRIORITY);
-					queueBoost = false;
-				}				
-				TaggableBase fragment;
-				synchronized(testSavingQueue){
-					fragment = testSavingQueue.removeFirst();
+			fragmentTimes++;
+			if (fragmentTimes >= FLUSH_INTERVAL){
+				fragmentTimes = 0;
+				try {
+					test.flush();
+					test.reset();
+				} catch (IOException e) {
+					LogSerialiser.log("TestSerialiser - flushing exception: " + e.getMessage(), LogSerialiser.LogLevel.Critical);
 				}
-				writethis(fragment);
 			}
+			return counted();
 		}
-		try {
-			test.flush();
-			test.close();
-		} catch (IOException e) {
-			LogSerialiser.log("I/O exception serialising test file!\n", LogSerialiser.LogLevel.Critical);
-		} finally{
+
+		@Override
+		public long close(){
 			try {
+				test.flush();
 				test.close();
 			} catch (IOException e) {
-				LogSerialiser.log("I/O exception closing serialisation of test file!\n", LogSerialiser.LogLevel.Critical);				
+				LogSerialiser.log("I/O exception serialising test file!\n", LogSerialiser.LogLevel.Critical);
+			} finally{
+				try {
+					test.close();
+				} catch (IOException e) {
+					LogSerialiser.log("I/O exception closing serialisation of test file!\n", LogSerialiser.LogLevel.Critical);
+				}
 			}
+			return counted();
 		}
-		synchronized(test){
-			//System.out.println("TestSerialiser finished");
-			singletonTestSerialiser = null;
-			test.notifyAll();
+
+		// bytes that reached the underlying stream since the previous call
+		private long counted(){
+			if (counter == null)
+				return 0;
+			long count = counter.getCount();
+			long written = count - counted;
+			counted = count;
+			return written;
 		}
 	}
 
-	public static void write(TaggableBase fragment){
-		if (alive){
-			synchronized(testSavingQueue){
-				testSavingQueue.add(fragment);
-			}
-		}
+	/**
+	 * Starts serialising the fragments of a test sequence to the given stream, counting the bytes written.
+	 * @param out
+	 * @throws IOException if the stream header cannot be written
+	 */
+	public static void start(OutputStream out) throws IOException{
+		CountingOutputStream counter = new CountingOutputStream(out);
+		start(new ObjectOutputStream(counter), counter);
 	}
 
-	private static void writethis(TaggableBase fragment){
+	public static void start(ObjectOutputStream test){
+		start(test, null);
+	}
+
+	private static void start(ObjectOutputStream test, CountingOutputStream counter){
+		Assert.isTrue(!isAlive());
+		channel = SerialisationPipeline.shared().open("TestSerialiser", new TestSink(test, counter), true);
+	}
+
+	private static boolean isAlive(){
+		SerialisationPipeline.Channel<TaggableBase> current = channel;
+		return current != null && current.isOpen();
+	}
+
+	/**
+	 * Stops accepting fragments.
+	 * @return a future that completes when the fragments have been written and the test file has been closed
+	 */
+	public static CompletableFuture<Void> finish(){
+		SerialisationPipeline.Channel<TaggableBase> current = channel;
+		return current == null ? CompletableFuture.completedFuture(null) : current.close();
+	}
+
+	public static boolean isSavingQueueEmpty() {
+		SerialisationPipeline.Channel<TaggableBase> current = channel;
+		return current == null || current.getQueueDepth() == 0;
+	}
+
+	public static void write(TaggableBase fragment){
 		Assert.notNull(fragment);
-		try {
-			test.writeObject(fragment);
-		} catch (IOException e) {
-			LogSerialiser.log("TestSerialiser - exception writing fragment: " + e.getMessage(), LogSerialiser.LogLevel.Critical);
-		}
-		fragmentTimes++;
-		if (fragmentTimes >= FLUSH_INTERVAL){
-			fragmentTimes = 0;
-			try {
-				test.flush();
-				test.reset();
-			} catch (IOException e) {
-				LogSerialiser.log("TestSerialiser - flushing exception: " + e.getMessage(), LogSerialiser.LogLevel.Critical);
-			}
+		SerialisationPipeline.Channel<TaggableBase> current = channel;
+		if (current != null){
+			current.submit(fragment);
 		}
 	}
 
 	public static void exit(){
-		if (singletonTestSerialiser != null){
-			TestSerialiser.finish();
-			try {
-				synchronized(test){
-					while (singletonTestSerialiser != null){
-						try {
-							test.wait();
-						} catch (InterruptedException e) {
-							System.out.println("TestSerialiser exit interrupted");
-						}
-					}
-				}
-			} catch (Exception e) {} // test may be set to null when we try to sync on it		
-			//System.out.println("TestSerialisationManager exited");
-			test = null;
-		}
+		finish().join();
 	}
 
 	public static int queueLength(){
-		return testSavingQueue.size();
+		SerialisationPipeline.Channel<TaggableBase> current = channel;
+		return current == null ? 0 : current.getQueueDepth();
+	}
+
+	/**
+	 * @return the channel of the current, or last, test sequence, for its metrics
+	 */
+	public static SerialisationPipeline.Channel<?> getChannel(){
+		return channel;
 	}
 
 }
@@ -0,0 +1,157 @@
+package org.testar;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coding of state identifiers by coders shared between threads.
+ */
+public class IdCoderTest {
+
+   private static class Leaf extends StdWidget {
+      private static final long serialVersionUID = 1L;
+      final Widget parent;
+
+      Leaf(Widget parent) {
+         this.parent = parent;
+      }
+
+      public Widget parent() { return parent; }
+   }
+
+   private static class FlatState extends StdState {
+      private static final long serialVersionUID = 1L;
+      final List<Widget> children = new ArrayList<>();
+
+      public Widget child(int i) { return children.get(i); }
+      public int childCount() { return children.size(); }
+   }
+
+   // a state of buttons, the title of a few of them depends on the variant
+   private static FlatState state(int size, int variant) {
+      FlatState state = new FlatState();
+      for (int i = 0; i < size; i++) {
+         Leaf leaf = new Leaf(state);
+         leaf.set(Tags.Role, Roles.Control);
+         leaf.set(Tags.Title, i % 100 == 0 ? "button " + i + " of variant " + variant : "button " + i);
+         leaf.set(Tags.Enabled, i % 2 == 0);
+         leaf.set(Tags.Path, "[0, " + i + "]");
+         state.children.add(leaf);
+      }
+      return state;
+   }
+
+   private static String ids(IdCoder coder, State state) {
+      coder.buildIDs(state);
+      return state.get(Tags.ConcreteID) + " " + state.get(Tags.AbstractID) + " " + state.get(Tags.Abstract_R_T_P_ID)
+            + " " + state.get(Tags.ConcreteIDCustom) + " " + state.get(Tags.AbstractIDCustom);
+   }
+
+   @Test
+   public void facadeCodesWithTheDefaultCoder() {
+      IdCoder copy = new IdCoder(CodingManager.getIdFormat(), CodingManager.getCustomTagsForConcreteId(),
+            CodingManager.getCustomTagsForAbstractId());
+      FlatState state = state(50, 0);
+      CodingManager.buildIDs(state);
+      String facade = state.get(Tags.ConcreteID) + " " + state.get(Tags.AbstractIDCustom);
+      copy.buildIDs(state);
+      assertEquals(facade, state.get(Tags.ConcreteID) + " " + state.get(Tags.AbstractIDCustom));
+      assertEquals(copy.getAbstractStateModelHash("app", "1"), CodingManager.getAbstractStateModelHash("app", "1"));
+   }
+
+   @Test
+   public void codersAreImmutable() {
+      Tag<?>[] tags = new Tag<?>[]{Tags.Title, Tags.Enabled};
+      IdCoder legacy = new IdCoder().withCustomTagsForAbstractId(tags);
+      tags[0] = Tags.Path;
+      assertArrayEquals("The tags are copied and sorted by name", new Tag<?>[]{Tags.Enabled, Tags.Title},
+            legacy.getCustomTagsForAbstractId());
+      legacy.getCustomTagsForAbstractId()[0] = Tags.Path;
+      assertEquals(Tags.Enabled, legacy.getCustomTagsForAbstractId()[0]);
+
+      IdCoder hash128 = legacy.withIdFormat(CodingManager.IdFormat.HASH128);
+      assertEquals(CodingManager.IdFormat.LEGACY, legacy.getIdFormat());
+      assertEquals(CodingManager.IdFormat.HASH128, hash128.getIdFormat());
+      String legacyIds = ids(legacy, state(50, 0));
+      assertNotEquals(legacyIds, ids(hash128, state(50, 0)));
+      assertEquals(legacyIds, ids(legacy, state(50, 0)));
+      assertNotEquals("Models of other id formats are kept apart",
+            legacy.getAbstractStateModelHash("app", "1"), hash128.getAbstractStateModelHash("app", "1"));
+   }
+
+   @Test
+   public void sessionsWithOtherConfigurationsCodeConcurrently() throws Exception {
+      IdCoder[] coders = {new IdCoder(), new IdCoder(CodingManager.IdFormat.HASH128, new Tag<?>[]{Tags.Title},
+            new Tag<?>[]{Tags.Role, Tags.Enabled})};
+      String[][] expected = new String[coders.length][4];
+      for (int c = 0; c < coders.length; c++) {
+         for (int v = 0; v < 4; v++) {
+            expected[c][v] = ids(new IdCoder(coders[c].getIdFormat(), coders[c].getCustomTagsForConcreteId(),
+                  coders[c].getCustomTagsForAbstractId()), state(500, v));
+         }
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<Future<?>> sessions = new ArrayList<>();
+         for (int s = 0; s < 8; s++) {
+            IdCoder coder = coders[s % coders.length];
+            String[] ids = expected[s % coders.length];
+            Random random = new Random(s);
+            sessions.add(executor.submit(() -> {
+               for (int i = 0; i < 100; i++) {
+                  int variant = random.nextInt(4);
+                  assertEquals(ids[variant], ids(coder, state(500, variant)));
+               }
+            }));
+         }
+         for (Future<?> session : sessions) {
+            session.get();
+         }
+      }
+      finally {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * Benchmark of sessions that share one JVM and one coder, each coding its own states.
+    */
+   @Ignore("Benchmark, run on demand")
+   @Test
+   public void benchmarkConcurrentSessions() throws Exception {
+      IdCoder coder = new IdCoder();
+      int statesPerSession = 200;
+      for (int nrOfSessions : new int[]{1, 2, 4}) {
+         ExecutorService executor = Executors.newFixedThreadPool(nrOfSessions);
+         try {
+            List<Callable<Void>> sessions = new ArrayList<>();
+            for (int s = 0; s < nrOfSessions; s++) {
+               FlatState[] states = {state(1000, 0), state(1000, 1)};
+               sessions.add(() -> {
+                  for (int i = 0; i < statesPerSession; i++) {
+                     coder.buildIDs(states[i % 2]);
+                  }
+                  return null;
+               });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> session : executor.invokeAll(sessions)) {
+               session.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("Coding of states of 1000 widgets by " + nrOfSessions + " sessions: "
+                  + (nrOfSessions * statesPerSession * 1_000_000_000L / elapsed) + " states per second");
+         }
+         finally {
+            executor.shutdown();
+         }
+      }
+   }
+}
@@ -0,0 +1,365 @@
+package org.testar;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.*;
+
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test to validate that the streaming IdHasher keeps the identifiers of the original string based coding.
+ */
+public class IdHasherTest {
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private static final Tag<String>[] ID_TAGS = new Tag[]{Tags.ConcreteID, Tags.AbstractID, Tags.Abstract_R_ID,
+         Tags.Abstract_R_T_ID, Tags.Abstract_R_T_P_ID, Tags.ConcreteIDCustom, Tags.AbstractIDCustom};
+
+   private static final Tag<?>[] CUSTOM_CONCRETE_TAGS = {StateManagementTags.WidgetTitle, StateManagementTags.WidgetIsEnabled,
+         StateManagementTags.WidgetExpandCollapsePattern, StateManagementTags.WidgetHelpText};
+   private static final Tag<?>[] CUSTOM_ABSTRACT_TAGS = {StateManagementTags.WidgetControlType, StateManagementTags.WidgetExpandCollapsePattern};
+
+   private static class Node extends StdWidget {
+      private static final long serialVersionUID = 1L;
+      final List<Widget> children = new ArrayList<>();
+      Widget parent;
+
+      public Widget parent() { return parent; }
+      public Widget child(int i) { return children.get(i); }
+      public int childCount() { return children.size(); }
+   }
+
+   private static class TreeState extends StdState {
+      private static final long serialVersionUID = 1L;
+      final Node top = new Node();
+
+      public Widget child(int i) { return top.child(i); }
+      public int childCount() { return top.childCount(); }
+   }
+
+   // a random tree of widgets with the tags of the identifiers, the titles depend on the variant
+   private static TreeState tree(int size, long seed, int variant) {
+      Random random = new Random(seed);
+      TreeState state = new TreeState();
+      List<Node> nodes = new ArrayList<>();
+      nodes.add(state.top);
+      Role[] roles = {Roles.Control, Roles.Text, Roles.Expander, Roles.Button};
+      for (int i = 1; i < size; i++) {
+         Node parent = nodes.get(random.nextInt(nodes.size()));
+         Node child = new Node();
+         child.parent = parent == state.top ? state : parent;
+         parent.children.add(child);
+         nodes.add(child);
+
+         child.set(Tags.Role, roles[random.nextInt(roles.length)]);
+         child.set(Tags.Title, "Widget " + i + (variant == 0 ? "" : " of variant " + variant));
+         child.set(Tags.Enabled, random.nextBoolean());
+         child.set(Tags.Path, "[0, " + i + "]");
+         child.set(StateManagementTags.WidgetControlType, child.get(Tags.Role).toString());
+         child.set(StateManagementTags.WidgetTitle, child.get(Tags.Title));
+         child.set(StateManagementTags.WidgetIsEnabled, child.get(Tags.Enabled));
+         if (i % 3 == 0) {
+            child.set(StateManagementTags.WidgetExpandCollapsePattern, true);
+            child.set(StateManagementTags.WidgetExpandCollapseExpandCollapseState, (long) (i % 2));
+         }
+         // a value with characters outside ASCII
+         if (i % 5 == 0) {
+            child.set(StateManagementTags.WidgetHelpText, "Ayuda de la opci\u00f3n " + i);
+         }
+      }
+      return state;
+   }
+
+   /**
+    * The original coding of the identifiers: the tag values of a widget and the widget identifiers of a state
+    * are concatenated, and the concatenation is hashed.
+    */
+   private static final class BaselineCoder {
+
+      private static final Tag<?>[] TAGS_CONCRETE_ID = {Tags.Role, Tags.Title, Tags.Enabled, Tags.Path};
+      private static final Tag<?>[] TAGS_ABSTRACT_ID = {Tags.Role};
+      private static final Tag<?>[] TAGS_ABSTRACT_R_T_ID = {Tags.Role, Tags.Title};
+      private static final Tag<?>[] TAGS_ABSTRACT_R_T_P_ID = {Tags.Role, Tags.Title, Tags.Path};
+
+      private final Tag<?>[] customTagsForConcreteId;
+      private final Tag<?>[] customTagsForAbstractId;
+
+      BaselineCoder(Tag<?>[] customTagsForConcreteId, Tag<?>[] customTagsForAbstractId) {
+         this.customTagsForConcreteId = customTagsForConcreteId.clone();
+         this.customTagsForAbstractId = customTagsForAbstractId.clone();
+         Arrays.sort(this.customTagsForConcreteId, Comparator.comparing(Tag::name));
+         Arrays.sort(this.customTagsForAbstractId, Comparator.comparing(Tag::name));
+      }
+
+      void buildIDs(Widget widget) {
+         if (widget.parent() != null) {
+            widget.set(Tags.ConcreteID, "WC" + codify(widget, TAGS_CONCRETE_ID));
+            widget.set(Tags.AbstractID, "WR" + codify(widget, TAGS_ABSTRACT_ID));
+            widget.set(Tags.Abstract_R_ID, "WR" + codify(widget, TAGS_ABSTRACT_ID));
+            widget.set(Tags.Abstract_R_T_ID, "WT" + codify(widget, TAGS_ABSTRACT_R_T_ID));
+            widget.set(Tags.Abstract_R_T_P_ID, "WP" + codify(widget, TAGS_ABSTRACT_R_T_P_ID));
+            widget.set(Tags.ConcreteIDCustom, "WCC" + codify(widget, customTagsForConcreteId));
+            widget.set(Tags.AbstractIDCustom, "WAC" + codify(widget, customTagsForAbstractId));
+         } else if (widget instanceof State) {
+            StringBuilder[] ids = new StringBuilder[ID_TAGS.length];
+            for (int i = 0; i < ids.length; i++) {
+               ids[i] = new StringBuilder();
+            }
+            for (Widget childWidget : (State) widget) {
+               if (childWidget != widget) {
+                  buildIDs(childWidget);
+                  for (int i = 0; i < ids.length; i++) {
+                     ids[i].append(childWidget.get(ID_TAGS[i]));
+                  }
+               }
+            }
+            String[] prefixes = {"SC", "SA", "SR", "ST", "SP", "SCC", "SAC"};
+            for (int i = 0; i < ids.length; i++) {
+               widget.set(ID_TAGS[i], prefixes[i] + legacyLowCollisionID(ids[i].toString()));
+            }
+         }
+      }
+
+      private static String codify(Widget leaf, Tag<?>... tags) {
+         StringBuilder sb = new StringBuilder();
+         for (Tag<?> t : tags) {
+            sb.append(leaf.get(t, null));
+            if (StateManagementTags.isStateManagementTag(t) && StateManagementTags.getTagGroup(t).equals(StateManagementTags.Group.ControlPattern)) {
+               StateManagementTags.getChildTags(t).stream().sorted(Comparator.comparing(Tag::name)).forEach(tag -> sb.append(leaf.get(tag, null)));
+            }
+         }
+         return legacyLowCollisionID(sb.toString());
+      }
+   }
+
+   private static List<String> ids(State state) {
+      List<String> ids = new ArrayList<>();
+      for (Widget widget : state) {
+         for (Tag<String> tag : ID_TAGS) {
+            ids.add(widget.get(tag));
+         }
+      }
+      return ids;
+   }
+
+   private static String legacyLowCollisionID(String text) {
+      CRC32 crc32 = new CRC32();
+      crc32.update(text.getBytes());
+      return Integer.toUnsignedString(text.hashCode(), Character.MAX_RADIX) +
+         Integer.toHexString(text.length()) +
+         crc32.getValue();
+   }
+
+   @Test
+   public void legacyDigestOfPiecesEqualsDigestOfConcatenation() {
+      String[] pieces = new String[]{"WC1x2fa8d1234", "Buttonoktrue", "[0, 0, 1]", "", "null"};
+      IdHasher hasher = new IdHasher().reset(CodingManager.IdFormat.LEGACY);
+      StringBuilder concatenation = new StringBuilder();
+      for (String piece : pieces) {
+         hasher.update(piece);
+         concatenation.append(piece);
+      }
+      assertEquals(legacyLowCollisionID(concatenation.toString()), hasher.digest());
+   }
+
+   @Test
+   public void legacyDigestOfLongAndNonAsciiText() {
+      StringBuilder concatenation = new StringBuilder();
+      IdHasher hasher = new IdHasher().reset(CodingManager.IdFormat.LEGACY);
+      for (int i = 0; i < 2000; i++) {
+         String piece = (i % 7 == 0) ? "Cancelar operaci\u00f3n " + i : "WC" + Integer.toString(i * 7919, 36);
+         hasher.update(piece);
+         concatenation.append(piece);
+      }
+      assertEquals(legacyLowCollisionID(concatenation.toString()), hasher.digest());
+   }
+
+   @Test
+   public void nullValuesAreCodedAsText() {
+      IdHasher hasher = new IdHasher().reset(CodingManager.IdFormat.LEGACY);
+      assertEquals(legacyLowCollisionID("Buttonnull"), hasher.update("Button").update((Object) null).digest());
+   }
+
+   @Test
+   public void resetStartsANewIdentifier() {
+      IdHasher hasher = new IdHasher();
+      String first = hasher.reset(CodingManager.IdFormat.HASH128).update("Button").update("ok").digest();
+      hasher.reset(CodingManager.IdFormat.HASH128).update("something else");
+      String second = hasher.reset(CodingManager.IdFormat.HASH128).update("Buttonok").digest();
+      assertEquals("HASH128 digest should not depend on how the text is split", first, second);
+      assertNotEquals(first, hasher.reset(CodingManager.IdFormat.HASH128).update("Buttonko").digest());
+      assertNotEquals(first, hasher.reset(CodingManager.IdFormat.LEGACY).update("Buttonok").digest());
+   }
+
+   @Test
+   public void appendedSegmentsGiveTheDigestOfTheirText() {
+      String[] pieces = new String[]{"WC1x2fa8d1234", "", "Cancelar operaci\u00f3n", "[0, 0, 1]", "null", "WT" + String.join("", Collections.nCopies(300, "ab"))};
+      for (CodingManager.IdFormat format : CodingManager.IdFormat.values()) {
+         IdHasher expected = new IdHasher().reset(format);
+         IdHasher actual = new IdHasher().reset(format);
+         IdHasher segment = new IdHasher();
+         for (int i = 0; i < pieces.length; i++) {
+            expected.update(pieces[i]).update(pieces[pieces.length - 1 - i]);
+            // every other piece is folded directly, the others are appended as segments of one or two pieces
+            if (i % 2 == 0) {
+               actual.update(pieces[i]).append(segment.reset(format).update(pieces[pieces.length - 1 - i]).segment());
+            } else {
+               actual.append(segment.reset(format).update(pieces[i]).update(pieces[pieces.length - 1 - i]).segment());
+            }
+            assertEquals(format + " after " + i + " pieces", expected.digest(), actual.digest());
+         }
+      }
+      IdHasher legacy = new IdHasher().reset(CodingManager.IdFormat.LEGACY);
+      legacy.append(new IdHasher().reset(CodingManager.IdFormat.LEGACY).update(pieces[2]).segment()).update(pieces[0]);
+      assertEquals(legacyLowCollisionID(pieces[2] + pieces[0]), legacy.digest());
+   }
+
+   @Test
+   public void identifiersDoNotDependOnTheReuseOfSubtrees() {
+      int size = 2000;
+      IdCoder coder = new IdCoder(CodingManager.IdFormat.LEGACY, CUSTOM_CONCRETE_TAGS, CUSTOM_ABSTRACT_TAGS);
+      IdCoder hash128 = coder.withIdFormat(CodingManager.IdFormat.HASH128);
+      IdCoder hash128WithoutReuse = new IdCoder(CodingManager.IdFormat.HASH128, CUSTOM_CONCRETE_TAGS, CUSTOM_ABSTRACT_TAGS, Integer.MAX_VALUE);
+      BaselineCoder baseline = new BaselineCoder(CUSTOM_CONCRETE_TAGS, CUSTOM_ABSTRACT_TAGS);
+      // consecutive states that differ in one widget, or not at all
+      int[] changedWidgets = {-1, 1500, 1500, -1, 3, 1999, 700};
+      for (int step = 0; step < changedWidgets.length; step++) {
+         TreeState expected = changed(tree(size, 11, 0), changedWidgets[step], step);
+         baseline.buildIDs(expected);
+         TreeState actual = changed(tree(size, 11, 0), changedWidgets[step], step);
+         coder.buildIDs(actual);
+         assertEquals("state " + step, ids(expected), ids(actual));
+         assertEquals(size - 1, coder.getSubtreeCacheHitsOfLastState() + coder.getSubtreeCacheMissesOfLastState());
+         if (step == 0) {
+            assertEquals(0, coder.getSubtreeCacheHitsOfLastState());
+         } else {
+            assertTrue("state " + step + " folds the unchanged subtrees through their hashes",
+                  coder.getSubtreeCacheHitsOfLastState() > size / 2);
+         }
+
+         expected = changed(tree(size, 11, 0), changedWidgets[step], step);
+         hash128WithoutReuse.buildIDs(expected);
+         assertEquals(0, hash128WithoutReuse.getSubtreeCacheHitsOfLastState());
+         actual = changed(tree(size, 11, 0), changedWidgets[step], step);
+         hash128.buildIDs(actual);
+         assertEquals("state " + step, ids(expected), ids(actual));
+      }
+      assertTrue(coder.getSubtreeCacheHits() > 0);
+   }
+
+   // changes the title of the widget at the given breadth first index
+   private static TreeState changed(TreeState state, int index, int step) {
+      if (index >= 0) {
+         Widget widget = state.widgets().get(index);
+         widget.set(Tags.Title, "Changed in step " + step);
+         widget.set(StateManagementTags.WidgetTitle, widget.get(Tags.Title));
+      }
+      return state;
+   }
+
+   @Test
+   public void legacyIdentifiersEqualTheBaselineCoding() {
+      IdCoder coder = new IdCoder(CodingManager.IdFormat.LEGACY, CUSTOM_CONCRETE_TAGS, CUSTOM_ABSTRACT_TAGS);
+      BaselineCoder baseline = new BaselineCoder(CUSTOM_CONCRETE_TAGS, CUSTOM_ABSTRACT_TAGS);
+      for (int variant = 0; variant < 3; variant++) {
+         TreeState expected = tree(500, 7, variant);
+         baseline.buildIDs(expected);
+         TreeState actual = tree(500, 7, variant);
+         coder.buildIDs(actual);
+         assertEquals(ids(expected), ids(actual));
+         // once more, with the widget identifiers of the previous state
+         actual = tree(500, 7, variant);
+         coder.buildIDs(actual);
+         assertEquals(ids(expected), ids(actual));
+      }
+
+      // the identifiers of the coding manager before the streaming hashers, so that a change of the baseline coder shows up as well
+      TreeState state = tree(20, 1, 0);
+      coder.buildIDs(state);
+      assertEquals("SC1a8k262181696370187 SAC14edam1832730278870", state.get(Tags.ConcreteID) + " " + state.get(Tags.AbstractIDCustom));
+   }
+
+   /**
+    * Benchmark of the coding of states of 100 to 50000 widgets with all the identifiers, against the original
+    * string based coding. Every state has new titles, so the widget identifiers of the previous state are not reused.
+    */
+   @Ignore("Benchmark, run on demand")
+   @Test
+   public void benchmarkLegacyCoding() {
+      Tag<?>[] customTags = StateManagementTags.getAllTags().toArray(new Tag<?>[0]);
+      IdCoder coder = new IdCoder(CodingManager.IdFormat.LEGACY, customTags, customTags);
+      BaselineCoder baseline = new BaselineCoder(customTags, customTags);
+      for (int size : new int[]{100, 1000, 10000, 50000}) {
+         int nrOfStates = Math.max(2, 20000 / size);
+         for (int run = 0; run < 3; run++) {
+            // new titles in every run, so that the coder cannot reuse the identifiers of the previous state
+            TreeState[] baselineStates = new TreeState[nrOfStates];
+            TreeState[] coderStates = new TreeState[nrOfStates];
+            for (int i = 0; i < nrOfStates; i++) {
+               baselineStates[i] = tree(size, size, run * nrOfStates + i + 1);
+               coderStates[i] = tree(size, size, run * nrOfStates + i + 1);
+            }
+
+            long start = System.nanoTime();
+            for (TreeState state : baselineStates) {
+               baseline.buildIDs(state);
+            }
+            long baselineTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (TreeState state : coderStates) {
+               coder.buildIDs(state);
+            }
+            long coderTime = System.nanoTime() - start;
+
+            assertEquals(baselineStates[nrOfStates - 1].get(Tags.ConcreteIDCustom), coderStates[nrOfStates - 1].get(Tags.ConcreteIDCustom));
+            System.out.println(String.format("%d states of %d widgets: baseline %.3f ms, streaming %.3f ms per state (%.1fx)",
+                  nrOfStates, size, baselineTime / 1e6 / nrOfStates, coderTime / 1e6 / nrOfStates, (double) baselineTime / coderTime));
+         }
+      }
+   }
+
+   /**
+    * Benchmark of the coding of consecutive states of 1000 to 50000 widgets that differ in a few titles,
+    * with and without the reuse of the aggregate hashes of the unchanged subtrees.
+    */
+   @Ignore("Benchmark, run on demand")
+   @Test
+   public void benchmarkSubtreeReuse() {
+      Tag<?>[] customTags = StateManagementTags.getAllTags().toArray(new Tag<?>[0]);
+      IdCoder withReuse = new IdCoder(CodingManager.IdFormat.LEGACY, customTags, customTags);
+      IdCoder withoutReuse = new IdCoder(CodingManager.IdFormat.LEGACY, customTags, customTags, Integer.MAX_VALUE);
+      for (int size : new int[]{1000, 10000, 50000}) {
+         int nrOfStates = Math.max(4, 100000 / size);
+         for (int run = 0; run < 3; run++) {
+            TreeState[] withReuseStates = new TreeState[nrOfStates];
+            TreeState[] withoutReuseStates = new TreeState[nrOfStates];
+            for (int i = 0; i < nrOfStates; i++) {
+               // a counter and one other widget change in every state
+               withReuseStates[i] = changed(changed(tree(size, size, 0), size - 1, i), (i * 7919) % size, i);
+               withoutReuseStates[i] = changed(changed(tree(size, size, 0), size - 1, i), (i * 7919) % size, i);
+            }
+
+            long start = System.nanoTime();
+            long hits = 0;
+            for (TreeState state : withReuseStates) {
+               withReuse.buildIDs(state);
+               hits += withReuse.getSubtreeCacheHitsOfLastState();
+            }
+            long withReuseTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (TreeState state : withoutReuseStates) {
+               withoutReuse.buildIDs(state);
+            }
+            long withoutReuseTime = System.nanoTime() - start;
+
+            assertEquals(withoutReuseStates[nrOfStates - 1].get(Tags.ConcreteIDCustom), withReuseStates[nrOfStates - 1].get(Tags.ConcreteIDCustom));
+            System.out.println(String.format("%d states of %d widgets: without reuse %.3f ms, with reuse %.3f ms per state (%.1fx), %.0f%% of the widgets folded through subtree hashes",
+                  nrOfStates, size, withoutReuseTime / 1e6 / nrOfStates, withReuseTime / 1e6 / nrOfStates,
+                  (double) withoutReuseTime / withReuseTime, 100.0 * hits / nrOfStates / (size - 1)));
+         }
+      }
+   }
+}
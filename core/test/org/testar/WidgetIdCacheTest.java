@@ -0,0 +1,71 @@
+package org.testar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test to validate the widget identifiers reuse between consecutive states.
+ */
+public class WidgetIdCacheTest {
+
+   private static final Object CONFIGURATION = new Object();
+
+   @Test
+   public void identifiersAreReusedInTheNextState() {
+      WidgetIdCache cache = new WidgetIdCache();
+      String[] ids = new String[]{"WC1", "WR1"};
+
+      cache.startState(CONFIGURATION);
+      assertNull(cache.get(1L, 2L));
+      cache.put(1L, 2L, ids);
+
+      cache.startState(CONFIGURATION);
+      assertSame(ids, cache.get(1L, 2L));
+      assertNull("Fingerprints must match on all the 128 bits", cache.get(1L, 3L));
+      assertEquals(1, cache.stateHits());
+      assertEquals(1, cache.stateMisses());
+      assertEquals(1, cache.totalHits());
+      assertEquals(2, cache.totalMisses());
+   }
+
+   @Test
+   public void identifiersOfDisappearedWidgetsAreEvicted() {
+      WidgetIdCache cache = new WidgetIdCache();
+      cache.startState(CONFIGURATION);
+      cache.put(1L, 2L, new String[]{"WC1"});
+      cache.startState(CONFIGURATION);
+      cache.startState(CONFIGURATION);
+      assertNull(cache.get(1L, 2L));
+   }
+
+   @Test
+   public void identifiersAreDiscardedWhenTheConfigurationChanges() {
+      WidgetIdCache cache = new WidgetIdCache();
+      cache.startState(CONFIGURATION);
+      cache.put(1L, 2L, new String[]{"WC1"});
+      cache.startState(new Object());
+      assertNull(cache.get(1L, 2L));
+   }
+
+   @Test
+   public void subtreesAreKeptForOneState() {
+      WidgetIdCache cache = new WidgetIdCache();
+      cache.startState(CONFIGURATION);
+      assertNull(cache.subtree(1L, 2L));
+      WidgetIdCache.Subtree subtree = cache.putSubtree(1L, 2L, 3);
+      assertEquals(3, subtree.counts.length);
+
+      cache.startState(CONFIGURATION);
+      assertSame(subtree, cache.subtree(1L, 2L));
+      cache.startState(CONFIGURATION);
+      assertSame("A subtree seen again is kept for the next state", subtree, cache.subtree(1L, 2L));
+      cache.startState(CONFIGURATION);
+      cache.startState(CONFIGURATION);
+      assertNull(cache.subtree(1L, 2L));
+
+      cache.putSubtree(1L, 2L, 3);
+      cache.startState(new Object());
+      assertNull(cache.subtree(1L, 2L));
+   }
+}
@@ -0,0 +1,192 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2013, 2014, 2015, 2016, 2017 Universitat Politecnica de Valencia - www.upv.es
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+package org.testar.monkey.alayer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the regular expression oracle against plain matching with java.util.regex.
+ */
+public class RegexOracleTest {
+
+   private static final String SUSPICIOUS_TITLES = ".*[eE]rror.*|.*[eE]xcep[ct]i[o?]n.*";
+   private static final String CLICK_FILTER = ".*[sS]istema.*|.*[sS]ystem.*|.*[cC]errar.*|.*[cC]lose.*|.*[sS]alir.*|.*[eE]xit.*"
+         + "|.*[mM]inimizar.*|.*[mM]inimi[zs]e.*|.*[mM]aximi[zs]e.*|.*[gG]uardar.*|.*[sS]ave.*|.*[iI]mprimir.*|.*[pP]rint.*";
+
+   private static final String[] EXPRESSIONS = {
+         SUSPICIOUS_TITLES, CLICK_FILTER, "(?!x)x", ".*.*", "", "Close", "a+b|c*d?e", "x{2,3}yz|\\.ab\\d+",
+         ".*(Error|Warning).*", "[a-c]+q[^]x]r|st\\|u", "ab*?c|d++e", "(?i).*error.*", "\\QError\\E.*"
+   };
+
+   private static final String[] WORDS = {
+         "Error", "error", "Exception", "Excepcion", "Excepti?n", "Close", "Save as", "File", "Edit", "OK", "Cancel",
+         "System", "abc", "ac", "d", "e", "de", "xxyz", "xyz", ".ab12", "aqxr", "cqyr", "st|u", "ddde", "Warning", "", " "
+   };
+
+   private static List<String> values(int size, long seed) {
+      Random random = new Random(seed);
+      List<String> values = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+         StringBuilder value = new StringBuilder();
+         int words = random.nextInt(4);
+         for (int j = 0; j < words; j++) {
+            value.append(j == 0 ? "" : random.nextBoolean() ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+         }
+         values.add(value.toString());
+      }
+      return values;
+   }
+
+   @Test
+   public void requiredLiteralsAreTheLongestRunOfEveryAlternative() {
+      assertEquals(Arrays.asList("rror", "xcep"), RegexOracle.requiredLiterals(SUSPICIOUS_TITLES));
+      assertEquals(Arrays.asList("Close"), RegexOracle.requiredLiterals("Close"));
+      assertEquals(Arrays.asList("a", "e"), RegexOracle.requiredLiterals("a+b|c*d?e"));
+      assertEquals(Arrays.asList("yz", ".ab"), RegexOracle.requiredLiterals("x{2,3}yz|\\.ab\\d+"));
+      assertEquals(Arrays.asList("q", "st|u"), RegexOracle.requiredLiterals("[a-c]+q[^]x]r|st\\|u"));
+      assertNull("Every alternative needs a literal", RegexOracle.requiredLiterals(".*.*"));
+      assertNull(RegexOracle.requiredLiterals(""));
+      assertNull("Groups and inline flags are not looked into", RegexOracle.requiredLiterals("(?!x)x"));
+      assertNull(RegexOracle.requiredLiterals("(?i).*error.*"));
+      assertNull("Quoted literals are not looked into", RegexOracle.requiredLiterals("\\QError\\E.*"));
+      assertTrue(RegexOracle.compile("ClickFilter", CLICK_FILTER).isPrefiltered());
+   }
+
+   @Test
+   public void matchesLikeThePattern() {
+      List<String> values = values(20000, 1);
+      values.addAll(Arrays.asList(WORDS));
+      for (String expression : EXPRESSIONS) {
+         Pattern pattern = Pattern.compile(expression, Pattern.UNICODE_CHARACTER_CLASS);
+         RegexOracle oracle = RegexOracle.compile("test", expression, 100);
+         for (String value : values) {
+            assertEquals(expression + " on '" + value + "'", pattern.matcher(value).matches(), oracle.matches(value));
+         }
+      }
+   }
+
+   @Test
+   public void evaluationsAreCachedAndReported() {
+      RegexOracle oracle = RegexOracle.compile("SuspiciousTitles", SUSPICIOUS_TITLES, 2);
+      assertTrue(oracle.matches("An error occurred"));
+      assertFalse(oracle.matches("Save"));
+      assertTrue(oracle.matches("An error occurred"));
+      assertFalse(oracle.matches("Close"));
+      assertFalse(oracle.matches("Save"));
+      String report = oracle.report();
+      assertTrue(report, report.startsWith("SuspiciousTitles: 5 values in "));
+      assertTrue(report, report.endsWith("(1 cached, 3 prefiltered, 2 matched)"));
+      assertTrue(oracle.report().endsWith("(0 cached, 0 prefiltered, 0 matched)"));
+
+      assertSame(oracle, RegexOracle.recompile(oracle, "SuspiciousTitles", SUSPICIOUS_TITLES));
+      assertNotSame(oracle, RegexOracle.recompile(oracle, "SuspiciousTitles", ".*[fF]ail.*"));
+      assertNotNull(RegexOracle.recompile(null, "SuspiciousTitles", SUSPICIOUS_TITLES));
+   }
+
+   @Test
+   public void theCacheIsBounded() {
+      RegexOracle oracle = RegexOracle.compile("SuspiciousTitles", SUSPICIOUS_TITLES, 100);
+      oracle.matches("An error occurred");
+      for (int i = 0; i < 1000; i++) {
+         oracle.matches("Title " + i);
+      }
+      oracle.report();
+      assertFalse(oracle.matches("Title 0"));
+      assertFalse(oracle.matches("Title 999"));
+      assertTrue(oracle.report().endsWith("(1 cached, 1 prefiltered, 0 matched)"));
+   }
+
+   @Test
+   public void threadsShareTheOracle() throws InterruptedException {
+      RegexOracle oracle = RegexOracle.compile("ClickFilter", CLICK_FILTER, 64);
+      Pattern pattern = Pattern.compile(CLICK_FILTER, Pattern.UNICODE_CHARACTER_CLASS);
+      List<String> values = values(5000, 3);
+      int expected = 0;
+      for (String value : values) {
+         expected += pattern.matcher(value).matches() ? 1 : 0;
+      }
+
+      int nrOfThreads = 4;
+      int[] mismatches = new int[nrOfThreads];
+      Thread[] threads = new Thread[nrOfThreads];
+      for (int t = 0; t < nrOfThreads; t++) {
+         int thread = t;
+         threads[t] = new Thread(() -> {
+            for (String value : values) {
+               if (oracle.matches(value) != pattern.matcher(value).matches()) {
+                  mismatches[thread]++;
+               }
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread thread : threads) {
+         thread.join();
+      }
+
+      assertArrayEquals(new int[nrOfThreads], mismatches);
+      String report = oracle.report();
+      assertTrue(report, report.startsWith("ClickFilter: " + nrOfThreads * values.size() + " values in "));
+      assertTrue(report, report.endsWith(", " + nrOfThreads * expected + " matched)"));
+   }
+
+   /**
+    * Benchmark over states of synthetic widget titles, with the click filter of the example settings:
+    * a compiled pattern per value, as the protocols used to do on titles they had not seen, against the oracle.
+    */
+   @Ignore("Benchmark, run on demand")
+   @Test
+   public void benchmarkClickFilter() {
+      List<String> values = values(200000, 2);
+      Pattern pattern = Pattern.compile(CLICK_FILTER, Pattern.UNICODE_CHARACTER_CLASS);
+      RegexOracle oracle = RegexOracle.compile("ClickFilter", CLICK_FILTER, 0);
+      int expected = 0, actual = 0;
+      for (int run = 0; run < 3; run++) {
+         long start = System.nanoTime();
+         for (String value : values) {
+            expected += pattern.matcher(value).matches() ? 1 : 0;
+         }
+         long patternTime = System.nanoTime() - start;
+         start = System.nanoTime();
+         for (String value : values) {
+            actual += oracle.matches(value) ? 1 : 0;
+         }
+         long oracleTime = System.nanoTime() - start;
+         System.out.println("Click filter on " + values.size() + " values: pattern " + patternTime / 1000000
+               + " ms, oracle without cache " + oracleTime / 1000000 + " ms");
+      }
+      assertEquals(expected, actual);
+   }
+}
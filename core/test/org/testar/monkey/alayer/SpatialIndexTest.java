@@ -0,0 +1,191 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2013, 2014, 2015, 2016, 2017 Universitat Politecnica de Valencia - www.upv.es
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+
+package org.testar.monkey.alayer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the spatial index against linear scans over synthetic layouts.
+ */
+public class SpatialIndexTest {
+
+   /**
+    * A screen of nested panels and widgets, with some overlapping windows on top, as a GUI would have.
+    * The windows come first, they are on top.
+    */
+   private static List<Rect> layout(int size, long seed) {
+      Random random = new Random(seed);
+      List<Rect> rects = new ArrayList<>();
+      double width = 1920 * Math.max(1, Math.sqrt(size / 2000.0));
+      double height = 1080 * Math.max(1, Math.sqrt(size / 2000.0));
+      for (int i = 0; i < Math.max(1, size / 1000); i++) {
+         rects.add(Rect.from(random.nextDouble() * width * 0.7, random.nextDouble() * height * 0.7, width * 0.3, height * 0.3));
+      }
+      rects.add(Rect.from(0, 0, width, height));
+      while (rects.size() < size) {
+         Rect parent = rects.get(random.nextInt(rects.size()));
+         double w = Math.max(0, parent.width() * (0.05 + random.nextDouble() * 0.5));
+         double h = Math.max(0, parent.height() * (0.05 + random.nextDouble() * 0.5));
+         if (random.nextInt(20) == 0) {
+            w = 0;
+         }
+         rects.add(Rect.from(parent.x() + random.nextDouble() * (parent.width() - w),
+            parent.y() + random.nextDouble() * (parent.height() - h), w, h));
+      }
+      return rects;
+   }
+
+   private static SpatialIndex<Integer> index(List<Rect> rects) {
+      SpatialIndex.Builder<Integer> builder = SpatialIndex.newBuilder();
+      for (int i = 0; i < rects.size(); i++) {
+         builder.add(i, rects.get(i));
+      }
+      return builder.build();
+   }
+
+   private static Integer linearAt(List<Rect> rects, double x, double y) {
+      for (int i = 0; i < rects.size(); i++) {
+         if (rects.get(i).contains(x, y)) {
+            return i;
+         }
+      }
+      return null;
+   }
+
+   @Test
+   public void queriesMatchLinearScans() {
+      for (int size : new int[]{2, 10, 500, 5000}) {
+         List<Rect> rects = layout(size, size);
+         SpatialIndex<Integer> index = index(rects);
+         assertEquals(size, index.size());
+         Random random = new Random(size);
+         for (int q = 0; q < 2000; q++) {
+            Rect corner = rects.get(random.nextInt(rects.size()));
+            // random points, and points on the edges of the rectangles
+            double x = q % 2 == 0 ? random.nextDouble() * 2500 - 100 : corner.x() + corner.width();
+            double y = q % 2 == 0 ? random.nextDouble() * 1500 - 100 : corner.y();
+            assertEquals(linearAt(rects, x, y), index.at(x, y));
+
+            List<Integer> all = new ArrayList<>();
+            for (int i = 0; i < rects.size(); i++) {
+               if (rects.get(i).contains(x, y)) {
+                  all.add(i);
+               }
+            }
+            assertEquals(all, index.allAt(x, y));
+
+            Rect area = Rect.from(x, y, random.nextDouble() * 300, random.nextDouble() * 300);
+            List<Integer> intersecting = new ArrayList<>();
+            for (int i = 0; i < rects.size(); i++) {
+               if (Rect.intersect(rects.get(i), area)) {
+                  intersecting.add(i);
+               }
+            }
+            assertEquals(intersecting, index.intersecting(area));
+
+            int rank = random.nextInt(rects.size());
+            boolean obstructed = false;
+            for (int i = 0; i < rank; i++) {
+               obstructed |= rects.get(i).contains(x, y);
+            }
+            assertEquals(obstructed, index.obstructed(rank, x, y));
+         }
+      }
+   }
+
+   @Test
+   public void emptyAndDegenerateIndices() {
+      SpatialIndex<String> empty = SpatialIndex.<String>newBuilder().build();
+      assertNull(empty.at(0, 0));
+      assertTrue(empty.allAt(0, 0).isEmpty());
+      assertTrue(empty.intersecting(Rect.from(0, 0, 10, 10)).isEmpty());
+
+      SpatialIndex<String> points = SpatialIndex.<String>newBuilder()
+         .add("a", Rect.from(5, 5, 0, 0)).add("b", Rect.from(5, 5, 0, 0)).build();
+      assertEquals("a", points.at(5, 5));
+      assertEquals(Arrays.asList("a", "b"), points.allAt(5, 5));
+      assertNull(points.at(5, 6));
+   }
+
+   /**
+    * Benchmark of the hit tests on layouts of up to 100k rectangles, ranked as the element maps rank them:
+    * small rectangles on top of the larger ones that contain them.
+    */
+   @Ignore("Benchmark, run on demand")
+   @Test
+   public void benchmarkHitTests() {
+      for (int size : new int[]{1000, 10000, 100000}) {
+         List<Rect> rects = layout(size, 7);
+         rects.sort(Comparator.comparingDouble(Rect::area));
+         long start = System.nanoTime();
+         SpatialIndex<Integer> index = index(rects);
+         long build = System.nanoTime() - start;
+
+         int queries = 10000;
+         Random random = new Random(size);
+         double[] xs = new double[queries];
+         double[] ys = new double[queries];
+         for (int q = 0; q < queries; q++) {
+            Rect r = rects.get(random.nextInt(size));
+            xs[q] = r.x() + random.nextDouble() * r.width();
+            ys[q] = r.y() + random.nextDouble() * r.height();
+         }
+         long hits = 0;
+         start = System.nanoTime();
+         for (int q = 0; q < queries; q++) {
+            hits += index.at(xs[q], ys[q]);
+         }
+         long indexed = System.nanoTime() - start;
+         int linearQueries = Math.max(100, queries * 1000 / size);
+         start = System.nanoTime();
+         for (int q = 0; q < linearQueries; q++) {
+            hits -= linearAt(rects, xs[q], ys[q]);
+         }
+         long linear = (System.nanoTime() - start) * queries / linearQueries;
+
+         start = System.nanoTime();
+         for (int q = 0; q < queries; q++) {
+            hits += index.allAt(xs[q], ys[q]).size();
+         }
+         long all = System.nanoTime() - start;
+
+         System.out.println(String.format("Spatial index of %d rectangles: built in %d ms, %.2f us per topmost hit test (linear scan %.2f us), %.2f us for all hits",
+            size, build / 1_000_000, indexed / 1000.0 / queries, linear / 1000.0 / queries, all / 1000.0 / queries));
+         assertTrue(hits != 0);
+         assertTrue("The index should beat the linear scan", size < 10000 || indexed < linear);
+      }
+   }
+}
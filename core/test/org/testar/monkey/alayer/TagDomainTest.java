@@ -0,0 +1,62 @@
+package org.testar.monkey.alayer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test to validate the listing of the tags of a widget through a tag domain.
+ */
+public class TagDomainTest {
+
+   private static final Tag<String> CHEAP = Tag.from("TagDomainTestCheap", String.class);
+   private static final Tag<String> EXPENSIVE = Tag.from("TagDomainTestExpensive", String.class, Tag.Cost.NATIVE_CALL);
+   private static final Tag<String> EMPTY = Tag.from("TagDomainTestEmpty", String.class);
+   private static final Tag<String> EXTRA = Tag.from("TagDomainTestExtra", String.class);
+   private static final Tag<String> EXTRA_EXPENSIVE = Tag.from("TagDomainTestExtraExpensive", String.class, Tag.Cost.SCREENSHOT);
+
+   @Test
+   public void listsTheTagsWithAValueUpToACost() {
+      Set<Tag<?>> tagSet = new HashSet<>(Arrays.asList(CHEAP, EXPENSIVE, EMPTY));
+      TagDomain domain = new TagDomain(tagSet);
+      TaggableBase widget = new TaggableBase();
+      widget.set(CHEAP, "cheap");
+      widget.set(EXPENSIVE, "expensive");
+      widget.set(EXTRA, "extra");
+      widget.set(EXTRA_EXPENSIVE, "extra expensive");
+      Map<Tag<?>, Object> widgetTags = new HashMap<>();
+      widgetTags.put(CHEAP, "cheap");
+      widgetTags.put(EXTRA, "extra");
+      widgetTags.put(EXTRA_EXPENSIVE, "extra expensive");
+
+      assertTrue(domain.contains(EXPENSIVE));
+      assertFalse(domain.contains(EXTRA));
+      assertEquals(Arrays.asList(CHEAP, EXTRA), domain.list(widget, widgetTags, Tag.Cost.CHEAP));
+      assertEquals(new HashSet<>(Arrays.asList(CHEAP, EXPENSIVE, EXTRA)),
+            new HashSet<>(domain.list(widget, widgetTags, Tag.Cost.NATIVE_CALL)));
+      assertEquals(new HashSet<>(Arrays.asList(CHEAP, EXPENSIVE, EXTRA, EXTRA_EXPENSIVE)),
+            new HashSet<>(domain.list(widget, widgetTags, Tag.Cost.SCREENSHOT)));
+   }
+
+   @Test
+   public void followsTheGrowthOfItsTagSets() {
+      Set<Tag<?>> tagSet = new HashSet<>();
+      tagSet.add(CHEAP);
+      TagDomain domain = new TagDomain(tagSet);
+      TaggableBase widget = new TaggableBase();
+      widget.set(CHEAP, "cheap");
+      widget.set(EXPENSIVE, "expensive");
+
+      assertFalse(domain.contains(EXPENSIVE));
+      tagSet.add(EXPENSIVE);
+      assertTrue(domain.contains(EXPENSIVE));
+      assertEquals(new HashSet<>(Arrays.asList(CHEAP, EXPENSIVE)),
+            new HashSet<>(domain.list(widget, new HashMap<Tag<?>, Object>(), Tag.Cost.NATIVE_CALL)));
+   }
+}
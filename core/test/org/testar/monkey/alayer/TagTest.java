@@ -117,4 +117,40 @@ public class TagTest {
 
    }
 
+   @Test
+   public void byName() {
+      Tag<String> tag1 = Tag.from("TagTestByName", String.class);
+      Tag<Long> tag2 = Tag.from("TagTestByName", Long.class);
+
+      assertEquals("All the tags with the name shall be found",
+         java.util.Arrays.asList(tag1, tag2), Tag.byName("TagTestByName"));
+      assertTrue("Unknown names shall return no tags", Tag.byName("TagTestUnknownName").isEmpty());
+   }
+
+   @Test
+   public void cost() {
+      assertEquals("Tags shall be cheap by default", Tag.Cost.CHEAP, Tag.from("TagTestCheap", String.class).cost());
+      assertEquals(Tag.Cost.NATIVE_CALL, Tags.HitTester.cost());
+
+      Tag<String> tag = Tag.from("TagTestScreenshot", String.class, Tag.Cost.SCREENSHOT);
+      assertEquals(Tag.Cost.SCREENSHOT, Tag.from("TagTestScreenshot", String.class).cost());
+      assertSame("The cost shall not be part of the identity of a tag", tag, Tag.from("TagTestScreenshot", String.class));
+      assertSame(tag, Tag.from("TagTestScreenshot", String.class, Tag.Cost.SCREENSHOT));
+   }
+
+   @Test
+   public void costIsDeclaredOnce() {
+      Tag<String> tag = Tag.from("TagTestLookedUp", String.class);
+      assertEquals(Tag.Cost.CHEAP, tag.cost());
+      assertSame("A tag that was only looked up shall take the declared cost", tag, Tag.from("TagTestLookedUp", String.class, Tag.Cost.NATIVE_CALL));
+      assertEquals(Tag.Cost.NATIVE_CALL, tag.cost());
+
+      try {
+         Tag.from("TagTestLookedUp", String.class, Tag.Cost.CHEAP);
+         fail("A declaration with another cost shall be rejected");
+      } catch (IllegalArgumentException e) {
+         assertEquals(Tag.Cost.NATIVE_CALL, tag.cost());
+      }
+   }
+
 }
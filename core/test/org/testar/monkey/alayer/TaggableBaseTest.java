@@ -0,0 +1,142 @@
+package org.testar.monkey.alayer;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test to validate the tag value storage of TaggableBase.
+ */
+public class TaggableBaseTest {
+
+   @Test
+   public void setGetAndRemove() {
+      TaggableBase taggable = new TaggableBase();
+      taggable.set(Tags.Title, "ok");
+      assertEquals("ok", taggable.get(Tags.Title));
+      assertEquals("default", taggable.get(Tags.Desc, "default"));
+
+      taggable.remove(Tags.Title);
+      assertNull(taggable.get(Tags.Title, null));
+      assertFalse("Removed tags are not part of the tags view", taggable.tags().iterator().hasNext());
+   }
+
+   @Test
+   public void manyTagsAndPrimitives() {
+      TaggableBase taggable = new TaggableBase();
+      Set<Tag<?>> expected = new HashSet<>();
+      for (int i = 0; i < 200; i++) {
+         Tag<Integer> tag = Tag.from("TaggableBaseTest" + i, Integer.class);
+         taggable.set(tag, i);
+         expected.add(tag);
+      }
+      taggable.setDouble(Tags.ZIndex, 2.5);
+      taggable.setBoolean(Tags.Enabled, true);
+      expected.add(Tags.ZIndex);
+      expected.add(Tags.Enabled);
+
+      for (int i = 0; i < 200; i++) {
+         assertEquals(Integer.valueOf(i), taggable.get(Tag.from("TaggableBaseTest" + i, Integer.class)));
+      }
+      assertEquals(2.5, taggable.getDouble(Tags.ZIndex, 0), 0);
+      assertEquals(Double.valueOf(2.5), taggable.get(Tags.ZIndex));
+      assertTrue(taggable.getBoolean(Tags.Enabled, false));
+      assertEquals(Boolean.TRUE, taggable.get(Tags.Enabled));
+
+      Set<Tag<?>> actual = new HashSet<>();
+      for (Tag<?> tag : taggable.tags()) {
+         actual.add(tag);
+      }
+      assertEquals(expected, actual);
+   }
+
+   @Test
+   public void lazyValuesAreFetchedOnce() {
+      final int[] fetches = new int[1];
+      TaggableBase taggable = new TaggableBase() {
+         @Override
+         protected <T> T fetch(Tag<T> tag) {
+            fetches[0]++;
+            return null;
+         }
+      };
+      assertEquals("none", taggable.get(Tags.Title, "none"));
+      assertEquals("none", taggable.get(Tags.Title, "none"));
+      assertEquals(1, fetches[0]);
+   }
+
+   @Test
+   public void expensiveTagsAreOnlyFetchedOnDemand() {
+      final Tag<String> expensive = Tag.from("TaggableBaseTestExpensive", String.class, Tag.Cost.NATIVE_CALL);
+      final Set<Tag<?>> fetched = new HashSet<>();
+      TaggableBase taggable = new TaggableBase() {
+         @Override
+         protected <T> T fetch(Tag<T> tag) {
+            fetched.add(tag);
+            return tag.type().cast(tag.equals(Tags.Title) ? "title" : tag.equals(expensive) ? "expensive" : null);
+         }
+
+         @Override
+         protected Set<Tag<?>> tagDomain() {
+            Set<Tag<?>> domain = new HashSet<>();
+            domain.add(Tags.Title);
+            domain.add(Tags.HitTester);
+            domain.add(expensive);
+            return domain;
+         }
+      };
+      TagFetchCounter.drain();
+
+      assertEquals(setOf(Tags.Title), setOf(taggable.tags()));
+      assertFalse("The hit tester shall not be fetched by tags()", fetched.contains(Tags.HitTester));
+
+      assertNull(taggable.get(Tags.HitTester, null));
+      assertTrue("The hit tester shall be fetched when requested", fetched.contains(Tags.HitTester));
+      assertEquals("expensive", taggable.get(expensive));
+      assertEquals("Tags read through get do not change tags()", setOf(Tags.Title), setOf(taggable.tags()));
+      EnumMap<Tag.Cost, Long> fetches = TagFetchCounter.drain();
+      assertEquals(Long.valueOf(1), fetches.get(Tag.Cost.CHEAP));
+      assertEquals(Long.valueOf(2), fetches.get(Tag.Cost.NATIVE_CALL));
+
+      assertEquals(setOf(Tags.Title, expensive), setOf(taggable.tags(Tag.Cost.NATIVE_CALL)));
+      assertEquals(setOf(Tags.Title, expensive), setOf(taggable.allTags()));
+      assertEquals("Listing the tags does not fetch them again", Long.valueOf(0), TagFetchCounter.drain().get(Tag.Cost.NATIVE_CALL));
+   }
+
+   private static Set<Tag<?>> setOf(Tag<?>... tags) {
+      return new HashSet<>(Arrays.asList(tags));
+   }
+
+   private static Set<Tag<?>> setOf(Iterable<Tag<?>> tags) {
+      Set<Tag<?>> ret = new HashSet<>();
+      for (Tag<?> tag : tags) {
+         ret.add(tag);
+      }
+      return ret;
+   }
+
+   @Test
+   public void serializationRoundTrip() throws Exception {
+      StdWidget widget = new StdWidget();
+      widget.set(Tags.Title, "title");
+      widget.setDouble(Tags.ZIndex, 1.0);
+      widget.remove(Tags.Desc);
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+         oos.writeObject(widget);
+      }
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+         StdWidget copy = (StdWidget) ois.readObject();
+         assertEquals("title", copy.get(Tags.Title));
+         assertEquals(1.0, copy.getDouble(Tags.ZIndex, 0), 0);
+         assertEquals("desc", copy.get(Tags.Desc, "desc"));
+      }
+   }
+}
@@ -0,0 +1,201 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2013, 2014, 2015, 2016, 2017 Universitat Politecnica de Valencia - www.upv.es
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+
+package org.testar.monkey.alayer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.Util;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the flattened widget arrays against the widget iterators.
+ */
+public class WidgetArrayTest {
+
+   private static class Node extends StdWidget {
+      private static final long serialVersionUID = 1L;
+      final List<Widget> children = new ArrayList<>();
+      Widget parent;
+
+      Node add(Node child) {
+         children.add(child);
+         child.parent = this;
+         return child;
+      }
+
+      public Widget parent() { return parent; }
+      public Widget child(int i) { return children.get(i); }
+      public int childCount() { return children.size(); }
+   }
+
+   private static class TreeState extends StdState {
+      private static final long serialVersionUID = 1L;
+      final Node top = new Node();
+
+      public Widget child(int i) { return top.child(i); }
+      public int childCount() { return top.childCount(); }
+   }
+
+   // a random tree of the given size, with the widget number as title
+   private static TreeState tree(int size, long seed) {
+      Random random = new Random(seed);
+      TreeState state = new TreeState();
+      state.set(Tags.Title, "0");
+      List<Node> nodes = new ArrayList<>();
+      nodes.add(state.top);
+      for (int i = 1; i < size; i++) {
+         Node child = nodes.get(random.nextInt(nodes.size())).add(new Node());
+         child.set(Tags.Title, String.valueOf(i));
+         nodes.add(child);
+      }
+      return state;
+   }
+
+   private static List<Widget> iterate(Iterator<Widget> iterator) {
+      List<Widget> widgets = new ArrayList<>();
+      iterator.forEachRemaining(widgets::add);
+      return widgets;
+   }
+
+   @Test
+   public void ordersMatchTheNavigators() {
+      for (int size : new int[]{1, 2, 50, 1000}) {
+         TreeState state = tree(size, size);
+         WidgetArray widgets = state.widgets();
+         assertEquals(size, widgets.size());
+
+         List<Widget> breadthFirst = iterate(new WidgetIterator(state));
+         assertEquals(breadthFirst, widgets.asList());
+         assertEquals(breadthFirst, iterate(state.iterator()));
+         assertEquals(breadthFirst, state.stream().collect(Collectors.toList()));
+
+         List<Widget> preOrder = iterate(new WidgetIterator(state, new DFNavigator()));
+         assertEquals(preOrder, widgets.preOrderStream().collect(Collectors.toList()));
+         for (int i = 0; i < size; i++) {
+            assertSame(breadthFirst.get(i), widgets.get(i));
+            assertSame(preOrder.get(i), widgets.preOrder(i));
+         }
+      }
+      assertEquals(0, WidgetArray.EMPTY.size());
+      assertFalse(WidgetArray.EMPTY.iterator().hasNext());
+   }
+
+   // a state that keeps its widgets until its tree changes, like the states of the platforms
+   private static class CachingState extends TreeState {
+      private static final long serialVersionUID = 1L;
+      private transient WidgetArray widgets;
+
+      @Override
+      public WidgetArray widgets() {
+         if (widgets == null) {
+            widgets = WidgetArray.of(this);
+         }
+         return widgets;
+      }
+
+      Node add(Shape shape) {
+         Node child = top.add(new Node());
+         child.set(Tags.Shape, shape);
+         child.set(Tags.HitTester, new ShapeHitTester(shape));
+         widgets = null;
+         return child;
+      }
+   }
+
+   private static class ShapeHitTester implements HitTester {
+      private static final long serialVersionUID = 1L;
+      private final Shape shape;
+
+      ShapeHitTester(Shape shape) { this.shape = shape; }
+
+      public boolean apply(double x, double y) { return shape.contains(x, y); }
+      public boolean apply(double x, double y, boolean obscuredByChildFeature) { return apply(x, y); }
+   }
+
+   @Test
+   public void theSpatialIndexIsKeptWithTheWidgets() {
+      CachingState first = new CachingState();
+      Node a = first.add(Rect.from(0, 0, 10, 10));
+      CachingState second = new CachingState();
+      Node b = second.add(Rect.from(0, 0, 10, 10));
+
+      // queries on several states do not evict each other's index
+      SpatialIndex<Widget> index = first.spatialIndex();
+      assertEquals(Collections.singleton(a), Util.widgetsFromPoint(first, 5, 5));
+      assertEquals(Collections.singleton(b), Util.widgetsFromPoint(second, 5, 5));
+      assertSame(index, first.spatialIndex());
+      assertSame(index, Util.spatialIndex(first));
+
+      // a change of the widget tree drops the index with the widgets
+      Node c = first.add(Rect.from(20, 20, 10, 10));
+      assertNotSame(index, first.spatialIndex());
+      assertEquals(Collections.singleton(c), Util.widgetsFromPoint(first, 25, 25));
+      assertEquals(new HashSet<>(Arrays.asList(a, c)), Util.widgetsFromArea(first, Rect.from(5, 5, 20, 20)));
+      // the state itself has no shape, so it is not in the index
+      assertEquals(Collections.singletonList((Widget) first), first.widgets().unshaped());
+   }
+
+   /**
+    * Benchmark of a pass over all the widgets of a large state, as the oracles and action derivation make.
+    */
+   @Ignore("Benchmark, run on demand")
+   @Test
+   public void benchmarkTraversals() {
+      TreeState state = tree(100000, 1);
+      int passes = 20;
+      long titles = 0;
+
+      long start = System.nanoTime();
+      for (int pass = 0; pass < passes; pass++) {
+         for (Widget w : Util.makeIterable(new WidgetIterator(state))) {
+            titles += w.get(Tags.Title).length();
+         }
+      }
+      long iterator = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      WidgetArray widgets = state.widgets();
+      for (int pass = 0; pass < passes; pass++) {
+         for (int i = 0; i < widgets.size(); i++) {
+            titles -= widgets.get(i).get(Tags.Title).length();
+         }
+      }
+      long array = System.nanoTime() - start;
+
+      System.out.println(String.format("Pass over 100000 widgets: widget iterator %.2f ms, widget array %.2f ms (flattened once)",
+         iterator / 1e6 / passes, array / 1e6 / passes));
+      assertEquals(0, titles);
+   }
+}
@@ -0,0 +1,217 @@
+package org.testar.serialisation;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.AWTCanvas;
+import org.testar.monkey.alayer.FrameContainer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the differential screenshots: frames that only store the tiles that changed.
+ */
+public class DifferentialScreenshotTest {
+
+    /**
+     * The screenshots of a session on a mostly static application: every step shows a tooltip,
+     * selects a row or types in a text field.
+     */
+    private static List<BufferedImage> session(int width, int height, int steps, long seed) {
+        BufferedImage base = ScreenshotCodecTest.guiScreenshot(width, height, seed);
+        Random random = new Random(seed);
+        List<BufferedImage> screenshots = new ArrayList<>();
+        StringBuilder typed = new StringBuilder();
+        int selectedRow = 0;
+        for (int step = 0; step < steps; step++) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            g.drawImage(base, 0, 0, null);
+            g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+            switch (step % 3) {
+                case 0:
+                    int x = random.nextInt(width - 160);
+                    int y = random.nextInt(height - 30);
+                    g.setColor(new Color(255, 255, 225));
+                    g.fillRect(x, y, 150, 20);
+                    g.setColor(Color.BLACK);
+                    g.drawRect(x, y, 150, 20);
+                    g.drawString("Tooltip of widget " + random.nextInt(1000), x + 4, y + 14);
+                    break;
+                case 1:
+                    selectedRow = random.nextInt(10);
+                    break;
+                default:
+                    typed.append((char) ('a' + random.nextInt(26)));
+                    break;
+            }
+            g.setColor(new Color(51, 153, 255, 80));
+            g.fillRect(10, 90 + selectedRow * 18, width / 2, 18);
+            g.setColor(Color.WHITE);
+            g.fillRect(10, height - 18, 300, 16);
+            g.setColor(Color.BLACK);
+            g.drawString(typed.toString(), 12, height - 6);
+            g.dispose();
+            screenshots.add(image);
+        }
+        return screenshots;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertArrayEquals(expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth()),
+                actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0, actual.getWidth()));
+    }
+
+    @After
+    public void reset() {
+        ScreenshotSerialiser.setDifferential(false);
+    }
+
+    @Test
+    public void framesAreReconstructedInAnyOrder() throws IOException {
+        List<BufferedImage> screenshots = session(300, 200, 30, 1);
+        // a resized window starts with a keyframe
+        screenshots.addAll(session(260, 180, 5, 2));
+        File container = File.createTempFile("frames", "." + FrameContainer.EXTENSION);
+
+        int keyframes = 0;
+        try (FrameContainer.Writer writer = new FrameContainer.Writer(new FileOutputStream(container), 10, 1)) {
+            for (BufferedImage screenshot : screenshots) {
+                FrameContainer.Frame frame = writer.diff(screenshot);
+                keyframes += frame.isKeyframe() ? 1 : 0;
+                writer.write(frame);
+            }
+        }
+        assertEquals("Keyframes at 0, 10, 20 and at the resize", 4, keyframes);
+
+        try (FrameContainer.Reader reader = new FrameContainer.Reader(container)) {
+            assertEquals(screenshots.size(), reader.getFrameCount());
+            Random random = new Random(3);
+            for (int i = 0; i < 40; i++) {
+                int frame = random.nextInt(screenshots.size());
+                assertSamePixels(screenshots.get(frame), reader.read(frame));
+            }
+            for (int frame = 0; frame < screenshots.size(); frame++) {
+                assertSamePixels(screenshots.get(frame), AWTCanvas.fromFrame(reader, frame).image());
+            }
+        }
+        assertSamePixels(screenshots.get(17), AWTCanvas.fromFrame(FrameContainer.reference(container.getPath(), 17)).image());
+
+        // an interrupted run leaves a partly written frame, which is ignored
+        byte[] bytes = Files.readAllBytes(container.toPath());
+        Files.write(container.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+        try (FrameContainer.Reader reader = new FrameContainer.Reader(container)) {
+            assertEquals(screenshots.size() - 1, reader.getFrameCount());
+        }
+    }
+
+    @Test
+    public void framesAfterAMissingFrameKeepTheirNumbers() throws IOException {
+        List<BufferedImage> screenshots = session(300, 200, 12, 6);
+        File container = File.createTempFile("frames", "." + FrameContainer.EXTENSION);
+
+        try (FrameContainer.Writer writer = new FrameContainer.Writer(new FileOutputStream(container), 50, 1)) {
+            for (BufferedImage screenshot : screenshots) {
+                FrameContainer.Frame frame = writer.diff(screenshot);
+                // frame 4 could not be queued, so frame 5 cannot be stored as the difference with it
+                if (frame.getNumber() != 4) {
+                    writer.write(frame);
+                }
+            }
+        }
+
+        try (FrameContainer.Reader reader = new FrameContainer.Reader(container)) {
+            assertEquals(screenshots.size() - 1, reader.getFrameCount());
+            for (int frame = screenshots.size() - 1; frame >= 0; frame--) {
+                if (frame == 4) {
+                    try {
+                        reader.read(frame);
+                        fail("Frame 4 was not written");
+                    } catch (IOException e) {
+                        // expected
+                    }
+                } else {
+                    assertSamePixels(screenshots.get(frame), reader.read(frame));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void serialiserStoresStateshotsAsFrames() throws IOException {
+        File folder = Files.createTempDirectory("scrshots").toFile();
+        List<BufferedImage> screenshots = session(320, 240, 4, 4);
+
+        ScreenshotSerialiser.setDifferential(true);
+        ScreenshotSerialiser.start(folder.getPath(), "sequence_1");
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < screenshots.size(); i++) {
+            paths.add(ScreenshotSerialiser.saveStateshot("s" + i, new AWTCanvas(0, 0, screenshots.get(i), AWTCanvas.StorageFormat.PNG, 1)));
+        }
+        String action = ScreenshotSerialiser.saveActionshot("s0", "a0",
+                new AWTCanvas(0, 0, screenshots.get(0).getSubimage(10, 10, 40, 20), AWTCanvas.StorageFormat.PNG, 1));
+        ScreenshotSerialiser.exit();
+
+        for (int i = 0; i < paths.size(); i++) {
+            assertTrue(FrameContainer.isReference(paths.get(i)));
+            assertEquals(i, FrameContainer.frameOf(paths.get(i)));
+            assertTrue(ScreenshotSerialiser.isStored(paths.get(i)));
+            assertSamePixels(screenshots.get(i), AWTCanvas.fromFrame(paths.get(i)).image());
+            assertSamePixels(screenshots.get(i), ScreenshotSerialiser.getFrame(paths.get(i)).image());
+        }
+        assertFalse("Action shots are still stored as blobs", FrameContainer.isReference(action));
+        assertTrue(new File(action).exists());
+        List<String> index = Files.readAllLines(new File(folder, "sequence_1" + File.separator + ScreenshotSerialiser.INDEX).toPath(), StandardCharsets.UTF_8);
+        assertTrue(index.contains("s2\t" + ScreenshotSerialiser.FRAMES + "#2"));
+    }
+
+    /**
+     * Benchmark of a mostly static desktop application: the screenshots of every step saved as PNG files,
+     * against the frames of one container.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkDifferentialScreenshots() throws IOException {
+        List<BufferedImage> screenshots = session(1280, 800, 100, 5);
+        ScreenshotCodec png = ScreenshotCodec.from("png:1");
+
+        long pngBytes = 0;
+        long start = System.nanoTime();
+        for (BufferedImage screenshot : screenshots) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            png.encode(screenshot, bytes);
+            pngBytes += bytes.size();
+        }
+        long pngTime = System.nanoTime() - start;
+
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        start = System.nanoTime();
+        try (FrameContainer.Writer writer = new FrameContainer.Writer(container)) {
+            for (BufferedImage screenshot : screenshots) {
+                writer.write(writer.diff(screenshot));
+            }
+        }
+        long framesTime = System.nanoTime() - start;
+
+        System.out.println(String.format("%d screenshots of 1280x800: png:1 %d KB, %d ms per step; frames %d KB, %d ms per step",
+                screenshots.size(), pngBytes / 1024, pngTime / screenshots.size() / 1_000_000,
+                container.size() / 1024, framesTime / screenshots.size() / 1_000_000));
+        assertTrue("The frames should take at least five times less space", container.size() * 5 < pngBytes);
+        assertTrue("The frames should take less time than the PNG files", framesTime < pngTime);
+    }
+}
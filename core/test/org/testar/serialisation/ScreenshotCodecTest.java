@@ -0,0 +1,179 @@
+package org.testar.serialisation;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.AWTCanvas;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the screenshot codecs on synthetic GUI screenshots.
+ */
+public class ScreenshotCodecTest {
+
+    /**
+     * Draws something that looks like a desktop application: flat panels, a toolbar, lines of text,
+     * a table and a photo-like area that does not compress well.
+     */
+    static BufferedImage guiScreenshot(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(new Color(240, 240, 240));
+        g.fillRect(0, 0, width, height);
+        g.setPaint(new GradientPaint(0, 0, new Color(60, 90, 160), 0, 30, new Color(90, 130, 200)));
+        g.fillRect(0, 0, width, 30);
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 14));
+        g.drawString("TESTAR - Synthetic application", 10, 20);
+        for (int x = 10; x < width - 40; x += 40) {
+            g.setColor(new Color(200, 200, 210));
+            g.fillRoundRect(x, 40, 32, 32, 6, 6);
+            g.setColor(new Color(random.nextInt(200), random.nextInt(200), random.nextInt(200)));
+            g.fillOval(x + 8, 48, 16, 16);
+        }
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        int tableWidth = width / 2;
+        for (int y = 90, row = 0; y < height - 20; y += 18, row++) {
+            g.setColor(row % 2 == 0 ? Color.WHITE : new Color(245, 245, 250));
+            g.fillRect(10, y, tableWidth, 18);
+            g.setColor(Color.DARK_GRAY);
+            g.drawString("Row " + row + "   item " + random.nextInt(100000) + "   " + (random.nextBoolean() ? "enabled" : "disabled"), 14, y + 13);
+        }
+        int photoX = tableWidth + 30;
+        int photoWidth = Math.min(width - photoX - 10, 400);
+        for (int y = 90; y < Math.min(height - 20, 390); y++) {
+            for (int x = photoX; x < photoX + photoWidth; x++) {
+                int base = (x * 3 + y * 2) & 0xff;
+                image.setRGB(x, y, 0xff000000 | (base << 16) | (((base + random.nextInt(24)) & 0xff) << 8) | ((255 - base + random.nextInt(24)) & 0xff));
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private static byte[] encode(ScreenshotCodec codec, BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(image, bytes);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void formatsAreParsed() {
+        assertSame(ScreenshotCodec.PNG, ScreenshotCodec.from("png"));
+        assertEquals("png:3", ScreenshotCodec.from("PNG:3").toString());
+        assertEquals("qoi", ScreenshotCodec.from(" qoi ").toString());
+        assertEquals("jpeg:0.8", ScreenshotCodec.from("jpeg:0.8").toString());
+        assertEquals("jpg", ScreenshotCodec.from("jpg:0.5").extension());
+        assertFalse(ScreenshotCodec.from("qoi").isViewable());
+        for (String format : new String[]{"gif", "png:fast", "qoi:1", ""}) {
+            try {
+                ScreenshotCodec.from(format);
+                fail("Expected <" + format + "> to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void losslessCodecsKeepEveryPixel() throws IOException {
+        BufferedImage opaque = guiScreenshot(320, 240, 1);
+        BufferedImage translucent = guiScreenshot(97, 61, 2);
+        translucent.setRGB(5, 5, 0x80112233);
+        translucent.setRGB(6, 5, 0x00000000);
+        translucent.setRGB(7, 5, 0x00000000);
+        BufferedImage rgb = new BufferedImage(50, 40, BufferedImage.TYPE_INT_RGB);
+        rgb.getGraphics().drawImage(opaque, 0, 0, null);
+
+        for (BufferedImage image : new BufferedImage[]{opaque, translucent, rgb, opaque.getSubimage(13, 17, 100, 50)}) {
+            for (int level = 0; level <= 9; level += 3) {
+                byte[] png = encode(new PngCodec(level), image);
+                assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(png)));
+            }
+            byte[] qoi = encode(new QoiCodec(), image);
+            assertSamePixels(image, QoiCodec.decode(new ByteArrayInputStream(qoi)));
+        }
+    }
+
+    @Test
+    public void jpegIsReadable() throws IOException {
+        BufferedImage image = guiScreenshot(200, 100, 3);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encode(new JpegCodec(0.7), image)));
+        assertEquals(200, decoded.getWidth());
+        assertEquals(100, decoded.getHeight());
+    }
+
+    @Test
+    public void screenshotsAreEncodedOnceAndShared() throws IOException {
+        File folder = Files.createTempDirectory("scrshots").toFile();
+        AWTCanvas canvas = new AWTCanvas(0, 0, guiScreenshot(200, 100, 4), AWTCanvas.StorageFormat.PNG, 1);
+        ScreenshotSerialiser.setCodec(new PngCodec(1));
+        try {
+            ScreenshotSerialiser.start(folder.getPath(), "sequence");
+            String path = ScreenshotSerialiser.saveStateshot("state", canvas);
+            assertTrue(path.endsWith(".png"));
+            byte[] shared = ScreenshotSerialiser.getScreenshotBytes(path);
+            assertSamePixels(canvas.image(), ImageIO.read(new ByteArrayInputStream(shared)));
+            ScreenshotSerialiser.exit();
+            assertArrayEquals(shared, Files.readAllBytes(new File(path).toPath()));
+            assertArrayEquals(shared, ScreenshotSerialiser.getScreenshotBytes(path));
+
+            ScreenshotSerialiser.setCodec(new QoiCodec());
+            ScreenshotSerialiser.start(folder.getPath(), "sequence");
+            String qoiPath = ScreenshotSerialiser.saveStateshot("state", canvas);
+            assertTrue(qoiPath.endsWith(".qoi"));
+            assertNull("Browsers cannot show QOI", ScreenshotSerialiser.getScreenshotBytes(qoiPath));
+            ScreenshotSerialiser.exit();
+            assertSamePixels(canvas.image(), QoiCodec.decode(new ByteArrayInputStream(Files.readAllBytes(new File(qoiPath).toPath()))));
+        } finally {
+            ScreenshotSerialiser.setCodec(ScreenshotCodec.PNG);
+        }
+    }
+
+    /**
+     * Benchmark of encode time and size for every codec, on full HD synthetic GUI screenshots.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkCodecsOnGuiScreenshots() throws IOException {
+        BufferedImage[] screenshots = {guiScreenshot(1920, 1080, 5), guiScreenshot(1920, 1080, 6)};
+        ScreenshotCodec[] codecs = {ScreenshotCodec.PNG, new PngCodec(1), new PngCodec(6), new QoiCodec(), new JpegCodec(0.8)};
+        int rounds = 5;
+        for (ScreenshotCodec codec : codecs) {
+            encode(codec, screenshots[0]); // warm up
+            long size = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                for (BufferedImage screenshot : screenshots) {
+                    size += encode(codec, screenshot).length;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            int encodes = rounds * screenshots.length;
+            System.out.println("Screenshot codec " + codec + ": " + (elapsed / encodes / 1000000) + " ms and " + (size / encodes / 1024) + " KB per 1920x1080 screenshot");
+            assertTrue(size > 0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.testar.serialisation;
+
+import org.junit.After;
+import org.junit.Test;
+import org.testar.monkey.alayer.AWTCanvas;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the content addressed screenshot store.
+ */
+public class ScreenshotStoreTest {
+
+    private static AWTCanvas canvas(BufferedImage image) {
+        return new AWTCanvas(0, 0, image, AWTCanvas.StorageFormat.PNG, 1);
+    }
+
+    // the same screenshot, with another time in the corner
+    private static BufferedImage withClock(BufferedImage image, String time) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.setColor(new Color(60, 90, 160));
+        g.fillRect(image.getWidth() - 60, 5, 55, 20);
+        g.setColor(Color.WHITE);
+        g.drawString(time, image.getWidth() - 55, 20);
+        g.dispose();
+        return copy;
+    }
+
+    @After
+    public void reset() {
+        ScreenshotSerialiser.setSimilarityDistance(-1);
+    }
+
+    @Test
+    public void identicalScreenshotsAreStoredOnce() throws IOException {
+        File folder = Files.createTempDirectory("scrshots").toFile();
+        BufferedImage image = ScreenshotCodecTest.guiScreenshot(400, 300, 1);
+
+        ScreenshotSerialiser.start(folder.getPath(), "sequence_1");
+        String first = ScreenshotSerialiser.saveStateshot("s1", canvas(image));
+        String second = ScreenshotSerialiser.saveStateshot("s2", canvas(ScreenshotCodecTest.guiScreenshot(400, 300, 1)));
+        String action = ScreenshotSerialiser.saveActionshot("s1", "a1", canvas(image.getSubimage(10, 10, 50, 20)));
+        String other = ScreenshotSerialiser.saveStateshot("s3", canvas(withClock(image, "10:42")));
+        assertEquals(first, second);
+        assertNotEquals(first, action);
+        assertNotEquals(first, other);
+        assertEquals(action, ScreenshotSerialiser.getActionshotPath("s1", "a1"));
+        ScreenshotSerialiser.exit();
+
+        // the next sequence of the run shares the blobs
+        ScreenshotSerialiser.start(folder.getPath(), "sequence_2");
+        assertEquals(first, ScreenshotSerialiser.saveStateshot("s4", canvas(image)));
+        assertNull(ScreenshotSerialiser.getActionshotPath("s1", "a1"));
+        ScreenshotSerialiser.exit();
+
+        assertEquals(3, new File(folder, ScreenshotStore.BLOBS).list().length);
+        List<String> index = Files.readAllLines(new File(folder, "sequence_1" + File.separator + ScreenshotSerialiser.INDEX).toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, index.size());
+        assertEquals("s1\t" + new File(first).getName(), index.get(0));
+        assertEquals("s2\t" + new File(first).getName(), index.get(1));
+        assertEquals("s1_a1\t" + new File(action).getName(), index.get(2));
+    }
+
+    @Test
+    public void nearDuplicatesAreStoredOnceWhenEnabled() throws IOException {
+        BufferedImage image = ScreenshotCodecTest.guiScreenshot(800, 600, 2);
+        BufferedImage later = withClock(image, "10:43");
+        BufferedImage different = ScreenshotCodecTest.guiScreenshot(800, 600, 3);
+        Graphics2D g = different.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, 400, 600);
+        g.dispose();
+
+        File folder = Files.createTempDirectory("scrshots").toFile();
+        ScreenshotSerialiser.setSimilarityDistance(4);
+        ScreenshotSerialiser.start(folder.getPath(), "sequence_1");
+        String first = ScreenshotSerialiser.saveStateshot("s1", canvas(withClock(image, "10:42")));
+        assertEquals(first, ScreenshotSerialiser.saveStateshot("s2", canvas(later)));
+        assertNotEquals(first, ScreenshotSerialiser.saveStateshot("s3", canvas(different)));
+        ScreenshotSerialiser.exit();
+
+        File exact = Files.createTempDirectory("scrshots").toFile();
+        ScreenshotSerialiser.setSimilarityDistance(-1);
+        ScreenshotSerialiser.start(exact.getPath(), "sequence_1");
+        assertNotEquals(ScreenshotSerialiser.saveStateshot("s1", canvas(withClock(image, "10:42"))),
+            ScreenshotSerialiser.saveStateshot("s2", canvas(later)));
+        ScreenshotSerialiser.exit();
+    }
+
+    @Test
+    public void nearDuplicatesAreFoundInTheBuckets() throws IOException {
+        File folder = Files.createTempDirectory("scrshots").toFile();
+        Random random = new Random(6);
+        for (int distance = 0; distance < ScreenshotStore.MAX_SEGMENTS; distance++) {
+            ScreenshotStore store = new ScreenshotStore(folder.getPath(), distance);
+            long[] hashes = new long[500];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = random.nextLong();
+                store.add("blob" + i, 800, 600, hashes[i]);
+            }
+            for (int i = 0; i < hashes.length; i++) {
+                // flip as many random bits as the distance allows
+                long near = hashes[i];
+                while (Long.bitCount(near ^ hashes[i]) < distance) {
+                    near ^= 1L << random.nextInt(64);
+                }
+                String key = store.nearDuplicate(800, 600, near);
+                assertNotNull("Distance " + distance + ", blob " + i, key);
+                long found = hashes[Integer.parseInt(key.substring("blob".length()))];
+                assertTrue(Long.bitCount(found ^ near) <= distance);
+                assertNull("Another size is no near duplicate", store.nearDuplicate(600, 800, near));
+            }
+        }
+    }
+
+    @Test
+    public void differenceHashFollowsTheLayout() {
+        BufferedImage image = ScreenshotCodecTest.guiScreenshot(640, 480, 4);
+        long hash = ScreenshotStore.dHash(640, 480, ScreenshotCodec.pixels(image));
+        long clock = ScreenshotStore.dHash(640, 480, ScreenshotCodec.pixels(withClock(image, "23:59")));
+        long other = ScreenshotStore.dHash(640, 480, ScreenshotCodec.pixels(ScreenshotCodecTest.guiScreenshot(640, 480, 5)));
+        BufferedImage inverted = new BufferedImage(640, 480, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 480; y++) {
+            for (int x = 0; x < 640; x++) {
+                inverted.setRGB(x, y, image.getRGB(x, y) ^ 0x00ffffff);
+            }
+        }
+        long invertedHash = ScreenshotStore.dHash(640, 480, ScreenshotCodec.pixels(inverted));
+
+        assertTrue(Long.bitCount(hash ^ clock) <= 2);
+        assertTrue(Long.bitCount(hash ^ other) <= 8);
+        assertTrue(Long.bitCount(hash ^ invertedHash) > 32);
+        assertNotEquals(ScreenshotStore.pixelHash(640, 480, ScreenshotCodec.pixels(image)),
+            ScreenshotStore.pixelHash(640, 480, ScreenshotCodec.pixels(withClock(image, "23:59"))));
+    }
+}
@@ -0,0 +1,197 @@
+package org.testar.serialisation;
+
+import org.junit.Test;
+import org.testar.monkey.alayer.TaggableBase;
+import org.testar.monkey.alayer.Tags;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the serialisation pipeline with in-memory sinks.
+ */
+public class SerialisationPipelineTest {
+
+    private static class ListSink implements SerialisationPipeline.Sink<String> {
+        final List<String> records = Collections.synchronizedList(new ArrayList<>());
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        volatile boolean closed;
+        final long delay;
+
+        ListSink(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public long write(String record) {
+            threads.add(Thread.currentThread().getName());
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            records.add(record);
+            return record.length();
+        }
+
+        @Override
+        public long close() {
+            closed = true;
+            return 1;
+        }
+    }
+
+    @Test
+    public void orderedChannelKeepsTheOrderOfEveryProducer() throws Exception {
+        SerialisationPipeline pipeline = new SerialisationPipeline(4);
+        ListSink sink = new ListSink(0);
+        SerialisationPipeline.Channel<String> channel = pipeline.open("ordered", sink, true);
+
+        int producers = 4;
+        int recordsPerProducer = 5000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < recordsPerProducer; i++) {
+                    assertTrue(channel.submit(producer + ":" + i));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        channel.close().get(10, TimeUnit.SECONDS);
+
+        assertTrue(sink.closed);
+        assertEquals(producers * recordsPerProducer, sink.records.size());
+        int[] next = new int[producers];
+        long bytes = 1;
+        for (String record : sink.records) {
+            String[] parts = record.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+            bytes += record.length();
+        }
+        assertEquals(producers * recordsPerProducer, channel.getRecordsWritten());
+        assertEquals(bytes, channel.getBytesWritten());
+        assertEquals(0, channel.getQueueDepth());
+        assertTrue(channel.getMaxQueueDepth() > 0);
+        assertTrue(channel.getFlushLatency() >= 0);
+    }
+
+    @Test
+    public void unorderedChannelIsWrittenBySeveralWorkers() throws Exception {
+        SerialisationPipeline pipeline = new SerialisationPipeline(4);
+        ListSink sink = new ListSink(5);
+        SerialisationPipeline.Channel<String> channel = pipeline.open("unordered", sink, false);
+        for (int i = 0; i < 40; i++) {
+            channel.submit("record" + i);
+        }
+        channel.close().get(10, TimeUnit.SECONDS);
+
+        assertEquals(40, sink.records.size());
+        assertEquals(40, new HashSet<>(sink.records).size());
+        assertTrue("Expected more than one worker, got " + sink.threads, sink.threads.size() > 1);
+    }
+
+    @Test
+    public void closingADrainedChannelCompletesImmediately() {
+        SerialisationPipeline pipeline = new SerialisationPipeline(1);
+        ListSink sink = new ListSink(0);
+        SerialisationPipeline.Channel<String> channel = pipeline.open("empty", sink, true);
+
+        CompletableFuture<Void> completion = channel.close();
+        assertTrue(completion.isDone());
+        assertTrue(sink.closed);
+        assertFalse(channel.isOpen());
+        assertFalse(channel.submit("too late"));
+        assertSame(completion, channel.close());
+    }
+
+    @Test
+    public void sinkFailuresAreLogged() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        LogSerialiser.start(new PrintStream(log, true), LogSerialiser.LogLevel.Critical.significance());
+        try {
+            SerialisationPipeline pipeline = new SerialisationPipeline(1);
+            SerialisationPipeline.Channel<String> channel = pipeline.open("failing", new SerialisationPipeline.Sink<String>() {
+                @Override
+                public long write(String record) {
+                    throw new IllegalStateException("cannot write " + record);
+                }
+
+                @Override
+                public long close() {
+                    throw new IllegalStateException("cannot close");
+                }
+            }, true);
+            assertTrue(channel.submit("record"));
+            channel.close().get(10, TimeUnit.SECONDS);
+        } finally {
+            LogSerialiser.finish().get(10, TimeUnit.SECONDS);
+        }
+        String logged = log.toString();
+        assertTrue(logged, logged.contains("failing failed writing a record: java.lang.IllegalStateException: cannot write record"));
+        assertTrue(logged, logged.contains("failing failed closing: java.lang.IllegalStateException: cannot close"));
+    }
+
+    @Test
+    public void workersCanBeReconfigured() throws Exception {
+        SerialisationPipeline pipeline = new SerialisationPipeline(4);
+        SerialisationPipeline.Channel<String> first = pipeline.open("first", new ListSink(1), false);
+        for (int i = 0; i < 20; i++) {
+            first.submit("record" + i);
+        }
+        first.close().get(10, TimeUnit.SECONDS);
+
+        pipeline.setWorkers(1);
+        ListSink sink = new ListSink(1);
+        SerialisationPipeline.Channel<String> second = pipeline.open("second", sink, false);
+        for (int i = 0; i < 20; i++) {
+            second.submit("record" + i);
+        }
+        second.close().get(10, TimeUnit.SECONDS);
+        assertEquals(20, sink.records.size());
+    }
+
+    @Test
+    public void testSerialiserWritesReadableSequences() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TestSerialiser.start(out);
+        for (int i = 0; i < 40; i++) {
+            TaggableBase fragment = new TaggableBase();
+            fragment.set(Tags.Title, "fragment" + i);
+            TestSerialiser.write(fragment);
+        }
+        TestSerialiser.exit();
+
+        assertTrue(TestSerialiser.isSavingQueueEmpty());
+        assertEquals(out.size(), TestSerialiser.getChannel().getBytesWritten());
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (int i = 0; i < 40; i++) {
+                assertEquals("fragment" + i, ((TaggableBase) in.readObject()).get(Tags.Title));
+            }
+        }
+    }
+}
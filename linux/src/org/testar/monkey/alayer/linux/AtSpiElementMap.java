@@ -31,6 +31,7 @@
 package org.testar.monkey.alayer.linux;
 
 import org.testar.monkey.Assert;
+import org.testar.monkey.alayer.SpatialIndex;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -56,6 +57,10 @@ public class AtSpiElementMap implements Serializable {
     private final List<AtSpiElement> elements = new ArrayList<>();
 
 
+    // The sorted elements from the top down, for the hit tests. It is not serialized, but built again when it is needed.
+    private transient volatile SpatialIndex<AtSpiElement> index = SpatialIndex.<AtSpiElement>newBuilder().build();
+
+
     //endregion
 
 
@@ -92,10 +97,24 @@ public class AtSpiElementMap implements Serializable {
 
 
     /**
-     * Sorts the elements in the map.
+     * Sorts the elements in the map and indexes them for the hit tests.
      */
     void sort() {
         elements.sort(new AtSpiElementComparer());
+        index = buildIndex();
+    }
+
+
+    /**
+     * Builds the index of the elements for the hit tests, in the order of the elements.
+     * @return The index.
+     */
+    private SpatialIndex<AtSpiElement> buildIndex() {
+        SpatialIndex.Builder<AtSpiElement> builder = SpatialIndex.newBuilder();
+        for (AtSpiElement element : elements) {
+            builder.add(element, element.boundingBoxOnScreen);
+        }
+        return builder.build();
     }
 
 
@@ -112,11 +131,13 @@ public class AtSpiElementMap implements Serializable {
      * @return The first top level container element that encompasses a certain point on the screen.
      */
     public AtSpiElement at(double x, double y){
-        for(AtSpiElement element : elements){
-            if(element.boundingBoxOnScreen.contains(x, y))
-                return element;
+        // A deserialized map has no index yet.
+        SpatialIndex<AtSpiElement> current = index;
+        if (current == null) {
+            current = buildIndex();
+            index = current;
         }
-        return null;
+        return current.at(x, y);
     }
 
 
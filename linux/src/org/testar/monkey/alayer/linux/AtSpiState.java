@@ -35,7 +35,7 @@ import org.testar.monkey.Util;
 import org.testar.monkey.alayer.State;
 import org.testar.monkey.alayer.Tags;
 import org.testar.monkey.alayer.Widget;
-import org.testar.monkey.alayer.WidgetIterator;
+import org.testar.monkey.alayer.WidgetArray;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -50,6 +50,16 @@ import java.util.Iterator;
 public class AtSpiState extends AtSpiWidget implements State {
 
 
+    //region Properties
+
+
+    // The flattened widget tree, until the tree changes.
+    private transient volatile WidgetArray widgets;
+
+
+    //endregion
+
+
     //region Constructors
 
 
@@ -75,7 +85,30 @@ public class AtSpiState extends AtSpiWidget implements State {
      */
     @Override
     public Iterator<Widget> iterator() {
-        return new WidgetIterator(this);
+        return widgets().iterator();
+    }
+
+
+    /**
+     * Gets the widgets of the State tree, flattened once until the tree changes.
+     * @return The widgets of the State tree in the order of the iterator.
+     */
+    @Override
+    public WidgetArray widgets() {
+        WidgetArray ret = widgets;
+        if (ret == null) {
+            ret = WidgetArray.of(this);
+            widgets = ret;
+        }
+        return ret;
+    }
+
+
+    /**
+     * Drops the flattened widgets after a change to the State tree.
+     */
+    void treeChanged() {
+        widgets = null;
     }
 
 
@@ -326,7 +326,7 @@ public class AtSpiStateFetcher implements Callable<AtSpiState> {
         //                   used don't implement for now.
         nElement.accessiblePtr = node.accessiblePtr();
         nElement.name = node.name();
-        nElement.description = node.description();
+        // The description is read on demand by AtSpiWidget.
         nElement.toolkitName = node.toolkitName();
         nElement.role = node.role();
 
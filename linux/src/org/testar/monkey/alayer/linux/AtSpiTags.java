@@ -71,7 +71,7 @@ public class AtSpiTags {
 
     // General info.
     public static final Tag<String> AtSpiName = from("AtSpiName", String.class);
-    public static final Tag<String> AtSpiDescription = from("AtSpiDescription", String.class);
+    public static final Tag<String> AtSpiDescription = from("AtSpiDescription", String.class, Tag.Cost.NATIVE_CALL);
     public static final Tag<AtSpiRoles> AtSpiRole = from("AtSpiRole", AtSpiRoles.class);
     public static final Tag<AtSpiElementOrientations> AtSpiOrientation = from("AtSpiOrientation", AtSpiElementOrientations.class);
     public static final Tag<String> AtSpiToolkitName = from("AtSpiToolkitName", String.class);
@@ -108,7 +108,20 @@ public class AtSpiTags {
      * @return The created AtSpiTag.
      */
     private static <T> Tag<T> from(String name, Class<T> valueType){
-        Tag<T> ret = Tag.from(name, valueType);
+        return from(name, valueType, Tag.Cost.CHEAP);
+    }
+
+
+    /**
+     * Creates a new Tag with a name, type and the cost of fetching its value.
+     * @param name The name of the tag.
+     * @param valueType The type of the value associated with the tag.
+     * @param cost The cost of fetching the value of the tag.
+     * @param <T> The type of the value associated with the tag.
+     * @return The created AtSpiTag.
+     */
+    private static <T> Tag<T> from(String name, Class<T> valueType, Tag.Cost cost){
+        Tag<T> ret = Tag.from(name, valueType, cost);
         _tagSet.add(ret);
         return ret;
     }
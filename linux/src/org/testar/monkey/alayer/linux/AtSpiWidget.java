@@ -36,6 +36,7 @@ import org.testar.monkey.Drag;
 import org.testar.monkey.Util;
 import org.testar.monkey.alayer.exceptions.NoSuchTagException;
 import org.testar.monkey.alayer.*;
+import org.testar.monkey.alayer.linux.atspi.AtSpiAccessible;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -60,12 +61,18 @@ public class AtSpiWidget implements Widget, Serializable {
     //region Properties
 
 
+    // The tags defined in Tags and AtSpiTags.
+    private static final TagDomain TAG_DOMAIN = new TagDomain(Tags.tagSet(), AtSpiTags.tagSet());
+
+
     AtSpiState root;
     public AtSpiWidget parent;
     public AtSpiElement element;
 
 
     private Map<Tag<?>, Object> tags = Util.newHashMap();
+    // Per cost, the tags listed by tags(Tag.Cost), until a tag is set or removed.
+    private transient List<Tag<?>>[] listedTags;
     public ArrayList<AtSpiWidget> children = new ArrayList<>();
 
 
@@ -91,6 +98,7 @@ public class AtSpiWidget implements Widget, Serializable {
 
         if(parent != null) {
             parent.children.add(this);
+            root.treeChanged();
         }
 
 
@@ -179,6 +187,7 @@ public class AtSpiWidget implements Widget, Serializable {
         Assert.isTrue(this != root, "You cannot remove the root!");
         assert(parent != null);
         parent.children.remove(this);
+        root.treeChanged();
 
         invalidate(this);
 
@@ -208,6 +217,7 @@ public class AtSpiWidget implements Widget, Serializable {
         parent.children.remove(this);
         atSpiParent.children.add(idx, this);
         parent = atSpiParent;
+        root.treeChanged();
 
     }
 
@@ -516,6 +526,8 @@ public class AtSpiWidget implements Widget, Serializable {
             return defaultValue;
         }
 
+        TagFetchCounter.count(tag);
+
 
         // Retrieve the value for the tag by returning the value from the linked AtSpiElement.
         // Notes:
@@ -584,11 +596,16 @@ public class AtSpiWidget implements Widget, Serializable {
         }else if(tag.equals(AtSpiTags.AtSpiIsFocusable)){
             ret = element.isFocusable;
         }else if(tag.equals(AtSpiTags.AtSpiDescription)){
+            // The description is rarely used - it is read from the accessible when it is requested.
+            if(element.description == null && element.accessiblePtr != 0)
+                element.description = AtSpiAccessible.CreateInstance(element.accessiblePtr).description();
             ret = element.description;
         }
 
 
-        // Cache the value for a next time.
+        // Cache the value for a next time - the listed tags already account for the tags of the domain.
+        if(!tags.containsKey(tag) && !TAG_DOMAIN.contains(tag))
+            listedTags = null;
         tags.put(tag, ret);
 
 
@@ -600,60 +617,35 @@ public class AtSpiWidget implements Widget, Serializable {
 
 
     /**
-     * Gets an iterator for the tags of this widget.
-     * @return An iterator to iterate over the tags of this widget.
+     * Gets the cheap tags of this widget.
+     * @return The cheap tags of this widget that have a value.
      */
     @Override
     public Iterable<Tag<?>> tags() {
+        return tags(Tag.Cost.CHEAP);
+    }
 
 
-        final AtSpiWidget self = this;
-        Assert.notNull(self);
-
-        final Set<Tag<?>> queryTags = new HashSet<>();
-        queryTags.addAll(tags.keySet());
-        queryTags.addAll(Tags.tagSet());
-        queryTags.addAll(AtSpiTags.tagSet());
-
-
-        return () -> new Iterator<Tag<?>>(){
-            Iterator<Tag<?>> i = queryTags.iterator();
-            AtSpiWidget target = self;
-            Tag<?> next;
-
-
-            @SuppressWarnings("Duplicates")
-            private Tag<?> fetchNext(){
-                if(next == null){
-                    while(i.hasNext()){
-                        next = i.next();
-                        if(target.get(next, null) != null)
-                            return next;
-                    }
-                    next = null;
-                }
-                return next;
-            }
-
-
-            public boolean hasNext() {
-                return fetchNext() != null;
-            }
-
-
-            public Tag<?> next() {
-                Tag<?> ret1 = fetchNext();
-                if(ret1 == null)
-                    throw new NoSuchElementException();
-                next = null;
-                return ret1;
-            }
-
-
-            public void remove() { throw new UnsupportedOperationException(); }
-
-
-        };
+    /**
+     * Gets the tags of this widget that cost at most maxCost, fetching them if needed.
+     * @param maxCost The highest cost of the listed tags.
+     * @return The tags of this widget that have a value.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterable<Tag<?>> tags(Tag.Cost maxCost) {
+
+        Assert.notNull(maxCost);
+
+        List<Tag<?>> ret = listedTags == null ? null : listedTags[maxCost.ordinal()];
+        if(ret == null){
+            ret = TAG_DOMAIN.list(this, tags, maxCost);
+            // Listing may have cached a new tag and dropped the listed tags.
+            if(listedTags == null)
+                listedTags = new List[Tag.Cost.values().length];
+            listedTags[maxCost.ordinal()] = ret;
+        }
+        return ret;
 
     }
 
@@ -668,6 +660,7 @@ public class AtSpiWidget implements Widget, Serializable {
     public <T> void set(Tag<T> tag, T value) {
         Assert.notNull(tag, value);
         tags.put(tag, value);
+        listedTags = null;
     }
 
 
@@ -679,6 +672,7 @@ public class AtSpiWidget implements Widget, Serializable {
     public void remove(Tag<?> tag) {
         Assert.notNull(tag);
         tags.put(tag, null);
+        listedTags = null;
     }
 
 
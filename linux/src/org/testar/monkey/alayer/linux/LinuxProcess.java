@@ -34,6 +34,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -67,7 +69,6 @@ public class LinuxProcess extends SUTBase {
 
     private static final String Command_AllProcesses = "ps -axo pid,pcpu,size,comm";
     private static final String Command_KillProcess = "kill %1$d";
-    private static final String Command_FindProcess = "ps -p %1$d -o pid,pcpu,size,comm";
     private static final String Command_FindProcessName = "ps -p %1$d -o pid,cmd";
 
 
@@ -75,8 +76,6 @@ public class LinuxProcess extends SUTBase {
 
 
     private static final int PidIndex = 0;
-    private static final int CpuIndex = 1;
-    private static final int SizeIndex = 2;
     private static final int ProcessNameIndex = 1;
 
     private static final int ProcessInfoNameLength = 2;
@@ -84,6 +83,7 @@ public class LinuxProcess extends SUTBase {
 
 
     private Process _process;
+    private LinuxProcessSampler _sampler;
 
 
     private final Keyboard _kbd = AWTKeyboard.build();
@@ -355,101 +355,74 @@ public class LinuxProcess extends SUTBase {
 
 
     /**
-     * Retrieves the memory usage for a given Linux process.
+     * Retrieves the memory usage for a given Linux process and its child processes.
      * @param lp The Linux process to retrieve the memory usage for.
-     * @return The memory the Linux process uses; 0 otherwise.
+     * @return The resident memory the Linux process uses in bytes; 0 otherwise.
      */
     public static long getMemUsage(LinuxProcess lp){
 
+        LinuxProcessSampler sampler = lp.sample();
 
-        if (!lp.isRunning()){
+        if (sampler == null){
             System.out.println("SUT is not running - cannot retrieve RAM usage!");
             return 0;
         }
 
-
-        List<String[]> processInfos =  runProcessCommand(String.format(Command_FindProcess, lp.get_pid()));
-
-
-        if (processInfos == null || processInfos.isEmpty()) {
-            System.out.println("Running command to find process info failed - cannot retrieve RAM usage!");
-            return 0;
-        }
-
-
-        // Lets assume that it could happen that multiple lines are returned - parse and find the requested PID.
-        for(String[] pi : processInfos) {
-
-            LinuxProcess lpe = parseProcess(pi);
-
-            if (lpe != null && lpe.get_pid() == lp.get_pid()){
-
-                // Parse the current processInfo and extract the memory usage.
-                if (JavaHelper.tryParseInt(pi[SizeIndex])) {
-                    return Integer.parseInt(pi[SizeIndex]);
-                } else {
-                    System.out.println("Could not parse the process info - cannot retrieve RAM usage!");
-                    return 0;
-                }
-
-
-            }
-
-        }
-
-        System.out.println("Could not find the process info - cannot retrieve RAM usage!");
-        return 0;
-
+        return sampler.getResidentBytes();
 
     }
 
 
     /**
-     * Retrieves the cpu usage for a given Linux process.
+     * Retrieves the cpu usage for a given Linux process and its child processes.
      * @param lp The Linux process to retrieve the cpu usage for.
-     * @return The cpu the Linux process uses; 0 otherwise.
+     * @return The cpu the Linux process used between the last two samples in percent; 0 otherwise.
      */
     public static double getCpuUsage(LinuxProcess lp){
 
+        LinuxProcessSampler sampler = lp.sample();
 
-        if (!lp.isRunning()){
+        if (sampler == null){
             System.out.println("SUT is not running - cannot retrieve CPU usage!");
             return 0;
         }
 
+        return sampler.getCpuPercentage();
 
-        List<String[]> processInfos =  runProcessCommand(String.format(Command_FindProcess, lp.get_pid()));
-
+    }
 
-        if (processInfos == null || processInfos.isEmpty()) {
-            System.out.println("Running command to find process info failed - cannot retrieve CPU usage!");
-            return 0;
-        }
 
+    /**
+     * Retrieves the cpu time used by a given Linux process and its child processes.
+     * @param lp The Linux process to retrieve the cpu time for.
+     * @return The user and system cpu time in ms since the sampling of the process started; -1 otherwise.
+     */
+    public static long[] getCPUsage(LinuxProcess lp){
 
-        // Lets assume that it could happen that multiple lines are returned - parse and find the requested PID.
-        for(String[] pi : processInfos) {
+        LinuxProcessSampler sampler = lp.sample();
 
-            LinuxProcess lpe = parseProcess(pi);
+        if (sampler == null){
+            System.out.println("SUT is not running - cannot retrieve CPU usage!");
+            return new long[]{-1, -1};
+        }
 
-            if (lpe != null && lpe.get_pid() == lp.get_pid()){
+        return new long[]{sampler.getUserMillis(), sampler.getSystemMillis()};
 
-                // Parse the current processInfo and extract the cpu usage.
-                if (JavaHelper.tryParseDouble(pi[CpuIndex])) {
-                    return Double.parseDouble(pi[CpuIndex]);
-                } else {
-                    System.out.println("Could not parse the process info - cannot retrieve CPU usage!");
-                    return 0;
-                }
+    }
 
 
-            }
+    /**
+     * Gets the sampler of the CPU and memory usage of the Linux process, which reads /proc instead of running ps.
+     * It can sample on a background timer, after which the usage getters return its last sample.
+     * @return The sampler of the Linux process.
+     */
+    public synchronized LinuxProcessSampler getSampler() {
 
+        if (_sampler == null) {
+            _sampler = new LinuxProcessSampler(_pid);
         }
 
-        System.out.println("Could not find the process info - cannot retrieve CPU usage!");
-        return 0;
-
+        return _sampler;
 
     }
 
@@ -496,6 +469,23 @@ public class LinuxProcess extends SUTBase {
     //region Helper functions
 
 
+    /**
+     * Samples the Linux process, unless its sampler already samples on a background timer.
+     * @return The sampler of the Linux process; null if the process is not running.
+     */
+    private LinuxProcessSampler sample() {
+
+        LinuxProcessSampler sampler = getSampler();
+
+        if (sampler.isSampling()) {
+            return isRunning() ? sampler : null;
+        }
+
+        return sampler.sample() ? sampler : null;
+
+    }
+
+
     /**
      * Retrieve the PID on unix/linux systems
      * @param p the process to retrive the PID from.
@@ -734,6 +724,13 @@ public class LinuxProcess extends SUTBase {
     @Override
     public void stop() throws SystemStopException {
 
+        synchronized (this) {
+            if (_sampler != null) {
+                _sampler.close();
+                _sampler = null;
+            }
+        }
+
         if (_process != null) {
 
             // Kill process with the Process object we created.
@@ -766,26 +763,8 @@ public class LinuxProcess extends SUTBase {
             return _process.isAlive();
         } else if (_pid != 0) {
 
-            // Check if process is running given its PID only.
-            // Get a list of running processes with the given PID.
-            List<String[]> processInfos =  runProcessCommand(String.format(Command_FindProcess, _pid));
-
-
-            if (processInfos == null) {
-                return false;
-            }
-
-
-            // Lets assume that it could happen that multiple lines are returned - parse and find the requested PID.
-            for(String[] pi : processInfos) {
-
-                LinuxProcess lp = parseProcess(pi);
-
-                if (lp != null && lp.get_pid() == _pid){
-                    return true;
-                }
-
-            }
+            // Check if process is running given its PID only, without running ps.
+            return Files.isDirectory(Paths.get("/proc", Long.toString(_pid)));
 
         }
 
@@ -0,0 +1,600 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2017 Open Universiteit - www.ou.nl
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+package org.testar.monkey.alayer.linux;
+
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Samples the CPU time and memory of a Linux process and its child processes from /proc.
+ * The stat and statm files of the processes are kept open and parsed in place, so a sample does
+ * not start a process or allocate. The child processes are looked up again once per rescan interval.
+ * The CPU times are accumulated deltas of the user and system jiffies of every sampled process:
+ * they only grow, also when child processes exit.
+ */
+public class LinuxProcessSampler implements Closeable {
+
+
+    //region Global variables
+
+
+    private static final long DefaultRescanIntervalMillis = 1000;
+
+    // fields of /proc/<pid>/stat, counted from the state field that follows the command name
+    static final int StatFieldParentPid = 1;
+    static final int StatFieldUserTime = 11;
+    static final int StatFieldSystemTime = 12;
+
+    // field of /proc/<pid>/statm
+    static final int StatmFieldResident = 1;
+
+    private static long clockTicksPerSecond = -1;
+    private static long pageSizeBytes = -1;
+
+
+    /**
+     * A sampled process.
+     */
+    private static final class SampledProcess {
+
+        final long pid;
+        final FileChannel stat;
+        final FileChannel statm;
+        long userJiffies;
+        long systemJiffies;
+
+        SampledProcess(long pid, FileChannel stat, FileChannel statm) {
+            this.pid = pid;
+            this.stat = stat;
+            this.statm = statm;
+        }
+
+        void close() {
+            try {
+                stat.close();
+                statm.close();
+            } catch (IOException e) {
+                // the process is gone anyway
+            }
+        }
+    }
+
+
+    private final Path _procRoot;
+    private final long _pid;
+    private final long _ticksPerSecond;
+    private final long _pageSize;
+    private final long _rescanIntervalNanos;
+
+    private final Map<Long, SampledProcess> _processes = new HashMap<>();
+    private final ByteBuffer _buffer = ByteBuffer.allocate(4096);
+    private Boolean _childrenFiles;
+    private boolean _scanned;
+    private long _lastRescan;
+    private long _lastSample;
+    // the jiffies parsed by parseStat
+    private long _statUserJiffies;
+    private long _statSystemJiffies;
+
+    private volatile long _userJiffies;
+    private volatile long _systemJiffies;
+    private volatile long _residentBytes;
+    private volatile int _processCount;
+    private volatile double _cpuPercentage;
+
+    private ScheduledExecutorService _timer;
+
+
+    //endregion
+
+
+    //region Constructors
+
+
+    /**
+     * Creates a sampler for a Linux process and its child processes.
+     * @param pid The PID of the Linux process.
+     */
+    public LinuxProcessSampler(long pid) {
+        this(Paths.get("/proc"), pid, clockTicksPerSecond(), pageSize(), DefaultRescanIntervalMillis);
+    }
+
+
+    /**
+     * Creates a sampler that reads the process files from another directory than /proc.
+     * @param procRoot The directory with a directory per PID.
+     * @param pid The PID of the Linux process.
+     * @param ticksPerSecond The number of jiffies per second.
+     * @param pageSize The size of a memory page in bytes.
+     * @param rescanIntervalMillis How often the child processes are looked up again.
+     */
+    LinuxProcessSampler(Path procRoot, long pid, long ticksPerSecond, long pageSize, long rescanIntervalMillis) {
+        _procRoot = procRoot;
+        _pid = pid;
+        _ticksPerSecond = ticksPerSecond;
+        _pageSize = pageSize;
+        _rescanIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rescanIntervalMillis);
+    }
+
+
+    //endregion
+
+
+    //region Sampling
+
+
+    /**
+     * Samples the process and its child processes.
+     * @return True if the process is running; False otherwise.
+     */
+    public synchronized boolean sample() {
+
+        long now = System.nanoTime();
+        if (!_scanned || now - _lastRescan >= _rescanIntervalNanos) {
+            rescan();
+            _lastRescan = now;
+        }
+
+        long userJiffies = 0;
+        long systemJiffies = 0;
+        long residentPages = 0;
+        boolean running = false;
+
+        Iterator<SampledProcess> processes = _processes.values().iterator();
+        while (processes.hasNext()) {
+
+            SampledProcess process = processes.next();
+
+            // Processes that exited are dropped, the jiffies they used until the last sample stay counted.
+            if (!read(process.stat) || !parseStat()) {
+                process.close();
+                processes.remove();
+                continue;
+            }
+
+            long user = _statUserJiffies;
+            long system = _statSystemJiffies;
+            userJiffies += Math.max(0, user - process.userJiffies);
+            systemJiffies += Math.max(0, system - process.systemJiffies);
+            process.userJiffies = user;
+            process.systemJiffies = system;
+
+            if (read(process.statm)) {
+                residentPages += parseField(_buffer, StatmFieldResident, _buffer.position());
+            }
+
+            running |= process.pid == _pid;
+
+        }
+
+        _userJiffies += userJiffies;
+        _systemJiffies += systemJiffies;
+        _residentBytes = residentPages * _pageSize;
+        _processCount = _processes.size();
+        if (_lastSample != 0 && now > _lastSample) {
+            _cpuPercentage = 100.0 * TimeUnit.SECONDS.toNanos(userJiffies + systemJiffies) / _ticksPerSecond / (now - _lastSample);
+        }
+        _lastSample = now;
+
+        return running;
+
+    }
+
+
+    /**
+     * Samples the process on a background timer, after which the getters return the last sample.
+     * @param periodMillis The time between two samples in milliseconds.
+     */
+    public synchronized void startSampling(long periodMillis) {
+
+        stopSampling();
+        _timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LinuxProcessSampler " + _pid);
+            thread.setDaemon(true);
+            return thread;
+        });
+        _timer.scheduleAtFixedRate(this::sample, 0, periodMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+
+    /**
+     * Stops sampling on the background timer.
+     */
+    public synchronized void stopSampling() {
+
+        if (_timer != null) {
+            _timer.shutdownNow();
+            _timer = null;
+        }
+
+    }
+
+
+    /**
+     * Determines whether the process is sampled on a background timer.
+     * @return True if the process is sampled on a background timer; False otherwise.
+     */
+    public synchronized boolean isSampling() {
+        return _timer != null;
+    }
+
+
+    /**
+     * Stops sampling and closes the process files.
+     */
+    @Override
+    public synchronized void close() {
+
+        stopSampling();
+        for (SampledProcess process : _processes.values()) {
+            process.close();
+        }
+        _processes.clear();
+        _scanned = false;
+
+    }
+
+
+    //endregion
+
+
+    //region Properties
+
+
+    /**
+     * @return The user CPU time used by the process and its child processes since the first sample, in milliseconds.
+     */
+    public long getUserMillis() {
+        return _userJiffies * 1000 / _ticksPerSecond;
+    }
+
+
+    /**
+     * @return The system CPU time used by the process and its child processes since the first sample, in milliseconds.
+     */
+    public long getSystemMillis() {
+        return _systemJiffies * 1000 / _ticksPerSecond;
+    }
+
+
+    /**
+     * @return The CPU usage between the last two samples, in percent of one CPU.
+     */
+    public double getCpuPercentage() {
+        return _cpuPercentage;
+    }
+
+
+    /**
+     * @return The resident memory of the process and its child processes at the last sample, in bytes.
+     */
+    public long getResidentBytes() {
+        return _residentBytes;
+    }
+
+
+    /**
+     * @return The number of processes, the process itself included, of the last sample.
+     */
+    public int getProcessCount() {
+        return _processCount;
+    }
+
+
+    //endregion
+
+
+    //region Helper functions
+
+
+    /**
+     * Looks up the child processes of the process, starts sampling the new ones and stops sampling the ones that exited.
+     * The CPU time of processes found after the first scan counts from their start, as they started since the last scan.
+     */
+    private void rescan() {
+
+        Set<Long> pids = new HashSet<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        Map<Long, Set<Long>> childrenByParent = childrenFiles() ? null : childrenByParent();
+        queue.add(_pid);
+
+        while (!queue.isEmpty()) {
+            Long pid = queue.poll();
+            if (pids.add(pid)) {
+                queue.addAll(childrenByParent == null ? children(pid) : childrenByParent.getOrDefault(pid, Collections.emptySet()));
+            }
+        }
+
+        Iterator<Map.Entry<Long, SampledProcess>> processes = _processes.entrySet().iterator();
+        while (processes.hasNext()) {
+            Map.Entry<Long, SampledProcess> process = processes.next();
+            if (!pids.contains(process.getKey())) {
+                process.getValue().close();
+                processes.remove();
+            }
+        }
+
+        for (Long pid : pids) {
+            if (!_processes.containsKey(pid)) {
+                SampledProcess process = open(pid);
+                if (process != null) {
+                    _processes.put(pid, process);
+                    if (!_scanned && read(process.stat) && parseStat()) {
+                        process.userJiffies = _statUserJiffies;
+                        process.systemJiffies = _statSystemJiffies;
+                    }
+                }
+            }
+        }
+
+        _scanned = true;
+
+    }
+
+
+    private SampledProcess open(long pid) {
+
+        Path directory = _procRoot.resolve(Long.toString(pid));
+        FileChannel stat = null;
+        try {
+            stat = FileChannel.open(directory.resolve("stat"), StandardOpenOption.READ);
+            return new SampledProcess(pid, stat, FileChannel.open(directory.resolve("statm"), StandardOpenOption.READ));
+        } catch (IOException e) {
+            // The process exited in the meantime.
+            if (stat != null) {
+                try {
+                    stat.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+
+    }
+
+
+    /**
+     * Determines whether the kernel lists the children of the threads in /proc/<pid>/task/<tid>/children.
+     */
+    private boolean childrenFiles() {
+
+        if (_childrenFiles == null) {
+            Path self = _procRoot.resolve(Long.toString(_pid));
+            if (!Files.isDirectory(self)) {
+                return true; // decide once the process runs
+            }
+            _childrenFiles = Files.exists(self.resolve("task").resolve(Long.toString(_pid)).resolve("children"));
+        }
+        return _childrenFiles;
+
+    }
+
+
+    /**
+     * Reads the child processes of all the threads of a process.
+     */
+    private Set<Long> children(long pid) {
+
+        Set<Long> children = new HashSet<>();
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(_procRoot.resolve(Long.toString(pid)).resolve("task"))) {
+            for (Path task : tasks) {
+                for (String child : new String(Files.readAllBytes(task.resolve("children"))).trim().split("\\s+")) {
+                    if (!child.isEmpty()) {
+                        children.add(Long.parseLong(child));
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException | NumberFormatException e) {
+            // The process or one of its threads exited in the meantime.
+        }
+        return children;
+
+    }
+
+
+    /**
+     * Reads the parent of every process, for kernels without children files.
+     */
+    private Map<Long, Set<Long>> childrenByParent() {
+
+        Map<Long, Set<Long>> childrenByParent = new HashMap<>();
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(_procRoot, "[0-9]*")) {
+            for (Path directory : directories) {
+                try (FileChannel stat = FileChannel.open(directory.resolve("stat"), StandardOpenOption.READ)) {
+                    if (read(stat)) {
+                        long parent = parseStatField(_buffer, StatFieldParentPid);
+                        if (parent > 0) {
+                            childrenByParent.computeIfAbsent(parent, p -> new HashSet<>())
+                                    .add(Long.parseLong(directory.getFileName().toString()));
+                        }
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    // The process exited in the meantime.
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // No process information available.
+        }
+        return childrenByParent;
+
+    }
+
+
+    /**
+     * Reads a whole process file into the buffer.
+     * @return True if the file could be read; False if the process exited.
+     */
+    private boolean read(FileChannel channel) {
+
+        _buffer.clear();
+        try {
+            long position = 0;
+            int read;
+            while (_buffer.hasRemaining() && (read = channel.read(_buffer, position)) > 0) {
+                position += read;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        _buffer.flip();
+        return _buffer.hasRemaining();
+
+    }
+
+
+    /**
+     * Parses the user and system jiffies of the stat file in the buffer.
+     * @return True if the stat file could be parsed.
+     */
+    private boolean parseStat() {
+
+        long user = parseStatField(_buffer, StatFieldUserTime);
+        long system = parseStatField(_buffer, StatFieldSystemTime);
+        if (user < 0 || system < 0) {
+            return false;
+        }
+        _statUserJiffies = user;
+        _statSystemJiffies = system;
+        return true;
+
+    }
+
+
+    /**
+     * Parses a field of a stat file. The fields are counted after the command name,
+     * which is between parentheses and may contain spaces and parentheses itself.
+     * @param buffer The stat file, between the position and the limit of the buffer.
+     * @param field The index of the field, counted from the state field that follows the command name.
+     * @return The value of the field; -1 if it could not be parsed.
+     */
+    static long parseStatField(ByteBuffer buffer, int field) {
+
+        int end = buffer.limit() - 1;
+        while (end >= buffer.position() && buffer.get(end) != ')') {
+            end--;
+        }
+        return end < buffer.position() ? -1 : parseField(buffer, field, end + 2);
+
+    }
+
+
+    /**
+     * Parses a space separated, non negative number in a buffer.
+     * @param buffer The buffer, of which the limit ends the last field.
+     * @param field The index of the field, counted from the start position.
+     * @param start The position in the buffer of the first field.
+     * @return The value of the field; -1 if it could not be parsed.
+     */
+    static long parseField(ByteBuffer buffer, int field, int start) {
+
+        int i = start;
+        int limit = buffer.limit();
+        for (int skipped = 0; skipped < field && i < limit; i++) {
+            if (buffer.get(i) == ' ') {
+                skipped++;
+            }
+        }
+
+        long value = 0;
+        int digits = 0;
+        for (; i < limit; i++, digits++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return digits == 0 ? -1 : value;
+
+    }
+
+
+    private static synchronized long clockTicksPerSecond() {
+        if (clockTicksPerSecond < 0) {
+            clockTicksPerSecond = getconf("CLK_TCK", 100);
+        }
+        return clockTicksPerSecond;
+    }
+
+
+    private static synchronized long pageSize() {
+        if (pageSizeBytes < 0) {
+            pageSizeBytes = getconf("PAGESIZE", 4096);
+        }
+        return pageSizeBytes;
+    }
+
+
+    /**
+     * Reads a system configuration value, once per run.
+     */
+    private static long getconf(String name, long defaultValue) {
+
+        try {
+            Process p = Runtime.getRuntime().exec(new String[]{"getconf", name});
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String value = output.readLine();
+                return value == null ? defaultValue : Long.parseLong(value.trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            return defaultValue;
+        }
+
+    }
+
+
+    //endregion
+
+
+}
@@ -0,0 +1,176 @@
+/***************************************************************************************************
+*
+* Copyright (c) 2017 Open Universiteit - www.ou.nl
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+* 1. Redistributions of source code must retain the above copyright notice,
+* this list of conditions and the following disclaimer.
+* 2. Redistributions in binary form must reproduce the above copyright
+* notice, this list of conditions and the following disclaimer in the
+* documentation and/or other materials provided with the distribution.
+* 3. Neither the name of the copyright holder nor the names of its
+* contributors may be used to endorse or promote products derived from
+* this software without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+* AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+* IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+* ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+* LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+* CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+* SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+* INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+* CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*******************************************************************************************************/
+
+package org.testar.monkey.alayer.linux;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests parsing the stat and statm files of /proc, and sampling a process tree from a fixture directory.
+ */
+public class LinuxProcessSamplerTest {
+
+    // /proc/<pid>/stat of a process with a utime of 15 and a stime of 7 jiffies, without the command name
+    private static final String StatFields = " S 1 1234 1234 34816 1234 4194304 1000 2000 0 0 15 7 0 0 20 0 1 0 100 12345678 900 18446744073709551615\n";
+
+    private static final String Statm = "2500 640 300 10 0 800 0\n";
+
+    private Path procRoot;
+
+    private static ByteBuffer buffer(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String stat(long pid, String command, long userJiffies, long systemJiffies) {
+        return pid + " (" + command + ") S 1 " + pid + " " + pid + " 0 -1 4194304 1000 2000 0 0 " + userJiffies + " " + systemJiffies + " 0 0 20 0 1 0 100 12345678 900\n";
+    }
+
+    private void writeProcess(long pid, String stat, String children) throws IOException {
+        Path directory = procRoot.resolve(Long.toString(pid));
+        Files.createDirectories(directory.resolve("task").resolve(Long.toString(pid)));
+        Files.write(directory.resolve("stat"), stat.getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("statm"), Statm.getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("task").resolve(Long.toString(pid)).resolve("children"), children.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Before
+    public void createProcRoot() throws IOException {
+        procRoot = Files.createTempDirectory("proc");
+    }
+
+    @After
+    public void deleteProcRoot() throws IOException {
+        try (Stream<Path> files = Files.walk(procRoot)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void statFieldsAreCountedAfterTheCommandName() {
+        ByteBuffer stat = buffer("1234 (bash)" + StatFields);
+        assertEquals(1, LinuxProcessSampler.parseStatField(stat, LinuxProcessSampler.StatFieldParentPid));
+        assertEquals(15, LinuxProcessSampler.parseStatField(stat, LinuxProcessSampler.StatFieldUserTime));
+        assertEquals(7, LinuxProcessSampler.parseStatField(stat, LinuxProcessSampler.StatFieldSystemTime));
+        // the state field is not a number
+        assertEquals(-1, LinuxProcessSampler.parseStatField(stat, 0));
+    }
+
+    @Test
+    public void commandNamesMayContainSpacesAndParentheses() {
+        for (String command : new String[]{"Web Content", "a) b) c", "x (y)", ") 1 2 3 4 5 6 7 8 9 10 11 12 (", ""}) {
+            ByteBuffer stat = buffer("1234 (" + command + ")" + StatFields);
+            assertEquals(command, 15, LinuxProcessSampler.parseStatField(stat, LinuxProcessSampler.StatFieldUserTime));
+            assertEquals(command, 7, LinuxProcessSampler.parseStatField(stat, LinuxProcessSampler.StatFieldSystemTime));
+        }
+    }
+
+    @Test
+    public void incompleteStatFilesAreNotParsed() {
+        assertEquals(-1, LinuxProcessSampler.parseStatField(buffer(""), LinuxProcessSampler.StatFieldUserTime));
+        assertEquals(-1, LinuxProcessSampler.parseStatField(buffer("1234 (bash S 1 1234"), LinuxProcessSampler.StatFieldParentPid));
+        assertEquals(-1, LinuxProcessSampler.parseStatField(buffer("1234 (bash) S 1 1234 1234 34816 1234 4194304 1000 2000 0 0 "), LinuxProcessSampler.StatFieldUserTime));
+        // the command name ends the buffer
+        assertEquals(-1, LinuxProcessSampler.parseStatField(buffer("1234 (bash)"), LinuxProcessSampler.StatFieldParentPid));
+    }
+
+    @Test
+    public void statFieldsAreParsedBetweenThePositionAndTheLimit() {
+        ByteBuffer stat = buffer("(ignored) 99 1234 (bash)" + StatFields + "(trailing) 99");
+        stat.position(10);
+        stat.limit(stat.capacity() - "(trailing) 99".length());
+        assertEquals(15, LinuxProcessSampler.parseStatField(stat, LinuxProcessSampler.StatFieldUserTime));
+
+        // a closing parenthesis before the position does not end the command name
+        stat.limit(stat.position() + 7);
+        assertEquals(-1, LinuxProcessSampler.parseStatField(stat, 0));
+    }
+
+    @Test
+    public void statmFieldsAreCountedFromTheStart() {
+        ByteBuffer statm = buffer(Statm);
+        assertEquals(2500, LinuxProcessSampler.parseField(statm, 0, 0));
+        assertEquals(640, LinuxProcessSampler.parseField(statm, LinuxProcessSampler.StatmFieldResident, 0));
+        assertEquals(0, LinuxProcessSampler.parseField(statm, 6, 0));
+        // there is no eighth field
+        assertEquals(-1, LinuxProcessSampler.parseField(statm, 7, 0));
+    }
+
+    @Test
+    public void theProcessTreeIsSampled() throws IOException {
+        writeProcess(100, stat(100, "java (main)", 10, 5), "200");
+        writeProcess(200, stat(200, "sh", 1, 1), "");
+
+        try (LinuxProcessSampler sampler = new LinuxProcessSampler(procRoot, 100, 100, 4096, 0)) {
+            // the first sample is the baseline of the CPU times
+            assertTrue(sampler.sample());
+            assertEquals(2, sampler.getProcessCount());
+            assertEquals(2 * 640 * 4096, sampler.getResidentBytes());
+            assertEquals(0, sampler.getUserMillis());
+
+            writeProcess(100, stat(100, "java (main)", 60, 5), "200 300");
+            writeProcess(200, stat(200, "sh", 11, 3), "");
+            writeProcess(300, stat(300, "child) 1 2", 4, 2), "");
+            assertTrue(sampler.sample());
+            assertEquals(3, sampler.getProcessCount());
+            // the child that started since the last sample counts from its start
+            assertEquals((50 + 10 + 4) * 10, sampler.getUserMillis());
+            assertEquals((0 + 2 + 2) * 10, sampler.getSystemMillis());
+
+            // the CPU time of a child that exited stays counted
+            Files.delete(procRoot.resolve("300").resolve("stat"));
+            writeProcess(100, stat(100, "java (main)", 60, 5), "200");
+            assertTrue(sampler.sample());
+            assertEquals(2, sampler.getProcessCount());
+            assertEquals((50 + 10 + 4) * 10, sampler.getUserMillis());
+        }
+    }
+
+    @Test
+    public void aProcessThatIsNotRunningIsNotSampled() {
+        try (LinuxProcessSampler sampler = new LinuxProcessSampler(procRoot, 100, 100, 4096, 0)) {
+            assertFalse(sampler.sample());
+            assertEquals(0, sampler.getProcessCount());
+            assertEquals(0, sampler.getResidentBytes());
+        }
+    }
+
+}
@@ -68,6 +68,12 @@ public class Protocol_webdriver_parabank extends WebdriverProtocol {
     // List of atributes to identify and close policy popups
     // Set to null to disable this feature
     policyAttributes = new HashMap<String, String>() {{ put("class", "lfr-btn-label"); }};
+
+    // Widget oracle, checked by getVerdict in parallel over the widgets of every state
+    oracles.add(widget -> widget.get(WdTags.WebTextContent, "").contains("internal error")
+            ? new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE,
+                "Discovered suspicious widget 'Web Text Content' : '" + widget.get(WdTags.WebTextContent, "") + "'.")
+            : Verdict.OK);
   }
 
   /**
@@ -162,13 +168,7 @@ public class Protocol_webdriver_parabank extends WebdriverProtocol {
     //-----------------------------------------------------------------------------
 
     // ... YOU MAY WANT TO CHECK YOUR CUSTOM ORACLES HERE ...
-
-    for(Widget w : state) {
-      if(w.get(WdTags.WebTextContent,"").contains("internal error")) {
-        return new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE,
-                "Discovered suspicious widget 'Web Text Content' : '" + w.get(WdTags.WebTextContent,"") + "'.");
-      }
-    }
+    // (oracles on single widgets can be added to the oracles of the protocol, see initialize)
 
     return verdict;
   }
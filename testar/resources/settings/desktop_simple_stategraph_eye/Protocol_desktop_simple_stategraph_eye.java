@@ -153,8 +153,22 @@ public class Protocol_desktop_simple_stategraph_eye extends DesktopProtocol {
 	 */
 	@Override
 	protected boolean executeAction(SUT system, State state, Action action){
-		// adding the action that is going to be executed into HTML report:
+		boolean executed = executeActionWithEye(system, state, action);
+		// adding the executed action into HTML report, after its action shot has been stored:
 		htmlReport.addSelectedAction(state, action);
+		return executed;
+	}
+
+	/**
+	 * Clicks on and types into widgets with the Eye library, by the image of the widget.
+	 * Other actions are executed by TESTAR.
+	 *
+	 * @param system the SUT
+	 * @param state the SUT's current state
+	 * @param action the action to execute
+	 * @return whether or not the execution succeeded
+	 */
+	private boolean executeActionWithEye(SUT system, State state, Action action){
 		double waitTime = settings().get(ConfigTags.TimeToWaitAfterAction);
 		try{
 			double halfWait = waitTime == 0 ? 0.01 : waitTime / 2.0; // seconds
@@ -28,7 +28,9 @@
  *
  */
 
+import org.testar.DerivedActions;
 import org.testar.SutVisualization;
+import org.testar.monkey.Drag;
 import org.testar.monkey.Pair;
 import org.testar.monkey.alayer.*;
 import org.testar.monkey.alayer.actions.AnnotatingActionCompiler;
@@ -188,7 +190,7 @@ public class Protocol_webdriver_generic extends WebdriverProtocol {
 	protected Set<Action> deriveActions(SUT system, State state) throws ActionBuildException {
 		// Kill unwanted processes, force SUT to foreground
 		Set<Action> actions = super.deriveActions(system, state);
-		Set<Action> filteredActions = new HashSet<>();
+		Set<Action> filteredActions = new LinkedHashSet<>();
 
 		// create an action compiler, which helps us create actions
 		// such as clicks, drag&drop, typing ...
@@ -197,38 +199,41 @@ public class Protocol_webdriver_generic extends WebdriverProtocol {
 		// Check if forced actions are needed to stay within allowed domains
 		Set<Action> forcedActions = detectForcedActions(state, ac);
 
-		// iterate through all widgets
-		for (Widget widget : state) {
+		// derive the actions of all widgets, in parallel over the widgets
+		DerivedActions derived = deriveActionsFromWidgets(state.widgets().asList(), new DerivedActions(actions, filteredActions), (widget, widgetAc, widgetActions) -> {
 			// only consider enabled and non-tabu widgets
 			if (!widget.get(Enabled, true)) {
-				continue;
+				return;
 			}
 			// The blackListed widgets are those that have been filtered during the SPY mode with the
 			//CAPS_LOCK + SHIFT + Click clickfilter functionality.
 			if(blackListed(widget)){
 				if(isTypeable(widget)){
-					filteredActions.add(ac.clickTypeInto(widget, this.getRandomText(widget), true));
+					widgetActions.addFilteredAction(widgetAc.clickTypeInto(widget, this.getRandomText(widget), true));
 				} else {
-					filteredActions.add(ac.leftClickAt(widget));
+					widgetActions.addFilteredAction(widgetAc.leftClickAt(widget));
 				}
-				continue;
+				return;
 			}
 
 			// slides can happen, even though the widget might be blocked
-			addSlidingActions(actions, ac, scrollArrowSize, scrollThick, widget);
+			Drag[] drags = widget.scrollDrags(scrollArrowSize, scrollThick);
+			if (drags != null) {
+				addSlidingActions(widgetActions, widgetAc, drags, widget);
+			}
 
 			// If the element is blocked, Testar can't click on or type in the widget
 			if (widget.get(Blocked, false) && !widget.get(WdTags.WebIsShadow, false)) {
-				continue;
+				return;
 			}
 
 			// type into text boxes
 			if (isAtBrowserCanvas(widget) && isTypeable(widget)) {
 				if(whiteListed(widget) || isUnfiltered(widget)){
-					actions.add(ac.clickTypeInto(widget, this.getRandomText(widget), true));
+					widgetActions.addAvailableAction(widgetAc.clickTypeInto(widget, this.getRandomText(widget), true));
 				}else{
 					// filtered and not white listed:
-					filteredActions.add(ac.clickTypeInto(widget, this.getRandomText(widget), true));
+					widgetActions.addFilteredAction(widgetAc.clickTypeInto(widget, this.getRandomText(widget), true));
 				}
 			}
 
@@ -236,17 +241,19 @@ public class Protocol_webdriver_generic extends WebdriverProtocol {
 			if (isAtBrowserCanvas(widget) && isClickable(widget)) {
 				if(whiteListed(widget) || isUnfiltered(widget)){
 					if (!isLinkDenied(widget)) {
-						actions.add(ac.leftClickAt(widget));
+						widgetActions.addAvailableAction(widgetAc.leftClickAt(widget));
 					}else{
 						// link denied:
-						filteredActions.add(ac.leftClickAt(widget));
+						widgetActions.addFilteredAction(widgetAc.leftClickAt(widget));
 					}
 				}else{
 					// filtered and not white listed:
-					filteredActions.add(ac.leftClickAt(widget));
+					widgetActions.addFilteredAction(widgetAc.leftClickAt(widget));
 				}
 			}
-		}
+		});
+		actions = derived.getAvailableActions();
+		filteredActions = derived.getFilteredActions();
 
 		//if(actions.isEmpty()) {
 		//	return new HashSet<>(Collections.singletonList(new WdHistoryBackAction()));
@@ -0,0 +1,171 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.testar.monkey.Assert;
+import org.testar.monkey.alayer.Action;
+import org.testar.monkey.alayer.Widget;
+import org.testar.monkey.alayer.actions.StdActionCompiler;
+
+/**
+ * Derives the actions of the widgets of a state in parallel.
+ *
+ * The widgets are partitioned into consecutive ranges, which are derived by the threads of a fork/join pool
+ * with one action compiler shared by all of them. The actions of the ranges are merged in widget order, so
+ * the derived actions come out in the same order as a sequential derivation would give, whatever the number
+ * of threads. The time spent in every phase of the last derivation is kept for reporting.
+ */
+public class ActionDeriver {
+
+    /**
+     * Derives the actions of a single widget into the given derived actions.
+     * Called concurrently for different widgets, with the same action compiler.
+     */
+    @FunctionalInterface
+    public interface WidgetActions {
+        void derive(Widget widget, StdActionCompiler ac, DerivedActions derived);
+    }
+
+    // the smallest number of widgets that is worth a task of its own
+    public static final int MIN_PARTITION_SIZE = 64;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    // the last derivation
+    private int widgets, partitions, availableActions, filteredActions;
+    private long partitionNanos, deriveNanos, mergeNanos;
+
+    /**
+     * @param parallelism the number of threads, 0 (or less) for the number of available processors,
+     *                    1 to derive the actions on the calling thread
+     */
+    public ActionDeriver(int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Derives the actions of the widgets and adds them to the derived actions, in widget order.
+     * @param widgets
+     * @param ac the action compiler of all the widgets, which is shared by the threads
+     * @param derived
+     * @param widgetActions derives the actions of one widget
+     * @return the derived actions
+     */
+    public synchronized DerivedActions derive(List<Widget> widgets, StdActionCompiler ac, DerivedActions derived, WidgetActions widgetActions) {
+        Assert.notNull(widgets, ac);
+        Assert.notNull(derived, widgetActions);
+        long start = System.nanoTime();
+        int size = widgets.size();
+        int count = pool == null ? 1 : Math.max(1, Math.min(parallelism * 4, size / MIN_PARTITION_SIZE));
+        List<Callable<DerivedActions>> tasks = new ArrayList<>(count);
+        for (int p = 0; p < count; p++) {
+            int from = (int) ((long) size * p / count);
+            int to = (int) ((long) size * (p + 1) / count);
+            tasks.add(() -> {
+                DerivedActions part = new DerivedActions(new LinkedHashSet<>(), new LinkedHashSet<>());
+                for (int i = from; i < to; i++) {
+                    widgetActions.derive(widgets.get(i), ac, part);
+                }
+                return part;
+            });
+        }
+        long partitioned = System.nanoTime();
+
+        List<DerivedActions> parts = new ArrayList<>(count);
+        try {
+            if (count == 1) {
+                parts.add(tasks.get(0).call());
+            } else {
+                for (Future<DerivedActions> future : pool.invokeAll(tasks)) {
+                    parts.add(future.get());
+                }
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+        long derivedTime = System.nanoTime();
+
+        for (DerivedActions part : parts) {
+            for (Action action : part.getAvailableActions()) {
+                derived.addAvailableAction(action);
+            }
+            for (Action action : part.getFilteredActions()) {
+                derived.addFilteredAction(action);
+            }
+        }
+        long merged = System.nanoTime();
+
+        this.widgets = size;
+        this.partitions = count;
+        this.availableActions = parts.stream().mapToInt(part -> part.getAvailableActions().size()).sum();
+        this.filteredActions = parts.stream().mapToInt(part -> part.getFilteredActions().size()).sum();
+        this.partitionNanos = partitioned - start;
+        this.deriveNanos = derivedTime - partitioned;
+        this.mergeNanos = merged - derivedTime;
+        return derived;
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException("Action derivation failed", t);
+    }
+
+    /**
+     * @return the time spent in the phases of the last derivation, such as
+     * "1200 widgets in 16 partitions on 4 threads, 350 available and 20 filtered actions: partition 0.010 ms, derive 4.200 ms, merge 0.150 ms"
+     */
+    public synchronized String report() {
+        return String.format("%d widgets in %d partitions on %d threads, %d available and %d filtered actions: partition %.3f ms, derive %.3f ms, merge %.3f ms",
+                widgets, partitions, pool == null ? 1 : parallelism, availableActions, filteredActions,
+                partitionNanos / 1e6, deriveNanos / 1e6, mergeNanos / 1e6);
+    }
+}
@@ -143,7 +143,7 @@ public class SutVisualization {
 
                 int MAX_ANCESTORS_PERLINE = 6;
                 double widgetInfoW = canvas.width()/2; //550;
-                double widgetInfoH = (1 + Util.size(cursorWidget.tags()) +
+                double widgetInfoH = (1 + Util.size(cursorWidget.allTags()) +
                         Util.size(Util.ancestors(cursorWidget)) / MAX_ANCESTORS_PERLINE)
                         * 20;
                 cwShape = ProtocolUtil.calculateWidgetInfoShape(canvas,cwShape, widgetInfoW, widgetInfoH);
@@ -179,7 +179,7 @@ public class SutVisualization {
                         canvas.text(Pen.PEN_BLACK, cwShape.x(), cwShape.y() + (pos+=20), 0, sb.toString());
                     }
 
-                    for(Tag<?> t : cursorWidget.tags()){
+                    for(Tag<?> t : cursorWidget.allTags()){
                     	if(cursorWidget.get(t,null) != null && !cursorWidget.get(t).toString().isEmpty()) {
                     		canvas.text((t.isOneOf(Tags.Role,Tags.Title,Tags.Shape,Tags.Enabled,Tags.Path,Tags.ConcreteID)) ? Pen.PEN_RED : Pen.PEN_BLACK,
                     				cwShape.x(), cwShape.y() + (pos+=20), 0, t.name() + ":   " + Util.abbreviate(Util.toString(cursorWidget.get(t)), 50, "..."));
@@ -39,6 +39,15 @@ public final class ConfigTags {
   public static final Tag<String> ProcessesToKillDuringTest = Tag.from("ProcessesToKillDuringTest", String.class);
   public static final Tag<Boolean> ShowVisualSettingsDialogOnStartup = Tag.from("ShowVisualSettingsDialogOnStartup", Boolean.class);
   public static final Tag<Integer> LogLevel = Tag.from("LogLevel", Integer.class);
+  public static final Tag<Integer> SerialisationWorkers = Tag.from("SerialisationWorkers", Integer.class);
+  public static final Tag<String> ScreenshotFormat = Tag.from("ScreenshotFormat", String.class);
+  public static final Tag<Integer> ScreenshotSimilarityDistance = Tag.from("ScreenshotSimilarityDistance", Integer.class);
+  public static final Tag<Boolean> DifferentialScreenshots = Tag.from("DifferentialScreenshots", Boolean.class);
+  public static final Tag<Boolean> ReportFrameImages = Tag.from("ReportFrameImages", Boolean.class);
+  public static final Tag<Integer> ActionDerivationThreads = Tag.from("ActionDerivationThreads", Integer.class);
+  public static final Tag<Boolean> AdaptiveSettle = Tag.from("AdaptiveSettle", Boolean.class);
+  public static final Tag<Double> SettlePollInterval = Tag.from("SettlePollInterval", Double.class);
+  public static final Tag<Integer> SettleStablePolls = Tag.from("SettleStablePolls", Integer.class);
   public static final Tag<String> SuspiciousTitles = Tag.from("SuspiciousTitles", String.class);
   public static final Tag<String> ClickFilter = Tag.from("ClickFilter", String.class);
   public static final Tag<String> OutputDir = Tag.from("OutputDir", String.class);
@@ -101,12 +110,15 @@ public final class ConfigTags {
   public static final Tag<String> DataStoreMode = Tag.from("DataStoreMode", String.class);
   public static final Tag<String> DataStoreDirectory = Tag.from("DataStoreDirectory", String.class);
   public static final Tag<Boolean> ResetDataStore = Tag.from("ResetDataStore", Boolean.class);
+  public static final Tag<String> StateModelSnapshotDirectory = Tag.from("StateModelSnapshotDirectory", String.class);
+  public static final Tag<String> StateModelLogDirectory = Tag.from("StateModelLogDirectory", String.class);
   public static final Tag<String> ApplicationName = Tag.from("ApplicationName", String.class);
   public static final Tag<String> ApplicationVersion = Tag.from("ApplicationVersion", String.class);
   public static final Tag<String> ActionSelectionAlgorithm = Tag.from("ActionSelectionAlgorithm", String.class);
   public static final Tag<Boolean> StateModelStoreWidgets = Tag.from("StateModelStoreWidgets", Boolean.class);
   @SuppressWarnings("unchecked")
   public static final Tag<List<String>> AbstractStateAttributes = Tag.from("AbstractStateAttributes", (Class<List<String>>) (Class<?>) List.class);
+  public static final Tag<String> StateIdFormat = Tag.from("StateIdFormat", String.class);
 
   public static final Tag<Boolean> AlwaysCompile = Tag.from("AlwaysCompile", Boolean.class);
 
@@ -140,6 +152,9 @@ public final class ConfigTags {
   public static final Tag<Boolean> FollowLinks = Tag.from("FollowLinks", Boolean.class);
   public static final Tag<Boolean> BrowserFullScreen = Tag.from("BrowserFullScreen", Boolean.class);
   public static final Tag<Boolean> SwitchNewTabs = Tag.from("SwitchNewTabs", Boolean.class);
+  public static final Tag<Boolean> CompressStateTransfer = Tag.from("CompressStateTransfer", Boolean.class);
+  public static final Tag<Boolean> IncrementalCapture = Tag.from("IncrementalCapture", Boolean.class);
+  public static final Tag<Integer> FullCaptureInterval = Tag.from("FullCaptureInterval", Integer.class);
 
   // Oracles for webdriver browser console
   public static final Tag<Boolean> WebConsoleErrorOracle = Tag.from("WebConsoleErrorOracle", Boolean.class);
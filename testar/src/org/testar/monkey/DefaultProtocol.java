@@ -48,17 +48,16 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import org.testar.*;
+import org.testar.reporting.HtmlSequenceReport;
 import org.testar.reporting.Reporting;
 import org.testar.statemodel.StateModelManager;
 import org.testar.statemodel.StateModelManagerFactory;
@@ -76,15 +75,23 @@ import org.testar.monkey.alayer.exceptions.ActionFailedException;
 import org.testar.monkey.alayer.exceptions.NoSuchTagException;
 import org.testar.monkey.alayer.exceptions.StateBuildException;
 import org.testar.monkey.alayer.exceptions.SystemStartException;
-import org.testar.monkey.alayer.visualizers.ShapeVisualizer;
 import org.testar.monkey.alayer.webdriver.WdProtocolUtil;
 import org.testar.monkey.alayer.windows.WinApiException;
+import org.testar.oracles.Oracle;
+import org.testar.oracles.OracleEvaluator;
+import org.testar.oracles.SuspiciousTagValueOracle;
 import org.testar.plugin.NativeLinker;
 import org.testar.plugin.OperatingSystems;
 import org.testar.managers.DataManager;
 import org.testar.serialisation.LogSerialiser;
+import org.testar.serialisation.ScreenshotCodec;
 import org.testar.serialisation.ScreenshotSerialiser;
+import org.testar.serialisation.SerialisationPipeline;
 import org.testar.serialisation.TestSerialiser;
+import org.testar.settle.CpuSettleSignal;
+import org.testar.settle.ScreenshotSettleSignal;
+import org.testar.settle.SettleDetector;
+import org.testar.settle.SettleSignal;
 import org.jnativehook.GlobalScreen;
 import org.jnativehook.NativeHookException;
 import org.openqa.selenium.SessionNotCreatedException;
@@ -155,10 +162,17 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 
 	protected EventHandler eventHandler;
 	protected Canvas cv;
-	protected Pattern clickFilterPattern = null;
-	protected Map<String, Matcher> clickFilterMatchers = new WeakHashMap<String, Matcher>();
-	protected Pattern suspiciousTitlesPattern = null;
-	protected Map<String, Matcher> suspiciousTitlesMatchers = new WeakHashMap<String, Matcher>();
+	protected RegexOracle clickFilterOracle = null;
+	protected RegexOracle suspiciousTitlesOracle = null;
+	// oracles that check every widget, which getVerdict runs in parallel over the widgets of a state
+	protected final List<Oracle> oracles = new ArrayList<>();
+	protected OracleEvaluator oracleEvaluator = new OracleEvaluator();
+	// derives the actions of the widgets of a state in parallel, see GenericUtilsProtocol.deriveActionsFromWidgets
+	protected ActionDeriver actionDeriver = new ActionDeriver(1);
+	// builds the widget, state and action identifiers with the coding configuration of the settings of this session
+	protected IdCoder idCoder = CodingManager.getDefault();
+	// waits after an action until the UI settled, when AdaptiveSettle is enabled; null for the CPU usage based wait
+	protected SettleDetector settleDetector = null;
 	private StateBuilder builder;
 	
 	protected int escAttempts = 0;
@@ -309,6 +323,15 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 		startTime = Util.time();
 		this.settings = settings;
 		mode = settings.get(ConfigTags.Mode);
+		SerialisationPipeline.shared().setWorkers(settings.get(ConfigTags.SerialisationWorkers));
+		ScreenshotSerialiser.setCodec(ScreenshotCodec.from(settings.get(ConfigTags.ScreenshotFormat)));
+		ScreenshotSerialiser.setSimilarityDistance(settings.get(ConfigTags.ScreenshotSimilarityDistance));
+		ScreenshotSerialiser.setDifferential(settings.get(ConfigTags.DifferentialScreenshots));
+		HtmlSequenceReport.setFrameImages(settings.get(ConfigTags.ReportFrameImages));
+		actionDeriver = new ActionDeriver(settings.get(ConfigTags.ActionDerivationThreads));
+		idCoder = CodingManager.getDefault();
+		settleDetector = settings.get(ConfigTags.AdaptiveSettle) ? new SettleDetector(createSettleSignals(),
+				settings.get(ConfigTags.SettlePollInterval), settings.get(ConfigTags.SettleStablePolls)) : null;
 
 		//EventHandler is implemented in RuntimeControlsProtocol (super class):
 		eventHandler = initializeEventHandler();
@@ -497,7 +520,7 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 		final File currentSeqObject = new File(sequenceObject);
 
 		try {
-			TestSerialiser.start(new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(currentSeqObject, true))));
+			TestSerialiser.start(new BufferedOutputStream(new FileOutputStream(currentSeqObject, true)));
 			LogSerialiser.log("Created new sequence file!\n", LogSerialiser.LogLevel.Debug);
 		} catch (IOException e) {
 			LogSerialiser.log("I/O exception creating new sequence file\n", LogSerialiser.LogLevel.Critical);
@@ -637,25 +660,14 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 	}
 
 	/**
-	 * Wait until fragments have been written then close the test serialiser
+	 * Close the test and screenshot serialisers and wait until their fragments and screenshots have been written
 	 */
 	void writeAndCloseFragmentForReplayableSequence() {
-	    //Wait since TestSerialiser and ScreenshotSerialiser write all fragments/src on sequence File
-	    while(!TestSerialiser.isSavingQueueEmpty() || !ScreenshotSerialiser.isSavingQueueEmpty()) {
-	        synchronized (this) {
-	            try {
-	                this.wait(1000);
-	            } catch (InterruptedException e) {
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-
-	    //closing ScreenshotSerialiser and TestSerialiser
-	    ScreenshotSerialiser.finish();
-	    ScreenshotSerialiser.exit();
-	    TestSerialiser.finish();
-	    TestSerialiser.exit();
+	    CompletableFuture.allOf(ScreenshotSerialiser.finish(), TestSerialiser.finish()).join();
+	    LogSerialiser.log(TestSerialiser.getChannel() + "\n", LogSerialiser.LogLevel.Debug);
+	    LogSerialiser.log(ScreenshotSerialiser.getChannel() + "\n", LogSerialiser.LogLevel.Debug);
+	    if (ScreenshotSerialiser.getFramesChannel() != null)
+	        LogSerialiser.log(ScreenshotSerialiser.getFramesChannel() + "\n", LogSerialiser.LogLevel.Debug);
 
 	    LogSerialiser.log("Wrote fragment to sequence file!\n", LogSerialiser.LogLevel.Debug);
 	    LogSerialiser.log("Sequence " + sequenceCount + " finished.\n", LogSerialiser.LogLevel.Info);
@@ -687,6 +699,10 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 				" AbstractID CUSTOM = "+state.get(Tags.AbstractIDCustom,"AbstractID CUSTOM not available")+"\n",
 				actionRepresentation[0]) + "\n",
 				LogSerialiser.LogLevel.Info);
+
+		// Number of tag values fetched from the SUT while building, checking and deriving this step
+		LogSerialiser.log("Tag fetches of step " + actionCount + ": " + TagFetchCounter.drain() + "\n",
+				LogSerialiser.LogLevel.Debug);
 	}
 
 	/**
@@ -716,6 +732,7 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 
 	@Override
 	protected void finishSequence(){
+		logSettleTimes();
 		SystemProcessHandling.killTestLaunchedProcesses(this.contextRunningProcesses);
 	}
 
@@ -781,6 +798,7 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 		
 		Verdict verdict = getVerdict(state);
 		state.set(Tags.OracleVerdict, verdict);
+		logOracleEvaluations();
 
 		setStateScreenshot(state);
 
@@ -836,63 +854,14 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 		// ORACLES ALMOST FOR FREE
 		//------------------------
 
-		if (this.suspiciousTitlesPattern == null)
-			this.suspiciousTitlesPattern = Pattern.compile(settings().get(ConfigTags.SuspiciousTitles), Pattern.UNICODE_CHARACTER_CLASS);
-
-		// search all widgets for suspicious String Values
-		Verdict suspiciousValueVerdict = Verdict.OK;
-		for(Widget w : state) {
-			suspiciousValueVerdict = suspiciousStringValueMatcher(w);
-			if(suspiciousValueVerdict.severity() == Verdict.SEVERITY_SUSPICIOUS_TITLE) {
-				return suspiciousValueVerdict;
-			}
-		}
-
-		// if everything was OK ...
-		return Verdict.OK;
-	}
-	
-	private Verdict suspiciousStringValueMatcher(Widget w) {
-		Matcher m;
-
-		for(String tagForSuspiciousOracle : settings.get(ConfigTags.TagsForSuspiciousOracle)){
-			String tagValue = "";
-			// First finding the Tag that matches the TagsToFilter string, then getting the value of that Tag:
-			for(Tag tag : w.tags()){
-				if(tag.name().equals(tagForSuspiciousOracle)){
-					// Force the replacement of new line characters to avoid the usage of (?s) regex in the regular expression
-					tagValue = w.get(tag, "").toString().replace("\n", " ").replace("\r", " ");
-					break;
-					//System.out.println("DEBUG: tag found, "+tagToFilter+"="+tagValue);
-				}
-			}
-
-			//Check whether the Tag value is empty or null
-			if (tagValue == null || tagValue.isEmpty())
-				continue; //no action
-
-			//Ignore value ValuePattern for UIAEdit widgets
-			if(tagValue.equals("ValuePattern") && w.get(Tags.Role, Roles.Widget).toString().equalsIgnoreCase("UIAEdit")) {
-				continue;
-			}
-
-			m = this.suspiciousTitlesMatchers.get(tagValue);
-			if (m == null){
-				m = this.suspiciousTitlesPattern.matcher(tagValue);
-				this.suspiciousTitlesMatchers.put(tagValue, m);
-			}
+		this.suspiciousTitlesOracle = RegexOracle.recompile(this.suspiciousTitlesOracle, "SuspiciousTitles", settings().get(ConfigTags.SuspiciousTitles));
 
-			if (m.matches()){
-				Visualizer visualizer = Util.NullVisualizer;
-				Pen RedPen = Pen.newPen().setColor(Color.Red).setFillPattern(FillPattern.None).setStrokePattern(StrokePattern.Solid).build();
-				// visualize the problematic widget, by marking it with a red box
-				if(w.get(Tags.Shape, null) != null)
-					visualizer = new ShapeVisualizer(RedPen, w.get(Tags.Shape), "Suspicious Title", 0.5, 0.5);
-				return new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE,
-						"Discovered suspicious widget '" + tagForSuspiciousOracle + "' : '" + tagValue + "'.", visualizer);
-			}
-		}
-		return Verdict.OK;
+		// search all widgets for suspicious String Values, and check them with the oracles of the protocol,
+		// in parallel, up to the first suspicious widget
+		List<Oracle> stateOracles = new ArrayList<>(oracles.size() + 1);
+		stateOracles.add(new SuspiciousTagValueOracle(this.suspiciousTitlesOracle, settings.get(ConfigTags.TagsForSuspiciousOracle)));
+		stateOracles.addAll(oracles);
+		return oracleEvaluator.evaluate(state, stateOracles, Verdict.SEVERITY_SUSPICIOUS_TITLE);
 	}
 
 	/**
@@ -906,7 +875,8 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 	 */
 	protected Set<Action> deriveActions(SUT system, State state) throws ActionBuildException{
 		Assert.notNull(state);
-		Set<Action> actions = new HashSet<Action>();
+		// in the order in which the actions are derived, which does not change between runs
+		Set<Action> actions = new LinkedHashSet<Action>();
 
 		// If there is an unwanted process running, we need to kill it.
 		// This is an unwanted process that is defined in the filter.
@@ -987,18 +957,11 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 		double waitTime = settings.get(ConfigTags.TimeToWaitAfterAction);
 
 		try{
-			double halfWait = waitTime == 0 ? 0.01 : waitTime / 2.0; // seconds
-			Util.pause(halfWait); // help for a better match of the state' actions visualization
+			if (settleDetector == null) {
+				Util.pause(halfWait(waitTime)); // help for a better match of the state' actions visualization
+			}
 			action.run(system, state, settings.get(ConfigTags.ActionDuration));
-			int waitCycles = (int) (MAX_ACTION_WAIT_FRAME / halfWait);
-			long actionCPU;
-			do {
-				long CPU1[] = NativeLinker.getCPUsage(system);
-				Util.pause(halfWait);
-				long CPU2[] = NativeLinker.getCPUsage(system);
-				actionCPU = ( CPU2[0] + CPU2[1] - CPU1[0] - CPU1[1] );
-				waitCycles--;
-			} while (actionCPU > 0 && waitCycles > 0);
+			waitUntilSettled(system, state, waitTime);
 
 			//Save the executed action information into the logs
 			saveActionInfoInLogs(state, action, "ExecutedAction");
@@ -1018,18 +981,11 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 	    }
 
 	    try{
-	        double halfWait = actionWaitTime == 0 ? 0.01 : actionWaitTime / 2.0; // seconds
-	        Util.pause(halfWait); // help for a better match of the state' actions visualization
+	        if (settleDetector == null) {
+	            Util.pause(halfWait(actionWaitTime)); // help for a better match of the state' actions visualization
+	        }
 	        action.run(system, state, actionDuration);
-	        int waitCycles = (int) (MAX_ACTION_WAIT_FRAME / halfWait);
-	        long actionCPU;
-	        do {
-	            long CPU1[] = NativeLinker.getCPUsage(system);
-	            Util.pause(halfWait);
-	            long CPU2[] = NativeLinker.getCPUsage(system);
-	            actionCPU = ( CPU2[0] + CPU2[1] - CPU1[0] - CPU1[1] );
-	            waitCycles--;
-	        } while (actionCPU > 0 && waitCycles > 0);
+	        waitUntilSettled(system, state, actionWaitTime);
 
 	        //Save the replayed action information into the logs
 	        saveActionInfoInLogs(state, action, "ReplayedAction");
@@ -1040,6 +996,57 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 	    }
 	}
 
+	private static double halfWait(double waitTime) {
+		return waitTime == 0 ? 0.01 : waitTime / 2.0; // seconds
+	}
+
+	/**
+	 * Waits after an action until the SUT settled.
+	 * With AdaptiveSettle, the settle detector polls the signals of createSettleSignals, up to the longest of
+	 * the wait time and MAX_ACTION_WAIT_FRAME. Otherwise the CPU usage of the SUT is checked every half wait time,
+	 * up to MAX_ACTION_WAIT_FRAME.
+	 * @param system
+	 * @param state the state on which the action was executed
+	 * @param waitTime the time to wait after the action, in seconds
+	 */
+	protected void waitUntilSettled(SUT system, State state, double waitTime) {
+		if (settleDetector != null) {
+			double settleTime = settleDetector.awaitSettled(system, state, Math.max(waitTime, MAX_ACTION_WAIT_FRAME));
+			LogSerialiser.log(String.format("Action settled in %.0f ms%s%n", settleTime * 1000,
+					settleDetector.lastTimedOut() ? " (timeout)" : ""), LogSerialiser.LogLevel.Debug);
+			return;
+		}
+
+		double halfWait = halfWait(waitTime);
+		int waitCycles = (int) (MAX_ACTION_WAIT_FRAME / halfWait);
+		long actionCPU;
+		do {
+			long CPU1[] = NativeLinker.getCPUsage(system);
+			Util.pause(halfWait);
+			long CPU2[] = NativeLinker.getCPUsage(system);
+			actionCPU = ( CPU2[0] + CPU2[1] - CPU1[0] - CPU1[1] );
+			waitCycles--;
+		} while (actionCPU > 0 && waitCycles > 0);
+	}
+
+	/**
+	 * Logs the settle times of the actions so far, when AdaptiveSettle is enabled.
+	 */
+	protected void logSettleTimes() {
+		if (settleDetector != null) {
+			LogSerialiser.log(settleDetector.report() + "\n", LogSerialiser.LogLevel.Info);
+		}
+	}
+
+	/**
+	 * The signals the settle detector polls after every action when AdaptiveSettle is enabled, in polling order:
+	 * the CPU usage of the SUT, then the stability of its screenshot.
+	 * @return the settle signals
+	 */
+	protected List<SettleSignal> createSettleSignals() {
+		return Arrays.asList(new CpuSettleSignal(), new ScreenshotSettleSignal(ProtocolUtil::getStateshotBinary));
+	}
+
 	/**
 	 * This method is here, so that ClickFilterLayerProtocol can override it, and the behaviour is updated
 	 *
@@ -1132,41 +1139,56 @@ public class DefaultProtocol extends RuntimeControlsProtocol {
 
 	}
 
+	/**
+	 * Log the time spent in the regular expression oracles since the previous state:
+	 * the suspicious titles of this state, and the click filter of the actions derived for the previous state
+	 */
+	protected void logOracleEvaluations() {
+		for (RegexOracle oracle : new RegexOracle[]{ suspiciousTitlesOracle, clickFilterOracle }) {
+			if (oracle != null)
+				LogSerialiser.log("Oracle " + oracle.report() + "\n", LogSerialiser.LogLevel.Debug);
+		}
+	}
+
 	@Override
 	protected void closeTestSession() {
 	}
 
 	/**
-	 * Use CodingManager to create the Widget and State identifiers: 
+	 * Use the IdCoder of the session to create the Widget and State identifiers: 
 	 * ConcreteID, ConcreteIDCustom, AbstractID, AbstractIDCustom, 
 	 * Abstract_R_ID, Abstract_R_T_ID, Abstract_R_T_P_ID 
 	 * 
 	 * @param state
 	 */
 	protected void buildStateIdentifiers(State state) {
-	    CodingManager.buildIDs(state);
+	    idCoder.buildIDs(state);
+	    LogSerialiser.log("Widget identifiers reused: " + idCoder.getWidgetIdCacheHitsOfLastState()
+	            + ", computed: " + idCoder.getWidgetIdCacheMissesOfLastState()
+	            + "; folded through unchanged subtrees: " + idCoder.getSubtreeCacheHitsOfLastState()
+	            + ", one by one: " + idCoder.getSubtreeCacheMissesOfLastState() + "\n", LogSerialiser.LogLevel.Debug);
 	}
 
 	/**
-	 * Use CodingManager to create the Actions identifiers: 
+	 * Use the IdCoder of the session to create the Actions identifiers: 
 	 * ConcreteID, ConcreteIDCustom, AbstractID, AbstractIDCustom 
 	 * 
 	 * @param state
 	 * @param actions
 	 */
 	protected void buildStateActionsIdentifiers(State state, Set<Action> actions) {
-	    CodingManager.buildIDs(state, actions);
+	    idCoder.buildIDs(state, actions);
 	}
 
 	/**
-	 * Use CodingManager to create the specific environment Action identifiers: 
+	 * Use the IdCoder of the session to create the specific environment Action identifiers: 
 	 * ConcreteID, ConcreteIDCustom, AbstractID, AbstractIDCustom 
 	 * 
 	 * @param state
 	 * @param action
 	 */
 	protected void buildEnvironmentActionIdentifiers(State state, Action action) {
-	    CodingManager.buildEnvironmentActionIDs(state, action);
+	    idCoder.buildEnvironmentActionIDs(state, action);
 	}
 
 }
@@ -34,6 +34,7 @@ import org.testar.CodingManager;
 import org.testar.StateManagementTags;
 import org.testar.serialisation.LogSerialiser;
 import org.testar.serialisation.ScreenshotSerialiser;
+import org.testar.serialisation.SerialisationPipeline;
 import org.testar.serialisation.TestSerialiser;
 import org.testar.monkey.alayer.Tag;
 
@@ -441,6 +442,15 @@ public class Main {
 			defaults.add(Pair.from(ShowVisualSettingsDialogOnStartup, true));
 			defaults.add(Pair.from(FaultThreshold, 0.1));
 			defaults.add(Pair.from(LogLevel, 1));
+			defaults.add(Pair.from(SerialisationWorkers, SerialisationPipeline.DEFAULT_WORKERS));
+			defaults.add(Pair.from(ScreenshotFormat, "png:1"));
+			defaults.add(Pair.from(ScreenshotSimilarityDistance, -1));
+			defaults.add(Pair.from(DifferentialScreenshots, false));
+			defaults.add(Pair.from(ReportFrameImages, false));
+			defaults.add(Pair.from(ActionDerivationThreads, 0));
+			defaults.add(Pair.from(AdaptiveSettle, false));
+			defaults.add(Pair.from(SettlePollInterval, 0.05));
+			defaults.add(Pair.from(SettleStablePolls, 2));
 			defaults.add(Pair.from(Mode, RuntimeControlsProtocol.Modes.Spy));
 			defaults.add(Pair.from(OutputDir, outputDir));
 			defaults.add(Pair.from(TempDir, tempDir));
@@ -496,10 +506,13 @@ public class Main {
 			defaults.add(Pair.from(DataStorePassword, ""));
 			defaults.add(Pair.from(DataStoreMode, ""));
 			defaults.add(Pair.from(ResetDataStore, false));
+			defaults.add(Pair.from(StateModelSnapshotDirectory, "")); // empty: the statemodel directory in the output directory
+			defaults.add(Pair.from(StateModelLogDirectory, "")); // empty: the statemodel_log directory in the output directory
 			defaults.add(Pair.from(ApplicationName, ""));
 			defaults.add(Pair.from(ApplicationVersion, ""));
 			defaults.add(Pair.from(ActionSelectionAlgorithm, "random"));
 			defaults.add(Pair.from(StateModelStoreWidgets, true));
+			defaults.add(Pair.from(StateIdFormat, CodingManager.IdFormat.LEGACY.name()));
 			defaults.add(Pair.from(AlwaysCompile, true));
 			defaults.add(Pair.from(ProcessListenerEnabled, false));
 			defaults.add(Pair.from(SuspiciousProcessOutput, "(?!x)x"));
@@ -570,6 +583,9 @@ public class Main {
 			defaults.add(Pair.from(FollowLinks, true));
 			defaults.add(Pair.from(BrowserFullScreen, true));
 			defaults.add(Pair.from(SwitchNewTabs, true));
+			defaults.add(Pair.from(CompressStateTransfer, false));
+			defaults.add(Pair.from(IncrementalCapture, false));
+			defaults.add(Pair.from(FullCaptureInterval, 10));
 
 			/*
 			//TODO web driver settings for login feature
@@ -768,6 +784,12 @@ public class Main {
             Tag<?>[] abstractTags = settings.get(AbstractStateAttributes).stream().map(StateManagementTags::getTagFromSettingsString).filter(Objects::nonNull).toArray(Tag<?>[]::new);
             CodingManager.setCustomTagsForAbstractId(abstractTags);
         }
+
+        try {
+            CodingManager.setIdFormat(CodingManager.IdFormat.valueOf(settings.get(ConfigTags.StateIdFormat).trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown StateIdFormat <" + settings.get(ConfigTags.StateIdFormat) + ">, using " + CodingManager.IdFormat.LEGACY);
+        }
     }
 
 	/**
@@ -405,6 +405,9 @@ public class Settings extends TaggableBase implements Serializable {
 					+"FollowLinks = " + Util.lineSep()
 					+"BrowserFullScreen = " + Util.lineSep()
 					+"SwitchNewTabs = " + Util.lineSep()
+					+"CompressStateTransfer = " + Util.lineSep()
+					+"IncrementalCapture = " + Util.lineSep()
+					+"FullCaptureInterval = " + Util.lineSep()
 					+"\n"
 					+"#################################################################\n"
 					+"# WebDriver Browser Console Oracles\n"
@@ -0,0 +1,190 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.oracles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testar.monkey.Assert;
+import org.testar.monkey.alayer.State;
+import org.testar.monkey.alayer.Verdict;
+import org.testar.monkey.alayer.Widget;
+import org.testar.monkey.alayer.WidgetArray;
+
+/**
+ * Evaluates oracles over the widgets of a state, splitting the widget array across the threads of a
+ * fork/join pool.
+ *
+ * The outcome does not depend on the number of threads: it is the verdict a single thread would give
+ * when checking the widgets in the order of State.widgets(), every widget with the oracles in the order
+ * they are given, and joining the verdicts until one of them reaches the stop severity.
+ */
+public class OracleEvaluator {
+
+    public static final int DEFAULT_GRANULARITY = 256;
+
+    private final ForkJoinPool pool;
+    private final int granularity;
+
+    /**
+     * An evaluator on the common fork/join pool.
+     */
+    public OracleEvaluator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_GRANULARITY);
+    }
+
+    /**
+     * @param pool the pool that checks the widgets
+     * @param granularity the number of widgets that is checked by one task, states of at most this number
+     *                    of widgets are checked on the calling thread
+     */
+    public OracleEvaluator(ForkJoinPool pool, int granularity) {
+        Assert.notNull(pool);
+        Assert.isTrue(granularity > 0);
+        this.pool = pool;
+        this.granularity = granularity;
+    }
+
+    /**
+     * Checks the widgets of a state with the given oracles.
+     *
+     * The verdicts that are not OK are joined like Verdict.join does, in widget order and per widget in
+     * oracle order, up to and including the first verdict with a severity of at least stopSeverity. The
+     * widgets after that one are not checked anymore, or ignored when they were checked concurrently.
+     * The joined verdict keeps the visualizer of the first verdict with the highest severity.
+     *
+     * @param state
+     * @param oracles
+     * @param stopSeverity
+     * @return the joined verdict, Verdict.OK if all the widgets are fine
+     */
+    public Verdict evaluate(State state, List<? extends Oracle> oracles, double stopSeverity) {
+        Assert.notNull(state, oracles);
+        if (oracles.isEmpty()) {
+            return Verdict.OK;
+        }
+        for (Oracle oracle : oracles) {
+            oracle.prepare(state);
+        }
+
+        Evaluation evaluation = new Evaluation(state.widgets(), oracles.toArray(new Oracle[0]), stopSeverity);
+        int size = evaluation.widgets.size();
+        if (size <= granularity) {
+            evaluation.check(0, size);
+        } else {
+            pool.invoke(new Check(evaluation, 0, size, granularity));
+        }
+        return evaluation.merge();
+    }
+
+    private static final class Evaluation {
+
+        final WidgetArray widgets;
+        final Oracle[] oracles;
+        final double stopSeverity;
+        // the first widget with a verdict that reached the stop severity
+        final AtomicInteger stop = new AtomicInteger(Integer.MAX_VALUE);
+        // the verdicts that are not OK, by widget index times the number of oracles plus oracle index
+        final ConcurrentSkipListMap<Long, Verdict> verdicts = new ConcurrentSkipListMap<>();
+
+        Evaluation(WidgetArray widgets, Oracle[] oracles, double stopSeverity) {
+            this.widgets = widgets;
+            this.oracles = oracles;
+            this.stopSeverity = stopSeverity;
+        }
+
+        void check(int from, int to) {
+            for (int i = from; i < to && i < stop.get(); i++) {
+                Widget widget = widgets.get(i);
+                for (int j = 0; j < oracles.length; j++) {
+                    Verdict verdict = oracles[j].getVerdict(widget);
+                    if (verdict == null || verdict.severity() == Verdict.SEVERITY_OK) {
+                        continue;
+                    }
+                    verdicts.put((long) i * oracles.length + j, verdict);
+                    if (verdict.severity() >= stopSeverity) {
+                        stop.accumulateAndGet(i, Math::min);
+                        return;
+                    }
+                }
+            }
+        }
+
+        Verdict merge() {
+            long last = stop.get() == Integer.MAX_VALUE ? Long.MAX_VALUE : ((long) stop.get() + 1) * oracles.length;
+            Verdict joined = null;
+            Verdict winner = null;
+            for (Map.Entry<Long, Verdict> entry : verdicts.headMap(last).entrySet()) {
+                Verdict verdict = entry.getValue();
+                joined = joined == null ? verdict : joined.join(verdict);
+                if (winner == null || verdict.severity() > winner.severity()) {
+                    winner = verdict;
+                }
+            }
+            if (joined == null) {
+                return Verdict.OK;
+            }
+            return joined == winner ? winner : new Verdict(joined.severity(), joined.info(), winner.visualizer());
+        }
+    }
+
+    private static final class Check extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Evaluation evaluation;
+        private final int from, to, granularity;
+
+        Check(Evaluation evaluation, int from, int to, int granularity) {
+            this.evaluation = evaluation;
+            this.from = from;
+            this.to = to;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected void compute() {
+            if (from >= evaluation.stop.get()) {
+                return;
+            }
+            if (to - from <= granularity) {
+                evaluation.check(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Check(evaluation, from, middle, granularity), new Check(evaluation, middle, to, granularity));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.oracles;
+
+import java.util.List;
+
+import org.testar.monkey.Assert;
+import org.testar.monkey.Util;
+import org.testar.monkey.alayer.Color;
+import org.testar.monkey.alayer.FillPattern;
+import org.testar.monkey.alayer.Pen;
+import org.testar.monkey.alayer.RegexOracle;
+import org.testar.monkey.alayer.Roles;
+import org.testar.monkey.alayer.StrokePattern;
+import org.testar.monkey.alayer.Tag;
+import org.testar.monkey.alayer.Tags;
+import org.testar.monkey.alayer.Verdict;
+import org.testar.monkey.alayer.Visualizer;
+import org.testar.monkey.alayer.Widget;
+import org.testar.monkey.alayer.visualizers.ShapeVisualizer;
+
+/**
+ * The suspicious titles oracle: a widget is suspicious when the value of one of the configured tags
+ * (TagsForSuspiciousOracle) matches the configured expression (SuspiciousTitles).
+ */
+public class SuspiciousTagValueOracle implements Oracle {
+
+    private static final Pen RED_PEN = Pen.newPen().setColor(Color.Red).setFillPattern(FillPattern.None).setStrokePattern(StrokePattern.Solid).build();
+
+    private final RegexOracle suspiciousTitles;
+    private final List<String> tagNames;
+
+    public SuspiciousTagValueOracle(RegexOracle suspiciousTitles, List<String> tagNames) {
+        Assert.notNull(suspiciousTitles, tagNames);
+        this.suspiciousTitles = suspiciousTitles;
+        this.tagNames = tagNames;
+    }
+
+    @Override
+    public Verdict getVerdict(Widget w) {
+        for (String tagForSuspiciousOracle : tagNames) {
+            String tagValue = "";
+            // First finding the Tag that matches the TagsToFilter string, then getting the value of that Tag.
+            // Only the tags with that name are fetched, the other tags of the widget stay lazy:
+            for (Tag<?> tag : Tag.byName(tagForSuspiciousOracle)) {
+                Object value = w.get(tag, null);
+                if (value != null) {
+                    // Force the replacement of new line characters to avoid the usage of (?s) regex in the regular expression
+                    tagValue = value.toString().replace("\n", " ").replace("\r", " ");
+                    break;
+                }
+            }
+
+            //Check whether the Tag value is empty or null
+            if (tagValue == null || tagValue.isEmpty())
+                continue; //no action
+
+            //Ignore value ValuePattern for UIAEdit widgets
+            if (tagValue.equals("ValuePattern") && w.get(Tags.Role, Roles.Widget).toString().equalsIgnoreCase("UIAEdit")) {
+                continue;
+            }
+
+            if (suspiciousTitles.matches(tagValue)) {
+                Visualizer visualizer = Util.NullVisualizer;
+                // visualize the problematic widget, by marking it with a red box
+                if (w.get(Tags.Shape, null) != null)
+                    visualizer = new ShapeVisualizer(RED_PEN, w.get(Tags.Shape), "Suspicious Title", 0.5, 0.5);
+                return new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE,
+                        "Discovered suspicious widget '" + tagForSuspiciousOracle + "' : '" + tagValue + "'.", visualizer);
+            }
+        }
+        return Verdict.OK;
+    }
+}
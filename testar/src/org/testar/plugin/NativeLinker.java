@@ -239,10 +239,11 @@ public class NativeLinker {
 			long[] cpums = WinProcess.getCPUsage((WinProcess)nativeSUT);
 			return new long[]{ cpums[0], cpums[1], cpuFrame };
 		} else if (PLATFORM_OS.contains(OperatingSystems.UNIX)) {
-			// TODO: this probably needs to change somehow...
-			return new long[] { (long)(LinuxProcess.getCpuUsage((LinuxProcess)nativeSUT)),
-					(long)(LinuxProcess.getCpuUsage((LinuxProcess)nativeSUT)),
-					(long)(LinuxProcess.getCpuUsage((LinuxProcess)nativeSUT))};
+			long now = System.currentTimeMillis();
+			long cpuFrame = now - lastCPUquery;
+			lastCPUquery = now;
+			long[] cpums = LinuxProcess.getCPUsage((LinuxProcess)nativeSUT);
+			return new long[]{ cpums[0], cpums[1], cpuFrame };
 		}
 		throw new UnsupportedPlatformException();
 	}
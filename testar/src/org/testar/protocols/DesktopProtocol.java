@@ -44,7 +44,7 @@ import org.testar.monkey.ConfigTags;
 import org.testar.OutputStructure;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import static org.testar.monkey.alayer.Tags.Blocked;
 import static org.testar.monkey.alayer.Tags.Enabled;
@@ -143,9 +143,10 @@ public class DesktopProtocol extends GenericUtilsProtocol {
      */
     @Override
     protected boolean executeAction(SUT system, State state, Action action){
-        // adding the action that is going to be executed into HTML report:
+        boolean executed = super.executeAction(system, state, action);
+        // adding the executed action into HTML report, after its action shot has been stored:
         htmlReport.addSelectedAction(state, action);
-        return super.executeAction(system, state, action);
+        return executed;
     }
     
     /**
@@ -153,9 +154,10 @@ public class DesktopProtocol extends GenericUtilsProtocol {
      */
     @Override
     protected boolean replayAction(SUT system, State state, Action action, double actionWaitTime, double actionDuration){
-        // adding the action that is going to be executed into HTML report:
+        boolean replayed = super.replayAction(system, state, action, actionWaitTime, actionDuration);
+        // adding the replayed action into HTML report, after its action shot has been stored:
         htmlReport.addSelectedAction(state, action);
-        return super.replayAction(system, state, action, actionWaitTime, actionDuration);
+        return replayed;
     }
 
     /**
@@ -195,9 +197,9 @@ public class DesktopProtocol extends GenericUtilsProtocol {
     }
 
     /**
-     * Iterating through all widgets of the given state. 
+     * Deriving the actions of all widgets of the given state, in parallel over the widgets.
      *
-     * Adding derived actions into the given set of actions and returning the modified set of actions.
+     * Adding derived actions into the given set of actions, in widget order, and returning the modified set of actions.
      *
      * @param actions
      * @param state
@@ -205,14 +207,12 @@ public class DesktopProtocol extends GenericUtilsProtocol {
      */
     protected DerivedActions deriveClickTypeScrollActionsFromAllWidgets(Set<Action> actions, State state){
 
-        Set<Action> filteredActions = new HashSet<>();
+        Set<Action> filteredActions = new LinkedHashSet<>();
         DerivedActions derived = new DerivedActions(actions, filteredActions);
 
-        // Iterate through all widgets of the state to find all possible actions that TESTAR can click on
-        for(Widget w : state){
-            derived = getMultipleActionsFromWidget(w,derived);
-        }
-        return derived;
+        // Derive the actions of all widgets of the state to find all possible actions that TESTAR can click on,
+        // in parallel over the widgets
+        return deriveActionsFromWidgets(state.widgets().asList(), derived, this::getMultipleActionsFromWidget);
     }
 
     /**
@@ -227,14 +227,11 @@ public class DesktopProtocol extends GenericUtilsProtocol {
      */
     protected DerivedActions deriveClickTypeScrollActionsFromTopLevelWidgets(Set<Action> actions, State state){
 
-        Set<Action> filteredActions = new HashSet<>();
+        Set<Action> filteredActions = new LinkedHashSet<>();
         DerivedActions derived = new DerivedActions(actions, filteredActions);
 
-        // Iterate through top level widgets of the state trying to execute more interesting actions
-        for(Widget w : getTopWidgets(state)){
-            derived = getMultipleActionsFromWidget(w,derived);
-        }
-        return derived;
+        // Derive the actions of the top level widgets of the state trying to execute more interesting actions
+        return deriveActionsFromWidgets(getTopWidgets(state), derived, this::getMultipleActionsFromWidget);
     }
 
     /**
@@ -243,13 +240,11 @@ public class DesktopProtocol extends GenericUtilsProtocol {
      * Current Action priority: Typeable > Clickable > Draggable.
      * 
      * @param w
+     * @param ac the action compiler to derive actions (such as clicks, drag&drop, typing ...) with
      * @param derived
      * @return
      */
-    private DerivedActions getActionFromWidget(Widget w, DerivedActions derived){
-        // To derive actions (such as clicks, drag&drop, typing ...) we should first create an action compiler.
-        StdActionCompiler ac = new AnnotatingActionCompiler();
-
+    private DerivedActions getActionFromWidget(Widget w, StdActionCompiler ac, DerivedActions derived){
         if(w.get(Tags.Role, Roles.Widget).toString().equalsIgnoreCase("UIAMenu")){
             // filtering out actions on menu-containers (that would add an action in the middle of the menu)
             return derived; // skip this widget
@@ -327,13 +322,12 @@ public class DesktopProtocol extends GenericUtilsProtocol {
      * If widget is enabled and unfiltered, derive all possible actions.
      * 
      * @param w
+     * @param ac the action compiler to derive actions (such as clicks, drag&drop, typing ...) with,
+     *           which is shared by the threads of the derivation
      * @param derived
      * @return
      */
-    private DerivedActions getMultipleActionsFromWidget(Widget w, DerivedActions derived){
-        // To derive actions (such as clicks, drag&drop, typing ...) we should first create an action compiler.
-        StdActionCompiler ac = new AnnotatingActionCompiler();
-
+    private DerivedActions getMultipleActionsFromWidget(Widget w, StdActionCompiler ac, DerivedActions derived){
         if(w.get(Tags.Role, Roles.Widget).toString().equalsIgnoreCase("UIAMenu")){
             // filtering out actions on menu-containers (that would add an action in the middle of the menu)
             return derived; // skip this widget
@@ -415,7 +409,9 @@ public class DesktopProtocol extends GenericUtilsProtocol {
         StdActionCompiler ac = new AnnotatingActionCompiler();
 
         // To find all possible actions that TESTAR can click on we should iterate through all widgets of the state.
-        for(Widget w : state){
+        WidgetArray widgets = state.widgets();
+        for(int i = 0; i < widgets.size(); i++){
+            Widget w = widgets.get(i);
 
             if(w.get(Tags.Role, Roles.Widget).toString().equalsIgnoreCase("UIAMenu")){
                 // filtering out actions on menu-containers (that would add an action in the middle of the menu)
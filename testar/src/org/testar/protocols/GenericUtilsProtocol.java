@@ -31,6 +31,7 @@
 
 package org.testar.protocols;
 
+import org.testar.ActionDeriver;
 import org.testar.DerivedActions;
 import org.testar.monkey.Drag;
 import org.testar.monkey.Util;
@@ -41,6 +42,7 @@ import org.testar.monkey.alayer.actions.NOP;
 import org.testar.monkey.alayer.actions.StdActionCompiler;
 import org.testar.plugin.NativeLinker;
 import org.testar.plugin.OperatingSystems;
+import org.testar.serialisation.LogSerialiser;
 import org.testar.monkey.ConfigTags;
 
 import java.util.ArrayList;
@@ -50,11 +52,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
 
+    // the names of the tags that are checked by the click filter, read from the settings by prepareClickFilter
+    private List<String> tagsToFilter = new ArrayList<>();
+
+    // true while the actions are derived in parallel, the click filter is only read by the derivation threads then
+    private volatile boolean derivingActions = false;
+
     /**
      * Allows using the function with a tag name,
      * so the user does not need to know where in TESTAR package that specific tag is found.
@@ -425,7 +432,9 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
 
         // Then check the tags of each widget to see if they match the tag values we are
         // looking for.
-        for (Widget widget : state) {
+        WidgetArray widgets = state.widgets();
+        for (int i = 0; i < widgets.size(); i++) {
+            Widget widget = widgets.get(i);
             Vector<String> tagsFound = new Vector<String>();
 
             HashMap<String, String> webTagValues = new HashMap<>();
@@ -467,7 +476,9 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
      * @return the matching widget if found, null if not found
      */
     protected Widget getWidgetWithMatchingTag(Tag<?> tag, String value, State state){
-        for(Widget widget:state){
+        WidgetArray widgets = state.widgets();
+        for(int i = 0; i < widgets.size(); i++){
+            Widget widget = widgets.get(i);
             if(widget.get(tag, null)==null){
                 // this widget did not have a value for the given tag
             }
@@ -488,7 +499,9 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
      * @param state
      */
     protected void printTagValuesOfWidgets(Tag<?> tag, State state){
-        for(Widget widget:state){
+        WidgetArray widgets = state.widgets();
+        for(int i = 0; i < widgets.size(); i++){
+            Widget widget = widgets.get(i);
             if(widget.get(tag, null)==null){
                 // this widget did not have a value for the given tag
             }
@@ -555,6 +568,30 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
         return derived;
     }
 
+    /**
+     * Derives the actions of the given widgets in parallel, with an action compiler that is shared by all threads,
+     * and adds them to the DerivedActions in widget order. The widgetActions may be called concurrently for
+     * different widgets, so they should only add actions to the DerivedActions they are given.
+     * The number of threads is set by the ActionDerivationThreads setting.
+     *
+     * @param widgets
+     * @param derived
+     * @param widgetActions derives the actions of one widget
+     * @return DerivedActions with the added actions of all widgets
+     */
+    protected DerivedActions deriveActionsFromWidgets(List<Widget> widgets, DerivedActions derived, ActionDeriver.WidgetActions widgetActions){
+        // the settings are not thread safe, so the click filter is read and compiled before the threads check it
+        prepareClickFilter();
+        derivingActions = true;
+        try {
+            derived = actionDeriver.derive(widgets, new AnnotatingActionCompiler(), derived, widgetActions);
+        } finally {
+            derivingActions = false;
+        }
+        LogSerialiser.log("Action derivation: " + actionDeriver.report() + "\n", LogSerialiser.LogLevel.Debug);
+        return derived;
+    }
+
     /**
      * Check whether a widget is clickable
      * @param w
@@ -578,7 +615,7 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
 
     /**
      * Check whether widget w should be filtered based on
-     * its title (matching the regular expression of the Dialog --> clickFilterPattern)
+     * its title (matching the regular expression of the Dialog --> clickFilterOracle)
      * that is cannot be hit
      * @param w
      * @return
@@ -589,16 +626,21 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
         if(!Util.hitTest(w, 0.5, 0.5))
             return false;
 
+        // outside of the parallel derivation the click filter may have changed since the last check
+        if(!derivingActions)
+            prepareClickFilter();
+
         Boolean isFiltered = false;
 
-        for(String tagToFilter : settings.get(ConfigTags.TagsToFilter)){
+        for(String tagToFilter : tagsToFilter){
             String tagValue = "";
-            // First finding the Tag that matches the TagsToFilter string, then getting the value of that Tag:
-            for(Tag tag : w.tags()){
-                if(tag.name().equals(tagToFilter)){
-                    tagValue = w.get(tag, "");
+            // First finding the Tag that matches the TagsToFilter string, then getting the value of that Tag.
+            // Only the tags with that name are fetched, the other tags of the widget stay lazy:
+            for(Tag<?> tag : Tag.byName(tagToFilter)){
+                Object value = w.get(tag, null);
+                if(value != null){
+                    tagValue = value.toString();
                     break;
-                    //System.out.println("DEBUG: tag found, "+tagToFilter+"="+tagValue);
                 }
             }
 
@@ -608,18 +650,8 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
             if (tagValue == null || tagValue.isEmpty())
                 continue; //no action, isFiltered is still false (cannot return directly if other Tags are checked)
 
-            //If no clickFilterPattern exists, then create it
-            //Get the clickFilterPattern from the regular expression provided by the tester in the Dialog
-            if (this.clickFilterPattern == null)
-                this.clickFilterPattern = Pattern.compile(settings().get(ConfigTags.ClickFilter), Pattern.UNICODE_CHARACTER_CLASS);
-
-            //Check whether the title matches any of the clickFilterPatterns
-            Matcher m = this.clickFilterMatchers.get(tagValue);
-            if (m == null){
-                m = this.clickFilterPattern.matcher(tagValue);
-                this.clickFilterMatchers.put(tagValue, m);
-            }
-            isFiltered = m.matches();
+            //Check whether the title matches the clickFilterOracle
+            isFiltered = this.clickFilterOracle.matches(tagValue);
             // if filtered, no need to check if it should be filtered multiple times:
             if(isFiltered) return(!isFiltered); //method is for is-UN-filtered
 
@@ -628,18 +660,25 @@ public class GenericUtilsProtocol extends ClickFilterLayerProtocol {
         return !isFiltered;
     }
 
+    /**
+     * Reads the tags to filter from the settings and compiles the clickFilterOracle,
+     * if no clickFilterOracle exists or the regular expression provided by the tester in the Dialog changed.
+     */
+    private void prepareClickFilter(){
+        tagsToFilter = settings().get(ConfigTags.TagsToFilter);
+        this.clickFilterOracle = RegexOracle.recompile(this.clickFilterOracle, "ClickFilter", settings().get(ConfigTags.ClickFilter));
+    }
+
     /**
      * Return a list of widgets that have the maximal Zindex
      * @param state
      * @return
      */
     protected List<Widget> getTopWidgets(State state){
-        List<Widget> topWidgets = new ArrayList<>();
         double maxZIndex = state.get(Tags.MaxZIndex);
-        for (Widget w : state)
-            if (w.get(Tags.ZIndex) == maxZIndex)
-                topWidgets.add(w);
-        return topWidgets;
+        return state.stream()
+                .filter(w -> w.get(Tags.ZIndex) == maxZIndex)
+                .collect(Collectors.toList());
     }
 
     protected boolean isNOP(Action action){
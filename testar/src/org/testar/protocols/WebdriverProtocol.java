@@ -50,8 +50,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import org.apache.commons.lang3.ArrayUtils;
 import org.openqa.selenium.logging.LogEntries;
@@ -67,6 +65,8 @@ import org.testar.monkey.alayer.exceptions.StateBuildException;
 import org.testar.monkey.alayer.exceptions.SystemStartException;
 import org.testar.monkey.alayer.webdriver.WdDriver;
 import org.testar.monkey.alayer.webdriver.WdElement;
+import org.testar.monkey.alayer.webdriver.WdProtocolUtil;
+import org.testar.monkey.alayer.webdriver.WdStateFetcher;
 import org.testar.monkey.alayer.webdriver.WdWidget;
 import org.testar.monkey.alayer.webdriver.enums.WdRoles;
 import org.testar.monkey.alayer.webdriver.enums.WdTags;
@@ -78,6 +78,9 @@ import org.testar.monkey.Settings;
 import org.testar.OutputStructure;
 import org.testar.serialisation.LogSerialiser;
 import org.testar.reporting.Reporting;
+import org.testar.settle.ScreenshotSettleSignal;
+import org.testar.settle.SettleSignal;
+import org.testar.settle.WebSettleSignal;
 
 public class WebdriverProtocol extends GenericUtilsProtocol {
     //Attributes for adding slide actions
@@ -110,6 +113,8 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
 
 	// Verdict obtained from messages coming from the web browser console
 	protected Verdict webConsoleVerdict = Verdict.OK;
+	protected RegexOracle webConsoleErrorOracle = null;
+	protected RegexOracle webConsoleWarningOracle = null;
 
 	/**
 	 * Called once during the life time of TESTAR
@@ -146,6 +151,14 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
 		//Force webdriver to switch to a new tab if opened
 		//This feature can block the correct display of select dropdown elements 
 		WdDriver.forceActivateTab = settings.get(ConfigTags.SwitchNewTabs);
+
+		//Let the browser gzip the widget tree before it is transferred, for remote browsers
+		WdStateFetcher.compressStateTransfer = settings.get(ConfigTags.CompressStateTransfer);
+
+		//Only capture the parts of the page that changed since the previous state,
+		//with a full capture after every FullCaptureInterval incremental captures
+		WdStateFetcher.incrementalCapture = settings.get(ConfigTags.IncrementalCapture);
+		WdStateFetcher.fullCaptureInterval = settings.get(ConfigTags.FullCaptureInterval);
 	}
 	
 	/**
@@ -296,7 +309,9 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
     	//Spy mode didn't use the html report
     	if(settings.get(ConfigTags.Mode) == Modes.Spy) {
 
-    		for(Widget w : state) {
+    		WidgetArray widgets = state.widgets();
+    		for(int i = 0; i < widgets.size(); i++) {
+    			Widget w = widgets.get(i);
     			WdElement element = ((WdWidget) w).element;
     			for(String s : element.cssClasses) {
     				existingCssClasses.add(s);
@@ -323,8 +338,8 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
 
     	// If Web Console Error Oracle is enabled and we have some pattern to match
     	if(settings.get(ConfigTags.WebConsoleErrorOracle, false) && !settings.get(ConfigTags.WebConsoleErrorPattern, "").isEmpty()) {
-    		// Load the web console error pattern
-    		Pattern errorPattern = Pattern.compile(settings.get(ConfigTags.WebConsoleErrorPattern), Pattern.UNICODE_CHARACTER_CLASS);
+    		// Load the web console error pattern, compiled once
+    		webConsoleErrorOracle = RegexOracle.recompile(webConsoleErrorOracle, "WebConsoleErrorPattern", settings.get(ConfigTags.WebConsoleErrorPattern));
     		// Check Severe messages in the WebDriver logs
     		RemoteWebDriver driver = WdDriver.getRemoteWebDriver();
     		LogEntries logEntries = driver.manage().logs().get(LogType.BROWSER);
@@ -332,8 +347,7 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
     			if(logEntry.getLevel().equals(Level.SEVERE)) {
     				// Check if the severe error message matches with the web console error pattern
     				String consoleErrorMsg = logEntry.getMessage();
-    				Matcher matcherError = errorPattern.matcher(consoleErrorMsg);
-    				if(matcherError.matches()) {
+    				if(webConsoleErrorOracle.matches(consoleErrorMsg)) {
     					webConsoleVerdict = new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE, "Web Browser Console Error: " + consoleErrorMsg);
     				}
     			}
@@ -344,8 +358,8 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
 
     	// If Web Console Warning Oracle is enabled and we have some pattern to match
     	if(settings.get(ConfigTags.WebConsoleWarningOracle, false) && !settings.get(ConfigTags.WebConsoleWarningPattern, "").isEmpty()) {
-    		// Load the web console warning pattern
-    		Pattern warningPattern = Pattern.compile(settings.get(ConfigTags.WebConsoleWarningPattern), Pattern.UNICODE_CHARACTER_CLASS);
+    		// Load the web console warning pattern, compiled once
+    		webConsoleWarningOracle = RegexOracle.recompile(webConsoleWarningOracle, "WebConsoleWarningPattern", settings.get(ConfigTags.WebConsoleWarningPattern));
     		// Check Warning messages in the WebDriver logs
     		RemoteWebDriver driver = WdDriver.getRemoteWebDriver();
     		LogEntries logEntries = driver.manage().logs().get(LogType.BROWSER);
@@ -353,8 +367,7 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
     			if(logEntry.getLevel().equals(Level.WARNING)) {
     				// Check if the warning message matches with the web console error pattern
     				String consoleWarningMsg = logEntry.getMessage();
-    				Matcher matcherWarning = warningPattern.matcher(consoleWarningMsg);
-    				if(matcherWarning.matches()) {
+    				if(webConsoleWarningOracle.matches(consoleWarningMsg)) {
     					webConsoleVerdict = new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE, "Web Browser Console Warning: " + consoleWarningMsg);
     				}
     			}
@@ -366,6 +379,15 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
     	return stateVerdict;
     }
 
+    @Override
+    protected void logOracleEvaluations() {
+    	super.logOracleEvaluations();
+    	for (RegexOracle oracle : new RegexOracle[]{ webConsoleErrorOracle, webConsoleWarningOracle }) {
+    		if (oracle != null)
+    			LogSerialiser.log("Oracle " + oracle.report() + "\n", LogSerialiser.LogLevel.Debug);
+    	}
+    }
+
     /**
      * Overwriting to add HTML report writing into it
      *
@@ -413,9 +435,21 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
      */
     @Override
     protected boolean executeAction(SUT system, State state, Action action){
-        // adding the action that is going to be executed into HTML report:
+        boolean executed = super.executeAction(system, state, action);
+        // adding the executed action into HTML report, after its action shot has been stored:
         htmlReport.addSelectedAction(state, action);
-        return super.executeAction(system, state, action);
+        return executed;
+    }
+
+    /**
+     * The signals the settle detector polls after every action when AdaptiveSettle is enabled:
+     * the state of the web page, as counted by the web extension, then the stability of the screenshot.
+     * The CPU usage is left out, WebDriver does not provide it.
+     * @return the settle signals
+     */
+    @Override
+    protected List<SettleSignal> createSettleSignals() {
+        return Arrays.asList(new WebSettleSignal(), new ScreenshotSettleSignal(WdProtocolUtil::getStateshotBinary));
     }
 
     /**
@@ -423,9 +457,10 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
      */
     @Override
     protected boolean replayAction(SUT system, State state, Action action, double actionWaitTime, double actionDuration){
-        // adding the action that is going to be executed into HTML report:
+        boolean replayed = super.replayAction(system, state, action, actionWaitTime, actionDuration);
+        // adding the replayed action into HTML report, after its action shot has been stored:
         htmlReport.addSelectedAction(state, action);
-        return super.replayAction(system, state, action, actionWaitTime, actionDuration);
+        return replayed;
     }
 
     /**
@@ -468,6 +503,7 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
     @Override
 	protected void finishSequence(){
 		//With webdriver version we don't use the call SystemProcessHandling.killTestLaunchedProcesses
+		logSettleTimes();
 	}
 
     @Override
@@ -540,7 +576,9 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
 		if (currentUrl.startsWith(login.left())) {
 			CompoundAction.Builder builder = new CompoundAction.Builder();
 			// Set username and password
-			for (Widget widget : state) {
+			WidgetArray widgets = state.widgets();
+			for (int i = 0; i < widgets.size(); i++) {
+				Widget widget = widgets.get(i);
 				WdWidget wdWidget = (WdWidget) widget;
 				// Only enabled, visible widgets
 				if (!widget.get(Enabled, true) || widget.get(Blocked, false)) {
@@ -576,7 +614,9 @@ public class WebdriverProtocol extends GenericUtilsProtocol {
 			return null;
 		}
 
-		for (Widget widget : state) {
+		WidgetArray widgets = state.widgets();
+		for (int i = 0; i < widgets.size(); i++) {
+			Widget widget = widgets.get(i);
 			// Only enabled, visible widgets
 			if (!widget.get(Enabled, true) || widget.get(Blocked, false)) {
 				continue;
@@ -33,16 +33,25 @@ package org.testar.reporting;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.testar.monkey.alayer.Action;
+import org.testar.monkey.alayer.FrameContainer;
 import org.testar.monkey.alayer.State;
 import org.testar.monkey.alayer.Tags;
 import org.testar.monkey.alayer.Verdict;
 import org.testar.OutputStructure;
 import org.testar.monkey.alayer.exceptions.NoSuchTagException;
+import org.testar.serialisation.LogSerialiser;
+import org.testar.serialisation.ScreenshotSerialiser;
+import org.testar.serialisation.SerialisationPipeline;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
 import java.util.Set;
 
 public class HtmlSequenceReport implements Reporting{
@@ -74,6 +83,38 @@ public class HtmlSequenceReport implements Reporting{
 
     private int innerLoopCounter = 0;
 
+    // whether the frames of differential screenshots are saved as PNG files to show them in the report
+    private static volatile boolean frameImages = false;
+    private SerialisationPipeline.Channel<FrameImage> frameImagesChannel;
+    // the images of the states that were revisited are only saved once
+    private final Set<File> queuedFrameImages = new HashSet<>();
+
+    private static class FrameImage{
+        final String reference;
+        final File png;
+        FrameImage(String reference, File png){this.reference = reference; this.png = png;}
+    }
+
+    // reconstructing and encoding a frame takes as long as saving a full screenshot, so it is done by the pipeline workers
+    private static class FrameImageSink implements SerialisationPipeline.Sink<FrameImage> {
+        @Override
+        public long write(FrameImage r){
+            try(OutputStream pngStream = new BufferedOutputStream(new FileOutputStream(r.png))){
+                ScreenshotSerialiser.getFrame(r.reference).saveAsPng(pngStream);
+            }catch(IOException e){
+                r.png.delete();
+                LogSerialiser.log("I/O exception saving frame " + FrameContainer.frameOf(r.reference) + " for the HTML report\n", LogSerialiser.LogLevel.Critical);
+                return 0;
+            }
+            return r.png.length();
+        }
+
+        @Override
+        public long close(){
+            return 0;
+        }
+    }
+
     public HtmlSequenceReport() {
         try{
             //TODO put filename into settings, name with sequence number
@@ -125,6 +166,15 @@ public class HtmlSequenceReport implements Reporting{
         }
     }
 
+    /**
+     * Sets whether the reports of the next sequences show the frames of differential screenshots as images.
+     * The images are saved as PNG files in the background; otherwise the report only names the frame.
+     * @param frameImages
+     */
+    public static void setFrameImages(boolean frameImages){
+        HtmlSequenceReport.frameImages = frameImages;
+    }
+
     public void addTitle(int h, String text){
         write("<h"+h+">"+text+"</h"+h+">");
     }
@@ -163,18 +213,22 @@ public class HtmlSequenceReport implements Reporting{
     private void writeStateIntoReport(State state){
     	try {
     		String imagePath = state.get(Tags.ScreenshotPath);
-    		if(imagePath.contains("./output")){
-    			int indexStart = imagePath.indexOf("./output");
-    			int indexScrn = imagePath.indexOf("scrshots");
-    			String replaceString = imagePath.substring(indexStart,indexScrn);
-    			imagePath = imagePath.replace(replaceString,"../");
+    		if(FrameContainer.isReference(imagePath) && !frameImages){
+    			writeStateBlock(state, "<p>Screenshot: frame " + FrameContainer.frameOf(imagePath) + " of "
+    					+ new File(FrameContainer.containerOf(imagePath)).getName() + "</p>");
+    		}else{
+    			if(FrameContainer.isReference(imagePath)){
+    				// browsers cannot show differential screenshots, so the frame is reconstructed as an image
+    				imagePath = saveFrameAsPng(imagePath, state.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable"));
+    			}
+    			if(imagePath.contains("./output")){
+    				int indexStart = imagePath.indexOf("./output");
+    				int indexScrn = imagePath.indexOf("scrshots");
+    				String replaceString = imagePath.substring(indexStart,indexScrn);
+    				imagePath = imagePath.replace(replaceString,"../");
+    			}
+    			writeStateBlock(state, "<p><img src=\""+imagePath+"\"></p>");
     		}
-    		write("<div id='block' style='display:flex;flex-direction:column'>"); // Open state block container
-    		write("<h2>State "+innerLoopCounter+"</h2>");
-    		write("<h4>ConcreteIDCustom="+state.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable")+"</h4>");
-    		write("<h4>AbstractIDCustom="+state.get(Tags.AbstractIDCustom, "NoAbstractIdCustomAvailable")+"</h4>");
-    		write("<p><img src=\""+imagePath+"\"></p>");
-    		write("</div>"); // Close state block container
     	}catch(NullPointerException | NoSuchTagException e) {
     		System.out.println("ERROR: Adding the State number " + innerLoopCounter + " in the HTML report");
     		write("<h2>ERROR Adding current State " + innerLoopCounter + "</h2>");
@@ -182,6 +236,32 @@ public class HtmlSequenceReport implements Reporting{
     	innerLoopCounter++;
     }
 
+    private void writeStateBlock(State state, String screenshot){
+    	write("<div id='block' style='display:flex;flex-direction:column'>"); // Open state block container
+    	write("<h2>State "+innerLoopCounter+"</h2>");
+    	write("<h4>ConcreteIDCustom="+state.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable")+"</h4>");
+    	write("<h4>AbstractIDCustom="+state.get(Tags.AbstractIDCustom, "NoAbstractIdCustomAvailable")+"</h4>");
+    	write(screenshot);
+    	write("</div>"); // Close state block container
+    }
+
+    /**
+     * Queues the screenshot of a frame reference to be saved as a PNG file next to its frame container.
+     * @param reference
+     * @param stateId
+     * @return the path the PNG file is saved to, or the reference if it cannot be queued
+     */
+    private String saveFrameAsPng(String reference, String stateId){
+    	File png = new File(new File(FrameContainer.containerOf(reference)).getParentFile(), stateId + ".png");
+    	if(!queuedFrameImages.add(png) || png.exists()){
+    		return png.getPath();
+    	}
+    	if(frameImagesChannel == null){
+    		frameImagesChannel = SerialisationPipeline.shared().open("HtmlSequenceReport.frames", new FrameImageSink(), false);
+    	}
+    	return frameImagesChannel.submit(new FrameImage(reference, png)) ? png.getPath() : reference;
+    }
+
     public void addActions(Set<Action> actions){
         if(!firstActionsAdded) firstActionsAdded = true;
         write("<div id='block' style='display:flex;flex-direction:column'>"); // Open derived actions block container
@@ -275,20 +355,31 @@ public class HtmlSequenceReport implements Reporting{
     }
 
     public void addSelectedAction(State state, Action action){
-    	String screenshotDir = OutputStructure.screenshotsOutputDir;
+        String actionPath = ScreenshotSerialiser.getActionshotPath(
+        		state.get(Tags.ConcreteIDCustom, "NoConcreteIdAvailable"), action.get(Tags.ConcreteIDCustom, "NoConcreteIdAvailable"));
+        if(actionPath != null){
+        	if(actionPath.contains("./output")){
+        		int indexStart = actionPath.indexOf("./output");
+        		int indexScrn = actionPath.indexOf("scrshots");
+        		actionPath = actionPath.replace(actionPath.substring(indexStart,indexScrn),"../");
+        	}
+        }else{
+        	// no action shot was stored, refer to where it would have been
+        	String screenshotDir = OutputStructure.screenshotsOutputDir;
+
+        	if(screenshotDir.contains("./output")){
+        		int indexStart = screenshotDir.indexOf("./output");
+        		int indexScrn = screenshotDir.indexOf("scrshots");
+        		String replaceString = screenshotDir.substring(indexStart,indexScrn);
+        		screenshotDir = screenshotDir.replace(replaceString,"../");
+        	}
 
-    	if(screenshotDir.contains("./output")){
-        	int indexStart = screenshotDir.indexOf("./output");
-        	int indexScrn = screenshotDir.indexOf("scrshots");
-        	String replaceString = screenshotDir.substring(indexStart,indexScrn);
-        	screenshotDir = screenshotDir.replace(replaceString,"../");
+        	actionPath = screenshotDir + File.separator 
+        			+ OutputStructure.startInnerLoopDateString + "_" + OutputStructure.executedSUTname
+        			+ "_sequence_" + OutputStructure.sequenceInnerLoopCount 
+        			+ File.separator + state.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable") + "_" + action.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable") + "." + ScreenshotSerialiser.getCodec().extension();
         }
 
-        String actionPath = screenshotDir + File.separator 
-        		+ OutputStructure.startInnerLoopDateString + "_" + OutputStructure.executedSUTname
-        		+ "_sequence_" + OutputStructure.sequenceInnerLoopCount 
-        		+ File.separator + state.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable") + "_" + action.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable") + ".png";
-
         write("<div id='block' style='display:flex;flex-direction:column'>"); // Open executed action block container
         write("<h2>Selected Action "+innerLoopCounter+" leading to State "+innerLoopCounter+"\"</h2>");
         write("<h4>ConcreteIDCustom="+action.get(Tags.ConcreteIDCustom, "NoConcreteIdCustomAvailable"));
@@ -322,6 +413,10 @@ public class HtmlSequenceReport implements Reporting{
     }
 
     public void close() {
+    	if(frameImagesChannel != null){
+    		// the images are still saved after the report is closed
+    		frameImagesChannel.close();
+    	}
     	write("</div>"); // Close the main div container
     	for(String s:HTMLReporter.FOOTER){
     		write(s);
@@ -32,6 +32,7 @@ package org.testar.screenshotjson;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.testar.monkey.alayer.FrameContainer;
 import org.testar.monkey.alayer.Rect;
 import org.testar.monkey.alayer.State;
 import org.testar.monkey.alayer.Tags;
@@ -86,7 +87,12 @@ public class JsonUtils {
 //        System.out.println("ScreenshotPath="+screenshotPath);
         ScreenshotWidgetJsonObject screenshotWidgetJsonObject = new ScreenshotWidgetJsonObject(widgetJsonObjects, screenshotPath);
 //        System.out.println("JSON:"+ gson.toJson(screenshotWidgetJsonObject));
-        String filePath = screenshotPath.substring(0, screenshotPath.lastIndexOf("."))+".json";
+        String filePath;
+        if(FrameContainer.isReference(screenshotPath)){
+            // one file per frame of the differential screenshots, next to their container
+            filePath = FrameContainer.containerOf(screenshotPath).replace("." + FrameContainer.EXTENSION, "_" + FrameContainer.frameOf(screenshotPath) + ".json");
+        }
+        else filePath = screenshotPath.substring(0, screenshotPath.lastIndexOf("."))+".json";
 //        System.out.println("FilePath="+filePath);
         try{
             FileWriter fileWriter = new FileWriter(filePath);
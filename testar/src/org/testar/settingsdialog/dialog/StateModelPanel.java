@@ -34,7 +34,13 @@ import org.testar.CodingManager;
 import org.testar.StateManagementTags;
 import org.testar.statemodel.analysis.AnalysisManager;
 import org.testar.statemodel.analysis.webserver.JettyServer;
+import org.testar.statemodel.persistence.PersistenceManagerFactoryBuilder;
+import org.testar.statemodel.persistence.log.LogExporter;
+import org.testar.statemodel.persistence.log.LogManagerFactory;
+import org.testar.statemodel.persistence.orientdb.OrientDBManager;
 import org.testar.statemodel.persistence.orientdb.entity.Config;
+import org.testar.statemodel.persistence.orientdb.entity.EntityManager;
+import org.testar.statemodel.util.EventHelper;
 import org.testar.monkey.alayer.Tag;
 import org.testar.monkey.ConfigTags;
 import org.testar.monkey.Settings;
@@ -47,10 +53,12 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -97,6 +105,10 @@ public class StateModelPanel extends SettingsPanel {
     private Tag<?>[] selectedStateManagementTags;
 
     private String outputDir;
+    private Path stateModelLogDirectory;
+    // the records of the state model log that were exported to the database described by exportTarget
+    private LogExporter.Checkpoint exportCheckpoint;
+    private String exportTarget;
 
     private StateModelPanel(){
         super();
@@ -227,7 +239,6 @@ public class StateModelPanel extends SettingsPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 openServer();
-                checkAnalysisButtonActive();
             }
         });
         add(analysisButton);
@@ -280,6 +291,7 @@ public class StateModelPanel extends SettingsPanel {
         components.forEach((component) -> component.setEnabled(stateModelEnabledChkBox.isSelected()));
         checkDataType();
         checkAnalysisButtonActive();
+        stateModelLogDirectory = LogManagerFactory.getLogDirectory(settings);
         outputDir = settings.get(ConfigTags.OutputDir);
         // check if the output directory has a trailing line separator
         if (!outputDir.substring(outputDir.length() - 1).equals(File.separator)) {
@@ -379,16 +391,54 @@ public class StateModelPanel extends SettingsPanel {
 
     // this helper method will start a jetty integrated server and show the model listings page
     private void openServer() {
+        label14.setText("");
+        // create a config object for the orientdb database connection info
+        Config config = new Config();
+        config.setConnectionType((String)dataStoreTypeBox.getSelectedItem());
+        config.setServer(dataStoreServerTextfield.getText());
+        config.setDatabase(dataStoreDBTextfield.getText());
+        config.setUser(dataStoreUserTextfield.getText());
+        config.setPassword(getPassword());
+        config.setDatabaseDirectory(dataStoreDirectoryField.getText());
+        if (!dataStoreTextfield.getText().equalsIgnoreCase(PersistenceManagerFactoryBuilder.ManagerType.LOG.name())) {
+            startServer(config);
+            return;
+        }
+
+        // the analysis reads the orient database, so a state model that was stored in a log is exported to it first.
+        // The export runs in the background, so that the dialog stays responsive
+        analysisButton.setEnabled(false);
+        label14.setText("Exporting the state model log...");
+        new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() {
+                return exportStateModelLog(config);
+            }
+
+            @Override
+            protected void done() {
+                checkAnalysisButtonActive();
+                boolean exported;
+                try {
+                    exported = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    exported = false;
+                }
+                if (exported) {
+                    label14.setText("");
+                    startServer(config);
+                }
+                else {
+                    label14.setText("Could not export the state model log.");
+                }
+            }
+        }.execute();
+    }
+
+    // this helper method starts the server with the given connection info and opens the browser
+    private void startServer(Config config) {
         try {
-            label14.setText("");
-            // create a config object for the orientdb database connection info
-            Config config = new Config();
-            config.setConnectionType((String)dataStoreTypeBox.getSelectedItem());
-            config.setServer(dataStoreServerTextfield.getText());
-            config.setDatabase(dataStoreDBTextfield.getText());
-            config.setUser(dataStoreUserTextfield.getText());
-            config.setPassword(getPassword());
-            config.setDatabaseDirectory(dataStoreDirectoryField.getText());
             AnalysisManager analysisManager = new AnalysisManager(config, outputDir);
             JettyServer jettyServer = new JettyServer();
             jettyServer.start(outputDir, analysisManager);
@@ -414,6 +464,28 @@ public class StateModelPanel extends SettingsPanel {
         openBrowser();
     }
 
+    // this helper method exports the state model log to the orient database with the given connection info.
+    // Only the records that were added or changed since the last export to the same database are exported.
+    // It runs in the background and does not touch the components of the panel
+    private boolean exportStateModelLog(Config config) {
+        String target = String.join("|", config.getConnectionType(), config.getServer(), config.getDatabase(),
+                config.getDatabaseDirectory(), stateModelLogDirectory.toString());
+        if (!target.equals(exportTarget)) {
+            exportCheckpoint = new LogExporter.Checkpoint();
+            exportTarget = target;
+        }
+        OrientDBManager orientDBManager = new OrientDBManager(new EventHelper(), new EntityManager(config));
+        try {
+            new LogExporter(orientDBManager, exportCheckpoint).export(stateModelLogDirectory);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            orientDBManager.shutdown();
+        }
+    }
+
     private void openBrowser() {
     	try {
     		Desktop desktop = java.awt.Desktop.getDesktop();
@@ -0,0 +1,77 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.settle;
+
+import org.testar.monkey.alayer.SUT;
+import org.testar.monkey.alayer.State;
+import org.testar.plugin.NativeLinker;
+
+/**
+ * Reports a stable UI when the SUT used no more CPU time than a threshold since the previous poll.
+ * Platforms without CPU usage information, such as WebDriver, always look stable to it.
+ */
+public class CpuSettleSignal implements SettleSignal {
+
+    private final long thresholdMillis;
+    private long lastCpuMillis;
+
+    /**
+     * Reports a stable UI when the SUT used no CPU time at all.
+     */
+    public CpuSettleSignal() {
+        this(0);
+    }
+
+    /**
+     * @param thresholdMillis the user and system CPU time the SUT may use between two polls, in milliseconds
+     */
+    public CpuSettleSignal(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    private static long cpuMillis(SUT system) {
+        long[] cpu = NativeLinker.getCPUsage(system);
+        return cpu[0] + cpu[1];
+    }
+
+    @Override
+    public void start(SUT system, State state) {
+        lastCpuMillis = cpuMillis(system);
+    }
+
+    @Override
+    public boolean isStable(SUT system, State state) {
+        long cpuMillis = cpuMillis(system);
+        long used = cpuMillis - lastCpuMillis;
+        lastCpuMillis = cpuMillis;
+        return used <= thresholdMillis;
+    }
+}
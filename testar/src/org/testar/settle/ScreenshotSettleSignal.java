@@ -0,0 +1,102 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.settle;
+
+import java.util.function.Function;
+
+import org.testar.monkey.Assert;
+import org.testar.monkey.alayer.AWTCanvas;
+import org.testar.monkey.alayer.FrameContainer;
+import org.testar.monkey.alayer.SUT;
+import org.testar.monkey.alayer.State;
+
+/**
+ * Reports a stable UI when the screenshot of the SUT did not change since the previous poll.
+ * The screenshots are compared by the hashes of their tiles, see FrameContainer, and a few changed tiles
+ * are tolerated, so a blinking caret or a spinner in a corner does not keep the UI from settling.
+ */
+public class ScreenshotSettleSignal implements SettleSignal {
+
+    public static final int DEFAULT_MAX_CHANGED_TILES = 2;
+
+    private final Function<State, AWTCanvas> screenshots;
+    private final int maxChangedTiles;
+    private long[] lastTiles;
+
+    /**
+     * @param screenshots takes a screenshot of the SUT, or null, given the state on which the action was executed
+     */
+    public ScreenshotSettleSignal(Function<State, AWTCanvas> screenshots) {
+        this(screenshots, DEFAULT_MAX_CHANGED_TILES);
+    }
+
+    /**
+     * @param screenshots takes a screenshot of the SUT, or null, given the state on which the action was executed
+     * @param maxChangedTiles the number of tiles that may change between two polls
+     */
+    public ScreenshotSettleSignal(Function<State, AWTCanvas> screenshots, int maxChangedTiles) {
+        Assert.notNull(screenshots);
+        this.screenshots = screenshots;
+        this.maxChangedTiles = maxChangedTiles;
+    }
+
+    private long[] tiles(State state) {
+        AWTCanvas screenshot = screenshots.apply(state);
+        return screenshot == null ? null : FrameContainer.tileHashes(screenshot.image());
+    }
+
+    @Override
+    public void start(SUT system, State state) {
+        lastTiles = tiles(state);
+    }
+
+    @Override
+    public boolean isStable(SUT system, State state) {
+        long[] tiles = tiles(state);
+        boolean stable = tiles != null && lastTiles != null && changedTiles(lastTiles, tiles) <= maxChangedTiles;
+        lastTiles = tiles;
+        return stable;
+    }
+
+    // the number of tiles that differ, all of them when the size of the screenshot changed
+    private static int changedTiles(long[] previous, long[] current) {
+        if (previous.length != current.length) {
+            return current.length;
+        }
+        int changed = 0;
+        for (int tile = 0; tile < current.length; tile++) {
+            if (previous[tile] != current[tile]) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,163 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.settle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testar.monkey.Assert;
+import org.testar.monkey.Util;
+import org.testar.monkey.alayer.SUT;
+import org.testar.monkey.alayer.State;
+
+/**
+ * Waits after an action until the UI of the SUT settled, instead of for a fixed time.
+ *
+ * The signals are polled in order, every poll interval, and the UI settled once all of them report
+ * a stable UI in a number of consecutive polls. The polling of a signal stops at the first unstable one,
+ * so cheap signals should come before expensive ones such as screenshots.
+ * The settle time of every action is kept for the report.
+ */
+public class SettleDetector {
+
+    private final List<SettleSignal> signals;
+    private final double pollInterval;
+    private final int stablePolls;
+
+    private double lastSettleTime;
+    private boolean lastTimedOut;
+    private long actions;
+    private long timeouts;
+    private double totalSettleTime;
+    private double maxSettleTime;
+    // per signal, how many polls it was the first unstable one
+    private final Map<String, Long> unstablePolls = new TreeMap<>();
+
+    /**
+     * @param signals the signals, in polling order
+     * @param pollInterval the time between polls, in seconds
+     * @param stablePolls the number of consecutive polls in which all the signals must report a stable UI
+     */
+    public SettleDetector(List<? extends SettleSignal> signals, double pollInterval, int stablePolls) {
+        Assert.notNull(signals);
+        Assert.isTrue(pollInterval > 0 && stablePolls > 0);
+        this.signals = new ArrayList<>(signals);
+        this.pollInterval = pollInterval;
+        this.stablePolls = stablePolls;
+    }
+
+    /**
+     * Waits until the UI settled after an action, or the maximum wait passed.
+     * @param system the SUT
+     * @param state the state on which the action was executed
+     * @param maxWait the maximum time to wait, in seconds
+     * @return the time waited, in seconds
+     */
+    public synchronized double awaitSettled(SUT system, State state, double maxWait) {
+        long start = System.nanoTime();
+        long deadline = start + (long) (maxWait * TimeUnit.SECONDS.toNanos(1));
+        for (SettleSignal signal : signals) {
+            signal.start(system, state);
+        }
+
+        int stable = 0;
+        boolean timedOut = false;
+        while (stable < stablePolls) {
+            if (System.nanoTime() >= deadline) {
+                timedOut = true;
+                break;
+            }
+            Util.pause(pollInterval);
+            SettleSignal unstable = null;
+            for (SettleSignal signal : signals) {
+                if (!signal.isStable(system, state)) {
+                    unstable = signal;
+                    break;
+                }
+            }
+            if (unstable == null) {
+                stable++;
+            } else {
+                stable = 0;
+                unstablePolls.merge(unstable.name(), 1L, Long::sum);
+            }
+        }
+
+        lastSettleTime = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastTimedOut = timedOut;
+        actions++;
+        totalSettleTime += lastSettleTime;
+        maxSettleTime = Math.max(maxSettleTime, lastSettleTime);
+        if (timedOut) {
+            timeouts++;
+        }
+        return lastSettleTime;
+    }
+
+    /**
+     * @return the settle time of the last action, in seconds
+     */
+    public synchronized double getLastSettleTime() {
+        return lastSettleTime;
+    }
+
+    /**
+     * @return whether the UI did not settle within the maximum wait after the last action
+     */
+    public synchronized boolean lastTimedOut() {
+        return lastTimedOut;
+    }
+
+    /**
+     * @return the number of actions after which the detector waited
+     */
+    public synchronized long getActionCount() {
+        return actions;
+    }
+
+    /**
+     * @return the mean settle time, in seconds
+     */
+    public synchronized double getMeanSettleTime() {
+        return actions == 0 ? 0 : totalSettleTime / actions;
+    }
+
+    /**
+     * @return the settle times of all the actions so far, and which signals kept the UI from settling
+     */
+    public synchronized String report() {
+        return String.format("Settled %d actions in %.0f ms on average (max %.0f ms, %d timeouts), unstable polls: %s",
+                actions, getMeanSettleTime() * 1000, maxSettleTime * 1000, timeouts, unstablePolls);
+    }
+}
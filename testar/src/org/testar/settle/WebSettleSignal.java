@@ -0,0 +1,93 @@
+/***************************************************************************************************
+ *
+ * Copyright (c) 2016, 2017, 2019 Universitat Politecnica de Valencia - www.upv.es
+ * Copyright (c) 2019 Open Universiteit - www.ou.nl
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************************************/
+
+package org.testar.settle;
+
+import java.util.Map;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testar.monkey.alayer.SUT;
+import org.testar.monkey.alayer.State;
+import org.testar.monkey.alayer.webdriver.WdDriver;
+
+/**
+ * Reports a stable web page: the document is loaded, the page has no pending requests and no running
+ * finite animations, and the DOM did not change for a while. The counters are kept by the TESTAR web extension,
+ * see getSettleStateTestar in testar.init.start.js; without the extension only the document state is checked.
+ */
+public class WebSettleSignal implements SettleSignal {
+
+    public static final long DEFAULT_QUIET_MILLIS = 100;
+
+    private static final String SCRIPT = "return typeof getSettleStateTestar === 'function' ? getSettleStateTestar() : "
+            + "{readyState: document.readyState, pendingRequests: 0, runningAnimations: 0, quietMillis: 1e9}";
+
+    private final long quietMillis;
+
+    public WebSettleSignal() {
+        this(DEFAULT_QUIET_MILLIS);
+    }
+
+    /**
+     * @param quietMillis how long the DOM must not change, in milliseconds
+     */
+    public WebSettleSignal(long quietMillis) {
+        this.quietMillis = quietMillis;
+    }
+
+    private static long number(Map<?, ?> settleState, String key) {
+        Object value = settleState.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isStable(SUT system, State state) {
+        RemoteWebDriver driver = WdDriver.getRemoteWebDriver();
+        if (driver == null) {
+            return true;
+        }
+        Object result;
+        try {
+            result = driver.executeScript(SCRIPT);
+        } catch (WebDriverException e) {
+            // the page is navigating
+            return false;
+        }
+        if (!(result instanceof Map)) {
+            return false;
+        }
+        Map<?, ?> settleState = (Map<?, ?>) result;
+        return "complete".equals(settleState.get("readyState"))
+                && number(settleState, "pendingRequests") == 0
+                && number(settleState, "runningAnimations") == 0
+                && number(settleState, "quietMillis") >= quietMillis;
+    }
+}
@@ -43,6 +43,18 @@ public class AbstractAction extends AbstractEntity implements Persistable {
         return concreteActionIds;
     }
 
+    /**
+     * This method returns a copy of this action, which does not change when the action changes.
+     * The copy does not notify any listeners.
+     * @return
+     */
+    public AbstractAction snapshot() {
+        AbstractAction copy = new AbstractAction(getActionId());
+        copyTo(copy);
+        copy.concreteActionIds.addAll(concreteActionIds);
+        return copy;
+    }
+
     @Override
     public boolean canBeDelayed() {
         return false;
@@ -73,6 +73,21 @@ public abstract class AbstractEntity {
         return attributes;
     }
 
+    /**
+     * Copies the attributes and the model identifier of this entity to a copy of the entity.
+     * @param copy
+     */
+    protected void copyTo(AbstractEntity copy) {
+        copy.modelIdentifier = modelIdentifier;
+        for (Tag<?> tag : attributes.allTags()) {
+            copyAttribute(tag, copy.attributes);
+        }
+    }
+
+    private <T> void copyAttribute(Tag<T> tag, TaggableBase target) {
+        target.set(tag, attributes.get(tag));
+    }
+
     /**
      * Add an event listener to this state model
      * @param eventListener
@@ -20,6 +20,8 @@ public class AbstractState extends AbstractEntity implements Persistable {
     private Set<String> concreteStateIds;
     // is this an initial state?
     private boolean isInitial = false;
+    // the state model this state was added to, which keeps count of the unvisited actions
+    private AbstractStateModel stateModel;
 
     /**
      * Constructor
@@ -61,7 +63,9 @@ public class AbstractState extends AbstractEntity implements Persistable {
      * @param action the visited action
      */
     public void addVisitedAction(AbstractAction action) {
-        unvisitedActions.remove(action.getActionId());
+        if (unvisitedActions.remove(action.getActionId()) != null && stateModel != null) {
+            stateModel.changeNrOfUnvisitedActions(-1);
+        }
         visitedActions.put(action.getActionId(), action);
     }
 
@@ -110,6 +114,14 @@ public class AbstractState extends AbstractEntity implements Persistable {
         return new HashSet<>(unvisitedActions.values());
     }
 
+    /**
+     * This method returns the number of actions that have not yet been visited from this state
+     * @return
+     */
+    public int getNrOfUnvisitedActions() {
+        return unvisitedActions.size();
+    }
+
     /**
      * This method returns all the actions for this abstract state that have been visited
      * @return
@@ -154,7 +166,42 @@ public class AbstractState extends AbstractEntity implements Persistable {
             action.setModelIdentifier(this.getModelIdentifier());
             actions.put(action.getActionId(), action);
             unvisitedActions.put(action.getActionId(), action);
+            if (stateModel != null) {
+                stateModel.changeNrOfUnvisitedActions(1);
+            }
+        }
+    }
+
+    /**
+     * Sets the state model this state was added to.
+     * @param stateModel
+     */
+    void setStateModel(AbstractStateModel stateModel) {
+        this.stateModel = stateModel;
+    }
+
+    /**
+     * This method returns a copy of this state and its actions, which does not change when the state changes.
+     * The copy does not notify any listeners.
+     * @return
+     */
+    public AbstractState snapshot() {
+        AbstractState copy = new AbstractState(getStateId(), null);
+        copyTo(copy);
+        Map<String, AbstractAction> actionCopies = new HashMap<>();
+        for (AbstractAction action : actions.values()) {
+            actionCopies.put(action.getActionId(), action.snapshot());
+        }
+        copy.actions.putAll(actionCopies);
+        for (String actionId : unvisitedActions.keySet()) {
+            copy.unvisitedActions.put(actionId, actionCopies.computeIfAbsent(actionId, id -> unvisitedActions.get(id).snapshot()));
+        }
+        for (String actionId : visitedActions.keySet()) {
+            copy.visitedActions.put(actionId, actionCopies.computeIfAbsent(actionId, id -> visitedActions.get(id).snapshot()));
         }
+        copy.concreteStateIds.addAll(concreteStateIds);
+        copy.isInitial = isInitial;
+        return copy;
     }
 
     @Override
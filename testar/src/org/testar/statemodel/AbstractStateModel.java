@@ -3,12 +3,15 @@ package org.testar.statemodel;
 import org.testar.statemodel.event.StateModelEvent;
 import org.testar.statemodel.event.StateModelEventListener;
 import org.testar.statemodel.event.StateModelEventType;
+import org.testar.statemodel.exceptions.ElementAlreadyExistsException;
 import org.testar.statemodel.exceptions.InvalidStateIdException;
 import org.testar.statemodel.exceptions.StateModelException;
 import org.testar.statemodel.exceptions.StateNotFoundException;
 import org.testar.monkey.alayer.Tag;
 
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -32,10 +35,22 @@ public class AbstractStateModel {
     // the extra overhead is minimal
     private Map<String, Set<AbstractStateTransition>> stateTransitionsBySource;
     private Map<String, Set<AbstractStateTransition>> stateTransitionsByTarget;
+    // and once more by source state and executed action, keyed by target state. When an action of a state leads to
+    // more than one target state, the action is non-deterministic
+    private Map<String, Map<String, Map<String, AbstractStateTransition>>> stateTransitionsBySourceAndAction;
+
+    // the sum, over the non-deterministic actions of the states, of the number of target states they lead to
+    private int nrOfNondeterministicActions;
 
     // the states in the model
     private Map<String, AbstractState> states;
 
+    // the number of actions that have not been visited yet, over all the states in the model
+    private long nrOfUnvisitedActions;
+
+    // integer indexed adjacency structure of the states and transitions, for the path searches
+    private StateGraphIndex stateGraphIndex;
+
     // set of initial states
     private Map<String, AbstractState> initialStates;
 
@@ -62,7 +77,9 @@ public class AbstractStateModel {
         stateTransitions = new HashSet<>();
         stateTransitionsBySource = new HashMap<>();
         stateTransitionsByTarget = new HashMap<>();
+        stateTransitionsBySourceAndAction = new HashMap<>();
         states = new HashMap<>();
+        stateGraphIndex = new StateGraphIndex();
         initialStates = new HashMap<>();
         this.eventListeners = new HashSet<>();
         for (int i = 0; i < eventListeners.length;i++) {
@@ -91,16 +108,13 @@ public class AbstractStateModel {
         checkStateId(targetState.getStateId());
 
         // check if the transition already exists
-        if (stateTransitionsBySource.containsKey(sourceState.getStateId())) {
-            // loop through all the transitions that have the same source state and check for matches
-            for(AbstractStateTransition stateTransition : stateTransitionsBySource.get(sourceState.getStateId())) {
-                if (targetState.getStateId().equals(stateTransition.getTargetStateId()) && executedAction.getActionId().equals(stateTransition.getActionId())) {
-                    // the transition already exists. We send an update event to deal with changes in the states and actions
-                    // now we notify our listeners of the possible update
-                    emitEvent(new StateModelEvent(StateModelEventType.ABSTRACT_STATE_TRANSITION_CHANGED, stateTransition));
-                    return;
-                }
-            }
+        Map<String, AbstractStateTransition> transitionsByTarget = getTransitionsForAction(sourceState.getStateId(), executedAction.getActionId());
+        AbstractStateTransition stateTransition = transitionsByTarget == null ? null : transitionsByTarget.get(targetState.getStateId());
+        if (stateTransition != null) {
+            // the transition already exists. We send an update event to deal with changes in the states and actions
+            // now we notify our listeners of the possible update
+            emitEvent(new StateModelEvent(StateModelEventType.ABSTRACT_STATE_TRANSITION_CHANGED, stateTransition));
+            return;
         }
 
         // we set the action to visited for the source state
@@ -136,6 +150,52 @@ public class AbstractStateModel {
             stateTransitionsByTarget.put(newTransition.getTargetStateId(), new HashSet<>());
         }
         stateTransitionsByTarget.get(newTransition.getTargetStateId()).add(newTransition);
+
+        // then to the index for the path searches
+        stateGraphIndex.addTransition(newTransition);
+
+        // and finally to the map by source state and action, keeping track of the non-deterministic actions
+        Map<String, AbstractStateTransition> transitionsByTarget = stateTransitionsBySourceAndAction
+                .computeIfAbsent(newTransition.getSourceStateId(), sourceStateId -> new HashMap<>())
+                .computeIfAbsent(newTransition.getActionId(), actionId -> new HashMap<>());
+        if (transitionsByTarget.put(newTransition.getTargetStateId(), newTransition) == null) {
+            int nrOfTargetStates = transitionsByTarget.size();
+            if (nrOfTargetStates == 2) {
+                // the action just became non-deterministic
+                nrOfNondeterministicActions += 2;
+            }
+            else if (nrOfTargetStates > 2) {
+                nrOfNondeterministicActions++;
+            }
+        }
+    }
+
+    /**
+     * Helper method that returns the transitions for an action executed in a given state, by target state id.
+     * @param sourceStateId
+     * @param actionId
+     * @return the transitions or null if the action has not been executed in the state yet
+     */
+    private Map<String, AbstractStateTransition> getTransitionsForAction(String sourceStateId, String actionId) {
+        Map<String, Map<String, AbstractStateTransition>> transitionsByAction = stateTransitionsBySourceAndAction.get(sourceStateId);
+        return transitionsByAction == null ? null : transitionsByAction.get(actionId);
+    }
+
+    /**
+     * This method returns true if no action in the model leads to more than one target state.
+     * @return
+     */
+    public boolean isDeterministic() {
+        return nrOfNondeterministicActions == 0;
+    }
+
+    /**
+     * This method returns the nr of non-deterministic actions in the model: for every action that leads from a state to
+     * more than one target state, the number of target states it leads to. This is kept up to date as transitions are added.
+     * @return
+     */
+    public int getNrOfNondeterministicActions() {
+        return nrOfNondeterministicActions;
     }
 
     /**
@@ -153,6 +213,9 @@ public class AbstractStateModel {
                 newState.addEventListener(eventListener);
             }
             this.states.put(newState.getStateId(), newState);
+            newState.setStateModel(this);
+            nrOfUnvisitedActions += newState.getNrOfUnvisitedActions();
+            stateGraphIndex.indexOf(newState);
             emitEvent(new StateModelEvent(StateModelEventType.ABSTRACT_STATE_ADDED, newState));
         }
         else {
@@ -165,6 +228,43 @@ public class AbstractStateModel {
         }
     }
 
+    /**
+     * This method restores states and transitions that were stored earlier, such as in a snapshot, into an empty model.
+     * Unlike addState and addTransition, it fills the collections and indexes of the model directly, without checks and
+     * without emitting events. The states must have distinct, valid identifiers and already have their visited actions,
+     * and the transitions must be distinct and only refer to the given states.
+     * @param restoredStates
+     * @param restoredTransitions
+     * @throws StateModelException when the model already contains states
+     */
+    public void restore(Collection<AbstractState> restoredStates, Collection<AbstractStateTransition> restoredTransitions) throws StateModelException {
+        if (!states.isEmpty()) {
+            throw new ElementAlreadyExistsException();
+        }
+        // the sizes are known, so the collections do not have to grow while they are filled
+        states = new HashMap<>(restoredStates.size() * 4 / 3 + 1);
+        stateTransitions = new HashSet<>(restoredTransitions.size() * 4 / 3 + 1);
+        stateTransitionsBySource = new HashMap<>(restoredStates.size() * 4 / 3 + 1);
+        stateTransitionsByTarget = new HashMap<>(restoredStates.size() * 4 / 3 + 1);
+        stateTransitionsBySourceAndAction = new HashMap<>(restoredStates.size() * 4 / 3 + 1);
+        for (AbstractState state : restoredStates) {
+            state.setModelIdentifier(modelIdentifier);
+            for (StateModelEventListener eventListener: eventListeners) {
+                state.addEventListener(eventListener);
+            }
+            states.put(state.getStateId(), state);
+            state.setStateModel(this);
+            nrOfUnvisitedActions += state.getNrOfUnvisitedActions();
+            stateGraphIndex.indexOf(state);
+            if (state.isInitial()) {
+                initialStates.put(state.getStateId(), state);
+            }
+        }
+        for (AbstractStateTransition transition : restoredTransitions) {
+            addTransition(transition);
+        }
+    }
+
     /**
      * This method retrieves a state for a given identifier, if present
      * @param abstractStateId the identifier of the state to retrieve
@@ -186,6 +286,30 @@ public class AbstractStateModel {
         return new HashSet<>(states.values());
     }
 
+    /**
+     * This method returns the number of states in the abstract state model
+     * @return
+     */
+    public int getNrOfStates() {
+        return states.size();
+    }
+
+    /**
+     * This method returns the number of actions that have not been visited yet, over all the states in the model
+     * @return
+     */
+    public long getNrOfUnvisitedActions() {
+        return nrOfUnvisitedActions;
+    }
+
+    /**
+     * This method is called by the states of the model when actions are added to or visited in them
+     * @param delta the change in the number of unvisited actions
+     */
+    void changeNrOfUnvisitedActions(int delta) {
+        nrOfUnvisitedActions += delta;
+    }
+
     /**
      * This method returns true if a requested state is contained in this model
      * @param abstractStateId the identifier for the state
@@ -237,6 +361,17 @@ public class AbstractStateModel {
         return stateTransitionsByTarget.get(stateId);
     }
 
+    /**
+     * This method returns the shortest path, over the transitions in the model, from a given state to the nearest state
+     * that still has unvisited actions. Of the nearest states, the one with the most unvisited actions is chosen.
+     * @param stateId
+     * @return the transitions to follow, an empty list if the given state has unvisited actions itself,
+     * or null if no state with unvisited actions can be reached
+     */
+    public List<AbstractStateTransition> getPathToUnvisitedActions(String stateId) {
+        return stateGraphIndex.findPathToUnvisitedActions(stateId);
+    }
+
     /**
      * Add an event listener to this state model
      * @param eventListener
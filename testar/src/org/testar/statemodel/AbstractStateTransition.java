@@ -1,5 +1,6 @@
 package org.testar.statemodel;
 
+import org.testar.statemodel.exceptions.ActionNotFoundException;
 import org.testar.statemodel.persistence.Persistable;
 
 public class AbstractStateTransition implements Persistable {
@@ -93,6 +94,25 @@ public class AbstractStateTransition implements Persistable {
         return action;
     }
 
+    /**
+     * This method returns a copy of this transition, its states and its action, which does not change when the model changes.
+     * @return
+     */
+    public AbstractStateTransition snapshot() {
+        AbstractState sourceCopy = sourceState == null ? null : sourceState.snapshot();
+        AbstractState targetCopy = targetState == sourceState ? sourceCopy : (targetState == null ? null : targetState.snapshot());
+        AbstractAction actionCopy = null;
+        if (action != null) {
+            try {
+                // the action of the copied source state, so that the copy stays consistent
+                actionCopy = sourceCopy == null ? action.snapshot() : sourceCopy.getAction(action.getActionId());
+            } catch (ActionNotFoundException e) {
+                actionCopy = action.snapshot();
+            }
+        }
+        return new AbstractStateTransition(sourceCopy, targetCopy, actionCopy);
+    }
+
     @Override
     public boolean canBeDelayed() {
         return false;
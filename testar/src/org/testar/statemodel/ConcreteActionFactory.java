@@ -29,7 +29,7 @@ public class ConcreteActionFactory {
      * @param testarWidget
      */
     private static void setAttributes(Widget widget, org.testar.monkey.alayer.Widget testarWidget) {
-        for (Tag<?> t : testarWidget.tags()) {
+        for (Tag<?> t : testarWidget.allTags()) {
             widget.addAttribute(t, testarWidget.get(t, null));
         }
     }
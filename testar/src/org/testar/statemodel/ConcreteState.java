@@ -18,6 +18,9 @@ public class ConcreteState extends Widget implements Persistable {
     // a byte array holding the screenshot for this state
     private byte[] screenshot;
 
+    // the path of the screenshot store blob that holds the screenshot, instead of the bytes
+    private String screenshotPath;
+
     public ConcreteState(String id, Set<Tag<?>> tags, AbstractState abstractState) {
         super(id);
         this.tags = tags;
@@ -41,6 +44,22 @@ public class ConcreteState extends Widget implements Persistable {
         this.screenshot = screenshot;
     }
 
+    /**
+     * Retrieves the path of the stored screenshot for this state.
+     * @return
+     */
+    public String getScreenshotPath() {
+        return screenshotPath;
+    }
+
+    /**
+     * Sets the path of the stored screenshot for this state.
+     * @param screenshotPath
+     */
+    public void setScreenshotPath(String screenshotPath) {
+        this.screenshotPath = screenshotPath;
+    }
+
     /**
      * Returns the abstract state attached to this concrete state
      * @return
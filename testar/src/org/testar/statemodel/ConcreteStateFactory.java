@@ -8,6 +8,7 @@ import org.testar.monkey.alayer.Tags;
 import org.testar.monkey.alayer.webdriver.WdProtocolUtil;
 import org.testar.plugin.NativeLinker;
 import org.testar.plugin.OperatingSystems;
+import org.testar.serialisation.ScreenshotSerialiser;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -31,7 +32,19 @@ public abstract class ConcreteStateFactory {
             copyWidgetTreeStructure(newState, concreteState, concreteState);
         }
 
-        // get a screenshot for this concrete state
+        // refer to the screenshot the serialiser stored for this state, or take one if there is none
+        String screenshotPath = newState.get(Tags.ScreenshotPath, null);
+        if (ScreenshotSerialiser.isStored(screenshotPath)) {
+            concreteState.setScreenshotPath(screenshotPath);
+        }
+        else {
+            concreteState.setScreenshot(takeScreenshot(newState));
+        }
+
+        return concreteState;
+    }
+
+    private static byte[] takeScreenshot(State newState) {
         ByteArrayOutputStream screenshotBytes = new ByteArrayOutputStream();
 
         AWTCanvas screenshot;
@@ -45,9 +58,7 @@ public abstract class ConcreteStateFactory {
         } catch (IOException e) {
             e.printStackTrace();
         }
-        concreteState.setScreenshot(screenshotBytes.toByteArray());
-
-        return concreteState;
+        return screenshotBytes.toByteArray();
     }
 
     /**
@@ -56,7 +67,7 @@ public abstract class ConcreteStateFactory {
      * @param testarWidget
      */
     private static void setAttributes(Widget widget, org.testar.monkey.alayer.Widget testarWidget) {
-        for (Tag<?> t : testarWidget.tags()) {
+        for (Tag<?> t : testarWidget.allTags()) {
             widget.addAttribute(t, testarWidget.get(t, null));
         }
     }
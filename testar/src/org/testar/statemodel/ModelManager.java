@@ -77,11 +77,10 @@ public class ModelManager implements StateModelManager {
      */
     private void init() {
         // check if the model is deterministic
+        // this is the only time the data store is asked, from now on the model keeps track of the non-deterministic actions itself
         boolean modelIsDeterministic = persistenceManager.modelIsDeterministic(abstractStateModel);
-        System.out.println("Model is deterministic: " + persistenceManager.modelIsDeterministic(abstractStateModel));
-        if (!modelIsDeterministic) {
-            nrOfNonDeterministicActions = persistenceManager.getNrOfNondeterministicActions(abstractStateModel);
-        }
+        System.out.println("Model is deterministic: " + modelIsDeterministic);
+        nrOfNonDeterministicActions = abstractStateModel.getNrOfNondeterministicActions();
     }
 
     /**
@@ -157,7 +156,7 @@ public class ModelManager implements StateModelManager {
         }
 
         // check if non-determinism was introduced into the model
-        int currentNrOfNonDeterministicActions = persistenceManager.getNrOfNondeterministicActions(abstractStateModel);
+        int currentNrOfNonDeterministicActions = abstractStateModel.getNrOfNondeterministicActions();
         if (currentNrOfNonDeterministicActions > nrOfNonDeterministicActions) {
             System.out.println("Non-deterministic action was executed!");
             sequenceManager.notifyStateReached(newConcreteState, concreteActionUnderExecution, SequenceError.NON_DETERMINISTIC_ACTION);
@@ -171,12 +170,10 @@ public class ModelManager implements StateModelManager {
         concreteActionUnderExecution = null;
 
         // temporarily output the nr of states in the model
-        System.out.println(abstractStateModel.getStates().size() + " abstract states in the model");
+        System.out.println(abstractStateModel.getNrOfStates() + " abstract states in the model");
 
         // temporarily output the number of unvisited actions still left
-        System.out.println(abstractStateModel.getStates().stream().map(AbstractState::getUnvisitedActions).flatMap(
-                Collection::stream
-        ).count() + " unvisited actions left");
+        System.out.println(abstractStateModel.getNrOfUnvisitedActions() + " unvisited actions left");
         System.out.println("----------------------------");
         System.out.println();
     }
@@ -0,0 +1,155 @@
+package org.testar.statemodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Integer indexed adjacency structure of the abstract state model, used for the graph searches of the action selectors.
+ *
+ * Every state gets an index the first time it is seen. The outgoing transitions of a state are stored in arrays
+ * together with the indices of their target states, so a breadth first search only touches integers and never
+ * copies the model. The scratch space of the search is kept between searches and reset with a generation stamp,
+ * so a search costs time in proportion to the part of the model it explores, not to the size of the model.
+ */
+final class StateGraphIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_DEGREE = 4;
+
+    private final Map<String, Integer> indexByStateId = new HashMap<>();
+    private final List<AbstractState> states = new ArrayList<>();
+
+    // outgoing transitions by source state index, with the index of their target state
+    private AbstractStateTransition[][] transitions = new AbstractStateTransition[INITIAL_CAPACITY][];
+    private int[][] targets = new int[INITIAL_CAPACITY][];
+    private int[] degrees = new int[INITIAL_CAPACITY];
+
+    // search scratch space: a state has been reached in the current search when its stamp equals the generation
+    private int[] stamps = new int[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private AbstractStateTransition[] parentTransitions = new AbstractStateTransition[INITIAL_CAPACITY];
+    private int[] queue = new int[INITIAL_CAPACITY];
+    private int generation;
+
+    /**
+     * Returns the index of a state, indexing it if it was not seen before.
+     * The first state object seen for an identifier is the one the searches report on.
+     * @param state
+     * @return
+     */
+    int indexOf(AbstractState state) {
+        Integer index = indexByStateId.get(state.getStateId());
+        if (index != null) {
+            return index;
+        }
+        int newIndex = states.size();
+        if (newIndex == degrees.length) {
+            grow(newIndex * 2);
+        }
+        states.add(state);
+        indexByStateId.put(state.getStateId(), newIndex);
+        return newIndex;
+    }
+
+    /**
+     * Adds a transition to the adjacency structure.
+     * @param transition
+     */
+    void addTransition(AbstractStateTransition transition) {
+        int source = indexOf(transition.getSourceState());
+        int target = indexOf(transition.getTargetState());
+        int degree = degrees[source];
+        if (degree == 0) {
+            transitions[source] = new AbstractStateTransition[INITIAL_DEGREE];
+            targets[source] = new int[INITIAL_DEGREE];
+        }
+        else if (degree == targets[source].length) {
+            transitions[source] = Arrays.copyOf(transitions[source], degree * 2);
+            targets[source] = Arrays.copyOf(targets[source], degree * 2);
+        }
+        transitions[source][degree] = transition;
+        targets[source][degree] = target;
+        degrees[source] = degree + 1;
+    }
+
+    /**
+     * Searches for the nearest state, reachable from the given state, that still has unvisited actions.
+     * When several states at the same distance qualify, the one with the most unvisited actions is chosen.
+     * @param sourceStateId
+     * @return the transitions that lead to that state, an empty list if the source state itself has unvisited
+     * actions, or null if no such state can be reached
+     */
+    LinkedList<AbstractStateTransition> findPathToUnvisitedActions(String sourceStateId) {
+        Integer source = indexByStateId.get(sourceStateId);
+        if (source == null) {
+            return null;
+        }
+        if (++generation == 0) {
+            // the stamps wrapped around, start with a clean slate
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        stamps[source] = generation;
+        parents[source] = -1;
+
+        while (head < tail) {
+            // the queue holds one complete ring of the search: all the states at the same distance from the source
+            int ringEnd = tail;
+            int best = -1;
+            int bestNrOfUnvisitedActions = 0;
+            for (int i = head; i < ringEnd; i++) {
+                int nrOfUnvisitedActions = states.get(queue[i]).getNrOfUnvisitedActions();
+                if (nrOfUnvisitedActions > bestNrOfUnvisitedActions) {
+                    best = queue[i];
+                    bestNrOfUnvisitedActions = nrOfUnvisitedActions;
+                }
+            }
+            if (best != -1) {
+                return pathTo(best);
+            }
+
+            // expand to the next ring
+            for (; head < ringEnd; head++) {
+                int state = queue[head];
+                int[] stateTargets = targets[state];
+                AbstractStateTransition[] stateTransitions = transitions[state];
+                for (int j = 0, degree = degrees[state]; j < degree; j++) {
+                    int target = stateTargets[j];
+                    if (stamps[target] != generation) {
+                        stamps[target] = generation;
+                        parents[target] = state;
+                        parentTransitions[target] = stateTransitions[j];
+                        queue[tail++] = target;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private LinkedList<AbstractStateTransition> pathTo(int state) {
+        LinkedList<AbstractStateTransition> path = new LinkedList<>();
+        for (int current = state; parents[current] != -1; current = parents[current]) {
+            path.addFirst(parentTransitions[current]);
+        }
+        return path;
+    }
+
+    private void grow(int capacity) {
+        transitions = Arrays.copyOf(transitions, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+        stamps = Arrays.copyOf(stamps, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        parentTransitions = Arrays.copyOf(parentTransitions, capacity);
+        queue = Arrays.copyOf(queue, capacity);
+    }
+}
@@ -3,13 +3,11 @@ package org.testar.statemodel.actionselector;
 import org.testar.statemodel.AbstractAction;
 import org.testar.statemodel.AbstractState;
 import org.testar.statemodel.AbstractStateModel;
-import org.testar.statemodel.actionselector.model.SelectorNode;
-import org.testar.statemodel.actionselector.model.SelectorTree;
+import org.testar.statemodel.AbstractStateTransition;
 import org.testar.statemodel.exceptions.ActionNotFoundException;
+import org.testar.statemodel.exceptions.StateModelException;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class ImprovedUnvisitedActionSelector implements ActionSelector {
 
@@ -63,9 +61,7 @@ public class ImprovedUnvisitedActionSelector implements ActionSelector {
         }
 
         // retrieve a new execution path
-        SelectorNode rootNode = new SelectorNode(currentState, null, 0, null);
-        SelectorTree tree = new SelectorTree(rootNode);
-        executionPath = retrieveUnvisitedActions(tree, abstractStateModel, new HashSet<>());
+        executionPath = retrieveUnvisitedActions(currentState, abstractStateModel);
 
         if (executionPath.isEmpty()) {
             throw new ActionNotFoundException();
@@ -76,73 +72,41 @@ public class ImprovedUnvisitedActionSelector implements ActionSelector {
     }
 
     /**
-     * This recursive function will perform a breadth first search of the selection tree that will be generated from the current abstract action.
-     * @param tree
+     * This method retrieves the actions to execute to arrive at the nearest abstract state that still has unvisited actions,
+     * followed by one of those unvisited actions. The breadth first search itself is done on the integer indexed graph
+     * the abstract state model keeps.
+     * @param currentState
      * @param abstractStateModel
-     * @param visitedStateIds
-     * @return
+     * @return the actions to execute, or an empty list if no unvisited action can be reached
      */
-    private LinkedList<AbstractAction> retrieveUnvisitedActions(SelectorTree tree, AbstractStateModel abstractStateModel, Set<String> visitedStateIds) {
-
-        // check if one of the tree's leaves currently has unvisited abstract actions
-        // if so, we want to retrieve the entire path of actions that has to be taken to arrive at that unvisited abstract action
-        List<LinkedList<SelectorNode>> nodePaths = tree.getLeafNodes().stream().filter(node -> node.getAbstractState() != null && !node.getAbstractState().getUnvisitedActions().isEmpty())
-                .map(SelectorNode::getNodePath).collect(Collectors.toList());
-
-        if (!nodePaths.isEmpty()) {
-            // we have found some paths to abstract states with unvisited abstract actions
-            // order them by the amount of unvisited actions they have, with the highest amount of actions first
-            nodePaths.sort((listA, listB) -> {
-                int sizeOfA = listA.getLast().getAbstractState().getUnvisitedActions().size();
-                int sizeOfB = listB.getLast().getAbstractState().getUnvisitedActions().size();
-                return sizeOfB - sizeOfA;
-            });
-
-            LinkedList<SelectorNode> nodePath = nodePaths.get(0);
-            // collect a random unvisited action and append it to the path we need to traverse to get to the state where
-            // it is executable
-            Stream<AbstractAction> actionStream = nodePath.stream().map(SelectorNode::getAbstractAction).filter(Objects::nonNull);
-
-            // get a random unvisited action from the last node
-            long graphTime = System.currentTimeMillis();
-            Random rnd = new Random(graphTime);
-            List<AbstractAction> unvisitedActions = new ArrayList<>(nodePath.getLast().getAbstractState().getUnvisitedActions());
-            AbstractAction unvisitedAction  = unvisitedActions.get(rnd.nextInt(unvisitedActions.size()));
-
-            // now merge the two streams and return the linkedlist
-            return Stream.concat(actionStream, Stream.of(unvisitedAction)).collect(Collectors.toCollection(LinkedList::new));
+    private LinkedList<AbstractAction> retrieveUnvisitedActions(AbstractState currentState, AbstractStateModel abstractStateModel) {
+        LinkedList<AbstractAction> actions = new LinkedList<>();
+        AbstractState targetState = currentState;
+
+        if (currentState.getNrOfUnvisitedActions() == 0) {
+            List<AbstractStateTransition> path = abstractStateModel.getPathToUnvisitedActions(currentState.getStateId());
+            if (path == null || path.isEmpty()) {
+                // no more unvisited actions to be reached from this state
+                return actions;
+            }
+            for (AbstractStateTransition transition : path) {
+                actions.add(transition.getAction());
+            }
+            try {
+                targetState = abstractStateModel.getState(path.get(path.size() - 1).getTargetStateId());
+            } catch (StateModelException e) {
+                return new LinkedList<>();
+            }
         }
 
-        // if we made it here, this means the states in the current leaves of our selector tree did not contain
-        // anymore unvisited actions. This means we have to follow all the abstract actions from those states
-        // to get to the next ring in our breadth first search
-
-        // add the state ids that we have visited to our list
-        tree.getLeafNodes().forEach(node -> visitedStateIds.add(node.getAbstractState().getStateId()));
-        // check the current depth of the tree
-        int currentTreeDepth = tree.getMaxTreeDepth();
-
-        tree.getLeafNodes().forEach(node -> { // fetch all the outgoing transitions from this state
-            abstractStateModel.getOutgoingTransitionsForState(node.getAbstractState().getStateId()).forEach(
-                    transition -> { // for each transition, check if we have not yet visited the target state
-                        if  (!visitedStateIds.contains(transition.getTargetStateId())) {
-                            visitedStateIds.add(transition.getTargetStateId());
-
-                            // create a new node and add it
-                            SelectorNode childNode = new SelectorNode(transition.getTargetState(), transition.getAction(), node.getDepth() + 1, node);
-                            node.addChild(childNode);
-                            childNode.setTree(node.getTree());
-                        }
-                    }
-            );
-        });
-
-        if (tree.getMaxTreeDepth() == currentTreeDepth) {
-            // no more new leaves were added. Return an empty list
+        // get a random unvisited action from the last state
+        long graphTime = System.currentTimeMillis();
+        Random rnd = new Random(graphTime);
+        List<AbstractAction> unvisitedActions = new ArrayList<>(targetState.getUnvisitedActions());
+        if (unvisitedActions.isEmpty()) {
             return new LinkedList<>();
         }
-
-        // we were able to gain a new level in our selector tree, so let's try again
-        return retrieveUnvisitedActions(tree, abstractStateModel, visitedStateIds);
+        actions.add(unvisitedActions.get(rnd.nextInt(unvisitedActions.size())));
+        return actions;
     }
 }
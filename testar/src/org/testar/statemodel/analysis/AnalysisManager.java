@@ -13,6 +13,8 @@ import com.orientechnologies.orient.core.record.impl.ORecordBytes;
 import com.orientechnologies.orient.core.record.impl.OVertexDocument;
 import com.orientechnologies.orient.core.sql.executor.OResult;
 import com.orientechnologies.orient.core.sql.executor.OResultSet;
+import org.testar.monkey.alayer.AWTCanvas;
+import org.testar.monkey.alayer.FrameContainer;
 import org.testar.statemodel.analysis.jsonformat.Edge;
 import org.testar.statemodel.analysis.jsonformat.Element;
 import org.testar.statemodel.analysis.jsonformat.Vertex;
@@ -23,6 +25,7 @@ import org.testar.statemodel.persistence.orientdb.entity.Config;
 import org.testar.statemodel.sequence.SequenceVerdict;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.text.DateFormat;
 import java.time.Instant;
 import java.util.*;
@@ -286,9 +289,9 @@ public class AnalysisManager {
                 }
 
                 String sourceScreenshot = "n" + formatId(sourceState.getIdentity().toString());
-                processScreenShot(sourceState.getProperty("screenshot"), sourceScreenshot, sequenceId);
+                processScreenShot(sourceState, sourceScreenshot, sequenceId);
                 String targetScreenshot = "n" + formatId(targetState.getIdentity().toString());
-                processScreenShot(targetState.getProperty("screenshot"), targetScreenshot, sequenceId);
+                processScreenShot(targetState, targetScreenshot, sequenceId);
                 String actionDescription = (String) getConvertedValue(OType.STRING, sequenceStepEdge.getProperty("actionDescription"));
                 boolean deterministic = !(boolean)getConvertedValue(OType.BOOLEAN, sequenceStepEdge.getProperty("nonDeterministic"));
                 ActionViz actionViz = new ActionViz(sourceScreenshot, targetScreenshot, actionDescription, counterSource, counterTarget, deterministic);
@@ -571,9 +574,9 @@ public class AnalysisManager {
                         // these are edge indicators. Ignore
                         continue;
                     }
-                    if (propertyName.equals("screenshot")) {
+                    if (propertyName.equals("screenshot") || propertyName.equals("screenshotPath")) {
                         // process the screenshot separately
-                        processScreenShot(stateVertex.getProperty("screenshot"), "n" + formatId(stateVertex.getIdentity().toString()), modelIdentifier);
+                        processScreenShot(stateVertex, "n" + formatId(stateVertex.getIdentity().toString()), modelIdentifier);
                         continue;
                     }
                     jsonVertex.addProperty(propertyName, stateVertex.getProperty(propertyName).toString());
@@ -627,10 +630,12 @@ public class AnalysisManager {
 
     /**
      * This method saves screenshots to disk.
-     * @param recordBytes
+     * The screenshot is either stored in the state itself, in the screenshot store of the test run,
+     * or as a frame of the differential screenshots of a sequence, which is reconstructed here.
+     * @param stateVertex
      * @param identifier
      */
-    private void processScreenShot(ORecordBytes recordBytes, String identifier, String modelIdentifier) {
+    private void processScreenShot(OVertex stateVertex, String identifier, String modelIdentifier) {
         if (!outputDir.substring(outputDir.length() - 1).equals(File.separator)) {
             outputDir += File.separator;
         }
@@ -648,8 +653,25 @@ public class AnalysisManager {
             return;
         }
         try {
+            byte[] screenshot;
+            ORecordBytes recordBytes = stateVertex.getProperty("screenshot");
+            String screenshotPath = stateVertex.getProperty("screenshotPath");
+            if (recordBytes != null) {
+                screenshot = recordBytes.toStream();
+            }
+            else if (FrameContainer.isReference(screenshotPath) && new File(FrameContainer.containerOf(screenshotPath)).exists()) {
+                ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+                AWTCanvas.fromFrame(screenshotPath).saveAsPng(frameBytes);
+                screenshot = frameBytes.toByteArray();
+            }
+            else if (screenshotPath != null && new File(screenshotPath).exists()) {
+                screenshot = Files.readAllBytes(new File(screenshotPath).toPath());
+            }
+            else {
+                return;
+            }
             FileOutputStream outputStream = new FileOutputStream(screenshotFile);
-            outputStream.write(recordBytes.toStream());
+            outputStream.write(screenshot);
             outputStream.flush();
             outputStream.close();
         } catch (FileNotFoundException e) {
@@ -11,13 +11,37 @@ import org.testar.statemodel.util.EventHelper;
 import org.testar.statemodel.*;
 
 import java.util.ArrayDeque;
-
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence manager. Persistence requests are queued and written to the delegate manager
+ * by a single background writer thread, so the test loop only has to wait when the queue is full.
+ *
+ * There is one writer, not one per entity: the writer handles the requests in the order they were made, as
+ * entities refer to entities that were stored before them (a sequence node to its concrete state, a concrete
+ * state to its abstract state), and the delegate managers do not share their data store connection between
+ * threads. Only in hybrid mode, the requests for the abstract model are written first, as before.
+ * The entities are copied on the test thread when they are queued, so the writer never reads the model while it
+ * changes. A request for an entity that is still waiting in the queue takes over the waiting request, with the
+ * latest copy of the entity.
+ * A request that fails, also with an error such as an OutOfMemoryError, still frees its place in the queue, so the
+ * test loop and the shutdown never wait for it. The first failure is reported again at shutdown.
+ */
 public class QueueManager implements PersistenceManager, StateModelEventListener {
 
     /**
-     * A queue holding the commands to execute
+     * The default maximum number of requests waiting to be written
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * How many times a failed write is attempted, for instance after a lost connection to the data store.
      */
-    private ArrayDeque<Runnable> queue;
+    private static final int MAX_ATTEMPTS = 3;
 
     /**
      * Composite persistencemanager that will do the actual work for us.
@@ -32,63 +56,232 @@ public class QueueManager implements PersistenceManager, StateModelEventListener
     /**
      * Is the event listener processing events?
      */
-    private boolean listening = true;
+    private volatile boolean listening = true;
 
     /**
      * Is the queue manager running in hybrid mode?
      */
     private boolean hybridMode;
 
+    /**
+     * The background writer
+     */
+    private final Writer writer;
+
+    /**
+     * Free places in the queue, the test loop blocks when there are none left
+     */
+    private final Semaphore capacity;
+
+    /**
+     * Requests that have been queued, but not written yet. The urgent ones cannot be delayed in hybrid mode.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger urgentOutstanding = new AtomicInteger();
+
+    // metrics
+    private final AtomicLong nrOfRequests = new AtomicLong();
+    private final AtomicLong nrOfCoalescedRequests = new AtomicLong();
+    private final AtomicLong nrOfWrites = new AtomicLong();
+    private final AtomicLong nrOfFailedWrites = new AtomicLong();
+    private final AtomicLong totalWriteNanos = new AtomicLong();
+    private final AtomicLong maxWriteNanos = new AtomicLong();
+
+    /**
+     * The first failure of a write, reported at shutdown
+     */
+    private volatile Throwable failure;
+
     public QueueManager(PersistenceManager persistenceManager, EventHelper eventHelper, boolean hybridMode) {
+        this(persistenceManager, eventHelper, hybridMode, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param persistenceManager the manager that writes to the data store
+     * @param eventHelper
+     * @param hybridMode in hybrid mode, requests that cannot be delayed are written before the others and
+     *                   the data store queries wait for them
+     * @param capacity the maximum number of requests waiting to be written
+     */
+    public QueueManager(PersistenceManager persistenceManager, EventHelper eventHelper, boolean hybridMode, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The queue capacity should be positive");
+        }
         delegateManager = persistenceManager;
-        queue = new ArrayDeque<>();
         this.eventHelper = eventHelper;
         this.hybridMode = hybridMode;
+        this.capacity = new Semaphore(capacity);
+        writer = new Writer();
+        Thread thread = new Thread(writer, "StateModelWriter");
+        thread.setDaemon(true);
+        writer.thread = thread;
+        thread.start();
     }
 
+    /**
+     * Queues the write of an entity.
+     * @param runnable writes the copy of the entity
+     * @param persistable the entity of the in-memory model
+     */
     private void processRequest(Runnable runnable, Persistable persistable) {
-        if (!hybridMode || persistable.canBeDelayed()) {
-            queue.add(runnable);
+        nrOfRequests.incrementAndGet();
+        boolean urgent = hybridMode && !persistable.canBeDelayed();
+        if (writer.coalesce(persistable, runnable)) {
+            nrOfCoalescedRequests.incrementAndGet();
+            return;
         }
-        else {
-            runnable.run();
+
+        // back-pressure: wait for a free place in the queue
+        capacity.acquireUninterruptibly();
+        outstanding.incrementAndGet();
+        if (urgent) {
+            urgentOutstanding.incrementAndGet();
+        }
+        if (!writer.add(new Request(persistable, runnable, urgent))) {
+            // the request was coalesced while we were waiting for a free place
+            nrOfCoalescedRequests.incrementAndGet();
+            completed(urgent);
         }
     }
 
+    /**
+     * Releases the place of a request in the queue and wakes up threads waiting for the queue to drain.
+     * @param urgent
+     */
+    private void completed(boolean urgent) {
+        capacity.release();
+        synchronized (outstanding) {
+            if (urgent) {
+                urgentOutstanding.decrementAndGet();
+            }
+            outstanding.decrementAndGet();
+            outstanding.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all the queued requests, or only the urgent ones, have been written.
+     * @param urgentOnly
+     */
+    private void awaitWrites(boolean urgentOnly) {
+        AtomicInteger counter = urgentOnly ? urgentOutstanding : outstanding;
+        synchronized (outstanding) {
+            while (counter.get() > 0) {
+                try {
+                    outstanding.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * In hybrid mode, queries to the data store need the requests that cannot be delayed to be written first.
+     */
+    private void awaitUrgentWrites() {
+        if (hybridMode) {
+            awaitWrites(true);
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to be written or being written.
+     */
+    public int getQueueDepth() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the average time it took to write a request, in milliseconds.
+     */
+    public double getAverageWriteLatency() {
+        long writes = nrOfWrites.get();
+        return writes == 0 ? 0 : totalWriteNanos.get() / (writes * 1000000.0);
+    }
+
+    /**
+     * @return the longest time it took to write a request, in milliseconds.
+     */
+    public double getMaxWriteLatency() {
+        return maxWriteNanos.get() / 1000000.0;
+    }
+
+    /**
+     * @return the fraction of the requests that did not need a write of their own.
+     */
+    public double getCoalescingRatio() {
+        long requests = nrOfRequests.get();
+        return requests == 0 ? 0 : (double) nrOfCoalescedRequests.get() / requests;
+    }
+
+    /**
+     * @return the first failure of a write, or null if all the requests were written.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return a one line summary of the queue metrics.
+     */
+    public String getMetrics() {
+        return String.format("queue depth %d, %d requests, %d writes, %d failed, coalescing ratio %.2f, write latency avg %.1f ms max %.1f ms",
+                getQueueDepth(), nrOfRequests.get(), nrOfWrites.get(), nrOfFailedWrites.get(), getCoalescingRatio(),
+                getAverageWriteLatency(), getMaxWriteLatency());
+    }
+
     @Override
     public void shutdown() {
-        if (!queue.isEmpty()) {
-            int nrOfItemsProcessed = 0;
-            int totalNrOfItems = queue.size();
+        int totalNrOfItems = outstanding.get();
+        if (totalNrOfItems > 0) {
             QueueVisualizer visualizer = new QueueVisualizer("Processing persistence queue");
-            visualizer.updateMessage("Processing persistence queue : " + nrOfItemsProcessed + " / " + totalNrOfItems + " processed");
-            while (!queue.isEmpty()) {
-                queue.remove().run();
-                nrOfItemsProcessed++;
-                visualizer.updateMessage("Processing persistence queue : " + nrOfItemsProcessed + " / " + totalNrOfItems + " processed");
+            synchronized (outstanding) {
+                while (outstanding.get() > 0) {
+                    visualizer.updateMessage("Processing persistence queue : " + (totalNrOfItems - outstanding.get()) + " / " + totalNrOfItems + " processed");
+                    try {
+                        outstanding.wait(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
             }
             visualizer.stop();
         }
+        writer.stop();
+        System.out.println("Persistence queue: " + getMetrics());
+        Throwable failure = this.failure;
+        if (failure != null) {
+            System.out.println("Persistence queue: " + nrOfFailedWrites.get() + " requests could not be written, the first because of:");
+            failure.printStackTrace();
+        }
         delegateManager.shutdown();
     }
 
     @Override
     public void persistAbstractState(AbstractState abstractState) {
-        processRequest(() -> delegateManager.persistAbstractState(abstractState), abstractState);
+        AbstractState copy = abstractState.snapshot();
+        processRequest(() -> delegateManager.persistAbstractState(copy), abstractState);
     }
 
     @Override
     public void persistAbstractAction(AbstractAction abstractAction) {
-        processRequest(() -> delegateManager.persistAbstractAction(abstractAction), abstractAction);
+        AbstractAction copy = abstractAction.snapshot();
+        processRequest(() -> delegateManager.persistAbstractAction(copy), abstractAction);
     }
 
     @Override
     public void persistAbstractStateTransition(AbstractStateTransition abstractStateTransition) {
-        processRequest(() -> delegateManager.persistAbstractStateTransition(abstractStateTransition), abstractStateTransition);
+        AbstractStateTransition copy = abstractStateTransition.snapshot();
+        processRequest(() -> delegateManager.persistAbstractStateTransition(copy), abstractStateTransition);
     }
 
     @Override
     public void persistConcreteState(ConcreteState concreteState) {
+        // concrete states do not change once they have been created, so they do not need to be copied
         processRequest(() -> delegateManager.persistConcreteState(concreteState), concreteState);
     }
 
@@ -99,6 +292,7 @@ public class QueueManager implements PersistenceManager, StateModelEventListener
 
     @Override
     public void initAbstractStateModel(AbstractStateModel abstractStateModel) {
+        awaitWrites(false);
         setListening(false);
         delegateManager.initAbstractStateModel(abstractStateModel);
         setListening(true);
@@ -106,11 +300,13 @@ public class QueueManager implements PersistenceManager, StateModelEventListener
 
     @Override
     public void persistSequence(Sequence sequence) {
-        processRequest(() -> delegateManager.persistSequence(sequence), sequence);
+        Sequence copy = sequence.snapshot();
+        processRequest(() -> delegateManager.persistSequence(copy), sequence);
     }
 
     @Override
     public void initSequenceManager(SequenceManager sequenceManager) {
+        awaitWrites(false);
         setListening(false);
         delegateManager.initSequenceManager(sequenceManager);
         setListening(true);
@@ -118,21 +314,25 @@ public class QueueManager implements PersistenceManager, StateModelEventListener
 
     @Override
     public void persistSequenceNode(SequenceNode sequenceNode) {
-        processRequest(() -> delegateManager.persistSequenceNode(sequenceNode), sequenceNode);
+        SequenceNode copy = sequenceNode.snapshot();
+        processRequest(() -> delegateManager.persistSequenceNode(copy), sequenceNode);
     }
 
     @Override
     public void persistSequenceStep(SequenceStep sequenceStep) {
-        processRequest(() -> delegateManager.persistSequenceStep(sequenceStep), sequenceStep);
+        SequenceStep copy = sequenceStep.snapshot();
+        processRequest(() -> delegateManager.persistSequenceStep(copy), sequenceStep);
     }
 
     @Override
     public boolean modelIsDeterministic(AbstractStateModel abstractStateModel) {
+        awaitUrgentWrites();
         return delegateManager.modelIsDeterministic(abstractStateModel);
     }
 
     @Override
     public int getNrOfNondeterministicActions(AbstractStateModel abstractStateModel) {
+        awaitUrgentWrites();
         return delegateManager.getNrOfNondeterministicActions(abstractStateModel);
     }
 
@@ -183,4 +383,139 @@ public class QueueManager implements PersistenceManager, StateModelEventListener
     public void setListening(boolean listening) {
         this.listening = listening;
     }
+
+    /**
+     * A queued write of an entity.
+     */
+    private static class Request {
+        private final Persistable entity;
+        // replaced when the request takes over a newer request for the same entity
+        private Runnable write;
+        private final boolean urgent;
+
+        private Request(Persistable entity, Runnable write, boolean urgent) {
+            this.entity = entity;
+            this.write = write;
+            this.urgent = urgent;
+        }
+    }
+
+    /**
+     * A background thread writing the requests in order.
+     * In hybrid mode, the urgent requests are written before the others.
+     */
+    private class Writer implements Runnable {
+
+        private final ArrayDeque<Request> urgentRequests = new ArrayDeque<>();
+        private final ArrayDeque<Request> requests = new ArrayDeque<>();
+
+        /**
+         * The requests waiting in the queue, by entity. Entities are the objects of the in-memory model,
+         * so they are compared by identity.
+         */
+        private final Map<Persistable, Request> waiting = new IdentityHashMap<>();
+        private boolean running = true;
+        private Thread thread;
+
+        /**
+         * Lets a waiting request for the entity write the given, newer copy of the entity instead.
+         * @return true if a request for the entity is already waiting, so it does not need to be queued again.
+         */
+        private synchronized boolean coalesce(Persistable entity, Runnable write) {
+            Request request = waiting.get(entity);
+            if (request == null) {
+                return false;
+            }
+            request.write = write;
+            return true;
+        }
+
+        /**
+         * @return false if the request was coalesced with a waiting request for the same entity.
+         */
+        private synchronized boolean add(Request request) {
+            if (coalesce(request.entity, request.write)) {
+                return false;
+            }
+            waiting.put(request.entity, request);
+            (request.urgent ? urgentRequests : requests).add(request);
+            notifyAll();
+            return true;
+        }
+
+        private synchronized Request take() throws InterruptedException {
+            while (running && urgentRequests.isEmpty() && requests.isEmpty()) {
+                wait();
+            }
+            Request request = urgentRequests.isEmpty() ? requests.poll() : urgentRequests.poll();
+            if (request != null) {
+                // from now on, new requests for this entity have to be written again
+                waiting.remove(request.entity);
+            }
+            return request;
+        }
+
+        private void stop() {
+            synchronized (this) {
+                running = false;
+                notifyAll();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Request request;
+                try {
+                    request = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (request == null) {
+                    return;
+                }
+                try {
+                    write(request);
+                } catch (Throwable t) {
+                    // errors are not retried, but they should not end the writer either
+                    failed(request, t, 1);
+                } finally {
+                    completed(request.urgent);
+                }
+            }
+        }
+
+        private void write(Request request) {
+            long start = System.nanoTime();
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    request.write.run();
+                    break;
+                }
+                catch (RuntimeException ex) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        failed(request, ex, MAX_ATTEMPTS);
+                    }
+                }
+            }
+            long duration = System.nanoTime() - start;
+            nrOfWrites.incrementAndGet();
+            totalWriteNanos.addAndGet(duration);
+            maxWriteNanos.accumulateAndGet(duration, Math::max);
+        }
+
+        private void failed(Request request, Throwable t, int attempts) {
+            if (failure == null) {
+                failure = t;
+            }
+            t.printStackTrace();
+            System.out.println("Could not persist " + request.entity.getClass().getSimpleName() + " after " + attempts + (attempts == 1 ? " attempt" : " attempts"));
+            nrOfFailedWrites.incrementAndGet();
+        }
+    }
 }
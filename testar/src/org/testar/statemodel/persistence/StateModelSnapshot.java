@@ -0,0 +1,352 @@
+package org.testar.statemodel.persistence;
+
+import org.testar.statemodel.AbstractAction;
+import org.testar.statemodel.AbstractState;
+import org.testar.statemodel.AbstractStateModel;
+import org.testar.statemodel.AbstractStateTransition;
+import org.testar.statemodel.exceptions.StateModelException;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of an abstract state model: the states with their (unvisited) actions, the concrete ids and the
+ * transitions. The snapshot of a model is stored as one file per model identifier, so that a model can be restored
+ * at startup without replaying all of its states and transitions from the data store.
+ *
+ * The file starts with a magic number, a format version, the model identifier and a modification marker, followed by a
+ * table with all the identifiers, the states, the transitions and a CRC32 checksum over everything before it. Files with
+ * another version, another model identifier or a wrong checksum are not used. The marker is chosen by the data store,
+ * which uses it to tell whether the model was changed after the snapshot was written.
+ */
+public class StateModelSnapshot {
+
+    // "TSMS"
+    private static final int MAGIC = 0x54534D53;
+
+    public static final int VERSION = 2;
+
+    // the directory in which the snapshots are stored
+    private final Path directory;
+
+    /**
+     * Constructor
+     * @param directory the directory in which the snapshots are stored
+     */
+    public StateModelSnapshot(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * This method returns the file in which the snapshot of the model with the given identifier is stored.
+     * @param modelIdentifier
+     * @return
+     */
+    public Path getFile(String modelIdentifier) {
+        return directory.resolve("abstract_state_model_" + modelIdentifier + ".snapshot");
+    }
+
+    /**
+     * This method deletes the snapshot of the model with the given identifier, if present.
+     * @param modelIdentifier
+     */
+    public void delete(String modelIdentifier) {
+        try {
+            Files.deleteIfExists(getFile(modelIdentifier));
+        } catch (IOException e) {
+            System.out.println("Could not delete the abstract state model snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method writes a snapshot of the given abstract state model. The snapshot is first written to a temporary
+     * file, which then replaces the previous snapshot, so that a failed write does not leave a partial snapshot.
+     * @param abstractStateModel
+     * @param marker the modification marker of the model in the data store
+     * @throws IOException
+     */
+    public void write(AbstractStateModel abstractStateModel, String marker) throws IOException {
+        Files.createDirectories(directory);
+        Path file = getFile(abstractStateModel.getModelIdentifier());
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        List<AbstractState> states = new ArrayList<>(abstractStateModel.getStates());
+        Map<String, Integer> stateIndices = new HashMap<>();
+        for (AbstractState state : states) {
+            stateIndices.put(state.getStateId(), stateIndices.size());
+        }
+        StringTable strings = new StringTable();
+
+        // the states and transitions refer to the string table, which is written first
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(states.size());
+        for (AbstractState state : states) {
+            out.writeInt(strings.indexOf(state.getStateId()));
+            out.writeBoolean(state.isInitial());
+            writeStrings(out, strings, state.getConcreteStateIds());
+
+            Map<String, AbstractAction> actions = new HashMap<>();
+            for (AbstractAction action : state.getActions()) {
+                actions.put(action.getActionId(), action);
+            }
+            Set<String> visitedActionIds = new HashSet<>();
+            for (AbstractAction action : state.getVisitedActions()) {
+                actions.putIfAbsent(action.getActionId(), action);
+                visitedActionIds.add(action.getActionId());
+            }
+            out.writeInt(actions.size());
+            for (AbstractAction action : actions.values()) {
+                out.writeInt(strings.indexOf(action.getActionId()));
+                out.writeBoolean(visitedActionIds.contains(action.getActionId()));
+                writeStrings(out, strings, action.getConcreteActionIds());
+            }
+        }
+
+        List<AbstractStateTransition> transitions = new ArrayList<>();
+        for (AbstractState state : states) {
+            Set<AbstractStateTransition> outgoingTransitions = abstractStateModel.getOutgoingTransitionsForState(state.getStateId());
+            if (outgoingTransitions != null) {
+                transitions.addAll(outgoingTransitions);
+            }
+        }
+        out.writeInt(transitions.size());
+        for (AbstractStateTransition transition : transitions) {
+            out.writeInt(stateIndices.get(transition.getSourceStateId()));
+            out.writeInt(stateIndices.get(transition.getTargetStateId()));
+            out.writeInt(strings.indexOf(transition.getActionId()));
+        }
+        out.flush();
+
+        CRC32 checksum = new CRC32();
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile.toFile())) {
+            DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOutputStream, checksum), 1 << 16));
+            fileOut.writeInt(MAGIC);
+            fileOut.writeInt(VERSION);
+            writeString(fileOut, abstractStateModel.getModelIdentifier());
+            writeString(fileOut, marker);
+            fileOut.writeInt(strings.size());
+            for (String string : strings.strings) {
+                writeString(fileOut, string);
+            }
+            body.writeTo(fileOut);
+            fileOut.flush();
+            // the checksum itself is not part of the checksum
+            new DataOutputStream(fileOutputStream).writeLong(checksum.getValue());
+            fileOutputStream.getFD().sync();
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method reads the snapshot of the model with the given identifier. The whole snapshot is read and validated before
+     * anything can be added to a model.
+     * @param modelIdentifier
+     * @return the content of the snapshot, or null if there is no valid snapshot for the model
+     */
+    public Content read(String modelIdentifier) {
+        Path file = getFile(modelIdentifier);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 16 || size > Integer.MAX_VALUE) {
+                throw new IOException("unexpected file size " + size);
+            }
+            // the file is read in one go rather than mapped: a mapped file cannot be released before it is garbage
+            // collected on Java 8, and on Windows it could then not be replaced by the next snapshot
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+
+            ByteBuffer checked = buffer.duplicate();
+            checked.limit((int) size - 8);
+            CRC32 checksum = new CRC32();
+            checksum.update(checked);
+            if (checksum.getValue() != buffer.getLong((int) size - 8)) {
+                throw new IOException("checksum mismatch");
+            }
+            buffer.limit((int) size - 8);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("not a state model snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported version " + version);
+            }
+            if (!modelIdentifier.equals(readString(buffer))) {
+                throw new IOException("the snapshot belongs to another model");
+            }
+            String marker = readString(buffer);
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            AbstractState[] states = new AbstractState[buffer.getInt()];
+            for (int i = 0; i < states.length; i++) {
+                String stateId = strings[buffer.getInt()];
+                boolean isInitial = buffer.get() != 0;
+                List<String> concreteStateIds = readStrings(buffer, strings);
+
+                Set<AbstractAction> actions = new HashSet<>();
+                List<AbstractAction> visitedActions = new ArrayList<>();
+                int nrOfActions = buffer.getInt();
+                for (int j = 0; j < nrOfActions; j++) {
+                    AbstractAction action = new AbstractAction(strings[buffer.getInt()]);
+                    if (buffer.get() != 0) {
+                        visitedActions.add(action);
+                    }
+                    for (String concreteActionId : readStrings(buffer, strings)) {
+                        action.addConcreteActionId(concreteActionId);
+                    }
+                    actions.add(action);
+                }
+
+                AbstractState state = new AbstractState(stateId, actions);
+                state.setInitial(isInitial);
+                for (AbstractAction visitedAction : visitedActions) {
+                    state.addVisitedAction(visitedAction);
+                }
+                for (String concreteStateId : concreteStateIds) {
+                    state.addConcreteStateId(concreteStateId);
+                }
+                states[i] = state;
+            }
+
+            AbstractStateTransition[] transitions = new AbstractStateTransition[buffer.getInt()];
+            for (int i = 0; i < transitions.length; i++) {
+                AbstractState sourceState = states[buffer.getInt()];
+                AbstractState targetState = states[buffer.getInt()];
+                transitions[i] = new AbstractStateTransition(sourceState, targetState, sourceState.getAction(strings[buffer.getInt()]));
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new IOException("unexpected data after the transitions");
+            }
+            return new Content(marker, states, transitions);
+        }
+        catch (IOException | StateModelException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            System.out.println("Ignoring the abstract state model snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, StringTable strings, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(strings.indexOf(value));
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer, String[] strings) throws IOException {
+        int nrOfStrings = buffer.getInt();
+        if (nrOfStrings < 0 || nrOfStrings > buffer.remaining() / 4) {
+            throw new IOException("invalid number of identifiers " + nrOfStrings);
+        }
+        List<String> values = new ArrayList<>(nrOfStrings);
+        for (int i = 0; i < nrOfStrings; i++) {
+            values.add(strings[buffer.getInt()]);
+        }
+        return values;
+    }
+
+    /**
+     * Table of the distinct strings in a snapshot, so that every identifier is stored only once.
+     */
+    private static class StringTable {
+
+        private final List<String> strings = new ArrayList<>();
+
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        private int indexOf(String string) {
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indices.put(string, index);
+            }
+            return index;
+        }
+
+        private int size() {
+            return strings.size();
+        }
+    }
+
+    /**
+     * The states and transitions read from a snapshot.
+     */
+    public static class Content {
+
+        private final String marker;
+
+        private final AbstractState[] states;
+
+        private final AbstractStateTransition[] transitions;
+
+        private Content(String marker, AbstractState[] states, AbstractStateTransition[] transitions) {
+            this.marker = marker;
+            this.states = states;
+            this.transitions = transitions;
+        }
+
+        /**
+         * This method returns the modification marker the snapshot was written with.
+         * @return
+         */
+        public String getMarker() {
+            return marker;
+        }
+
+        public int getNrOfStates() {
+            return states.length;
+        }
+
+        public int getNrOfTransitions() {
+            return transitions.length;
+        }
+
+        /**
+         * This method restores the states and transitions of the snapshot into the given, empty, abstract state model.
+         * They were validated when the snapshot was read, so they are not replayed through addState and addTransition.
+         * @param abstractStateModel
+         * @throws StateModelException when the model already contains states
+         */
+        public void restore(AbstractStateModel abstractStateModel) throws StateModelException {
+            abstractStateModel.restore(Arrays.asList(states), Arrays.asList(transitions));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.testar.statemodel.persistence.log;
+
+import org.testar.statemodel.*;
+import org.testar.statemodel.exceptions.StateModelException;
+import org.testar.statemodel.persistence.PersistenceManager;
+import org.testar.statemodel.sequence.Sequence;
+import org.testar.statemodel.sequence.SequenceNode;
+import org.testar.statemodel.sequence.SequenceStep;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Exports a state model log to another persistence manager, usually the orient database the analysis works with.
+ * The records are replayed in the order the persistence manager expects them: the abstract state models, the
+ * concrete states and transitions, and then the sequences.
+ *
+ * An exporter with a {@link Checkpoint} only persists the records that were added or changed since the last export
+ * with that checkpoint. All the records are still read, as the new records can refer to the ones exported before.
+ */
+public class LogExporter {
+
+    // the persistence manager the log is exported to
+    private final PersistenceManager target;
+
+    // the records that were exported before
+    private final Checkpoint checkpoint;
+
+    private final Map<String, AbstractState> abstractStates = new HashMap<>();
+
+    private final Map<String, ConcreteState> concreteStates = new HashMap<>();
+
+    private final Map<String, Sequence> sequences = new HashMap<>();
+
+    private final Map<String, SequenceNode> sequenceNodes = new HashMap<>();
+
+    private int nrOfRecords = 0;
+
+    /**
+     * Constructor
+     * @param target the persistence manager the log is exported to
+     */
+    public LogExporter(PersistenceManager target) {
+        this(target, new Checkpoint());
+    }
+
+    /**
+     * Constructor
+     * @param target the persistence manager the log is exported to
+     * @param checkpoint the records that were exported to the same target before, which is updated by the export
+     */
+    public LogExporter(PersistenceManager target, Checkpoint checkpoint) {
+        this.target = target;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * This method exports the state model log in the given directory.
+     * @param directory
+     * @return the number of exported records, not counting the records that were exported before
+     * @throws IOException
+     */
+    public int export(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("No state model log found in " + directory);
+        }
+
+        long start = System.currentTimeMillis();
+        try (SegmentLog log = new SegmentLog(directory)) {
+            exportAbstractStateModels(log);
+
+            log.forEach(LogRecords.CONCRETE_STATE, (key, value) -> {
+                ConcreteState concreteState = decode(key, () -> LogRecords.decodeConcreteState(value,
+                        stateId -> abstractState(LogRecords.splitKey(key)[0], stateId)));
+                if (concreteState != null) {
+                    concreteStates.put(key, concreteState);
+                    export(LogRecords.CONCRETE_STATE, key, value, () -> target.persistConcreteState(concreteState));
+                }
+            });
+            log.forEach(LogRecords.CONCRETE_STATE_TRANSITION, (key, value) -> {
+                String modelIdentifier = LogRecords.splitKey(key)[0];
+                ConcreteStateTransition transition = decode(key, () -> LogRecords.decodeConcreteStateTransition(value,
+                        stateId -> concreteState(modelIdentifier, stateId)));
+                if (transition != null) {
+                    export(LogRecords.CONCRETE_STATE_TRANSITION, key, value, () -> target.persistConcreteStateTransition(transition));
+                }
+            });
+
+            log.forEach(LogRecords.SEQUENCE, (key, value) -> {
+                Sequence sequence = decode(key, () -> LogRecords.decodeSequence(value));
+                if (sequence != null) {
+                    sequences.put(key, sequence);
+                    export(LogRecords.SEQUENCE, key, value, () -> target.persistSequence(sequence));
+                }
+            });
+            log.forEach(LogRecords.SEQUENCE_NODE, (key, value) -> {
+                SequenceNode sequenceNode = decode(key, () -> LogRecords.decodeSequenceNode(value, concreteStates::get, sequences::get));
+                if (sequenceNode != null) {
+                    sequenceNodes.put(key, sequenceNode);
+                    export(LogRecords.SEQUENCE_NODE, key, value, () -> target.persistSequenceNode(sequenceNode));
+                }
+            });
+            log.forEach(LogRecords.SEQUENCE_STEP, (key, value) -> {
+                SequenceStep sequenceStep = decode(key, () -> LogRecords.decodeSequenceStep(value, sequenceNodes::get));
+                if (sequenceStep != null) {
+                    export(LogRecords.SEQUENCE_STEP, key, value, () -> target.persistSequenceStep(sequenceStep));
+                }
+            });
+        }
+        System.out.println("Exported " + nrOfRecords + " records from the state model log in " + directory + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return nrOfRecords;
+    }
+
+    private void exportAbstractStateModels(SegmentLog log) throws IOException {
+        Map<String, AbstractStateModel> abstractStateModels = new HashMap<>();
+        log.forEach(LogRecords.MODEL, (key, value) -> {
+            AbstractStateModel abstractStateModel = decode(key, () -> LogRecords.decodeModel(value));
+            if (abstractStateModel != null) {
+                abstractStateModels.put(key, abstractStateModel);
+                // the target needs the model, also when it was exported before
+                target.initAbstractStateModel(abstractStateModel);
+                export(LogRecords.MODEL, key, value, () -> {});
+            }
+        });
+
+        log.forEach(LogRecords.ABSTRACT_STATE, (key, value) -> {
+            String modelIdentifier = LogRecords.splitKey(key)[0];
+            if (!abstractStateModels.containsKey(modelIdentifier)) {
+                return;
+            }
+            AbstractState abstractState = decode(key, () -> LogRecords.decodeAbstractState(value));
+            if (abstractState != null) {
+                abstractState.setModelIdentifier(modelIdentifier);
+                abstractStates.put(key, abstractState);
+                export(LogRecords.ABSTRACT_STATE, key, value, () -> target.persistAbstractState(abstractState));
+            }
+        });
+
+        for (String key : log.keys(LogRecords.ABSTRACT_STATE_TRANSITION)) {
+            String[] parts = LogRecords.splitKey(key);
+            AbstractState sourceState = abstractStates.get(LogRecords.key(parts[0], parts[1]));
+            AbstractState targetState = abstractStates.get(LogRecords.key(parts[0], parts[3]));
+            if (sourceState == null || targetState == null) {
+                continue;
+            }
+            try {
+                AbstractStateTransition transition = new AbstractStateTransition(sourceState, targetState, sourceState.getAction(parts[2]));
+                export(LogRecords.ABSTRACT_STATE_TRANSITION, key, new byte[0], () -> target.persistAbstractStateTransition(transition));
+            } catch (StateModelException e) {
+                System.out.println("Could not export the abstract state transition with key " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the abstract state with the given id. States that are not in the log, which should not happen, are
+     * created without actions.
+     */
+    private AbstractState abstractState(String modelIdentifier, String stateId) {
+        return abstractStates.computeIfAbsent(LogRecords.key(modelIdentifier, stateId), key -> {
+            AbstractState abstractState = new AbstractState(stateId, new HashSet<>());
+            abstractState.setModelIdentifier(modelIdentifier);
+            return abstractState;
+        });
+    }
+
+    /**
+     * Returns the concrete state with the given id, or null if it is not in the log.
+     */
+    private ConcreteState concreteState(String modelIdentifier, String stateId) {
+        return concreteStates.get(LogRecords.key(modelIdentifier, stateId));
+    }
+
+    private <T> T decode(String key, Decoder<T> decoder) {
+        try {
+            return decoder.decode();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not export the record with key " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Persists a record, unless it was exported before with the same value.
+     */
+    private void export(int kind, String key, byte[] value, Runnable persist) {
+        if (checkpoint.contains(kind, key, value)) {
+            return;
+        }
+        persist.run();
+        checkpoint.add(kind, key, value);
+        nrOfRecords++;
+    }
+
+    private interface Decoder<T> {
+        T decode() throws IOException;
+    }
+
+    /**
+     * The records that have been exported to a target: the checksum of the value that was exported for every key.
+     */
+    public static class Checkpoint {
+
+        private final Map<String, Long> checksums = new HashMap<>();
+
+        private static long checksum(byte[] value) {
+            CRC32 crc = new CRC32();
+            crc.update(value);
+            return (long) value.length << 32 | crc.getValue();
+        }
+
+        private boolean contains(int kind, String key, byte[] value) {
+            Long checksum = checksums.get(LogRecords.key(String.valueOf(kind), key));
+            return checksum != null && checksum == checksum(value);
+        }
+
+        private void add(int kind, String key, byte[] value) {
+            checksums.put(LogRecords.key(String.valueOf(kind), key), checksum(value));
+        }
+    }
+}
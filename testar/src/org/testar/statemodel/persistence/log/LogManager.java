@@ -0,0 +1,314 @@
+package org.testar.statemodel.persistence.log;
+
+import org.testar.statemodel.*;
+import org.testar.statemodel.event.StateModelEvent;
+import org.testar.statemodel.event.StateModelEventListener;
+import org.testar.statemodel.exceptions.InvalidEventException;
+import org.testar.statemodel.exceptions.StateModelException;
+import org.testar.statemodel.persistence.PersistenceManager;
+import org.testar.statemodel.sequence.Sequence;
+import org.testar.statemodel.sequence.SequenceManager;
+import org.testar.statemodel.sequence.SequenceNode;
+import org.testar.statemodel.sequence.SequenceStep;
+import org.testar.statemodel.util.EventHelper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistence manager that stores the state model in an embedded append-only log (see {@link SegmentLog}), instead of
+ * an orient database. Writing a record costs about as much as encoding it, and the abstract state model is restored
+ * from the log at startup. The log can be exported to an orient database with the {@link LogExporter}, for the analysis.
+ */
+public class LogManager implements PersistenceManager, StateModelEventListener {
+
+    /**
+     * Helper class for dealing with events
+     */
+    private EventHelper eventHelper;
+
+    /**
+     * The log the state model is stored in
+     */
+    private SegmentLog log;
+
+    /**
+     * Is the manager listening to events?
+     */
+    private boolean listening = true;
+
+    /**
+     * Constructor
+     * @param eventHelper
+     * @param log
+     */
+    public LogManager(EventHelper eventHelper, SegmentLog log) {
+        this.eventHelper = eventHelper;
+        this.log = log;
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while closing the state model log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void persistAbstractState(AbstractState abstractState) {
+        try {
+            log.put(LogRecords.ABSTRACT_STATE, LogRecords.key(abstractState.getModelIdentifier(), abstractState.getStateId()),
+                    LogRecords.encodeAbstractState(abstractState));
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving abstract state with id " + abstractState.getStateId() + " to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void persistAbstractAction(AbstractAction abstractAction) {
+
+    }
+
+    @Override
+    public void persistAbstractStateTransition(AbstractStateTransition abstractStateTransition) {
+        if (abstractStateTransition.getSourceState() == null || abstractStateTransition.getTargetState() == null || abstractStateTransition.getAction() == null) {
+            System.out.println("Objects missing in abstract state transition");
+            return;
+        }
+
+        // the states hold the actions, including the visited ones
+        persistAbstractState(abstractStateTransition.getSourceState());
+        persistAbstractState(abstractStateTransition.getTargetState());
+
+        // the key holds all there is to know about the transition
+        String key = LogRecords.key(abstractStateTransition.getSourceState().getModelIdentifier(), abstractStateTransition.getSourceStateId(),
+                abstractStateTransition.getActionId(), abstractStateTransition.getTargetStateId());
+        try {
+            if (!log.contains(LogRecords.ABSTRACT_STATE_TRANSITION, key)) {
+                log.put(LogRecords.ABSTRACT_STATE_TRANSITION, key, new byte[0]);
+            }
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving an abstract state transition to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void persistConcreteState(ConcreteState concreteState) {
+        if (concreteState.getAbstractState() == null) {
+            System.out.println("No abstract state is connected to the concrete state with id " + concreteState.getId());
+            return;
+        }
+
+        // like in the orient database, a concrete state is not updated once it has been stored
+        String key = LogRecords.key(concreteState.getAbstractState().getModelIdentifier(), concreteState.getId());
+        try {
+            if (!log.contains(LogRecords.CONCRETE_STATE, key)) {
+                log.put(LogRecords.CONCRETE_STATE, key, LogRecords.encodeConcreteState(concreteState));
+            }
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving concrete state with id " + concreteState.getId() + " to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void persistConcreteStateTransition(ConcreteStateTransition concreteStateTransition) {
+        if (concreteStateTransition.getSourceState() == null || concreteStateTransition.getTargetState() == null || concreteStateTransition.getAction() == null) {
+            System.out.println("Objects missing in concrete state transition");
+            return;
+        }
+
+        persistConcreteState(concreteStateTransition.getSourceState());
+        persistConcreteState(concreteStateTransition.getTargetState());
+        if (concreteStateTransition.getSourceState().getAbstractState() == null) {
+            return;
+        }
+
+        String key = LogRecords.key(concreteStateTransition.getSourceState().getAbstractState().getModelIdentifier(),
+                concreteStateTransition.getSourceStateId(), concreteStateTransition.getActionId(), concreteStateTransition.getTargetStateId());
+        try {
+            if (!log.contains(LogRecords.CONCRETE_STATE_TRANSITION, key)) {
+                log.put(LogRecords.CONCRETE_STATE_TRANSITION, key, LogRecords.encodeConcreteStateTransition(concreteStateTransition));
+            }
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving a concrete state transition to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void initAbstractStateModel(AbstractStateModel abstractStateModel) {
+        // we do not want to process the events resulting from restoring the model
+        setListening(false);
+
+        String modelIdentifier = abstractStateModel.getModelIdentifier();
+        try {
+            log.put(LogRecords.MODEL, modelIdentifier, LogRecords.encodeModel(abstractStateModel));
+
+            long start = System.currentTimeMillis();
+            Map<String, AbstractState> abstractStates = new HashMap<>();
+            log.forEach(LogRecords.ABSTRACT_STATE, (key, value) -> {
+                if (LogRecords.belongsToModel(key, modelIdentifier)) {
+                    try {
+                        AbstractState abstractState = LogRecords.decodeAbstractState(value);
+                        abstractStates.put(abstractState.getStateId(), abstractState);
+                    } catch (IOException e) {
+                        System.out.println("Could not read the abstract state with key " + key + " from the log: " + e.getMessage());
+                    }
+                }
+            });
+            for (AbstractState abstractState : abstractStates.values()) {
+                abstractStateModel.addState(abstractState);
+            }
+
+            int nrOfTransitions = 0;
+            for (String key : log.keys(LogRecords.ABSTRACT_STATE_TRANSITION)) {
+                if (!LogRecords.belongsToModel(key, modelIdentifier)) {
+                    continue;
+                }
+                String[] parts = LogRecords.splitKey(key);
+                AbstractState sourceState = parts.length < 4 ? null : abstractStates.get(parts[1]);
+                AbstractState targetState = parts.length < 4 ? null : abstractStates.get(parts[3]);
+                if (sourceState == null || targetState == null) {
+                    System.out.println("Could not find the states of the abstract state transition with key " + key + " in the log");
+                    continue;
+                }
+                try {
+                    abstractStateModel.addTransition(sourceState, targetState, sourceState.getAction(parts[2]));
+                } catch (StateModelException e) {
+                    System.out.println("Could not restore the abstract state transition with key " + key + " from the log: " + e.getClass().getSimpleName());
+                    continue;
+                }
+                nrOfTransitions++;
+            }
+            System.out.println("Restored " + abstractStates.size() + " abstract states and " + nrOfTransitions
+                    + " transitions from the log in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException | StateModelException e) {
+            e.printStackTrace();
+        }
+
+        // enable the event listener again
+        setListening(true);
+    }
+
+    @Override
+    public void persistSequence(Sequence sequence) {
+        try {
+            log.put(LogRecords.SEQUENCE, sequence.getCurrentSequenceId(), LogRecords.encodeSequence(sequence));
+            // a sequence starts or ends here, which is a good moment to make sure the log is on disk
+            log.flush(true);
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving sequence " + sequence.getCurrentSequenceId() + " to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void initSequenceManager(SequenceManager sequenceManager) {
+    }
+
+    @Override
+    public void persistSequenceNode(SequenceNode sequenceNode) {
+        if (sequenceNode.getConcreteState() == null || sequenceNode.getConcreteState().getAbstractState() == null) {
+            System.out.println("No concrete state is connected to the sequence node with id " + sequenceNode.getNodeId());
+            return;
+        }
+
+        try {
+            log.put(LogRecords.SEQUENCE_NODE, sequenceNode.getNodeId(), LogRecords.encodeSequenceNode(sequenceNode));
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving sequence node " + sequenceNode.getNodeId() + " to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void persistSequenceStep(SequenceStep sequenceStep) {
+        // the assumption is that the source node has already been saved
+        persistSequenceNode(sequenceStep.getTargetNode());
+
+        String key = LogRecords.key(sequenceStep.getSourceNode().getNodeId(), sequenceStep.getTargetNode().getNodeId());
+        try {
+            log.put(LogRecords.SEQUENCE_STEP, key, LogRecords.encodeSequenceStep(sequenceStep));
+        } catch (IOException e) {
+            System.out.println("Encountered a problem while saving a sequence step to the log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean modelIsDeterministic(AbstractStateModel abstractStateModel) {
+        return getNrOfNondeterministicActions(abstractStateModel) == 0;
+    }
+
+    @Override
+    public int getNrOfNondeterministicActions(AbstractStateModel abstractStateModel) {
+        // count the target states of each action in each state, from the keys of the stored transitions
+        Map<String, Integer> nrOfTargetStates = new HashMap<>();
+        for (String key : log.keys(LogRecords.ABSTRACT_STATE_TRANSITION)) {
+            if (LogRecords.belongsToModel(key, abstractStateModel.getModelIdentifier())) {
+                String[] parts = LogRecords.splitKey(key);
+                nrOfTargetStates.merge(LogRecords.key(parts[1], parts[2]), 1, Integer::sum);
+            }
+        }
+
+        // like the orient database query: the sum of the transitions of the actions that lead to more than one state
+        int nrOfActions = 0;
+        for (int nrOfTransitions : nrOfTargetStates.values()) {
+            if (nrOfTransitions > 1) {
+                nrOfActions += nrOfTransitions;
+            }
+        }
+        return nrOfActions;
+    }
+
+    @Override
+    public void eventReceived(StateModelEvent event) {
+        if (!listening) return;
+
+        try {
+            eventHelper.validateEvent(event);
+        } catch (InvalidEventException e) {
+            // There is something wrong with the event. we do nothing and exit
+            System.out.println("Received wrong payload for event: " + event.getPayload().getClass().toString());
+            return;
+        }
+
+        switch (event.getEventType()) {
+            case ABSTRACT_STATE_ADDED:
+            case ABSTRACT_STATE_CHANGED:
+                persistAbstractState((AbstractState) (event.getPayload()));
+                break;
+
+            case ABSTRACT_STATE_TRANSITION_ADDED:
+            case ABSTRACT_STATE_TRANSITION_CHANGED:
+                persistAbstractStateTransition((AbstractStateTransition) (event.getPayload()));
+                break;
+
+            case ABSTRACT_STATE_MODEL_INITIALIZED:
+                initAbstractStateModel((AbstractStateModel) (event.getPayload()));
+                break;
+
+            case SEQUENCE_STARTED:
+            case SEQUENCE_ENDED:
+                persistSequence((Sequence) event.getPayload());
+                break;
+
+            case SEQUENCE_MANAGER_INITIALIZED:
+                initSequenceManager((SequenceManager) event.getPayload());
+                break;
+
+            case SEQUENCE_NODE_ADDED:
+            case SEQUENCE_NODE_UPDATED:
+                persistSequenceNode((SequenceNode) event.getPayload());
+                break;
+
+            case SEQUENCE_STEP_ADDED:
+                persistSequenceStep((SequenceStep) event.getPayload());
+
+        }
+    }
+
+    @Override
+    public void setListening(boolean listening) {
+        this.listening = listening;
+    }
+}
@@ -0,0 +1,54 @@
+package org.testar.statemodel.persistence.log;
+
+import org.testar.monkey.ConfigTags;
+import org.testar.monkey.Settings;
+import org.testar.statemodel.persistence.PersistenceManager;
+import org.testar.statemodel.persistence.PersistenceManagerFactory;
+import org.testar.statemodel.persistence.QueueManager;
+import org.testar.statemodel.util.EventHelper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class LogManagerFactory implements PersistenceManagerFactory {
+
+    @Override
+    public PersistenceManager getPersistenceManager(Settings settings) {
+        SegmentLog log;
+        try {
+            log = new SegmentLog(getLogDirectory(settings));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the state model log in " + getLogDirectory(settings), e);
+        }
+
+        // check if the data needs to be stored instantaneously or delayed (after sequence).
+        PersistenceManager persistenceManager;
+        switch (settings.get(ConfigTags.DataStoreMode)) {
+            case PersistenceManager.DATA_STORE_MODE_DELAYED:
+                persistenceManager = new QueueManager(new LogManager(new EventHelper(), log), new EventHelper(), false);
+                break;
+
+            case PersistenceManager.DATA_STORE_MODE_HYBRID:
+                persistenceManager = new QueueManager(new LogManager(new EventHelper(), log), new EventHelper(), true);
+                break;
+
+            case PersistenceManager.DATA_STORE_MODE_INSTANT:
+            default:
+                persistenceManager = new LogManager(new EventHelper(), log);
+
+        }
+        return persistenceManager;
+    }
+
+    /**
+     * This method returns the directory of the state model log for the given settings.
+     * @param settings
+     * @return
+     */
+    public static Path getLogDirectory(Settings settings) {
+        String logDirectory = settings.get(ConfigTags.StateModelLogDirectory);
+        return logDirectory.isEmpty() ? Paths.get(settings.get(ConfigTags.OutputDir), "statemodel_log") : Paths.get(logDirectory);
+    }
+
+}
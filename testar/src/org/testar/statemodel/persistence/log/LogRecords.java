@@ -0,0 +1,540 @@
+package org.testar.statemodel.persistence.log;
+
+import org.testar.monkey.alayer.Tag;
+import org.testar.monkey.alayer.TaggableBase;
+import org.testar.monkey.alayer.Verdict;
+import org.testar.monkey.alayer.Visualizer;
+import org.testar.statemodel.*;
+import org.testar.statemodel.exceptions.ActionNotFoundException;
+import org.testar.statemodel.sequence.Sequence;
+import org.testar.statemodel.sequence.SequenceNode;
+import org.testar.statemodel.sequence.SequenceStep;
+import org.testar.statemodel.sequence.SequenceVerdict;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The kinds of records the state model is stored as in the log, and their binary format.
+ */
+class LogRecords {
+
+    // the kinds of records
+    static final int MODEL = 0;
+    static final int ABSTRACT_STATE = 1;
+    static final int ABSTRACT_STATE_TRANSITION = 2;
+    static final int CONCRETE_STATE = 3;
+    static final int CONCRETE_STATE_TRANSITION = 4;
+    static final int SEQUENCE = 5;
+    static final int SEQUENCE_NODE = 6;
+    static final int SEQUENCE_STEP = 7;
+
+    // separates the parts of a key. Keys start with the model identifier, so that the records of a model can be found by key
+    private static final char KEY_SEPARATOR = '\u001F';
+
+    // the types of attribute values. Values of other types are stored as text, as the orient database does
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_INTEGER = 4;
+    private static final byte TYPE_LONG = 5;
+    private static final byte TYPE_VERDICT = 6;
+
+    private LogRecords() {
+    }
+
+    //region keys
+
+    static String key(String... parts) {
+        StringBuilder key = new StringBuilder(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            key.append(KEY_SEPARATOR).append(parts[i]);
+        }
+        return key.toString();
+    }
+
+    static String[] splitKey(String key) {
+        return key.split(String.valueOf(KEY_SEPARATOR), -1);
+    }
+
+    static boolean belongsToModel(String key, String modelIdentifier) {
+        return key.length() > modelIdentifier.length() && key.startsWith(modelIdentifier)
+                && key.charAt(modelIdentifier.length()) == KEY_SEPARATOR;
+    }
+
+    //endregion
+
+    //region abstract state model
+
+    static byte[] encodeModel(AbstractStateModel abstractStateModel) throws IOException {
+        Output out = new Output();
+        out.writeString(abstractStateModel.getModelIdentifier());
+        out.writeString(abstractStateModel.getApplicationName());
+        out.writeString(abstractStateModel.getApplicationVersion());
+        out.writeInt(abstractStateModel.getTags().size());
+        for (Tag<?> tag : abstractStateModel.getTags()) {
+            out.writeString(tag.name());
+            out.writeString(tag.type().getName());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates an empty abstract state model, without event listeners, from a model record.
+     */
+    static AbstractStateModel decodeModel(byte[] value) throws IOException {
+        Input in = new Input(value);
+        String modelIdentifier = in.readString();
+        String applicationName = in.readString();
+        String applicationVersion = in.readString();
+        Set<Tag<?>> tags = new HashSet<>();
+        int nrOfTags = in.readInt();
+        for (int i = 0; i < nrOfTags; i++) {
+            String name = in.readString();
+            tags.add(Tag.from(name, loadClass(in.readString())));
+        }
+        return new AbstractStateModel(modelIdentifier, applicationName, applicationVersion, tags);
+    }
+
+    static byte[] encodeAbstractState(AbstractState abstractState) throws IOException {
+        Set<String> visitedActionIds = new HashSet<>();
+        for (AbstractAction action : abstractState.getVisitedActions()) {
+            visitedActionIds.add(action.getActionId());
+        }
+
+        Output out = new Output();
+        out.writeString(abstractState.getStateId());
+        out.writeBoolean(abstractState.isInitial());
+        out.writeStrings(abstractState.getConcreteStateIds());
+        out.writeAttributes(abstractState.getAttributes());
+        Set<AbstractAction> actions = abstractState.getActions();
+        out.writeInt(actions.size());
+        for (AbstractAction action : actions) {
+            out.writeString(action.getActionId());
+            out.writeBoolean(visitedActionIds.contains(action.getActionId()));
+            out.writeStrings(action.getConcreteActionIds());
+            out.writeAttributes(action.getAttributes());
+        }
+        return out.toByteArray();
+    }
+
+    static AbstractState decodeAbstractState(byte[] value) throws IOException {
+        Input in = new Input(value);
+        String stateId = in.readString();
+        boolean isInitial = in.readBoolean();
+        List<String> concreteStateIds = in.readStrings();
+        Map<Tag<?>, Object> attributes = in.readAttributes();
+
+        Set<AbstractAction> actions = new HashSet<>();
+        List<AbstractAction> visitedActions = new ArrayList<>();
+        int nrOfActions = in.readInt();
+        for (int i = 0; i < nrOfActions; i++) {
+            AbstractAction action = new AbstractAction(in.readString());
+            if (in.readBoolean()) {
+                visitedActions.add(action);
+            }
+            for (String concreteActionId : in.readStrings()) {
+                action.addConcreteActionId(concreteActionId);
+            }
+            for (Map.Entry<Tag<?>, Object> attribute : in.readAttributes().entrySet()) {
+                action.addAttribute(attribute.getKey(), attribute.getValue());
+            }
+            actions.add(action);
+        }
+
+        AbstractState abstractState = new AbstractState(stateId, actions);
+        abstractState.setInitial(isInitial);
+        for (AbstractAction visitedAction : visitedActions) {
+            abstractState.addVisitedAction(visitedAction);
+        }
+        for (String concreteStateId : concreteStateIds) {
+            abstractState.addConcreteStateId(concreteStateId);
+        }
+        for (Map.Entry<Tag<?>, Object> attribute : attributes.entrySet()) {
+            abstractState.addAttribute(attribute.getKey(), attribute.getValue());
+        }
+        return abstractState;
+    }
+
+    //endregion
+
+    //region concrete states
+
+    static byte[] encodeConcreteState(ConcreteState concreteState) throws IOException {
+        Output out = new Output();
+        out.writeString(concreteState.getId());
+        out.writeString(concreteState.getAbstractState().getStateId());
+        out.writeNullableString(concreteState.getScreenshotPath());
+        byte[] screenshot = concreteState.getScreenshot();
+        out.writeInt(screenshot == null ? -1 : screenshot.length);
+        if (screenshot != null) {
+            out.write(screenshot);
+        }
+        out.writeAttributes(concreteState.getAttributes());
+        writeChildren(out, concreteState);
+        return out.toByteArray();
+    }
+
+    private static void writeChildren(Output out, Widget widget) throws IOException {
+        out.writeInt(widget.getChildren().size());
+        for (Widget child : widget.getChildren()) {
+            out.writeString(child.getId());
+            out.writeAttributes(child.getAttributes());
+            writeChildren(out, child);
+        }
+    }
+
+    /**
+     * Decodes a concrete state record.
+     * @param value
+     * @param abstractStates returns the abstract state with the given id
+     * @return
+     * @throws IOException
+     */
+    static ConcreteState decodeConcreteState(byte[] value, Function<String, AbstractState> abstractStates) throws IOException {
+        Input in = new Input(value);
+        String id = in.readString();
+        AbstractState abstractState = abstractStates.apply(in.readString());
+        ConcreteState concreteState = new ConcreteState(id, new HashSet<>(), abstractState);
+        concreteState.setScreenshotPath(in.readNullableString());
+        int screenshotLength = in.readInt();
+        if (screenshotLength >= 0) {
+            byte[] screenshot = new byte[screenshotLength];
+            in.readFully(screenshot);
+            concreteState.setScreenshot(screenshot);
+        }
+        for (Map.Entry<Tag<?>, Object> attribute : in.readAttributes().entrySet()) {
+            concreteState.addAttribute(attribute.getKey(), attribute.getValue());
+        }
+        readChildren(in, concreteState, concreteState);
+        return concreteState;
+    }
+
+    private static void readChildren(Input in, Widget widget, ConcreteState rootWidget) throws IOException {
+        int nrOfChildren = in.readInt();
+        for (int i = 0; i < nrOfChildren; i++) {
+            Widget child = new Widget(in.readString());
+            child.setRootWidget(rootWidget);
+            for (Map.Entry<Tag<?>, Object> attribute : in.readAttributes().entrySet()) {
+                child.addAttribute(attribute.getKey(), attribute.getValue());
+            }
+            widget.addChild(child);
+            readChildren(in, child, rootWidget);
+        }
+    }
+
+    static byte[] encodeConcreteStateTransition(ConcreteStateTransition concreteStateTransition) throws IOException {
+        ConcreteAction action = concreteStateTransition.getAction();
+        Output out = new Output();
+        out.writeString(concreteStateTransition.getSourceStateId());
+        out.writeString(concreteStateTransition.getTargetStateId());
+        out.writeString(action.getActionId());
+        out.writeNullableString(action.getAbstractAction() == null ? null : action.getAbstractAction().getActionId());
+        out.writeAttributes(action.getAttributes());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a concrete state transition record.
+     * @param value
+     * @param concreteStates returns the concrete state with the given id, or null if it is unknown
+     * @return
+     * @throws IOException
+     */
+    static ConcreteStateTransition decodeConcreteStateTransition(byte[] value, Function<String, ConcreteState> concreteStates) throws IOException {
+        Input in = new Input(value);
+        ConcreteState sourceState = concreteStates.apply(in.readString());
+        ConcreteState targetState = concreteStates.apply(in.readString());
+        if (sourceState == null || targetState == null) {
+            throw new IOException("The states of the transition were not stored");
+        }
+        String actionId = in.readString();
+        String abstractActionId = in.readNullableString();
+
+        AbstractAction abstractAction = null;
+        if (abstractActionId != null) {
+            try {
+                abstractAction = sourceState.getAbstractState().getAction(abstractActionId);
+            } catch (ActionNotFoundException e) {
+                abstractAction = new AbstractAction(abstractActionId);
+            }
+        }
+        ConcreteAction action = new ConcreteAction(actionId, abstractAction);
+        for (Map.Entry<Tag<?>, Object> attribute : in.readAttributes().entrySet()) {
+            action.addAttribute(attribute.getKey(), attribute.getValue());
+        }
+        return new ConcreteStateTransition(sourceState, targetState, action);
+    }
+
+    //endregion
+
+    //region sequences
+
+    static byte[] encodeSequence(Sequence sequence) throws IOException {
+        Output out = new Output();
+        out.writeString(sequence.getCurrentSequenceId());
+        out.writeInt(sequence.getCurrentSequenceNr());
+        out.writeString(sequence.getModelIdentifier());
+        out.writeInstant(sequence.getStartDateTime());
+        out.writeString(sequence.getSequenceVerdict().name());
+        out.writeNullableString(sequence.getTerminationMessage());
+        return out.toByteArray();
+    }
+
+    static Sequence decodeSequence(byte[] value) throws IOException {
+        Input in = new Input(value);
+        String sequenceId = in.readString();
+        int sequenceNr = in.readInt();
+        String modelIdentifier = in.readString();
+        Instant startDateTime = in.readInstant();
+        SequenceVerdict verdict = SequenceVerdict.valueOf(in.readString());
+        return new Sequence(sequenceId, sequenceNr, modelIdentifier, startDateTime, verdict, in.readNullableString());
+    }
+
+    static byte[] encodeSequenceNode(SequenceNode sequenceNode) throws IOException {
+        Output out = new Output();
+        out.writeString(sequenceNode.getSequenceId());
+        out.writeInt(sequenceNode.getNodeNr());
+        out.writeString(sequenceNode.getConcreteState().getAbstractState().getModelIdentifier());
+        out.writeString(sequenceNode.getConcreteState().getId());
+        out.writeInstant(sequenceNode.getTimestamp());
+        out.writeString(sequenceNode.getErrorMessage());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a sequence node record.
+     * @param value
+     * @param concreteStates returns the concrete state with the given key (model identifier and id), or null if it is unknown
+     * @param sequences returns the sequence with the given id
+     * @return
+     * @throws IOException
+     */
+    static SequenceNode decodeSequenceNode(byte[] value, Function<String, ConcreteState> concreteStates,
+                                           Function<String, Sequence> sequences) throws IOException {
+        Input in = new Input(value);
+        String sequenceId = in.readString();
+        int nodeNr = in.readInt();
+        String modelIdentifier = in.readString();
+        ConcreteState concreteState = concreteStates.apply(key(modelIdentifier, in.readString()));
+        if (concreteState == null) {
+            throw new IOException("The concrete state of the node was not stored");
+        }
+        Instant timestamp = in.readInstant();
+        String errorMessage = in.readString();
+        // only the first node of a sequence refers to the sequence
+        Sequence sequence = nodeNr == 1 ? sequences.apply(sequenceId) : null;
+        return new SequenceNode(sequenceId, nodeNr, concreteState, sequence, timestamp, errorMessage);
+    }
+
+    static byte[] encodeSequenceStep(SequenceStep sequenceStep) throws IOException {
+        Output out = new Output();
+        out.writeString(sequenceStep.getSourceNode().getNodeId());
+        out.writeString(sequenceStep.getTargetNode().getNodeId());
+        out.writeString(sequenceStep.getConcreteAction().getActionId());
+        out.writeNullableString(sequenceStep.getActionDescription());
+        out.writeInstant(sequenceStep.getTimestamp());
+        out.writeBoolean(sequenceStep.isNonDeterministic());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a sequence step record.
+     * @param value
+     * @param sequenceNodes returns the sequence node with the given id, or null if it is unknown
+     * @return
+     * @throws IOException
+     */
+    static SequenceStep decodeSequenceStep(byte[] value, Function<String, SequenceNode> sequenceNodes) throws IOException {
+        Input in = new Input(value);
+        SequenceNode sourceNode = sequenceNodes.apply(in.readString());
+        SequenceNode targetNode = sequenceNodes.apply(in.readString());
+        if (sourceNode == null || targetNode == null) {
+            throw new IOException("The nodes of the step were not stored");
+        }
+        ConcreteAction concreteAction = new ConcreteAction(in.readString(), null);
+        String actionDescription = in.readNullableString();
+        SequenceStep sequenceStep = new SequenceStep(concreteAction, sourceNode, targetNode, actionDescription, in.readInstant());
+        sequenceStep.setNonDeterministic(in.readBoolean());
+        return sequenceStep;
+    }
+
+    //endregion
+
+    private static Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            return String.class;
+        }
+    }
+
+    /**
+     * Writes the fields of a record.
+     */
+    private static class Output extends DataOutputStream {
+
+        private Output() {
+            super(new ByteArrayOutputStream(256));
+        }
+
+        private byte[] toByteArray() throws IOException {
+            flush();
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes);
+        }
+
+        private void writeNullableString(String string) throws IOException {
+            writeBoolean(string != null);
+            if (string != null) {
+                writeString(string);
+            }
+        }
+
+        private void writeStrings(Collection<String> strings) throws IOException {
+            List<String> copy = new ArrayList<>(strings);
+            writeInt(copy.size());
+            for (String string : copy) {
+                writeString(string);
+            }
+        }
+
+        private void writeInstant(Instant instant) throws IOException {
+            writeBoolean(instant != null);
+            if (instant != null) {
+                writeLong(instant.getEpochSecond());
+                writeInt(instant.getNano());
+            }
+        }
+
+        private void writeAttributes(TaggableBase attributes) throws IOException {
+            List<Tag<?>> tags = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            for (Tag<?> tag : attributes.allTags()) {
+                Object value = attributes.get(tag, null);
+                // visualizers have no meaning outside of a test run, the orient database does not store them either
+                if (value != null && !(value instanceof Visualizer)) {
+                    tags.add(tag);
+                    values.add(value);
+                }
+            }
+            writeInt(tags.size());
+            for (int i = 0; i < tags.size(); i++) {
+                writeString(tags.get(i).name());
+                Object value = values.get(i);
+                if (value instanceof Boolean) {
+                    writeByte(TYPE_BOOLEAN);
+                    writeBoolean((Boolean) value);
+                }
+                else if (value instanceof Double) {
+                    writeByte(TYPE_DOUBLE);
+                    writeDouble((Double) value);
+                }
+                else if (value instanceof Float) {
+                    writeByte(TYPE_FLOAT);
+                    writeFloat((Float) value);
+                }
+                else if (value instanceof Integer) {
+                    writeByte(TYPE_INTEGER);
+                    writeInt((Integer) value);
+                }
+                else if (value instanceof Long) {
+                    writeByte(TYPE_LONG);
+                    writeLong((Long) value);
+                }
+                else if (value instanceof Verdict) {
+                    // the verdict is kept, as the oracle verdict code of a concrete state is derived from it
+                    writeByte(TYPE_VERDICT);
+                    writeDouble(((Verdict) value).severity());
+                    writeString(((Verdict) value).info());
+                }
+                else {
+                    writeByte(TYPE_STRING);
+                    writeString(value.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a record.
+     */
+    private static class Input extends DataInputStream {
+
+        private Input(byte[] value) {
+            super(new ByteArrayInputStream(value));
+        }
+
+        private String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || length > available()) {
+                throw new IOException("Invalid string length " + length);
+            }
+            byte[] bytes = new byte[length];
+            readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String readNullableString() throws IOException {
+            return readBoolean() ? readString() : null;
+        }
+
+        private List<String> readStrings() throws IOException {
+            int nrOfStrings = readInt();
+            List<String> strings = new ArrayList<>();
+            for (int i = 0; i < nrOfStrings; i++) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        private Instant readInstant() throws IOException {
+            return readBoolean() ? Instant.ofEpochSecond(readLong(), readInt()) : null;
+        }
+
+        private Map<Tag<?>, Object> readAttributes() throws IOException {
+            Map<Tag<?>, Object> attributes = new LinkedHashMap<>();
+            int nrOfAttributes = readInt();
+            for (int i = 0; i < nrOfAttributes; i++) {
+                String name = readString();
+                byte type = readByte();
+                switch (type) {
+                    case TYPE_STRING:
+                        attributes.put(Tag.from(name, String.class), readString());
+                        break;
+                    case TYPE_BOOLEAN:
+                        attributes.put(Tag.from(name, Boolean.class), readBoolean());
+                        break;
+                    case TYPE_DOUBLE:
+                        attributes.put(Tag.from(name, Double.class), readDouble());
+                        break;
+                    case TYPE_FLOAT:
+                        attributes.put(Tag.from(name, Float.class), readFloat());
+                        break;
+                    case TYPE_INTEGER:
+                        attributes.put(Tag.from(name, Integer.class), readInt());
+                        break;
+                    case TYPE_LONG:
+                        attributes.put(Tag.from(name, Long.class), readLong());
+                        break;
+                    case TYPE_VERDICT:
+                        double severity = readDouble();
+                        attributes.put(Tag.from(name, Verdict.class), new Verdict(severity, readString()));
+                        break;
+                    default:
+                        throw new IOException("Unknown attribute type " + type);
+                }
+            }
+            return attributes;
+        }
+    }
+}
@@ -0,0 +1,746 @@
+package org.testar.statemodel.persistence.log;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded append-only store of binary records. A record has a kind, a key and a value, and a newer record replaces
+ * the older record with the same kind and key.
+ *
+ * The records are appended to segment files. A segment that is full, or that is open when the log is closed, is
+ * sealed with a footer that lists the latest record of every key in the segment, so that the in-memory index can be
+ * rebuilt at startup without reading the records themselves. A segment without a (valid) footer, because the log was
+ * not closed properly, is scanned instead, and cut off after the last complete record.
+ *
+ * When enough segments are sealed, they are compacted in the background into one segment with only the records
+ * that are still in use.
+ */
+public class SegmentLog implements Closeable {
+
+    // "TLOG"
+    private static final int SEGMENT_MAGIC = 0x544C4F47;
+
+    // "TLFT"
+    private static final int FOOTER_MAGIC = 0x544C4654;
+
+    private static final int VERSION = 1;
+
+    private static final int SEGMENT_HEADER_SIZE = 8;
+
+    // record length, checksum, kind, operation and key length
+    private static final int RECORD_HEADER_SIZE = 14;
+
+    // footer start, checksum and magic number
+    private static final int FOOTER_TRAILER_SIZE = 16;
+
+    // marks the start of a footer, where a record length would otherwise be
+    private static final int FOOTER_MARKER = -1;
+
+    private static final byte PUT = 0;
+
+    private static final byte DELETE = 1;
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final String COMPACTION_SUFFIX = ".compaction";
+
+    /**
+     * The number of kinds of records that can be stored.
+     */
+    public static final int NR_OF_KINDS = 16;
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4;
+
+    // the directory with the segment files
+    private final Path directory;
+
+    // the size at which a segment is sealed and a new segment is started
+    private final long segmentSize;
+
+    // the number of sealed segments that triggers a compaction
+    private final int compactionThreshold;
+
+    // all the segments, by id. Newer segments have higher ids
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    // the segment new records are appended to
+    private Segment activeSegment;
+
+    // the records that have not been written to the active segment yet
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(1 << 16);
+
+    // for every kind of record, the location of the latest record by key
+    private final List<Map<String, Location>> index = new ArrayList<>();
+
+    private final CRC32 checksum = new CRC32();
+
+    private final ExecutorService compactor;
+
+    private boolean compacting = false;
+
+    private boolean closed = false;
+
+    /**
+     * Opens the log in the given directory with the default segment size and compaction threshold.
+     * @param directory
+     * @throws IOException
+     */
+    public SegmentLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens the log in the given directory, which is created if it does not exist.
+     * @param directory
+     * @param segmentSize the size in bytes at which a segment is sealed
+     * @param compactionThreshold the number of sealed segments that triggers a compaction
+     * @throws IOException
+     */
+    public SegmentLog(Path directory, long segmentSize, int compactionThreshold) throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+        this.compactionThreshold = Math.max(2, compactionThreshold);
+        for (int kind = 0; kind < NR_OF_KINDS; kind++) {
+            index.add(new HashMap<>());
+        }
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SegmentLog compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        open();
+    }
+
+    //region reading and writing
+
+    /**
+     * Stores a record, which replaces the previous record with the same kind and key.
+     * @param kind
+     * @param key
+     * @param value
+     * @throws IOException
+     */
+    public synchronized void put(int kind, String key, byte[] value) throws IOException {
+        append(kind, PUT, key, value);
+    }
+
+    /**
+     * Removes the record with the given kind and key.
+     * @param kind
+     * @param key
+     * @throws IOException
+     */
+    public synchronized void delete(int kind, String key) throws IOException {
+        Location location = index.get(kind).get(key);
+        if (location != null && !location.deleted) {
+            append(kind, DELETE, key, new byte[0]);
+        }
+    }
+
+    /**
+     * Returns the value of the record with the given kind and key.
+     * @param kind
+     * @param key
+     * @return the value, or null if there is no such record
+     * @throws IOException
+     */
+    public synchronized byte[] get(int kind, String key) throws IOException {
+        checkOpen();
+        Location location = index.get(kind).get(key);
+        if (location == null || location.deleted) {
+            return null;
+        }
+        return readValue(location);
+    }
+
+    /**
+     * Returns true if there is a record with the given kind and key.
+     * @param kind
+     * @param key
+     * @return
+     */
+    public synchronized boolean contains(int kind, String key) {
+        Location location = index.get(kind).get(key);
+        return location != null && !location.deleted;
+    }
+
+    /**
+     * Returns the keys of the records of the given kind.
+     * @param kind
+     * @return
+     */
+    public synchronized Set<String> keys(int kind) {
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String, Location> entry : index.get(kind).entrySet()) {
+            if (!entry.getValue().deleted) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of records of the given kind.
+     * @param kind
+     * @return
+     */
+    public synchronized int size(int kind) {
+        return keys(kind).size();
+    }
+
+    /**
+     * Passes all the records of the given kind, in the order in which they are stored, to the given consumer.
+     * @param kind
+     * @param consumer receives the key and the value of each record
+     * @throws IOException
+     */
+    public synchronized void forEach(int kind, BiConsumer<String, byte[]> consumer) throws IOException {
+        checkOpen();
+        List<Map.Entry<String, Location>> entries = new ArrayList<>();
+        for (Map.Entry<String, Location> entry : index.get(kind).entrySet()) {
+            if (!entry.getValue().deleted) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing((Map.Entry<String, Location> entry) -> entry.getValue().segment.id)
+                .thenComparingInt(entry -> entry.getValue().offset));
+        for (Map.Entry<String, Location> entry : entries) {
+            consumer.accept(entry.getKey(), readValue(entry.getValue()));
+        }
+    }
+
+    /**
+     * Writes the buffered records to the active segment.
+     * @param sync whether to also force the records to the disk
+     * @throws IOException
+     */
+    public synchronized void flush(boolean sync) throws IOException {
+        checkOpen();
+        flushWriteBuffer();
+        if (sync) {
+            activeSegment.channel.force(false);
+        }
+    }
+
+    /**
+     * Returns the number of segment files of the log.
+     * @return
+     */
+    public synchronized int getNrOfSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Closes the log. The active segment is sealed, so that the log can be opened from the footers only, or removed
+     * if nothing was written to it.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        // let a running compaction finish first
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (activeSegment.size > SEGMENT_HEADER_SIZE) {
+                seal(activeSegment);
+            }
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+            if (activeSegment.size == SEGMENT_HEADER_SIZE) {
+                segments.remove(activeSegment.id);
+                Files.delete(segmentFile(activeSegment.id));
+            }
+            closed = true;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The log has been closed");
+        }
+    }
+
+    private void append(int kind, byte operation, String key, byte[] value) throws IOException {
+        checkOpen();
+        if (kind < 0 || kind >= NR_OF_KINDS) {
+            throw new IllegalArgumentException("Invalid record kind " + kind);
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_SIZE + keyBytes.length + value.length;
+        if (activeSegment.size > SEGMENT_HEADER_SIZE && activeSegment.size + length > segmentSize) {
+            roll();
+        }
+
+        checksum.reset();
+        checksum.update(kind);
+        checksum.update(operation);
+        checksum.update(keyBytes.length >>> 24);
+        checksum.update(keyBytes.length >>> 16);
+        checksum.update(keyBytes.length >>> 8);
+        checksum.update(keyBytes.length);
+        checksum.update(keyBytes, 0, keyBytes.length);
+        checksum.update(value, 0, value.length);
+
+        ByteBuffer record = writeBuffer;
+        if (length > writeBuffer.remaining()) {
+            flushWriteBuffer();
+            if (length > writeBuffer.capacity()) {
+                record = ByteBuffer.allocate(length);
+            }
+        }
+        record.putInt(length);
+        record.putInt((int) checksum.getValue());
+        record.put((byte) kind);
+        record.put(operation);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        record.put(value);
+        if (record != writeBuffer) {
+            record.flip();
+            write(activeSegment, record);
+        }
+
+        Location location = new Location(activeSegment, (int) activeSegment.size, length, operation == DELETE);
+        activeSegment.size += length;
+        activeSegment.footer.put(new RecordKey(kind, key), location);
+        index.get(kind).put(key, location);
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        if (writeBuffer.position() > 0) {
+            writeBuffer.flip();
+            write(activeSegment, writeBuffer);
+            writeBuffer.clear();
+        }
+    }
+
+    private static void write(Segment segment, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segment.flushedSize += segment.channel.write(buffer, segment.flushedSize);
+        }
+    }
+
+    private byte[] readValue(Location location) throws IOException {
+        if (location.offset + location.length > location.segment.flushedSize) {
+            flushWriteBuffer();
+        }
+        ByteBuffer record = read(location.segment.channel, location.offset, location.length);
+        record.position(RECORD_HEADER_SIZE - 4);
+        int keyLength = record.getInt();
+        byte[] value = new byte[location.length - RECORD_HEADER_SIZE - keyLength];
+        record.position(RECORD_HEADER_SIZE + keyLength);
+        record.get(value);
+        return value;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    //endregion
+
+    //region segments
+
+    private Path segmentFile(int id) {
+        return directory.resolve(String.format("%08d", id) + SEGMENT_SUFFIX);
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        // remove what is left of a compaction that did not finish
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + COMPACTION_SUFFIX)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                ids.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(ids);
+
+        for (int id : ids) {
+            Segment segment = new Segment(id, FileChannel.open(segmentFile(id), StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(id, segment);
+            if (!readFooter(segment)) {
+                // the log was not closed properly: keep the complete records, and seal the segment
+                System.out.println("Recovering log segment " + segmentFile(id));
+                scan(segment);
+                seal(segment);
+            }
+            for (Map.Entry<RecordKey, Location> entry : segment.footer.entrySet()) {
+                index.get(entry.getKey().kind).put(entry.getKey().key, entry.getValue());
+            }
+        }
+        // the footers are only needed for the active segment
+        for (Segment segment : segments.values()) {
+            segment.footer = null;
+        }
+        activeSegment = createSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+        maybeCompact();
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(id), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, channel);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putInt(VERSION).flip();
+        write(segment, header);
+        segment.size = SEGMENT_HEADER_SIZE;
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void roll() throws IOException {
+        seal(activeSegment);
+        activeSegment.footer = null;
+        activeSegment = createSegment(segments.lastKey() + 1);
+        maybeCompact();
+    }
+
+    /**
+     * Writes the footer of a segment: the key and location of the latest record of every key in the segment.
+     */
+    private void seal(Segment segment) throws IOException {
+        if (segment == activeSegment) {
+            flushWriteBuffer();
+        }
+        ByteBuffer footer = ByteBuffer.allocate(8 + segment.footer.size() * 32);
+        footer.putInt(FOOTER_MARKER);
+        footer.putInt(segment.footer.size());
+        for (Map.Entry<RecordKey, Location> entry : segment.footer.entrySet()) {
+            byte[] keyBytes = entry.getKey().key.getBytes(StandardCharsets.UTF_8);
+            if (footer.remaining() < 14 + keyBytes.length + FOOTER_TRAILER_SIZE) {
+                ByteBuffer larger = ByteBuffer.allocate(footer.capacity() * 2 + keyBytes.length + FOOTER_TRAILER_SIZE);
+                footer.flip();
+                footer = larger.put(footer);
+            }
+            footer.put((byte) entry.getKey().kind);
+            footer.put(entry.getValue().deleted ? DELETE : PUT);
+            footer.putInt(keyBytes.length);
+            footer.put(keyBytes);
+            footer.putInt(entry.getValue().offset);
+            footer.putInt(entry.getValue().length);
+        }
+        if (footer.remaining() < FOOTER_TRAILER_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(footer.position() + FOOTER_TRAILER_SIZE);
+            footer.flip();
+            footer = larger.put(footer);
+        }
+        checksum.reset();
+        checksum.update(footer.array(), 0, footer.position());
+        footer.putLong(segment.size);
+        footer.putInt((int) checksum.getValue());
+        footer.putInt(FOOTER_MAGIC);
+        footer.flip();
+
+        segment.channel.truncate(segment.size);
+        segment.flushedSize = segment.size;
+        write(segment, footer);
+        segment.channel.force(true);
+        segment.size = segment.flushedSize;
+        segment.sealed = true;
+    }
+
+    /**
+     * Reads the footer of a segment into the footer map of the segment.
+     * @return false if the segment has no valid footer
+     */
+    private boolean readFooter(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        segment.size = fileSize;
+        segment.flushedSize = fileSize;
+        if (fileSize < SEGMENT_HEADER_SIZE + 8 + FOOTER_TRAILER_SIZE) {
+            return false;
+        }
+        ByteBuffer trailer = read(segment.channel, fileSize - FOOTER_TRAILER_SIZE, FOOTER_TRAILER_SIZE);
+        long footerStart = trailer.getLong();
+        int footerChecksum = trailer.getInt();
+        if (trailer.getInt() != FOOTER_MAGIC || footerStart < SEGMENT_HEADER_SIZE || footerStart > fileSize - FOOTER_TRAILER_SIZE - 8) {
+            return false;
+        }
+        ByteBuffer footer = read(segment.channel, footerStart, (int) (fileSize - FOOTER_TRAILER_SIZE - footerStart));
+        checksum.reset();
+        checksum.update(footer.array(), 0, footer.limit());
+        if ((int) checksum.getValue() != footerChecksum || footer.getInt() != FOOTER_MARKER) {
+            return false;
+        }
+
+        Map<RecordKey, Location> entries = new LinkedHashMap<>();
+        int nrOfEntries = footer.getInt();
+        for (int i = 0; i < nrOfEntries; i++) {
+            int kind = footer.get();
+            boolean deleted = footer.get() == DELETE;
+            byte[] keyBytes = new byte[footer.getInt()];
+            footer.get(keyBytes);
+            int offset = footer.getInt();
+            int length = footer.getInt();
+            entries.put(new RecordKey(kind, new String(keyBytes, StandardCharsets.UTF_8)), new Location(segment, offset, length, deleted));
+        }
+        segment.footer = entries;
+        segment.sealed = true;
+        return true;
+    }
+
+    /**
+     * Reads the records of a segment without a footer, up to the first record that is incomplete or corrupt.
+     */
+    private void scan(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Log segment too large: " + segmentFile(segment.id));
+        }
+        ByteBuffer buffer = read(segment.channel, 0, (int) fileSize);
+        if (fileSize < SEGMENT_HEADER_SIZE || buffer.getInt() != SEGMENT_MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a log segment: " + segmentFile(segment.id));
+        }
+
+        Map<RecordKey, Location> entries = new LinkedHashMap<>();
+        int validEnd = SEGMENT_HEADER_SIZE;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int offset = buffer.position();
+            int length = buffer.getInt();
+            if (length < RECORD_HEADER_SIZE || length - 4 > buffer.remaining()) {
+                break;
+            }
+            int recordChecksum = buffer.getInt();
+            checksum.reset();
+            checksum.update(buffer.array(), offset + 8, length - 8);
+            if ((int) checksum.getValue() != recordChecksum) {
+                break;
+            }
+            int kind = buffer.get();
+            boolean deleted = buffer.get() == DELETE;
+            int keyLength = buffer.getInt();
+            if (kind < 0 || kind >= NR_OF_KINDS || keyLength < 0 || keyLength > length - RECORD_HEADER_SIZE) {
+                break;
+            }
+            String key = new String(buffer.array(), offset + RECORD_HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+            RecordKey recordKey = new RecordKey(kind, key);
+            // keep the order of the latest records
+            entries.remove(recordKey);
+            entries.put(recordKey, new Location(segment, offset, length, deleted));
+            validEnd = offset + length;
+            buffer.position(validEnd);
+        }
+        segment.footer = entries;
+        // anything after the last complete record is cut off when the segment is sealed
+        segment.size = validEnd;
+        segment.flushedSize = validEnd;
+    }
+
+    //endregion
+
+    //region compaction
+
+    private void maybeCompact() {
+        if (compacting || closed || segments.size() - 1 < compactionThreshold) {
+            return;
+        }
+        compacting = true;
+        compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.out.println("Compaction of the log in " + directory + " failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Merges all the sealed segments into one segment with only the records that are still in use. The records are
+     * copied without holding the lock of the log, as sealed segments do not change. Records that are replaced
+     * while copying stay in the new segment, and are left out by the next compaction.
+     */
+    private void compact() throws IOException {
+        List<Segment> sources = new ArrayList<>();
+        Map<RecordKey, Location> live = new LinkedHashMap<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (Segment segment : segments.values()) {
+                if (segment != activeSegment) {
+                    sources.add(segment);
+                }
+            }
+            if (sources.size() < 2) {
+                return;
+            }
+            for (int kind = 0; kind < NR_OF_KINDS; kind++) {
+                for (Map.Entry<String, Location> entry : index.get(kind).entrySet()) {
+                    if (entry.getValue().segment != activeSegment) {
+                        live.put(new RecordKey(kind, entry.getKey()), entry.getValue());
+                    }
+                }
+            }
+        }
+
+        // the new segment takes the place of the newest source, so that it stays older than the active segment
+        int id = sources.get(sources.size() - 1).id;
+        Path compactionFile = directory.resolve(String.format("%08d", id) + COMPACTION_SUFFIX);
+        Segment compacted = new Segment(id, FileChannel.open(compactionFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        Map<RecordKey, Location> moved = new HashMap<>();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+            header.putInt(SEGMENT_MAGIC).putInt(VERSION).flip();
+            write(compacted, header);
+            compacted.size = SEGMENT_HEADER_SIZE;
+
+            List<Map.Entry<RecordKey, Location>> entries = new ArrayList<>(live.entrySet());
+            entries.sort(Comparator.comparing((Map.Entry<RecordKey, Location> entry) -> entry.getValue().segment.id)
+                    .thenComparingInt(entry -> entry.getValue().offset));
+            for (Map.Entry<RecordKey, Location> entry : entries) {
+                Location location = entry.getValue();
+                ByteBuffer record = read(location.segment.channel, location.offset, location.length);
+                Location copy = new Location(compacted, (int) compacted.size, location.length, location.deleted);
+                write(compacted, record);
+                compacted.size += location.length;
+                compacted.footer.put(entry.getKey(), copy);
+                moved.put(entry.getKey(), copy);
+            }
+            synchronized (this) {
+                seal(compacted);
+            }
+        } catch (IOException e) {
+            compacted.channel.close();
+            Files.deleteIfExists(compactionFile);
+            throw e;
+        }
+        compacted.footer = null;
+
+        synchronized (this) {
+            for (Segment source : sources) {
+                source.channel.close();
+            }
+            compacted.channel.close();
+            Files.move(compactionFile, segmentFile(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            compacted.channel = FileChannel.open(segmentFile(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (Map.Entry<RecordKey, Location> entry : moved.entrySet()) {
+                Map<String, Location> locations = index.get(entry.getKey().kind);
+                if (locations.get(entry.getKey().key) == live.get(entry.getKey())) {
+                    locations.put(entry.getKey().key, entry.getValue());
+                }
+            }
+            for (Segment source : sources) {
+                segments.remove(source.id);
+                if (source.id != id) {
+                    Files.deleteIfExists(segmentFile(source.id));
+                }
+            }
+            segments.put(id, compacted);
+        }
+    }
+
+    //endregion
+
+    /**
+     * A segment file.
+     */
+    private static class Segment {
+
+        private final int id;
+
+        private FileChannel channel;
+
+        // the size of the segment, including the records in the write buffer
+        private long size;
+
+        // the size of the segment file
+        private long flushedSize;
+
+        private boolean sealed = false;
+
+        // the latest record of every key in the segment, written as the footer when the segment is sealed
+        private Map<RecordKey, Location> footer = new LinkedHashMap<>();
+
+        private Segment(int id, FileChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * The location of a record in a segment.
+     */
+    private static class Location {
+
+        private final Segment segment;
+
+        private final int offset;
+
+        private final int length;
+
+        // is the record a deletion?
+        private final boolean deleted;
+
+        private Location(Segment segment, int offset, int length, boolean deleted) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * The kind and key of a record.
+     */
+    private static class RecordKey {
+
+        private final int kind;
+
+        private final String key;
+
+        private RecordKey(int kind, String key) {
+            this.kind = kind;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof RecordKey && ((RecordKey) other).kind == kind && ((RecordKey) other).key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind + key.hashCode();
+        }
+    }
+}
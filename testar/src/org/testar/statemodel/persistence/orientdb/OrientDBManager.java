@@ -11,10 +11,12 @@ import org.testar.statemodel.exceptions.InvalidEventException;
 import org.testar.statemodel.exceptions.StateModelException;
 import org.testar.statemodel.persistence.orientdb.extractor.EntityExtractor;
 import org.testar.statemodel.persistence.orientdb.extractor.ExtractorFactory;
+import org.testar.statemodel.persistence.orientdb.hydrator.ConcreteStateHydrator;
 import org.testar.statemodel.persistence.orientdb.hydrator.EntityHydrator;
 import org.testar.statemodel.persistence.orientdb.hydrator.HydratorFactory;
 import org.testar.statemodel.persistence.orientdb.util.DependencyHelper;
 import org.testar.statemodel.persistence.PersistenceManager;
+import org.testar.statemodel.persistence.StateModelSnapshot;
 import org.testar.statemodel.sequence.Sequence;
 import org.testar.statemodel.sequence.SequenceManager;
 import org.testar.statemodel.sequence.SequenceNode;
@@ -25,6 +27,7 @@ import org.testar.statemodel.Widget;
 import org.testar.statemodel.*;
 import org.testar.statemodel.persistence.orientdb.entity.*;
 
+import java.io.IOException;
 import java.util.*;
 
 import static java.lang.System.exit;
@@ -47,6 +50,20 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
      */
     private boolean listening = true;
 
+    /**
+     * Snapshot used to restore the abstract state model at startup, instead of loading it from the database.
+     * Null if snapshots are not used.
+     */
+    private StateModelSnapshot stateModelSnapshot;
+
+    // the modification marker stored with the abstract state model in the database, written into the snapshot at shutdown
+    private String snapshotMarker;
+
+    /**
+     * The abstract state model that was initialized, of which a snapshot is written at shutdown
+     */
+    private AbstractStateModel abstractStateModel;
+
     /**
      * A set of orientdb classes that this class needs to operate
      */
@@ -74,8 +91,19 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
      * @param eventHelper
      */
     public OrientDBManager(EventHelper eventHelper, EntityManager entityManager) {
+        this(eventHelper, entityManager, null);
+    }
+
+    /**
+     * Constructor
+     * @param eventHelper
+     * @param entityManager
+     * @param stateModelSnapshot snapshot used to restore the abstract state model at startup, or null
+     */
+    public OrientDBManager(EventHelper eventHelper, EntityManager entityManager, StateModelSnapshot stateModelSnapshot) {
         this.eventHelper = eventHelper;
         this.entityManager = entityManager;
+        this.stateModelSnapshot = stateModelSnapshot;
         init();
     }
 
@@ -97,6 +125,17 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
 
     @Override
     public void shutdown() {
+        // write a snapshot of the model, so that the next run does not have to load it from the database
+        if (stateModelSnapshot != null && abstractStateModel != null) {
+            long start = System.currentTimeMillis();
+            try {
+                stateModelSnapshot.write(abstractStateModel, snapshotMarker);
+                System.out.println("Wrote a snapshot of the abstract state model in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException e) {
+                System.out.println("Could not write a snapshot of the abstract state model: " + e.getMessage());
+            }
+        }
+
         // tell the entity manager to release its connections
         entityManager.releaseConnection();
         entityManager = null;
@@ -205,15 +244,30 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
             return;
         }
 
-        // save the entity!
-        entityManager.saveEntity(concreteStateEntity);
-
-        // store the widgettree attached to this concrete state
-        persistWidgetTree(concreteState, concreteStateEntity);
+        // collect the widget tree attached to this concrete state
+        List<VertexEntity> widgetEntities = new ArrayList<>();
+        List<EdgeEntity> widgetRelationEntities = new ArrayList<>();
+        collectWidgetTree(concreteState, concreteStateEntity, widgetEntities, widgetRelationEntities);
 
         // optional: if an abstract state is provided, we connect the concrete state to it using an isAbstractedBy relation
+        EdgeEntity isAbstractedByEntity = createIsAbstractedByEntity(concreteState, concreteStateEntity);
+        if (isAbstractedByEntity != null) {
+            widgetRelationEntities.add(isAbstractedByEntity);
+        }
+
+        // save the entity, its widget tree and the relation to its abstract state in one transaction!
+        entityManager.saveVertexTree(concreteStateEntity, widgetEntities, widgetRelationEntities);
+    }
+
+    /**
+     * This method creates the isAbstractedBy relation between a concrete state and its abstract state.
+     * @param concreteState
+     * @param concreteStateEntity
+     * @return the edge entity or null if the concrete state has no abstract state or the relation could not be hydrated
+     */
+    private EdgeEntity createIsAbstractedByEntity(ConcreteState concreteState, VertexEntity concreteStateEntity) {
         if (concreteState.getAbstractState() == null) {
-            return;
+            return null;
         }
         EntityClass targetEntityClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.AbstractState);
         VertexEntity abstractStateEntity = new VertexEntity(targetEntityClass);
@@ -224,14 +278,12 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         } catch (HydrationException e) {
             e.printStackTrace();
             System.out.println("Encountered a problem while saving abstract state with id " + concreteState.getAbstractState().getStateId() + " to the orient database");
-            return;
+            return null;
         }
 
-        // set the concretestate and abstractstate entities to not update anymore. That is not required for this relation
-        concreteStateEntity.enableUpdate(false);
+        // the abstract state does not need to be updated for this relation
         abstractStateEntity.enableUpdate(false);
 
-        // create the edge entity and persist it
         EntityClass edgeEntityClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.isAbstractedBy);
         EdgeEntity edgeEntity = new EdgeEntity(edgeEntityClass, concreteStateEntity, abstractStateEntity);
         edgeEntity.enableUpdate(false);
@@ -241,28 +293,34 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
             entityHydrator.hydrate(edgeEntity, null);
         }
         catch (HydrationException ex) {
-            //@todo add some meaningful logging here as well
+            ex.printStackTrace();
+            System.out.println("Encountered a problem while saving the relation of concrete state with id " + concreteState.getId() + " to its abstract state");
+            return null;
         }
-        entityManager.saveEntity(edgeEntity);
+        return edgeEntity;
     }
 
     /**
-     * This method will store a widget tree to the orient database.
+     * This method will collect the entities of a widget tree, so that they can be stored to the orient database in one go.
      * @param widget
+     * @param widgetEntity
+     * @param widgetEntities
+     * @param widgetRelationEntities
      */
-    private void persistWidgetTree(Widget widget, VertexEntity widgetEntity) {
+    private void collectWidgetTree(Widget widget, VertexEntity widgetEntity, List<VertexEntity> widgetEntities, List<EdgeEntity> widgetRelationEntities) {
         widgetEntity.enableUpdate(false);
-        // we assume the root widget of the tree has already been stored, as this will be the concrete state
-        // we loop through the child widgets and for each widget, store the widget and then store the needed edges between them
+        // we assume the root widget of the tree will be stored along with the tree, as this will be the concrete state
+        // we loop through the child widgets and for each widget, collect the widget and the needed edges between them
         for (Widget childWidget : widget.getChildren()) {
-            VertexEntity childWidgetEntity = persistWidget(childWidget);
+            VertexEntity childWidgetEntity = createWidgetEntity(childWidget);
             if (childWidgetEntity == null) {
                 System.out.println("Encountered an error persisting the widget with id " + childWidget.getId());
                 return;
             }
             childWidgetEntity.enableUpdate(false);
+            widgetEntities.add(childWidgetEntity);
 
-            // with the widget saved, we need to also store parent and child relationships between the two widgets
+            // with the widget collected, we need to also store parent and child relationships between the two widgets
             EntityClass isChildEntityClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.isChildOf);
             EdgeEntity isChildEntity = new EdgeEntity(isChildEntityClass, childWidgetEntity, widgetEntity);
             isChildEntity.enableUpdate(false);
@@ -277,19 +335,19 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
                 System.out.println("Encountered a problem while saving the inter-widget relation to the orient database");
                 return;
             }
-            entityManager.saveEntity(isChildEntity);
+            widgetRelationEntities.add(isChildEntity);
 
             // go down the widget tree and do it again
-            persistWidgetTree(childWidget, childWidgetEntity);
+            collectWidgetTree(childWidget, childWidgetEntity, widgetEntities, widgetRelationEntities);
         }
     }
 
     /**
-     * This method will persist a single widget to the OrientDB data store.
+     * This method will create and hydrate the entity of a single widget, ready to be persisted to the OrientDB data store.
      * @param widget
      * @return
      */
-    private VertexEntity persistWidget(Widget widget) {
+    private VertexEntity createWidgetEntity(Widget widget) {
         // create an entity to persist to the database
         EntityClass entityClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.Widget);
         VertexEntity vertexEntity = new VertexEntity(entityClass);
@@ -305,9 +363,6 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
             System.out.println("Encountered a problem while saving a widget to the orient database");
             return null;
         }
-
-        // save the widget
-        entityManager.saveEntity(vertexEntity);
         return vertexEntity;
     }
 
@@ -457,6 +512,8 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         // step 2: see if there are abstract states present in the data store that are tied to this abstract state model
         EntityClass abstractStateClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.AbstractState);
         if (abstractStateClass == null) throw new RuntimeException("Error occurred: could not retrieve an abstract state entity class.");
+        EntityClass abstractActionClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.AbstractAction);
+        if (abstractActionClass == null) throw new RuntimeException("Error occurred: could not retrieve an abstract action entity class");
 
         // in order to retrieve the abstract states, we need to provide the abstract state model identifier to the query
         Map<String, PropertyValue> entityProperties = new HashMap<>();
@@ -464,6 +521,12 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         if (stateModelClassIdentifier == null) throw new RuntimeException("Error occurred: abstract state model does not have an id property set.");
         entityProperties.put("modelIdentifier", stateModelEntity.getPropertyValue(stateModelClassIdentifier.getPropertyName()));
 
+        this.abstractStateModel = abstractStateModel;
+        if (restoreFromSnapshot(abstractStateModel, abstractStateClass, abstractActionClass, entityProperties)) {
+            setListening(true);
+            return;
+        }
+
         Set<DocumentEntity> retrievedDocuments = entityManager.retrieveAllOfClass(abstractStateClass, entityProperties);
         if (retrievedDocuments.isEmpty()) {
             System.out.println("Could not find abstract states in the model");
@@ -482,9 +545,6 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         }
 
         // step 3: fetch the transitions from the database
-        EntityClass abstractActionClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.AbstractAction);
-        if (abstractActionClass == null) throw new RuntimeException("Error occurred: could not retrieve an abstract action entity class");
-
         retrievedDocuments = entityManager.retrieveAllOfClass(abstractActionClass, entityProperties);
         if (retrievedDocuments.isEmpty()) {
             System.out.println("Could not find abstract actions in the model");
@@ -507,6 +567,94 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         setListening(true);
     }
 
+    /**
+     * Helper method that restores the abstract state model from its snapshot. The snapshot is only used when it
+     * was written with the modification marker that is stored with the model in the database, and when it holds
+     * as many abstract states and transitions as the database does for the model.
+     * @param abstractStateModel
+     * @param abstractStateClass
+     * @param abstractActionClass
+     * @param entityProperties the properties that select the entities of the model
+     * @return true if the model was restored from the snapshot
+     */
+    private boolean restoreFromSnapshot(AbstractStateModel abstractStateModel, EntityClass abstractStateClass,
+                                        EntityClass abstractActionClass, Map<String, PropertyValue> entityProperties) {
+        if (stateModelSnapshot == null) {
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        String modelIdentifier = abstractStateModel.getModelIdentifier();
+        StateModelSnapshot.Content snapshot = stateModelSnapshot.read(modelIdentifier);
+        // the model changes from here on. The snapshot is written again at shutdown, which means
+        // that a run that does not finish properly does not leave an outdated snapshot behind
+        stateModelSnapshot.delete(modelIdentifier);
+        // the same goes for the snapshots of other runs on this database: a new marker is stored before the model
+        // changes, so that only the snapshot that this run writes at shutdown matches the database again
+        String storedMarker = readSnapshotMarker(modelIdentifier);
+        snapshotMarker = UUID.randomUUID().toString();
+        writeSnapshotMarker(modelIdentifier, snapshotMarker);
+        if (snapshot == null) {
+            return false;
+        }
+
+        if (storedMarker == null || !storedMarker.equals(snapshot.getMarker())) {
+            System.out.println("The abstract state model was changed after the snapshot was written, loading the model from the database");
+            return false;
+        }
+
+        long nrOfStates = entityManager.countAllOfClass(abstractStateClass, entityProperties);
+        long nrOfTransitions = entityManager.countAllOfClass(abstractActionClass, entityProperties);
+        if (nrOfStates != snapshot.getNrOfStates() || nrOfTransitions != snapshot.getNrOfTransitions()) {
+            System.out.println("The abstract state model snapshot does not match the database (" + snapshot.getNrOfStates() + " states and "
+                    + snapshot.getNrOfTransitions() + " transitions in the snapshot, " + nrOfStates + " states and "
+                    + nrOfTransitions + " transitions in the database), loading the model from the database");
+            return false;
+        }
+
+        try {
+            snapshot.restore(abstractStateModel);
+        } catch (StateModelException e) {
+            e.printStackTrace();
+            return false;
+        }
+        System.out.println("Restored " + nrOfStates + " abstract states and " + nrOfTransitions + " transitions from the snapshot in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * Helper method that reads the modification marker that is stored with the abstract state model in the database.
+     * @param modelIdentifier
+     * @return the marker or null if no marker was stored for the model
+     */
+    private String readSnapshotMarker(String modelIdentifier) {
+        String query = "SELECT snapshotMarker FROM AbstractStateModel WHERE modelIdentifier = :modelIdentifier";
+        Map<String, Object> params = new HashMap<>();
+        params.put("modelIdentifier", modelIdentifier);
+        try (ODatabaseSession db = entityManager.getConnection().getDatabaseSession()) {
+            OResultSet resultSet = db.query(query, params);
+            String marker = resultSet.hasNext() ? resultSet.next().getProperty("snapshotMarker") : null;
+            resultSet.close();
+            return marker;
+        }
+    }
+
+    /**
+     * Helper method that stores a new modification marker with the abstract state model in the database.
+     * @param modelIdentifier
+     * @param marker
+     */
+    private void writeSnapshotMarker(String modelIdentifier, String marker) {
+        String stmt = "UPDATE AbstractStateModel SET snapshotMarker = :snapshotMarker WHERE modelIdentifier = :modelIdentifier";
+        Map<String, Object> params = new HashMap<>();
+        params.put("snapshotMarker", marker);
+        params.put("modelIdentifier", modelIdentifier);
+        try (ODatabaseSession db = entityManager.getConnection().getDatabaseSession()) {
+            db.command(stmt, params).close();
+        }
+    }
+
     public void persistSequence(Sequence sequence) {
         EntityClass entityClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.TestSequence);
         VertexEntity vertexEntity = new VertexEntity(entityClass);
@@ -534,18 +682,18 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
             e.printStackTrace();
         }
 
-        // get the concrete state and make a vertex out of it
+        // the concrete state has been stored before the node, so we only need a reference to it.
+        // the state is only hydrated if storing it failed, so that the node is still connected to it
         EntityClass concreteStateClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.ConcreteState);
-        VertexEntity stateEntity = new VertexEntity(concreteStateClass);
-
-        // hydrate the entity to a format the orient database can store
+        VertexEntity stateEntity;
         try {
-            EntityHydrator hydrator = HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_CONCRETE_STATE);
-            hydrator.hydrate(stateEntity, sequenceNode.getConcreteState());
+            stateEntity = new VertexReference(concreteStateClass, ConcreteStateHydrator.createUniqueId(sequenceNode.getConcreteState()),
+                    () -> hydrateVertexEntity(EntityClassFactory.EntityClassName.ConcreteState, HydratorFactory.HYDRATOR_CONCRETE_STATE, sequenceNode.getConcreteState()));
         }
         catch (HydrationException e) {
             e.printStackTrace();
             System.out.println("Encountered a problem while saving concrete state with id " + sequenceNode.getConcreteState().getId() + " to the orient database");
+            return;
         }
 
         // we have to add an edge from sequence node to the concrete state it accessed
@@ -568,17 +716,10 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         // no need to update the node again
         nodeEntity.enableUpdate(false);
 
-        // create a vertex entity for the test sequence
+        // refer to the test sequence, no need to update it either
         EntityClass sequenceClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.TestSequence);
-        VertexEntity sequenceEntity = new VertexEntity(sequenceClass);
-        try {
-            EntityHydrator sequenceHydrator = HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_SEQUENCE);
-            sequenceHydrator.hydrate(sequenceEntity, sequenceNode.getSequence());
-        } catch (HydrationException e) {
-            e.printStackTrace();
-        }
-        // no need to update the sequence either
-        sequenceEntity.enableUpdate(false);
+        VertexEntity sequenceEntity = new VertexReference(sequenceClass, sequenceNode.getSequence().getCurrentSequenceId(),
+                () -> hydrateVertexEntity(EntityClassFactory.EntityClassName.TestSequence, HydratorFactory.HYDRATOR_SEQUENCE, sequenceNode.getSequence()));
 
         // now an edge entity for the relation
         EntityClass firstNodeClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.FirstNode);
@@ -603,22 +744,12 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         // so first we save the target node
         persistSequenceNode(sequenceStep.getTargetNode());
 
-        // next, we hydrate the source and target nodes, and then the step
+        // next, we refer to the source and target nodes, as there is no need to update them, and then hydrate the step
         EntityClass nodeClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.SequenceNode);
-        VertexEntity sourceNode = new VertexEntity(nodeClass);
-        VertexEntity targetNode = new VertexEntity(nodeClass);
-
-        try {
-            EntityHydrator sequenceNodeHydrator = HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_SEQUENCE_NODE);
-            sequenceNodeHydrator.hydrate(sourceNode, sequenceStep.getSourceNode());
-            sequenceNodeHydrator.hydrate(targetNode, sequenceStep.getTargetNode());
-        } catch (HydrationException e) {
-            e.printStackTrace();
-        }
-
-        // no need to update the source and target nodes
-        sourceNode.enableUpdate(false);
-        targetNode.enableUpdate(false);
+        VertexEntity sourceNode = new VertexReference(nodeClass, sequenceStep.getSourceNode().getNodeId(),
+                () -> hydrateVertexEntity(EntityClassFactory.EntityClassName.SequenceNode, HydratorFactory.HYDRATOR_SEQUENCE_NODE, sequenceStep.getSourceNode()));
+        VertexEntity targetNode = new VertexReference(nodeClass, sequenceStep.getTargetNode().getNodeId(),
+                () -> hydrateVertexEntity(EntityClassFactory.EntityClassName.SequenceNode, HydratorFactory.HYDRATOR_SEQUENCE_NODE, sequenceStep.getTargetNode()));
 
         EntityClass stepClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.SequenceStep);
         EdgeEntity step = new EdgeEntity(stepClass, sourceNode, targetNode);
@@ -632,6 +763,26 @@ public class OrientDBManager implements PersistenceManager, StateModelEventListe
         entityManager.saveEntity(step);
     }
 
+    /**
+     * This method hydrates a vertex entity for an object of the in-memory model.
+     * It is used when the vertex that a reference refers to has not been stored yet.
+     * @param entityClassName
+     * @param hydratorType
+     * @param source
+     * @return the entity or null if it could not be hydrated
+     */
+    private VertexEntity hydrateVertexEntity(EntityClassFactory.EntityClassName entityClassName, int hydratorType, Object source) {
+        VertexEntity vertexEntity = new VertexEntity(EntityClassFactory.createEntityClass(entityClassName));
+        try {
+            EntityHydrator hydrator = HydratorFactory.getHydrator(hydratorType);
+            hydrator.hydrate(vertexEntity, source);
+        } catch (HydrationException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return vertexEntity;
+    }
+
     @Override
     public void eventReceived(StateModelEvent event) {
         if (!listening) return;
@@ -5,10 +5,13 @@ import org.testar.statemodel.persistence.orientdb.entity.EntityManager;
 import org.testar.statemodel.persistence.PersistenceManager;
 import org.testar.statemodel.persistence.PersistenceManagerFactory;
 import org.testar.statemodel.persistence.QueueManager;
+import org.testar.statemodel.persistence.StateModelSnapshot;
 import org.testar.statemodel.util.EventHelper;
 import org.testar.monkey.ConfigTags;
 import org.testar.monkey.Settings;
 
+import java.nio.file.Paths;
+
 public class OrientDBManagerFactory implements PersistenceManagerFactory {
 
     @Override
@@ -26,20 +29,26 @@ public class OrientDBManagerFactory implements PersistenceManagerFactory {
         config.setDatabaseDirectory(settings.get(ConfigTags.DataStoreDirectory));
         EntityManager entityManager = new EntityManager(config);
 
+        // the abstract state model is restored from a snapshot at startup, when the snapshot is up to date
+        String snapshotDirectory = settings.get(ConfigTags.StateModelSnapshotDirectory);
+        StateModelSnapshot stateModelSnapshot = new StateModelSnapshot(snapshotDirectory.isEmpty()
+                ? Paths.get(settings.get(ConfigTags.OutputDir), "statemodel")
+                : Paths.get(snapshotDirectory));
+
         // check if the data needs to be stored instantaneously or delayed (after sequence).
         PersistenceManager persistenceManager;
         switch (settings.get(ConfigTags.DataStoreMode)) {
             case PersistenceManager.DATA_STORE_MODE_DELAYED:
-                persistenceManager = new QueueManager(new OrientDBManager(eventHelper, entityManager), new EventHelper(), false);
+                persistenceManager = new QueueManager(new OrientDBManager(eventHelper, entityManager, stateModelSnapshot), new EventHelper(), false);
                 break;
 
             case PersistenceManager.DATA_STORE_MODE_HYBRID:
-                persistenceManager = new QueueManager(new OrientDBManager(eventHelper, entityManager), new EventHelper(), true);
+                persistenceManager = new QueueManager(new OrientDBManager(eventHelper, entityManager, stateModelSnapshot), new EventHelper(), true);
                 break;
 
             case PersistenceManager.DATA_STORE_MODE_INSTANT:
              default:
-                 persistenceManager = new OrientDBManager(eventHelper, entityManager);
+                 persistenceManager = new OrientDBManager(eventHelper, entityManager, stateModelSnapshot);
 
         }
         return persistenceManager;
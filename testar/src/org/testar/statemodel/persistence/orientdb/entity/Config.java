@@ -8,6 +8,9 @@ public class Config {
     // connection type used when connecting to OrientDB running in remote server mode
     public static final String  CONNECTION_TYPE_REMOTE = "remote";
 
+    // connection type used for a database that only lives in memory, it is created when connecting
+    public static final String CONNECTION_TYPE_MEMORY = "memory";
+
     // type of orientdb installation, could be remote, integrated, etc
     private String connectionType;
 
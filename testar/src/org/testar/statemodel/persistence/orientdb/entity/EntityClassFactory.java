@@ -4,6 +4,7 @@ import com.orientechnologies.orient.core.metadata.schema.OType;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class EntityClassFactory {
@@ -12,7 +13,8 @@ public class EntityClassFactory {
         BlackHole, UnvisitedAbstractAction, TestSequence, SequenceNode, SequenceStep, Accessed, FirstNode}
 
     // a repo for generated classes, so we don't execute the same generation code over and over if not needed
-    private static Map<EntityClassName, EntityClass> entityClasses = new HashMap<>();
+    // the classes are shared by the background writers of the QueueManager
+    private static Map<EntityClassName, EntityClass> entityClasses = new ConcurrentHashMap<>();
 
     // mapping for the internal orientdb classname to our enum
     // we do not want the rest of our program to use the classNames directly, but want to be able
@@ -222,6 +224,11 @@ public class EntityClassFactory {
         screenshot.setNullable(true);
         screenshot.setIdentifier(false);
         concreteStateClass.addProperty(screenshot);
+        Property screenshotPath = new Property("screenshotPath", OType.STRING);
+        screenshotPath.setMandatory(false);
+        screenshotPath.setNullable(true);
+        screenshotPath.setIdentifier(false);
+        concreteStateClass.addProperty(screenshotPath);
         Property counter = new Property("counter", OType.INTEGER);
         counter.setMandatory(true);
         counter.setNullable(false);
@@ -1,8 +1,11 @@
 package org.testar.statemodel.persistence.orientdb.entity;
 
+import com.orientechnologies.orient.core.db.ODatabaseType;
 import com.orientechnologies.orient.core.db.ODatabaseSession;
 import com.orientechnologies.orient.core.db.OrientDB;
 import com.orientechnologies.orient.core.db.OrientDBConfig;
+import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.schema.OProperty;
 import com.orientechnologies.orient.core.metadata.schema.OSchema;
@@ -12,6 +15,7 @@ import com.orientechnologies.orient.core.metadata.sequence.OSequenceLibrary;
 import com.orientechnologies.orient.core.record.ODirection;
 import com.orientechnologies.orient.core.record.OEdge;
 import com.orientechnologies.orient.core.record.OElement;
+import com.orientechnologies.orient.core.record.ORecord;
 import com.orientechnologies.orient.core.record.OVertex;
 import com.orientechnologies.orient.core.record.impl.OBlob;
 import com.orientechnologies.orient.core.sql.executor.OResult;
@@ -28,14 +32,68 @@ public class EntityManager {
     // the connection object holding the datastore instance and the connection configuration information
     private Connection connection;
 
+    // the number of record ids that are remembered by default
+    static final int MAX_CACHED_VERTEX_IDS = 10000;
+
+    // the record ids of the vertices that were stored or retrieved by this entity manager, by class name and identifier value.
+    // loading a vertex by its record id is a lot cheaper than querying for its identifier.
+    // the vertices that were used least recently are forgotten first, so a long run does not keep every vertex id.
+    private final Map<VertexKey, ORID> vertexIds;
+
+    private static final class VertexKey {
+        private final String className;
+        private final Object idValue;
+
+        VertexKey(String className, Object idValue) {
+            this.className = className;
+            this.idValue = idValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof VertexKey)) {
+                return false;
+            }
+            VertexKey other = (VertexKey) o;
+            return className.equals(other.className) && idValue.equals(other.idValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * className.hashCode() + idValue.hashCode();
+        }
+    }
+
     /**
      * Constructor
      * @param config
      */
     public EntityManager(Config config) {
-        String connectionString = config.getConnectionType() + ":" + (config.getConnectionType().equals("remote") ?
-                config.getServer() : config.getDatabaseDirectory()) + "/";
-        OrientDB orientDB = new OrientDB(connectionString, OrientDBConfig.defaultConfig());
+        this(config, MAX_CACHED_VERTEX_IDS);
+    }
+
+    /**
+     * Constructor
+     * @param config
+     * @param maxCachedVertexIds the number of vertex record ids to remember
+     */
+    EntityManager(Config config, int maxCachedVertexIds) {
+        vertexIds = Collections.synchronizedMap(new LinkedHashMap<VertexKey, ORID>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<VertexKey, ORID> eldest) {
+                return size() > maxCachedVertexIds;
+            }
+        });
+        OrientDB orientDB;
+        if (config.getConnectionType().equals(Config.CONNECTION_TYPE_MEMORY)) {
+            orientDB = new OrientDB(Config.CONNECTION_TYPE_MEMORY + ":", OrientDBConfig.defaultConfig());
+            orientDB.createIfNotExists(config.getDatabase(), ODatabaseType.MEMORY);
+        }
+        else {
+            String connectionString = config.getConnectionType() + ":" + (config.getConnectionType().equals("remote") ?
+                    config.getServer() : config.getDatabaseDirectory()) + "/";
+            orientDB = new OrientDB(connectionString, OrientDBConfig.defaultConfig());
+        }
         connection = new Connection(orientDB, config);
         init();
     }
@@ -45,6 +103,7 @@ public class EntityManager {
      * Should be called before the entity manager itself becomes unused.
      */
     public void releaseConnection() {
+        vertexIds.clear();
         connection.releaseConnection();
     }
 
@@ -77,6 +136,14 @@ public class EntityManager {
         }
     }
 
+    /**
+     * Returns the number of vertex record ids that are remembered.
+     * @return
+     */
+    int getNrOfCachedVertexIds() {
+        return vertexIds.size();
+    }
+
     /**
      * Method returns true if the vertex is already present in the data store.
      * @param vertexEntity
@@ -109,13 +176,21 @@ public class EntityManager {
             throw new EntityNotFoundException();
         }
 
-        // first we prepare the statement to execute
         String className = vertexEntity.getEntityClass().getClassName();
         String idField = identifier.getPropertyName();
+        Object idValue = vertexEntity.getPropertyValue(idField).getValue();
+
+        // no need to query for a vertex we have seen before
+        OVertex cachedVertex = loadCachedVertex(className, idValue, db);
+        if (cachedVertex != null) {
+            return cachedVertex;
+        }
+
+        // first we prepare the statement to execute
         String stmt = "SELECT FROM " + className + " WHERE " + idField + " = :" + idField;
         // get the id parameter ready
         Map<String, Object> params = new HashMap<>();
-        params.put(idField, vertexEntity.getPropertyValue(idField).getValue());
+        params.put(idField, idValue);
         //execute the query using statement and parameters
         OResultSet rs = db.query(stmt, params);
 
@@ -126,6 +201,7 @@ public class EntityManager {
 
         Optional<OVertex> op = rs.next().getVertex();
         if (op.isPresent()) {
+            cacheVertexId(className, idValue, op.get());
             return op.get();
         }
 
@@ -133,6 +209,69 @@ public class EntityManager {
         throw new EntityNotFoundException();
     }
 
+    /**
+     * Method loads a vertex by the record id that was cached for it.
+     * @param className
+     * @param idValue
+     * @param db
+     * @return the vertex or null if no record id was cached or the vertex no longer exists
+     */
+    private OVertex loadCachedVertex(String className, Object idValue, ODatabaseSession db) {
+        if (idValue == null) {
+            return null;
+        }
+        VertexKey key = new VertexKey(className, idValue);
+        ORID rid = vertexIds.get(key);
+        if (rid == null) {
+            return null;
+        }
+
+        try {
+            ORecord record = db.load(rid);
+            if (record instanceof OElement) {
+                Optional<OVertex> vertex = ((OElement) record).asVertex();
+                if (vertex.isPresent() && vertex.get().getSchemaType().map(oClass -> oClass.isSubClassOf(className)).orElse(false)) {
+                    return vertex.get();
+                }
+            }
+        }
+        catch (ORecordNotFoundException e) {
+            // the vertex was deleted
+        }
+
+        // the record id is no longer valid, so we will have to query for the vertex
+        vertexIds.remove(key, rid);
+        return null;
+    }
+
+    /**
+     * Method remembers the record id of a stored vertex, so it can be loaded without a query.
+     * @param className
+     * @param idValue
+     * @param oVertex
+     */
+    private void cacheVertexId(String className, Object idValue, OVertex oVertex) {
+        ORID rid = oVertex.getIdentity();
+        // records that were not committed yet only have a temporary record id
+        if (idValue == null || rid == null || !rid.isPersistent()) {
+            return;
+        }
+        vertexIds.put(new VertexKey(className, idValue), rid.copy());
+    }
+
+    /**
+     * Method remembers the record id of the stored vertex for a vertex entity.
+     * @param vertexEntity
+     * @param oVertex
+     */
+    private void cacheVertexId(VertexEntity vertexEntity, OVertex oVertex) {
+        Property identifier = vertexEntity.getEntityClass().getIdentifier();
+        PropertyValue idValue = identifier == null ? null : vertexEntity.getPropertyValue(identifier.getPropertyName());
+        if (idValue != null) {
+            cacheVertexId(vertexEntity.getEntityClass().getClassName(), idValue.getValue(), oVertex);
+        }
+    }
+
     /**
      * Method retrieves an edge from the data store.
      * @param edgeEntity
@@ -344,18 +483,12 @@ public class EntityManager {
 
         // check if one of the properties is an auto-increment field.
         // in that case we need to ask a sequence to provide a value
-        for (Property property : entity.getEntityClass().getProperties()) {
-            if (property.isAutoIncrement()) {
-                // make sure the property does not have a value yet
-                if (oVertex.getProperty(property.getPropertyName()) == null) {
-                    // fetch the sequence
-                    OSequence sequence = db.getMetadata().getSequenceLibrary().getSequence(createSequenceId(entity.getEntityClass(), property));
-                    setProperty(oVertex, property.getPropertyName(), sequence.next(), db);
-                }
-            }
-        }
+        setAutoIncrementProperties(oVertex, entity.getEntityClass(), db);
 
         oVertex.save();
+        if (newVertex) {
+            cacheVertexId(entity, oVertex);
+        }
     }
 
     /**
@@ -388,90 +521,308 @@ public class EntityManager {
             // we don't do anything here. If the edge does not exist, we just want to continue with method execution
         }
 
-        // retrieve and/or update/save the source vertex
-        OVertex sourceVertex;
-        boolean newSourceVertex = false;
+        // retrieve and/or update/save the source and target vertices
+        OVertex sourceVertex = saveEdgeEndpoint(entity.getSourceEntity(), db);
+        OVertex targetVertex = saveEdgeEndpoint(entity.getTargetEntity(), db);
+        if (sourceVertex == null || targetVertex == null) {
+            System.out.println("Could not store the " + entity.getEntityClass().getClassName() + " edge, as one of its vertices could not be found");
+            return;
+        }
+
+        // now create the new edge, set the properties and save
+        edge = sourceVertex.addEdge(targetVertex, entity.getEntityClass().getClassName());
+        for (String propertyName : entity.getPropertyNames()) {
+            setProperty(edge, propertyName, entity.getPropertyValue(propertyName).getValue(), db);
+        }
+
+        // check if one of the properties is an auto-increment field.
+        // in that case we need to ask a sequence to provide a value
+        setAutoIncrementProperties(edge, entity.getEntityClass(), db);
+
+        edge.save();
+    }
+
+    /**
+     * This method retrieves the vertex at one end of an edge and updates it, or creates it if it is not stored yet.
+     * A vertex reference has no properties to create the vertex from, so it is created from the reference's fallback entity.
+     * @param vertexEntity
+     * @param db
+     * @return the vertex or null if it does not exist and could not be created
+     */
+    private OVertex saveEdgeEndpoint(VertexEntity vertexEntity, ODatabaseSession db) {
+        OVertex oVertex;
+        boolean newVertex = false;
         try {
-            sourceVertex = retrieveVertex(entity.getSourceEntity(), db);
+            oVertex = retrieveVertex(vertexEntity, db);
         }
         catch (EntityNotFoundException e) {
-            sourceVertex = db.newVertex(entity.getSourceEntity().getEntityClass().getClassName());
-            newSourceVertex = true;
+            if (vertexEntity instanceof VertexReference) {
+                vertexEntity = ((VertexReference) vertexEntity).getFallbackEntity();
+                if (vertexEntity == null) {
+                    return null;
+                }
+            }
+            oVertex = db.newVertex(vertexEntity.getEntityClass().getClassName());
+            newVertex = true;
         }
 
-        if (newSourceVertex || entity.getSourceEntity().updateEnabled()) {
-            for (String propertyName : entity.getSourceEntity().getPropertyNames()) {
-                setProperty(sourceVertex, propertyName, entity.getSourceEntity().getPropertyValue(propertyName).getValue(), db);
+        if (newVertex || vertexEntity.updateEnabled()) {
+            for (String propertyName : vertexEntity.getPropertyNames()) {
+                setProperty(oVertex, propertyName, vertexEntity.getPropertyValue(propertyName).getValue(), db);
             }
 
             // check if one of the properties is an auto-increment field.
             // in that case we need to ask a sequence to provide a value
-            for (Property property : entity.getSourceEntity().getEntityClass().getProperties()) {
-                if (property.isAutoIncrement()) {
-                    // make sure the property does not have a value yet
-                    if (sourceVertex.getProperty(property.getPropertyName()) == null) {
-                        // fetch the sequence
-                        OSequence sequence = db.getMetadata().getSequenceLibrary().getSequence(createSequenceId(entity.getSourceEntity().getEntityClass(), property));
-                        setProperty(sourceVertex, property.getPropertyName(), sequence.next(), db);
-                    }
-                }
-            }
+            setAutoIncrementProperties(oVertex, vertexEntity.getEntityClass(), db);
 
-            sourceVertex.save();
+            oVertex.save();
+            if (newVertex) {
+                cacheVertexId(vertexEntity, oVertex);
+            }
         }
+        return oVertex;
+    }
 
-        // retrieve and/or update/save the target vertex
-        OVertex targetVertex;
-        boolean newTargetVertex = false;
-        try {
-            targetVertex = retrieveVertex(entity.getTargetEntity(), db);
-        }
-        catch (EntityNotFoundException e) {
-            targetVertex = db.newVertex(entity.getTargetEntity().getEntityClass().getClassName());
-            newTargetVertex = true;
+    /**
+     * This method sets the auto-increment properties of an element that do not have a value yet.
+     * @param element
+     * @param entityClass
+     * @param db
+     */
+    private void setAutoIncrementProperties(OElement element, EntityClass entityClass, ODatabaseSession db) {
+        for (Property property : entityClass.getProperties()) {
+            if (property.isAutoIncrement()) {
+                // make sure the property does not have a value yet
+                if (element.getProperty(property.getPropertyName()) == null) {
+                    // fetch the sequence
+                    OSequence sequence = db.getMetadata().getSequenceLibrary().getSequence(createSequenceId(entityClass, property));
+                    setProperty(element, property.getPropertyName(), sequence.next(), db);
+                }
+            }
         }
+    }
 
-        if (newTargetVertex || entity.getTargetEntity().updateEnabled()) {
-            for (String propertyName : entity.getTargetEntity().getPropertyNames()) {
-                setProperty(targetVertex, propertyName, entity.getTargetEntity().getPropertyValue(propertyName).getValue(), db);
+    /**
+     * This method saves a vertex together with the vertices and edges that only exist because of it,
+     * for instance a concrete state, its widget tree and the relation to its abstract state, in a single session
+     * and a single transaction. So either the whole tree is stored, or nothing is.
+     * If the root vertex is new, the vertices and edges of the tree are known to be new as well and they are created
+     * without looking them up in the data store first.
+     * If the root vertex was already stored together with its tree, only the root vertex is updated (when allowed).
+     * If the root vertex was stored without its tree, for instance by an edge to it, the missing parts of the tree are added.
+     * Vertices and edges that occur more than once in the tree, having the same identifier, are created only once.
+     * Edges to vertices outside the tree are connected to the stored vertex. If it cannot be found, it is created
+     * (from the fallback entity of a reference), and the edge is skipped if that is not possible.
+     * @param rootEntity
+     * @param vertexEntities
+     * @param edgeEntities
+     * @return true if the tree was created, false if the root vertex was already stored with its tree
+     */
+    public boolean saveVertexTree(VertexEntity rootEntity, List<VertexEntity> vertexEntities, List<EdgeEntity> edgeEntities) {
+        try (ODatabaseSession db = connection.getDatabaseSession()) {
+            // the first lookup: the root vertex tells whether the tree has been stored before
+            OVertex rootVertex = null;
+            try {
+                rootVertex = retrieveVertex(rootEntity, db);
+            }
+            catch (EntityNotFoundException e) {
+                // a new root vertex, so the rest of the tree is new as well
             }
 
-            // check if one of the properties is an auto-increment field.
-            // in that case we need to ask a sequence to provide a value
-            for (Property property : entity.getTargetEntity().getEntityClass().getProperties()) {
-                if (property.isAutoIncrement()) {
-                    // make sure the property does not have a value yet
-                    if (targetVertex.getProperty(property.getPropertyName()) == null) {
-                        // fetch the sequence
-                        OSequence sequence = db.getMetadata().getSequenceLibrary().getSequence(createSequenceId(entity.getTargetEntity().getEntityClass(), property));
-                        setProperty(targetVertex, property.getPropertyName(), sequence.next(), db);
+            if (rootVertex != null && isTreeStored(rootVertex, rootEntity, edgeEntities)) {
+                if (rootEntity.updateEnabled()) {
+                    db.begin();
+                    for (String propertyName : rootEntity.getPropertyNames()) {
+                        setProperty(rootVertex, propertyName, rootEntity.getPropertyValue(propertyName).getValue(), db);
+                    }
+                    rootVertex.save();
+                    db.commit();
+                }
+                return false;
+            }
+            // when the root vertex exists without its tree, parts of the tree may exist as well
+            boolean completeTree = rootVertex != null;
+
+            // collect the entities to create, without duplicates
+            Map<Object, OVertex> storedVertices = new HashMap<>();
+            Map<Object, VertexEntity> vertices = new LinkedHashMap<>();
+            if (completeTree) {
+                storedVertices.put(getIdentifierValue(rootEntity), rootVertex);
+            }
+            else {
+                vertices.put(getIdentifierValue(rootEntity), rootEntity);
+            }
+            for (VertexEntity vertexEntity : vertexEntities) {
+                Object idValue = getIdentifierValue(vertexEntity);
+                if (!storedVertices.containsKey(idValue) && !vertices.containsKey(idValue)) {
+                    OVertex storedVertex = completeTree ? findVertex(vertexEntity, db) : null;
+                    if (storedVertex != null) {
+                        storedVertices.put(idValue, storedVertex);
+                    }
+                    else {
+                        vertices.put(idValue, vertexEntity);
                     }
                 }
             }
+            Map<Object, EdgeEntity> edges = new LinkedHashMap<>();
+            for (EdgeEntity edgeEntity : edgeEntities) {
+                if (edgeEntity.getSourceEntity() == null || edgeEntity.getTargetEntity() == null) {
+                    continue;
+                }
+                if (!collectEndpoint(edgeEntity.getSourceEntity(), storedVertices, vertices, db)
+                        || !collectEndpoint(edgeEntity.getTargetEntity(), storedVertices, vertices, db)) {
+                    System.out.println("Could not store the " + edgeEntity.getEntityClass().getClassName() + " edge, as one of its vertices could not be found");
+                    continue;
+                }
+                if (completeTree && edgeExists(edgeEntity, db)) {
+                    continue;
+                }
+                edges.putIfAbsent(getIdentifierValue(edgeEntity), edgeEntity);
+            }
 
-            targetVertex.save();
-        }
+            // sequences are not part of the transaction, so we draw the auto-increment values before it starts
+            List<DocumentEntity> entities = new ArrayList<>(vertices.values());
+            entities.addAll(edges.values());
+            for (DocumentEntity entity : entities) {
+                for (Property property : entity.getEntityClass().getProperties()) {
+                    if (property.isAutoIncrement() && entity.getPropertyValue(property.getPropertyName()) == null) {
+                        OSequence sequence = db.getMetadata().getSequenceLibrary().getSequence(createSequenceId(entity.getEntityClass(), property));
+                        entity.addPropertyValue(property.getPropertyName(), new PropertyValue(property.getPropertyType(), sequence.next()));
+                    }
+                }
+            }
 
-        // now create the new edge, set the properties and save
-        edge = sourceVertex.addEdge(targetVertex, entity.getEntityClass().getClassName());
-        for (String propertyName : entity.getPropertyNames()) {
-            setProperty(edge, propertyName, entity.getPropertyValue(propertyName).getValue(), db);
-        }
+            db.begin();
+            try {
+                Map<Object, OVertex> createdVertices = new HashMap<>();
+                for (Map.Entry<Object, VertexEntity> entry : vertices.entrySet()) {
+                    VertexEntity vertexEntity = entry.getValue();
+                    OVertex oVertex = db.newVertex(vertexEntity.getEntityClass().getClassName());
+                    for (String propertyName : vertexEntity.getPropertyNames()) {
+                        setProperty(oVertex, propertyName, vertexEntity.getPropertyValue(propertyName).getValue(), db);
+                    }
+                    oVertex.save();
+                    createdVertices.put(entry.getKey(), oVertex);
+                }
+                storedVertices.putAll(createdVertices);
+
+                for (EdgeEntity edgeEntity : edges.values()) {
+                    OVertex sourceVertex = storedVertices.get(getIdentifierValue(edgeEntity.getSourceEntity()));
+                    OVertex targetVertex = storedVertices.get(getIdentifierValue(edgeEntity.getTargetEntity()));
+                    OEdge edge = sourceVertex.addEdge(targetVertex, edgeEntity.getEntityClass().getClassName());
+                    for (String propertyName : edgeEntity.getPropertyNames()) {
+                        setProperty(edge, propertyName, edgeEntity.getPropertyValue(propertyName).getValue(), db);
+                    }
+                    edge.save();
+                }
+                db.commit();
 
-        // check if one of the properties is an auto-increment field.
-        // in that case we need to ask a sequence to provide a value
-        for (Property property : entity.getEntityClass().getProperties()) {
-            if (property.isAutoIncrement()) {
-                // make sure the property does not have a value yet
-                if (edge.getProperty(property.getPropertyName()) == null) {
-                    // fetch the sequence
-                    OSequence sequence = db.getMetadata().getSequenceLibrary().getSequence(createSequenceId(entity.getEntityClass(), property));
-                    setProperty(edge, property.getPropertyName(), sequence.next(), db);
+                // the root vertex has its final record id once the transaction is committed.
+                // the other vertices of the tree are only looked up through the root, so they are not remembered
+                OVertex createdRoot = createdVertices.get(getIdentifierValue(rootEntity));
+                if (createdRoot != null) {
+                    cacheVertexId(rootEntity, createdRoot);
                 }
             }
+            catch (RuntimeException e) {
+                db.rollback();
+                throw e;
+            }
+            return true;
         }
+    }
 
-        edge.save();
+    /**
+     * Helper method that tells whether a stored root vertex was stored together with its tree. That is the case when
+     * the root vertex has an edge of every class of the tree edges that connect to it.
+     * @param rootVertex
+     * @param rootEntity
+     * @param edgeEntities
+     * @return
+     */
+    private boolean isTreeStored(OVertex rootVertex, VertexEntity rootEntity, List<EdgeEntity> edgeEntities) {
+        Set<String> edgeClassNames = new HashSet<>();
+        for (EdgeEntity edgeEntity : edgeEntities) {
+            if (edgeEntity.getSourceEntity() == rootEntity || edgeEntity.getTargetEntity() == rootEntity) {
+                edgeClassNames.add(edgeEntity.getEntityClass().getClassName());
+            }
+        }
+        for (String edgeClassName : edgeClassNames) {
+            if (!rootVertex.getEdges(ODirection.BOTH, edgeClassName).iterator().hasNext()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method that makes sure the vertex at one end of a tree edge is either stored or going to be created.
+     * Vertices outside the tree are looked up, and created when they cannot be found.
+     * @param vertexEntity
+     * @param storedVertices the vertices that are stored, by identifier value
+     * @param vertices the vertices to create, by identifier value
+     * @param db
+     * @return false if the vertex is not stored and cannot be created
+     */
+    private boolean collectEndpoint(VertexEntity vertexEntity, Map<Object, OVertex> storedVertices, Map<Object, VertexEntity> vertices, ODatabaseSession db) {
+        Object idValue = getIdentifierValue(vertexEntity);
+        if (storedVertices.containsKey(idValue) || vertices.containsKey(idValue)) {
+            return true;
+        }
+        OVertex storedVertex = findVertex(vertexEntity, db);
+        if (storedVertex != null) {
+            storedVertices.put(idValue, storedVertex);
+            return true;
+        }
+        VertexEntity entityToCreate = vertexEntity instanceof VertexReference ? ((VertexReference) vertexEntity).getFallbackEntity() : vertexEntity;
+        if (entityToCreate == null) {
+            return false;
+        }
+        vertices.put(idValue, entityToCreate);
+        return true;
+    }
+
+    /**
+     * Helper method that returns the value of the identifying property of an entity.
+     * Entities without an identifier are identified by the entity object itself.
+     * @param entity
+     * @return
+     */
+    private Object getIdentifierValue(DocumentEntity entity) {
+        Property identifier = entity.getEntityClass().getIdentifier();
+        PropertyValue value = identifier == null ? null : entity.getPropertyValue(identifier.getPropertyName());
+        return value == null || value.getValue() == null ? entity : value.getValue();
+    }
+
+    /**
+     * Helper method that looks up the stored vertex for a vertex entity.
+     * @param vertexEntity
+     * @param db
+     * @return the vertex or null if it does not exist
+     */
+    private OVertex findVertex(VertexEntity vertexEntity, ODatabaseSession db) {
+        try {
+            return retrieveVertex(vertexEntity, db);
+        }
+        catch (EntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method that returns true if the edge is already present in the data store.
+     * @param edgeEntity
+     * @param db
+     * @return
+     */
+    private boolean edgeExists(EdgeEntity edgeEntity, ODatabaseSession db) {
+        try {
+            retrieveEdge(edgeEntity, db);
+            return true;
+        }
+        catch (EntityNotFoundException e) {
+            return false;
+        }
     }
 
     public void deleteEntity(DocumentEntity entity) {
@@ -517,6 +868,11 @@ public class EntityManager {
             Map<String, Object> params = new HashMap<>();
             params.put(identifier.getPropertyName(), idValues);
             db.command(stmt, params);
+
+            // forget the record ids of the deleted vertices
+            for (Object idValue : idValues) {
+                vertexIds.remove(new VertexKey(entityClass.getClassName(), idValue));
+            }
         }
     }
 
@@ -651,6 +1007,37 @@ public class EntityManager {
         return documents;
     }
 
+    /**
+     * This method counts the stored instances of a given class, without retrieving them.
+     * @param entityClass
+     * @param entityProperties a map containing property values to use in selection, with the property name used as a key
+     * @return
+     */
+    public long countAllOfClass(EntityClass entityClass, Map<String, PropertyValue> entityProperties) {
+        try (ODatabaseSession db = connection.getDatabaseSession()) {
+            String stmt = "SELECT COUNT(*) AS nrOfEntities FROM " + entityClass.getClassName();
+
+            Map<String, Object> params = new HashMap<>();
+            if (entityProperties != null && !entityProperties.isEmpty()) {
+                StringJoiner stringJoiner = new StringJoiner(" AND ");
+                stmt += " WHERE ";
+                for (String propertyName : entityProperties.keySet()) {
+                    stringJoiner.add(propertyName + " = :" + propertyName);
+                    params.put(propertyName, getConvertedValue(entityProperties.get(propertyName).getType(), entityProperties.get(propertyName).getValue()));
+                }
+                stmt += stringJoiner.toString();
+            }
+
+            try (OResultSet rs = db.query(stmt, params)) {
+                if (!rs.hasNext()) {
+                    return 0;
+                }
+                Number nrOfEntities = rs.next().getProperty("nrOfEntities");
+                return nrOfEntities == null ? 0 : nrOfEntities.longValue();
+            }
+        }
+    }
+
     /**
      * THis method retrieves an entity of a given entity class from the data store, for a given id value.
      * @param entityClass
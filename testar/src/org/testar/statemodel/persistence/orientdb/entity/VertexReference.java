@@ -0,0 +1,56 @@
+package org.testar.statemodel.persistence.orientdb.entity;
+
+import java.util.function.Supplier;
+
+/**
+ * A vertex entity that only holds the identifier of a vertex that has been stored before, so that edges to it can be
+ * created without hydrating the whole vertex. The entity manager never updates the vertex through a reference.
+ * If the vertex cannot be found, the entity manager creates it from the fallback entity, if one was provided.
+ */
+public class VertexReference extends VertexEntity {
+
+    // supplies the complete entity, in case the vertex has not been stored yet
+    private final Supplier<VertexEntity> fallback;
+
+    /**
+     * Constructor
+     * @param entityClass
+     * @param identifierValue the value of the identifying property of the referenced vertex
+     */
+    public VertexReference(EntityClass entityClass, Object identifierValue) {
+        this(entityClass, identifierValue, null);
+    }
+
+    /**
+     * Constructor
+     * @param entityClass
+     * @param identifierValue the value of the identifying property of the referenced vertex
+     * @param fallback supplies the complete entity, only called if the vertex has not been stored yet
+     */
+    public VertexReference(EntityClass entityClass, Object identifierValue, Supplier<VertexEntity> fallback) {
+        super(entityClass);
+        Property identifier = entityClass.getIdentifier();
+        if (identifier == null) {
+            throw new IllegalArgumentException("Entity class " + entityClass.getClassName() + " has no identifying property to refer to");
+        }
+        addPropertyValue(identifier.getPropertyName(), new PropertyValue(identifier.getPropertyType(), identifierValue));
+        this.fallback = fallback;
+    }
+
+    /**
+     * A reference never updates the vertex it refers to.
+     * @return
+     */
+    @Override
+    public boolean updateEnabled() {
+        return false;
+    }
+
+    /**
+     * This method returns the complete entity for the referenced vertex.
+     * @return the entity or null if there is no fallback or it could not be created
+     */
+    public VertexEntity getFallbackEntity() {
+        return fallback == null ? null : fallback.get();
+    }
+}
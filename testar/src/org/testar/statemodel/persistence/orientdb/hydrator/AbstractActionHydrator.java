@@ -51,7 +51,7 @@ public class AbstractActionHydrator implements EntityHydrator<EdgeEntity> {
 
         // loop through the tagged attributes for this state and add them
         TaggableBase attributes = ((AbstractAction) source).getAttributes();
-        for (Tag<?> tag :attributes.tags()) {
+        for (Tag<?> tag :attributes.allTags()) {
             // we simply add a property for each tag
             edgeEntity.addPropertyValue(tag.name(), new PropertyValue(TypeConvertor.getInstance().getOrientDBType(attributes.get(tag).getClass()), attributes.get(tag)));
         }
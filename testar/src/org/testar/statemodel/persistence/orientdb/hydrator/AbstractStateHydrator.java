@@ -56,7 +56,7 @@ public class AbstractStateHydrator implements EntityHydrator<VertexEntity> {
 
         // loop through the tagged attributes for this state and add them
         TaggableBase attributes = ((AbstractState) source).getAttributes();
-        for (Tag<?> tag :attributes.tags()) {
+        for (Tag<?> tag :attributes.allTags()) {
             // we simply add a property for each tag
             target.addPropertyValue(tag.name(), new PropertyValue(TypeConvertor.getInstance().getOrientDBType(attributes.get(tag).getClass()), attributes.get(tag)));
         }
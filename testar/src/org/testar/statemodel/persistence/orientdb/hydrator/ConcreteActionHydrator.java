@@ -47,7 +47,7 @@ public class ConcreteActionHydrator implements EntityHydrator<EdgeEntity> {
 
         // loop through the tagged attributes for this state and add them
         TaggableBase attributes = ((ConcreteAction) source).getAttributes();
-        for (Tag<?> tag :attributes.tags()) {
+        for (Tag<?> tag :attributes.allTags()) {
             // we simply add a property for each tag
             edgeEntity.addPropertyValue(Validation.sanitizeAttributeName(tag.name()), new PropertyValue(TypeConvertor.getInstance().getOrientDBType(attributes.get(tag).getClass()), attributes.get(tag)));
         }
@@ -22,20 +22,13 @@ public class ConcreteStateHydrator implements EntityHydrator<VertexEntity>{
             throw new HydrationException();
         }
 
-        // fetch the connected abstract state
-        AbstractState abstractState = ((ConcreteState) source).getAbstractState();
-        if (abstractState == null) {
-            throw new HydrationException("No abstract state is connected to the concrete state with id " + ((ConcreteState) source).getId());
-        }
-
         // first make sure the identity property is set
         Property identifier = target.getEntityClass().getIdentifier();
         if (identifier == null) {
             throw new HydrationException("No identifying properties were provided for entity class " + target.getEntityClass().getClassName());
         }
 
-        // for the unique id, we add in the model identifier for the abstract state. Otherwise, we could get the same concrete states shared across models
-        String uniqueId = abstractState.getModelIdentifier() + "-" + ((ConcreteState) source).getId();
+        String uniqueId = createUniqueId((ConcreteState) source);
         target.addPropertyValue(identifier.getPropertyName(), new PropertyValue(identifier.getPropertyType(), uniqueId));
 
         // of course we also have to add the state id for use in our in-memory model
@@ -50,10 +43,14 @@ public class ConcreteStateHydrator implements EntityHydrator<VertexEntity>{
         if (((ConcreteState) source).getScreenshot() != null) {
             target.addPropertyValue("screenshot", new PropertyValue(OType.BINARY, ((ConcreteState) source).getScreenshot()));
         }
+        // or the path of the stored screenshot, which is shared with the other states that look the same
+        if (((ConcreteState) source).getScreenshotPath() != null) {
+            target.addPropertyValue("screenshotPath", new PropertyValue(OType.STRING, ((ConcreteState) source).getScreenshotPath()));
+        }
 
         // loop through the tagged attributes for this state and add them
         TaggableBase attributes = ((ConcreteState) source).getAttributes();
-        for (Tag<?> tag :attributes.tags()) {
+        for (Tag<?> tag :attributes.allTags()) {
             // we simply add a property for each tag
             target.addPropertyValue(Validation.sanitizeAttributeName(tag.name()), new PropertyValue(TypeConvertor.getInstance().getOrientDBType(attributes.get(tag).getClass()), attributes.get(tag)));
         }
@@ -74,4 +71,21 @@ public class ConcreteStateHydrator implements EntityHydrator<VertexEntity>{
         }
         target.addPropertyValue("oracleVerdictCode", new PropertyValue(OType.INTEGER, oracleVerdictCode));
     }
+
+    /**
+     * This method returns the unique id under which the concrete state is stored, without hydrating the whole state.
+     * @param concreteState
+     * @return
+     * @throws HydrationException
+     */
+    public static String createUniqueId(ConcreteState concreteState) throws HydrationException {
+        // fetch the connected abstract state
+        AbstractState abstractState = concreteState.getAbstractState();
+        if (abstractState == null) {
+            throw new HydrationException("No abstract state is connected to the concrete state with id " + concreteState.getId());
+        }
+
+        // for the unique id, we add in the model identifier for the abstract state. Otherwise, we could get the same concrete states shared across models
+        return abstractState.getModelIdentifier() + "-" + concreteState.getId();
+    }
 }
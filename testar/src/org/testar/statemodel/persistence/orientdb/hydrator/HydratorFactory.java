@@ -4,6 +4,7 @@ import org.testar.statemodel.exceptions.HydrationException;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class HydratorFactory {
 
@@ -36,7 +37,7 @@ public abstract class HydratorFactory {
     public static final int HYDRATOR_FIRST_NODE = 14;
 
     // a repo for generated classes, so we don't execute the same generation code over and over if not needed
-    private static Map<Integer, EntityHydrator> hydrators = new HashMap<>();
+    private static Map<Integer, EntityHydrator> hydrators = new ConcurrentHashMap<>();
 
     public static EntityHydrator getHydrator(int hydratorType) throws HydrationException {
         if (hydrators.containsKey(hydratorType)) {
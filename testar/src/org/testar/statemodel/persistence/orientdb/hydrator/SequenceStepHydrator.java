@@ -47,25 +47,17 @@ public class SequenceStepHydrator implements EntityHydrator<EdgeEntity> {
         ConcreteState concreteStateTarget = ((SequenceStep) source).getTargetNode().getConcreteState();
         ConcreteAction concreteAction = ((SequenceStep) source).getConcreteAction();
 
-        // in order to obtain the unique identifier for the concrete state, we need to hydrate them.
-        // create entities for the target and source states
-        EntityClass entityClass = EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.ConcreteState);
-        VertexEntity sourceVertexEntity = new VertexEntity(entityClass);
-        VertexEntity targetVertexEntity = new VertexEntity(entityClass);
-
+        // the unique identifiers of the concrete states
+        String concreteStateSourceId;
+        String concreteStateTargetId;
         try {
-            EntityHydrator stateHydrator = HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_CONCRETE_STATE);
-            stateHydrator.hydrate(sourceVertexEntity, concreteStateSource);
-            stateHydrator.hydrate(targetVertexEntity, concreteStateTarget);
+            concreteStateSourceId = ConcreteStateHydrator.createUniqueId(concreteStateSource);
+            concreteStateTargetId = ConcreteStateHydrator.createUniqueId(concreteStateTarget);
         } catch (HydrationException e) {
             //@todo add some meaningful logging here
             return;
         }
 
-        Property ConcreteStateIdentifier = entityClass.getIdentifier();
-        String concreteStateSourceId = (String)sourceVertexEntity.getPropertyValue(ConcreteStateIdentifier.getPropertyName()).getValue();
-        String concreteStateTargetId = (String)targetVertexEntity.getPropertyValue(ConcreteStateIdentifier.getPropertyName()).getValue();
-
         // add the concrete action id
         edgeEntity.addPropertyValue("concreteActionId", new PropertyValue(OType.STRING, concreteAction.getActionId()));
 
@@ -53,7 +53,7 @@ public class WidgetHydrator implements EntityHydrator<VertexEntity> {
 
         // loop through the tagged attributes for this state and add them
         TaggableBase attributes = ((Widget) source).getAttributes();
-        for (Tag<?> tag :attributes.tags()) {
+        for (Tag<?> tag :attributes.allTags()) {
             // we simply add a property for each tag
             target.addPropertyValue(Validation.sanitizeAttributeName(tag.name()), new PropertyValue(TypeConvertor.getInstance().getOrientDBType(attributes.get(tag).getClass()), attributes.get(tag)));
         }
@@ -11,6 +11,7 @@ import org.testar.monkey.alayer.Tags;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -84,6 +85,23 @@ public class Sequence implements Persistable {
         nodes = new ArrayList<>();
     }
 
+    /**
+     * Constructor for a sequence that has been stored before. The sequence does not notify any listeners.
+     * @param sequenceId
+     * @param sequenceNr
+     * @param modelIdentifier
+     * @param startDateTime
+     * @param verdict
+     * @param terminationMessage
+     */
+    public Sequence(String sequenceId, int sequenceNr, String modelIdentifier, Instant startDateTime, SequenceVerdict verdict, String terminationMessage) {
+        this(sequenceNr, new HashSet<>(), modelIdentifier);
+        currentSequenceId = sequenceId;
+        this.startDateTime = startDateTime;
+        this.verdict = verdict;
+        this.terminationMessage = terminationMessage;
+    }
+
     /**
      * Start the sequence.
      */
@@ -168,6 +186,19 @@ public class Sequence implements Persistable {
         emitEvent(new StateModelEvent(StateModelEventType.SEQUENCE_STEP_ADDED, sequenceStep));
     }
 
+    /**
+     * This method returns a copy of this sequence, which does not change when the sequence changes.
+     * The copy does not hold the nodes of the sequence and does not notify any listeners.
+     * @return
+     */
+    public Sequence snapshot() {
+        Sequence copy = new Sequence(currentSequenceId, currentSequenceNr, modelIdentifier, startDateTime, verdict, terminationMessage);
+        copy.active = active;
+        copy.currentNodeNr = currentNodeNr;
+        copy.concreteStateTags = concreteStateTags;
+        return copy;
+    }
+
     @Override
     public boolean canBeDelayed() {
         return true;
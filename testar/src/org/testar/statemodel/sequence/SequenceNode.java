@@ -7,6 +7,7 @@ import org.testar.statemodel.event.StateModelEventType;
 import org.testar.statemodel.persistence.Persistable;
 
 import java.time.Instant;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.StringJoiner;
 
@@ -63,6 +64,23 @@ public class SequenceNode implements Persistable {
         this.eventListeners = eventListeners;
     }
 
+    /**
+     * Constructor for a sequence node that has been stored before. The node does not notify any listeners.
+     * @param sequenceId
+     * @param nodeNr
+     * @param concreteState
+     * @param sequence
+     * @param timestamp
+     * @param errorMessage
+     */
+    public SequenceNode(String sequenceId, int nodeNr, ConcreteState concreteState, Sequence sequence, Instant timestamp, String errorMessage) {
+        this(sequenceId, nodeNr, concreteState, sequence, new HashSet<>());
+        this.timestamp = timestamp;
+        if (!errorMessage.isEmpty()) {
+            errorMessages.add(errorMessage);
+        }
+    }
+
     public Instant getTimestamp() {
         return timestamp;
     }
@@ -79,6 +97,15 @@ public class SequenceNode implements Persistable {
         return concreteState;
     }
 
+    /**
+     * This method returns a copy of this node, which does not change when the node or its sequence changes.
+     * The concrete state is not copied, as it does not change. The copy does not notify any listeners.
+     * @return
+     */
+    public SequenceNode snapshot() {
+        return new SequenceNode(sequenceId, nodeNr, concreteState, sequence == null ? null : sequence.snapshot(), timestamp, getErrorMessage());
+    }
+
     @Override
     public boolean canBeDelayed() {
         return true;
@@ -46,6 +46,19 @@ public class SequenceStep implements Persistable {
         nonDeterministic = false;
     }
 
+    /**
+     * Constructor for a sequence step that has been stored before.
+     * @param concreteAction
+     * @param sourceNode
+     * @param targetNode
+     * @param actionDescription
+     * @param timestamp
+     */
+    public SequenceStep(ConcreteAction concreteAction, SequenceNode sourceNode, SequenceNode targetNode, String actionDescription, Instant timestamp) {
+        this(concreteAction, sourceNode, targetNode, actionDescription);
+        this.timestamp = timestamp;
+    }
+
     public ConcreteAction getConcreteAction() {
         return concreteAction;
     }
@@ -62,6 +75,17 @@ public class SequenceStep implements Persistable {
         return timestamp;
     }
 
+    /**
+     * This method returns a copy of this step and its nodes, which does not change when the sequence changes.
+     * @return
+     */
+    public SequenceStep snapshot() {
+        SequenceStep copy = new SequenceStep(concreteAction, sourceNode == null ? null : sourceNode.snapshot(),
+                targetNode == null ? null : targetNode.snapshot(), actionDescription, timestamp);
+        copy.nonDeterministic = nonDeterministic;
+        return copy;
+    }
+
     @Override
     public boolean canBeDelayed() {
         return true;
@@ -18,7 +18,7 @@ public abstract class HydrationHelper {
      */
     public static Tag<?> getTag(TaggableBase tags, String tagName) {
         Tag<?> tag = null;
-        for (Tag t : tags.tags()) {
+        for (Tag t : tags.allTags()) {
             if (t.name().equals(tagName)) {
                 tag = t;
                 break;
@@ -0,0 +1,112 @@
+package org.testar;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.*;
+import org.testar.monkey.alayer.actions.AnnotatingActionCompiler;
+import org.testar.monkey.alayer.actions.StdActionCompiler;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the parallel action derivation against a sequential one.
+ */
+public class ActionDeriverTest {
+
+    private static List<Widget> widgets(int size) {
+        List<Widget> widgets = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            StdWidget widget = new StdWidget();
+            widget.set(Tags.Title, "Widget " + i);
+            widget.set(Tags.ConcreteID, "W" + i);
+            widget.set(Tags.Shape, Rect.from(i % 100 * 10, i / 100 * 10, 8, 8));
+            widget.set(Tags.Enabled, i % 7 != 0);
+            widgets.add(widget);
+        }
+        return widgets;
+    }
+
+    // clicks on enabled widgets, filtered when the title ends with 3, and a type action on every fifth widget
+    private static void deriveWidget(Widget widget, StdActionCompiler ac, DerivedActions derived) {
+        if (!widget.get(Tags.Enabled, true)) {
+            return;
+        }
+        if (widget.get(Tags.Title).endsWith("3")) {
+            derived.addFilteredAction(ac.leftClickAt(widget));
+        } else {
+            derived.addAvailableAction(ac.leftClickAt(widget));
+        }
+        if (widget.get(Tags.Title).endsWith("5")) {
+            derived.addAvailableAction(ac.clickTypeInto(widget, "text", true));
+        }
+    }
+
+    private static List<Object> origins(Set<Action> actions) {
+        return actions.stream().map(action -> action.get(Tags.OriginWidget, null)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void actionsAreMergedInWidgetOrder() {
+        List<Widget> widgets = widgets(5000);
+        DerivedActions sequential = new ActionDeriver(1).derive(widgets, new AnnotatingActionCompiler(),
+                new DerivedActions(new LinkedHashSet<>(), new LinkedHashSet<>()), ActionDeriverTest::deriveWidget);
+        ActionDeriver deriver = new ActionDeriver(4);
+        DerivedActions parallel = deriver.derive(widgets, new AnnotatingActionCompiler(),
+                new DerivedActions(new LinkedHashSet<>(), new LinkedHashSet<>()), ActionDeriverTest::deriveWidget);
+
+        assertEquals(origins(sequential.getAvailableActions()), origins(parallel.getAvailableActions()));
+        assertEquals(origins(sequential.getFilteredActions()), origins(parallel.getFilteredActions()));
+        assertEquals(4285, parallel.getAvailableActions().size());
+        String report = deriver.report();
+        assertTrue(report, report.startsWith("5000 widgets in 16 partitions on 4 threads, " + parallel.getAvailableActions().size() + " available and "));
+    }
+
+    @Test
+    public void derivationAddsToTheGivenActions() {
+        Set<Action> actions = new LinkedHashSet<>();
+        Action forced = new AnnotatingActionCompiler().leftClick();
+        actions.add(forced);
+        DerivedActions derived = new ActionDeriver(2).derive(widgets(10), new AnnotatingActionCompiler(),
+                new DerivedActions(actions, new LinkedHashSet<>()), ActionDeriverTest::deriveWidget);
+        assertSame(actions, derived.getAvailableActions());
+        assertSame(forced, actions.iterator().next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failuresOfTheDerivationArePassedOn() {
+        new ActionDeriver(4).derive(widgets(1000), new AnnotatingActionCompiler(),
+                new DerivedActions(new LinkedHashSet<>(), new LinkedHashSet<>()), (widget, ac, derived) -> {
+                    if (widget.get(Tags.Title).equals("Widget 999")) {
+                        throw new IllegalStateException("widget");
+                    }
+                });
+    }
+
+    /**
+     * Benchmark on a large state, in which every widget costs some work to check, as hit tests and filters do.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkLargeState() {
+        List<Widget> widgets = widgets(20000);
+        ActionDeriver.WidgetActions expensive = (widget, ac, derived) -> {
+            String title = widget.get(Tags.Title);
+            for (int i = 0; i < 20; i++) {
+                if (title.matches(".*[sS]ave" + (i % 10) + ".*")) {
+                    return;
+                }
+            }
+            deriveWidget(widget, ac, derived);
+        };
+        for (int parallelism : new int[]{1, Runtime.getRuntime().availableProcessors(), 8}) {
+            ActionDeriver deriver = new ActionDeriver(parallelism);
+            for (int run = 0; run < 2; run++) {
+                deriver.derive(widgets, new AnnotatingActionCompiler(), new DerivedActions(new LinkedHashSet<>(), new LinkedHashSet<>()), expensive);
+            }
+            System.out.println("Action derivation of " + deriver.report());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.testar.oracles;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the parallel evaluation of widget oracles against a sequential one.
+ */
+public class OracleEvaluatorTest {
+
+    private static final String[] WORDS = {"File", "Edit", "View", "Save as", "Close", "OK", "Cancel", "Options", "Help", "About"};
+
+    private static class FlatState extends StdState {
+        private static final long serialVersionUID = 1L;
+        final List<Widget> widgets = new ArrayList<>();
+
+        public Widget child(int i) { return widgets.get(i); }
+        public int childCount() { return widgets.size(); }
+    }
+
+    // a state with the given number of widgets below it, titled with random words, and some with the given title
+    private static FlatState state(int size, long seed, String title, int nrOfTitled) {
+        Random random = new Random(seed);
+        FlatState state = new FlatState();
+        for (int i = 0; i < size; i++) {
+            StdWidget widget = new StdWidget();
+            widget.set(Tags.Title, WORDS[random.nextInt(WORDS.length)] + " " + i);
+            state.widgets.add(widget);
+        }
+        for (int i = 0; i < nrOfTitled; i++) {
+            state.widgets.get(random.nextInt(size)).set(Tags.Title, title);
+        }
+        return state;
+    }
+
+    private static Oracle titled(String title, double severity) {
+        return widget -> widget.get(Tags.Title, "").equals(title) ? new Verdict(severity, title + " " + System.identityHashCode(widget)) : Verdict.OK;
+    }
+
+    private static OracleEvaluator sequential() {
+        return new OracleEvaluator(ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+    }
+
+    private static OracleEvaluator parallel() {
+        return new OracleEvaluator(new ForkJoinPool(4), 1);
+    }
+
+    @Test
+    public void parallelVerdictsAreTheSequentialVerdicts() {
+        for (long seed = 0; seed < 20; seed++) {
+            FlatState state = state(500, seed, "Warning", 5);
+            for (int i = 0; i < 3; i++) {
+                state.widgets.get(new Random(seed + i).nextInt(500)).set(Tags.Title, "Error");
+            }
+            List<Oracle> oracles = Arrays.asList(titled("Warning", Verdict.SEVERITY_WARNING), titled("Error", Verdict.SEVERITY_SUSPICIOUS_TITLE));
+            Verdict expected = sequential().evaluate(state, oracles, Verdict.SEVERITY_SUSPICIOUS_TITLE);
+            Verdict actual = parallel().evaluate(state, oracles, Verdict.SEVERITY_SUSPICIOUS_TITLE);
+            assertEquals(Verdict.SEVERITY_SUSPICIOUS_TITLE, expected.severity(), 0);
+            assertEquals(expected.info(), actual.info());
+            assertEquals(expected.severity(), actual.severity(), 0);
+            assertEquals("Only the first widget that reaches the stop severity is reported", 1, actual.info().split("Error").length - 1);
+
+            Verdict all = parallel().evaluate(state, oracles, Verdict.SEVERITY_FAIL);
+            assertEquals(sequential().evaluate(state, oracles, Verdict.SEVERITY_FAIL).info(), all.info());
+        }
+    }
+
+    @Test
+    public void joinedVerdictKeepsTheVisualizerOfTheWinner() {
+        FlatState state = state(100, 1, "OK", 0);
+        state.widgets.get(10).set(Tags.Title, "Warning");
+        state.widgets.get(20).set(Tags.Title, "Error");
+        Visualizer visualizer = new Visualizer() {
+            private static final long serialVersionUID = 1L;
+            public void run(State s, Canvas canvas, Pen pen) { }
+        };
+        Oracle error = widget -> widget.get(Tags.Title, "").equals("Error")
+                ? new Verdict(Verdict.SEVERITY_SUSPICIOUS_TITLE, "error", visualizer) : Verdict.OK;
+        Verdict verdict = parallel().evaluate(state, Arrays.asList(titled("Warning", Verdict.SEVERITY_WARNING), error), Verdict.SEVERITY_FAIL);
+        assertEquals(Verdict.SEVERITY_SUSPICIOUS_TITLE, verdict.severity(), 0);
+        assertTrue(verdict.info(), verdict.info().startsWith("Warning") && verdict.info().endsWith("\nerror"));
+        assertSame(visualizer, verdict.visualizer());
+
+        assertSame(Verdict.OK, parallel().evaluate(state, Collections.emptyList(), Verdict.SEVERITY_FAIL));
+        assertSame(Verdict.OK, parallel().evaluate(state, Arrays.asList(titled("Missing", Verdict.SEVERITY_FAIL)), Verdict.SEVERITY_FAIL));
+    }
+
+    @Test
+    public void suspiciousTagValuesAreFound() {
+        FlatState state = state(1000, 2, "Fatal error", 1);
+        Oracle oracle = new SuspiciousTagValueOracle(RegexOracle.compile("SuspiciousTitles", ".*[eE]rror.*"), Arrays.asList("Title"));
+        Verdict verdict = parallel().evaluate(state, Arrays.asList(oracle), Verdict.SEVERITY_SUSPICIOUS_TITLE);
+        assertEquals("Discovered suspicious widget 'Title' : 'Fatal error'.", verdict.info());
+    }
+
+    /**
+     * Benchmark on states with thousands of widgets and an oracle per configured pattern.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkManyPatternsOnLargeStates() {
+        FlatState state = state(20000, 3, "Close", 0);
+        List<Oracle> oracles = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            oracles.add(new SuspiciousTagValueOracle(RegexOracle.compile("Pattern" + i, ".*[eE]rror" + i + ".*|.*[fF]ail(ed|ure)" + i + ".*", 0), Arrays.asList("Title")));
+        }
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            Verdict expected = sequential().evaluate(state, oracles, Verdict.SEVERITY_SUSPICIOUS_TITLE);
+            long sequentialTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            Verdict actual = new OracleEvaluator().evaluate(state, oracles, Verdict.SEVERITY_SUSPICIOUS_TITLE);
+            long parallelTime = System.nanoTime() - start;
+            assertEquals(expected, actual);
+            System.out.println("16 oracles on " + state.widgets.size() + " widgets: sequential " + sequentialTime / 1000000 + " ms, parallel "
+                    + parallelTime / 1000000 + " ms on " + ForkJoinPool.commonPool().getParallelism() + " worker(s)");
+        }
+    }
+}
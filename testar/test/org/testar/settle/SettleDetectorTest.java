@@ -0,0 +1,128 @@
+package org.testar.settle;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.AWTCanvas;
+import org.testar.monkey.alayer.FrameContainer;
+import org.testar.monkey.alayer.SUT;
+import org.testar.monkey.alayer.State;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the settle detector on simulated user interfaces.
+ */
+public class SettleDetectorTest {
+
+    /**
+     * A user interface that settles a given time after each action.
+     */
+    private static class SimulatedUi implements SettleSignal {
+        private final Random random;
+        private final long minMillis;
+        private final long maxMillis;
+        private long settledAt;
+        int polls;
+
+        SimulatedUi(long seed, long minMillis, long maxMillis) {
+            this.random = new Random(seed);
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        @Override
+        public void start(SUT system, State state) {
+            long millis = minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+            settledAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public boolean isStable(SUT system, State state) {
+            polls++;
+            return System.nanoTime() >= settledAt;
+        }
+    }
+
+    private static AWTCanvas screenshot(int width, int height, int changedTiles) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int tile = 0; tile < changedTiles; tile++) {
+            image.setRGB(tile * FrameContainer.TILE_SIZE, 0, 0xffff0000);
+        }
+        return new AWTCanvas(0, 0, image, AWTCanvas.StorageFormat.PNG, 1);
+    }
+
+    @Test
+    public void settlesOnceAllSignalsAreStable() {
+        SimulatedUi ui = new SimulatedUi(1, 150, 150);
+        SettleDetector detector = new SettleDetector(Collections.singletonList(ui), 0.02, 2);
+
+        double settleTime = detector.awaitSettled(null, null, 2);
+        assertFalse(detector.lastTimedOut());
+        assertTrue("Settled after " + settleTime, settleTime >= 0.15 && settleTime < 1);
+        assertEquals(settleTime, detector.getLastSettleTime(), 0);
+        assertEquals(1, detector.getActionCount());
+    }
+
+    @Test
+    public void timesOutWhenTheUiDoesNotSettle() {
+        SettleDetector detector = new SettleDetector(Collections.singletonList(new SimulatedUi(1, 60000, 60000)), 0.02, 2);
+
+        double settleTime = detector.awaitSettled(null, null, 0.2);
+        assertTrue(detector.lastTimedOut());
+        assertTrue("Waited " + settleTime, settleTime >= 0.2 && settleTime < 1);
+        assertTrue(detector.report(), detector.report().contains("1 timeouts"));
+        assertTrue(detector.report(), detector.report().contains("SimulatedUi"));
+    }
+
+    @Test
+    public void signalsAfterAnUnstableOneAreNotPolled() {
+        SimulatedUi first = new SimulatedUi(1, 100, 100);
+        SimulatedUi second = new SimulatedUi(2, 0, 0);
+        SettleDetector detector = new SettleDetector(Arrays.asList(first, second), 0.01, 3);
+
+        detector.awaitSettled(null, null, 2);
+        assertFalse(detector.lastTimedOut());
+        assertEquals("The second signal is only polled once the first is stable", 3, second.polls);
+        assertTrue(first.polls > second.polls);
+    }
+
+    @Test
+    public void screenshotsWithAFewChangedTilesAreStable() {
+        AWTCanvas[] screenshots = {screenshot(320, 200, 0), screenshot(320, 200, 2), screenshot(320, 200, 5),
+            screenshot(320, 200, 5), screenshot(200, 320, 5), null};
+        int[] next = {0};
+        ScreenshotSettleSignal signal = new ScreenshotSettleSignal(state -> screenshots[next[0]++]);
+
+        signal.start(null, null);
+        assertTrue("Two changed tiles, such as a blinking caret, are tolerated", signal.isStable(null, null));
+        assertFalse(signal.isStable(null, null));
+        assertTrue(signal.isStable(null, null));
+        assertFalse("The size of the screenshot changed", signal.isStable(null, null));
+        assertFalse("No screenshot", signal.isStable(null, null));
+    }
+
+    /**
+     * Benchmark of the waits after the actions on a user interface that settles within 50 to 400 ms,
+     * against the fixed half wait before and after the actions with a TimeToWaitAfterAction of 1 second.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkActionsPerHour() {
+        SettleDetector detector = new SettleDetector(Collections.singletonList(new SimulatedUi(42, 50, 400)), 0.05, 2);
+        int nrOfActions = 10;
+        for (int i = 0; i < nrOfActions; i++) {
+            detector.awaitSettled(null, null, 1);
+        }
+        double fixedWait = 1.0;
+        System.out.println(detector.report());
+        System.out.println(String.format("Waiting after actions: %.0f actions per hour adaptive, %.0f fixed",
+                3600 / detector.getMeanSettleTime(), 3600 / fixedWait));
+        assertTrue(detector.getMeanSettleTime() < fixedWait);
+    }
+}
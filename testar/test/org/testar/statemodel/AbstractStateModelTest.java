@@ -0,0 +1,69 @@
+package org.testar.statemodel;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the model keeps count of the unvisited actions of its states.
+ */
+public class AbstractStateModelTest {
+
+    private static AbstractState abstractState(String stateId, String... actionIds) {
+        HashSet<AbstractAction> actions = new HashSet<>();
+        for (String actionId : actionIds) {
+            actions.add(new AbstractAction(actionId));
+        }
+        return new AbstractState(stateId, actions);
+    }
+
+    private static long countUnvisitedActions(AbstractStateModel model) {
+        long nrOfUnvisitedActions = 0;
+        for (AbstractState state : model.getStates()) {
+            nrOfUnvisitedActions += state.getNrOfUnvisitedActions();
+        }
+        return nrOfUnvisitedActions;
+    }
+
+    @Test
+    public void unvisitedActionsAreCountedAsTheModelChanges() throws Exception {
+        AbstractStateModel model = new AbstractStateModel("model", "app", "1", new HashSet<>());
+        AbstractState s1 = abstractState("s1", "a1", "a2");
+        AbstractState s2 = abstractState("s2", "b1");
+        s2.addVisitedAction(s2.getAction("b1"));
+        model.addState(s1);
+        model.addState(s2);
+        // adding a state twice does not count its actions twice
+        model.addState(s1);
+        assertEquals(2, model.getNrOfUnvisitedActions());
+
+        model.addTransition(s1, s2, s1.getAction("a1"));
+        // a transition that already exists does not change the count
+        model.addTransition(s1, s2, s1.getAction("a1"));
+        assertEquals(1, model.getNrOfUnvisitedActions());
+
+        s2.addNewAction(new AbstractAction("b2"));
+        s2.addNewAction(new AbstractAction("b2"));
+        AbstractState s3 = abstractState("s3", "c1", "c2", "c3");
+        model.addTransition(s2, s3, s2.getAction("b2"));
+        // visiting an action that is not unvisited does not change the count
+        s3.addVisitedAction(new AbstractAction("unknown"));
+        s3.addVisitedAction(s3.getAction("c2"));
+        assertEquals(3, model.getNrOfUnvisitedActions());
+        assertEquals(countUnvisitedActions(model), model.getNrOfUnvisitedActions());
+        assertEquals(new HashSet<>(Arrays.asList("c1", "c3", "a2")), unvisitedActionIds(model));
+    }
+
+    private static HashSet<String> unvisitedActionIds(AbstractStateModel model) {
+        HashSet<String> actionIds = new HashSet<>();
+        for (AbstractState state : model.getStates()) {
+            for (AbstractAction action : state.getUnvisitedActions()) {
+                actionIds.add(action.getActionId());
+            }
+        }
+        return actionIds;
+    }
+}
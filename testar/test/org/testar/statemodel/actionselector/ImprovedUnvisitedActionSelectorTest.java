@@ -0,0 +1,200 @@
+package org.testar.statemodel.actionselector;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.statemodel.AbstractAction;
+import org.testar.statemodel.AbstractState;
+import org.testar.statemodel.AbstractStateModel;
+import org.testar.statemodel.AbstractStateTransition;
+import org.testar.statemodel.exceptions.ActionNotFoundException;
+import org.testar.statemodel.exceptions.StateModelException;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the unvisited action selection on synthetic abstract state models.
+ */
+public class ImprovedUnvisitedActionSelectorTest {
+
+    /**
+     * Builds a model in which every action of every state has been visited.
+     * The action j of state i leads to the state targets[i][j].
+     */
+    private static AbstractStateModel buildModel(int[][] targets) throws StateModelException {
+        AbstractStateModel model = new AbstractStateModel("synthetic", "synthetic", "1", new HashSet<>());
+        AbstractState[] states = new AbstractState[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            Set<AbstractAction> actions = new HashSet<>();
+            for (int j = 0; j < targets[i].length; j++) {
+                actions.add(new AbstractAction("s" + i + "a" + j));
+            }
+            states[i] = new AbstractState("s" + i, actions);
+        }
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = 0; j < targets[i].length; j++) {
+                model.addTransition(states[i], states[targets[i][j]], states[i].getAction("s" + i + "a" + j));
+            }
+        }
+        return model;
+    }
+
+    private static int[][] chain(int nrOfStates) {
+        int[][] targets = new int[nrOfStates][];
+        for (int i = 0; i < nrOfStates; i++) {
+            targets[i] = i + 1 < nrOfStates ? new int[]{i + 1} : new int[0];
+        }
+        return targets;
+    }
+
+    private static int[][] randomGraph(int nrOfStates, int nrOfActions, long seed) {
+        Random random = new Random(seed);
+        int[][] targets = new int[nrOfStates][nrOfActions];
+        for (int i = 0; i < nrOfStates; i++) {
+            for (int j = 0; j < nrOfActions; j++) {
+                targets[i][j] = random.nextInt(nrOfStates);
+            }
+        }
+        return targets;
+    }
+
+    private static void addUnvisitedAction(AbstractStateModel model, String stateId) throws StateModelException {
+        model.getState(stateId).addNewAction(new AbstractAction(stateId + "new"));
+    }
+
+    // plain breadth first search over the transition sets of the model, as a reference
+    private static int distanceToUnvisitedActions(AbstractStateModel model, String sourceStateId) throws StateModelException {
+        Map<String, Integer> distances = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        distances.put(sourceStateId, 0);
+        queue.add(sourceStateId);
+        while (!queue.isEmpty()) {
+            String stateId = queue.poll();
+            if (model.getState(stateId).getNrOfUnvisitedActions() > 0) {
+                return distances.get(stateId);
+            }
+            Set<AbstractStateTransition> transitions = model.getOutgoingTransitionsForState(stateId);
+            if (transitions == null) {
+                continue;
+            }
+            for (AbstractStateTransition transition : transitions) {
+                if (!distances.containsKey(transition.getTargetStateId())) {
+                    distances.put(transition.getTargetStateId(), distances.get(stateId) + 1);
+                    queue.add(transition.getTargetStateId());
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void pathFollowsTheChain() throws StateModelException {
+        AbstractStateModel model = buildModel(chain(100));
+        addUnvisitedAction(model, "s99");
+
+        List<AbstractStateTransition> path = model.getPathToUnvisitedActions("s0");
+        assertEquals(99, path.size());
+        for (int i = 0; i < path.size(); i++) {
+            assertEquals("s" + i, path.get(i).getSourceStateId());
+            assertEquals("s" + (i + 1), path.get(i).getTargetStateId());
+        }
+        assertTrue(model.getPathToUnvisitedActions("s99").isEmpty());
+    }
+
+    @Test
+    public void unreachableUnvisitedActionsAreNotFound() throws StateModelException {
+        AbstractStateModel model = buildModel(chain(10));
+        assertNull(model.getPathToUnvisitedActions("s0"));
+
+        addUnvisitedAction(model, "s3");
+        assertNull(model.getPathToUnvisitedActions("s5"));
+        assertNull(model.getPathToUnvisitedActions("unknown"));
+        assertEquals(3, model.getPathToUnvisitedActions("s0").size());
+    }
+
+    @Test
+    public void nearestStateWithMostUnvisitedActionsIsChosen() throws StateModelException {
+        // state 0 leads to states 1 and 2, which both lead to state 3
+        AbstractStateModel model = buildModel(new int[][]{{1, 2}, {3}, {3}, {}});
+        addUnvisitedAction(model, "s3");
+        addUnvisitedAction(model, "s1");
+        model.getState("s2").addNewAction(new AbstractAction("s2new1"));
+        model.getState("s2").addNewAction(new AbstractAction("s2new2"));
+
+        List<AbstractStateTransition> path = model.getPathToUnvisitedActions("s0");
+        assertEquals(1, path.size());
+        assertEquals("s2", path.get(0).getTargetStateId());
+    }
+
+    @Test
+    public void pathsAreShortestOnRandomModels() throws StateModelException {
+        for (long seed = 0; seed < 5; seed++) {
+            int nrOfStates = 2000;
+            AbstractStateModel model = buildModel(randomGraph(nrOfStates, 2, seed));
+            Random random = new Random(seed);
+            for (int i = 0; i < 20; i++) {
+                addUnvisitedAction(model, "s" + random.nextInt(nrOfStates));
+            }
+            for (int i = 0; i < 200; i++) {
+                String sourceStateId = "s" + random.nextInt(nrOfStates);
+                List<AbstractStateTransition> path = model.getPathToUnvisitedActions(sourceStateId);
+                int expected = distanceToUnvisitedActions(model, sourceStateId);
+                if (expected == -1) {
+                    assertNull(path);
+                    continue;
+                }
+                assertEquals(expected, path.size());
+                String stateId = sourceStateId;
+                for (AbstractStateTransition transition : path) {
+                    assertEquals(stateId, transition.getSourceStateId());
+                    stateId = transition.getTargetStateId();
+                }
+                assertTrue(model.getState(stateId).getNrOfUnvisitedActions() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void selectorWalksTheExecutionPath() throws StateModelException {
+        AbstractStateModel model = buildModel(chain(5));
+        addUnvisitedAction(model, "s4");
+        ImprovedUnvisitedActionSelector selector = new ImprovedUnvisitedActionSelector();
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("s" + i + "a0", selector.selectAction(model.getState("s" + i), model).getActionId());
+        }
+        assertEquals("s4new", selector.selectAction(model.getState("s4"), model).getActionId());
+    }
+
+    @Test(expected = ActionNotFoundException.class)
+    public void selectorThrowsWhenNothingIsLeftToVisit() throws StateModelException {
+        AbstractStateModel model = buildModel(chain(5));
+        new ImprovedUnvisitedActionSelector().selectAction(model.getState("s0"), model);
+    }
+
+    /**
+     * Benchmark on synthetic models of growing size, with a few states with unvisited actions far apart.
+     * The time per decision should follow the part of the model that is explored, not the model size.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkPathSearchOnLargeModels() throws StateModelException {
+        for (int nrOfStates : new int[]{1000, 10000, 50000}) {
+            AbstractStateModel model = buildModel(randomGraph(nrOfStates, 3, nrOfStates));
+            Random random = new Random(nrOfStates);
+            for (int i = 0; i < 10; i++) {
+                addUnvisitedAction(model, "s" + random.nextInt(nrOfStates));
+            }
+
+            int nrOfDecisions = 1000;
+            long start = System.nanoTime();
+            for (int i = 0; i < nrOfDecisions; i++) {
+                model.getPathToUnvisitedActions("s" + random.nextInt(nrOfStates));
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("Path search on " + nrOfStates + " states: " + (elapsed / nrOfDecisions / 1000) + " us per decision");
+            assertTrue("Path search should take well below a second per decision", elapsed / nrOfDecisions < 1_000_000_000L);
+        }
+    }
+}
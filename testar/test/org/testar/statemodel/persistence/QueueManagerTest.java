@@ -0,0 +1,200 @@
+package org.testar.statemodel.persistence;
+
+import org.junit.Test;
+import org.testar.statemodel.*;
+import org.testar.statemodel.sequence.*;
+import org.testar.statemodel.util.EventHelper;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the order in which queued requests are written, and that the writer works on copies of the entities.
+ */
+public class QueueManagerTest {
+
+    private static AbstractState abstractState(String stateId, String... actionIds) {
+        Set<AbstractAction> actions = new HashSet<>();
+        for (String actionId : actionIds) {
+            actions.add(new AbstractAction(actionId));
+        }
+        AbstractState abstractState = new AbstractState(stateId, actions);
+        abstractState.setModelIdentifier("model");
+        return abstractState;
+    }
+
+    /**
+     * Waits until the queue is empty and shuts the queue manager down, which does not need to show its progress then.
+     */
+    private static void drain(QueueManager queueManager) throws InterruptedException {
+        while (queueManager.getQueueDepth() > 0) {
+            Thread.sleep(10);
+        }
+        queueManager.shutdown();
+    }
+
+    @Test
+    public void requestsAreWrittenInTheOrderTheyWereMade() throws InterruptedException {
+        RecordingManager delegate = new RecordingManager();
+        QueueManager queueManager = new QueueManager(delegate, new EventHelper(), false);
+
+        AbstractState abstractState = abstractState("a1", "action");
+        Sequence sequence = new Sequence(1, new HashSet<>(), "model");
+        List<String> expected = new ArrayList<>();
+        queueManager.persistSequence(sequence);
+        expected.add("sequence " + sequence.getCurrentSequenceId());
+        SequenceNode previousNode = null;
+        for (int i = 1; i <= 50; i++) {
+            ConcreteState concreteState = new ConcreteState("c" + i, new HashSet<>(), abstractState);
+            queueManager.persistConcreteState(concreteState);
+            expected.add("concrete state c" + i);
+
+            SequenceNode node = new SequenceNode(sequence.getCurrentSequenceId(), i, concreteState, i == 1 ? sequence : null, new HashSet<>());
+            if (previousNode == null) {
+                queueManager.persistSequenceNode(node);
+            }
+            else {
+                queueManager.persistSequenceStep(new SequenceStep(new ConcreteAction("ca" + i, null), previousNode, node, "step"));
+            }
+            expected.add("node " + node.getNodeId() + " of c" + i);
+            previousNode = node;
+        }
+        drain(queueManager);
+
+        assertEquals(expected, delegate.records);
+    }
+
+    @Test
+    public void theWriterWritesACopyOfTheEntity() throws InterruptedException {
+        RecordingManager delegate = new RecordingManager();
+        QueueManager queueManager = new QueueManager(delegate, new EventHelper(), false);
+
+        // keep the writer busy, so that the next requests wait in the queue
+        delegate.blocked = new CountDownLatch(1);
+        queueManager.persistAbstractState(abstractState("blocking"));
+        delegate.writing.await();
+
+        AbstractState abstractState = abstractState("a1", "action1", "action2");
+        queueManager.persistAbstractState(abstractState);
+        // the model changes after the request was made, without a new request
+        abstractState.addVisitedAction(abstractState.getActions().iterator().next());
+        abstractState.addNewAction(new AbstractAction("action3"));
+
+        Sequence sequence = new Sequence(1, new HashSet<>(), "model");
+        queueManager.persistSequence(sequence);
+        sequence.setSequenceVerdict(SequenceVerdict.COMPLETED_SUCCESFULLY);
+        queueManager.persistSequence(sequence);
+        sequence.setTerminationMessage("changed after the last request");
+
+        delegate.blocked.countDown();
+        drain(queueManager);
+
+        assertEquals(Arrays.asList("abstract state blocking 0 of 0 unvisited", "abstract state a1 2 of 2 unvisited",
+                "sequence " + sequence.getCurrentSequenceId() + " " + SequenceVerdict.COMPLETED_SUCCESFULLY + " null"), delegate.details);
+    }
+
+    @Test
+    public void anErrorDoesNotStopTheWriter() throws InterruptedException {
+        RecordingManager delegate = new RecordingManager();
+        delegate.failing = "a2";
+        QueueManager queueManager = new QueueManager(delegate, new EventHelper(), false, 2);
+
+        // more requests than the queue holds, so the test would wait for a place if the failed request kept its place
+        for (int i = 1; i <= 10; i++) {
+            queueManager.persistAbstractState(abstractState("a" + i));
+        }
+        drain(queueManager);
+
+        assertEquals(9, delegate.details.size());
+        assertTrue(queueManager.getFailure() instanceof LinkageError);
+        assertTrue(queueManager.getMetrics(), queueManager.getMetrics().contains(" 1 failed"));
+    }
+
+    private static class RecordingManager implements PersistenceManager {
+
+        private final List<String> records = new ArrayList<>();
+
+        private final List<String> details = new ArrayList<>();
+
+        private final CountDownLatch writing = new CountDownLatch(1);
+
+        private CountDownLatch blocked;
+
+        // the abstract state that cannot be written
+        private String failing;
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void persistAbstractState(AbstractState abstractState) {
+            writing.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (abstractState.getStateId().equals(failing)) {
+                throw new LinkageError("the class of " + failing + " could not be loaded");
+            }
+            details.add("abstract state " + abstractState.getStateId() + " " + abstractState.getNrOfUnvisitedActions() + " of "
+                    + abstractState.getActionIds().size() + " unvisited");
+        }
+
+        @Override
+        public void persistAbstractAction(AbstractAction abstractAction) {
+        }
+
+        @Override
+        public void persistAbstractStateTransition(AbstractStateTransition abstractStateTransition) {
+        }
+
+        @Override
+        public void persistConcreteState(ConcreteState concreteState) {
+            records.add("concrete state " + concreteState.getId());
+        }
+
+        @Override
+        public void persistConcreteStateTransition(ConcreteStateTransition concreteStateTransition) {
+        }
+
+        @Override
+        public void initAbstractStateModel(AbstractStateModel abstractStateModel) {
+        }
+
+        @Override
+        public void persistSequence(Sequence sequence) {
+            records.add("sequence " + sequence.getCurrentSequenceId());
+            details.add("sequence " + sequence.getCurrentSequenceId() + " " + sequence.getSequenceVerdict() + " " + sequence.getTerminationMessage());
+        }
+
+        @Override
+        public void initSequenceManager(SequenceManager sequenceManager) {
+        }
+
+        @Override
+        public void persistSequenceNode(SequenceNode sequenceNode) {
+            records.add("node " + sequenceNode.getNodeId() + " of " + sequenceNode.getConcreteState().getId());
+        }
+
+        @Override
+        public void persistSequenceStep(SequenceStep sequenceStep) {
+            persistSequenceNode(sequenceStep.getTargetNode());
+        }
+
+        @Override
+        public boolean modelIsDeterministic(AbstractStateModel abstractStateModel) {
+            return true;
+        }
+
+        @Override
+        public int getNrOfNondeterministicActions(AbstractStateModel abstractStateModel) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.testar.statemodel.persistence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.statemodel.AbstractAction;
+import org.testar.statemodel.AbstractState;
+import org.testar.statemodel.AbstractStateModel;
+import org.testar.statemodel.AbstractStateTransition;
+import org.testar.statemodel.exceptions.ElementAlreadyExistsException;
+import org.testar.statemodel.exceptions.StateModelException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing abstract state models to snapshots and restoring them.
+ */
+public class StateModelSnapshotTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static AbstractStateModel emptyModel(String modelIdentifier) {
+        return new AbstractStateModel(modelIdentifier, "synthetic", "1", new HashSet<>());
+    }
+
+    /**
+     * Builds a model in which every state has the given number of actions, of which the first ones lead to
+     * random states and the others have not been visited yet.
+     */
+    private static AbstractStateModel buildModel(String modelIdentifier, int nrOfStates, int nrOfActions, int nrOfVisitedActions, long seed) throws StateModelException {
+        Random random = new Random(seed);
+        AbstractStateModel model = emptyModel(modelIdentifier);
+        AbstractState[] states = new AbstractState[nrOfStates];
+        for (int i = 0; i < nrOfStates; i++) {
+            Set<AbstractAction> actions = new HashSet<>();
+            for (int j = 0; j < nrOfActions; j++) {
+                AbstractAction action = new AbstractAction("s" + i + "a" + j);
+                action.addConcreteActionId("c" + random.nextInt(nrOfStates * nrOfActions));
+                actions.add(action);
+            }
+            states[i] = new AbstractState("s" + i, actions);
+            states[i].addConcreteStateId("c" + i);
+            states[i].setInitial(i == 0);
+            model.addState(states[i]);
+        }
+        for (int i = 0; i < nrOfStates; i++) {
+            for (int j = 0; j < nrOfVisitedActions; j++) {
+                model.addTransition(states[i], states[random.nextInt(nrOfStates)], states[i].getAction("s" + i + "a" + j));
+            }
+        }
+        return model;
+    }
+
+    private static Set<String> describeStates(AbstractStateModel model) {
+        Set<String> descriptions = new HashSet<>();
+        for (AbstractState state : model.getStates()) {
+            Set<String> actions = new TreeSet<>();
+            for (AbstractAction action : state.getActions()) {
+                actions.add(action.getActionId() + new TreeSet<>(action.getConcreteActionIds()));
+            }
+            Set<String> unvisitedActions = new TreeSet<>();
+            for (AbstractAction action : state.getUnvisitedActions()) {
+                unvisitedActions.add(action.getActionId());
+            }
+            descriptions.add(state.getStateId() + " " + state.isInitial() + " " + new TreeSet<>(state.getConcreteStateIds())
+                    + " " + actions + " " + unvisitedActions);
+        }
+        return descriptions;
+    }
+
+    private static Set<String> describeTransitions(AbstractStateModel model) {
+        Set<String> descriptions = new HashSet<>();
+        for (AbstractState state : model.getStates()) {
+            Set<AbstractStateTransition> transitions = model.getOutgoingTransitionsForState(state.getStateId());
+            if (transitions == null) {
+                continue;
+            }
+            for (AbstractStateTransition transition : transitions) {
+                descriptions.add(transition.getSourceStateId() + " " + transition.getActionId() + " " + transition.getTargetStateId());
+            }
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void restoredModelEqualsTheOriginal() throws Exception {
+        AbstractStateModel model = buildModel("model", 200, 5, 3, 1);
+        // a non-deterministic action
+        model.addTransition(model.getState("s1"), model.getState("s2"), model.getState("s1").getAction("s1a0"));
+        model.addTransition(model.getState("s1"), model.getState("s3"), model.getState("s1").getAction("s1a0"));
+
+        StateModelSnapshot snapshot = new StateModelSnapshot(directory);
+        snapshot.write(model, "marker");
+        StateModelSnapshot.Content content = snapshot.read("model");
+        assertNotNull(content);
+        assertEquals("marker", content.getMarker());
+        assertEquals(200, content.getNrOfStates());
+        assertEquals(describeTransitions(model).size(), content.getNrOfTransitions());
+
+        AbstractStateModel restored = emptyModel("model");
+        content.restore(restored);
+        assertEquals(describeStates(model), describeStates(restored));
+        assertEquals(describeTransitions(model), describeTransitions(restored));
+        assertEquals(model.getNrOfUnvisitedActions(), restored.getNrOfUnvisitedActions());
+        assertEquals(model.getNrOfNondeterministicActions(), restored.getNrOfNondeterministicActions());
+
+        // the restored actions are shared by the states and the transitions
+        AbstractState state = restored.getState("s1");
+        for (AbstractStateTransition transition : restored.getOutgoingTransitionsForState("s1")) {
+            assertSame(state.getAction(transition.getActionId()), transition.getAction());
+        }
+    }
+
+    @Test
+    public void snapshotsOfOtherModelsAreNotUsed() throws Exception {
+        StateModelSnapshot snapshot = new StateModelSnapshot(directory);
+        assertNull(snapshot.read("model"));
+
+        snapshot.write(buildModel("model", 10, 2, 1, 2), "marker");
+        Files.copy(snapshot.getFile("model"), snapshot.getFile("other"));
+        assertNull("The snapshot belongs to another model", snapshot.read("other"));
+        assertNotNull(snapshot.read("model"));
+
+        snapshot.delete("model");
+        assertFalse(Files.exists(snapshot.getFile("model")));
+        assertNull(snapshot.read("model"));
+    }
+
+    @Test
+    public void corruptSnapshotsAreNotUsed() throws Exception {
+        StateModelSnapshot snapshot = new StateModelSnapshot(directory);
+        snapshot.write(buildModel("model", 50, 3, 2, 3), "marker");
+        Path file = snapshot.getFile("model");
+        byte[] original = Files.readAllBytes(file);
+
+        for (int position : new int[]{0, 5, original.length / 2, original.length - 1}) {
+            byte[] corrupt = original.clone();
+            corrupt[position] ^= 0x10;
+            Files.write(file, corrupt);
+            assertNull("Corrupt byte at " + position, snapshot.read("model"));
+        }
+
+        try (RandomAccessFile truncated = new RandomAccessFile(file.toFile(), "rw")) {
+            truncated.write(original);
+            truncated.setLength(original.length - 20);
+        }
+        assertNull("Truncated snapshot", snapshot.read("model"));
+    }
+
+    @Test
+    public void aModelThatIsNotEmptyIsNotRestored() throws Exception {
+        StateModelSnapshot snapshot = new StateModelSnapshot(directory);
+        snapshot.write(buildModel("model", 10, 2, 1, 5), "marker");
+        AbstractStateModel model = buildModel("model", 1, 1, 0, 6);
+        try {
+            snapshot.read("model").restore(model);
+            fail("The snapshot was restored into a model with states");
+        } catch (ElementAlreadyExistsException e) {
+            assertEquals(1, model.getNrOfStates());
+        }
+    }
+
+    /**
+     * Benchmark on a model with 50k states and 150k transitions: writing the snapshot, reading it, and restoring the
+     * model from it, compared with replaying the same states and transitions through addState and addTransition.
+     * The garbage is collected before every measurement, so that a collection of an earlier step is not counted.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkLargeModel() throws Exception {
+        AbstractStateModel model = buildModel("large", 50000, 6, 3, 4);
+        StateModelSnapshot snapshot = new StateModelSnapshot(directory);
+
+        System.gc();
+        long start = System.nanoTime();
+        snapshot.write(model, "marker");
+        long writeTime = System.nanoTime() - start;
+
+        long readTime = Long.MAX_VALUE;
+        long restoreTime = Long.MAX_VALUE;
+        long replayTime = Long.MAX_VALUE;
+        AbstractStateModel restored = null;
+        for (int i = 0; i < 5; i++) {
+            restored = null;
+            System.gc();
+            start = System.nanoTime();
+            StateModelSnapshot.Content content = snapshot.read("large");
+            readTime = Math.min(readTime, System.nanoTime() - start);
+
+            System.gc();
+            start = System.nanoTime();
+            restored = emptyModel("large");
+            content.restore(restored);
+            restoreTime = Math.min(restoreTime, System.nanoTime() - start);
+
+            // the states and transitions of a fresh read, replayed the way the model was restored before
+            content = snapshot.read("large");
+            List<AbstractStateTransition> transitions = new ArrayList<>();
+            AbstractStateModel replayed = emptyModel("large");
+            content.restore(replayed);
+            for (AbstractState state : replayed.getStates()) {
+                Set<AbstractStateTransition> outgoingTransitions = replayed.getOutgoingTransitionsForState(state.getStateId());
+                if (outgoingTransitions != null) {
+                    transitions.addAll(outgoingTransitions);
+                }
+            }
+            Set<AbstractState> states = replayed.getStates();
+            replayed = null;
+            System.gc();
+            start = System.nanoTime();
+            replayed = emptyModel("large");
+            for (AbstractState state : states) {
+                replayed.addState(state);
+            }
+            for (AbstractStateTransition transition : transitions) {
+                replayed.addTransition(transition.getSourceState(), transition.getTargetState(), transition.getAction());
+            }
+            replayTime = Math.min(replayTime, System.nanoTime() - start);
+        }
+
+        System.out.println("Snapshot of 50000 states and " + describeTransitions(model).size() + " transitions ("
+                + Files.size(snapshot.getFile("large")) / 1024 + " KB): written in " + writeTime / 1_000_000
+                + " ms, read in " + readTime / 1_000_000 + " ms, restored in " + restoreTime / 1_000_000
+                + " ms, replayed through addState/addTransition in " + replayTime / 1_000_000 + " ms");
+        assertEquals(50000, restored.getNrOfStates());
+        assertEquals(model.getNrOfUnvisitedActions(), restored.getNrOfUnvisitedActions());
+        assertEquals(describeTransitions(model), describeTransitions(restored));
+    }
+}
@@ -0,0 +1,390 @@
+package org.testar.statemodel.persistence.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.Tag;
+import org.testar.monkey.alayer.Tags;
+import org.testar.monkey.alayer.Verdict;
+import org.testar.statemodel.*;
+import org.testar.statemodel.event.StateModelEventListener;
+import org.testar.statemodel.persistence.PersistenceManager;
+import org.testar.statemodel.sequence.*;
+import org.testar.statemodel.util.EventHelper;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing the state model in the log, restoring the abstract state model from the log and
+ * exporting the log to another persistence manager.
+ */
+public class LogManagerTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("statemodellog");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private LogManager createManager() throws IOException {
+        return new LogManager(new EventHelper(), new SegmentLog(directory));
+    }
+
+    private static AbstractStateModel createModel(LogManager logManager) {
+        return new AbstractStateModel("model", "application", "1", new HashSet<>(Collections.singletonList(Tags.Title)), logManager);
+    }
+
+    private static AbstractState createState(String stateId, int nrOfActions) {
+        Set<AbstractAction> actions = new HashSet<>();
+        for (int i = 0; i < nrOfActions; i++) {
+            AbstractAction action = new AbstractAction(stateId + "a" + i);
+            action.addConcreteActionId("c" + stateId + "a" + i);
+            actions.add(action);
+        }
+        AbstractState abstractState = new AbstractState(stateId, actions);
+        abstractState.addConcreteStateId("c" + stateId);
+        return abstractState;
+    }
+
+    private static Set<String> describe(AbstractStateModel model) {
+        Set<String> descriptions = new HashSet<>();
+        for (AbstractState state : model.getStates()) {
+            Set<String> unvisitedActions = new TreeSet<>();
+            for (AbstractAction action : state.getUnvisitedActions()) {
+                unvisitedActions.add(action.getActionId() + new TreeSet<>(action.getConcreteActionIds()));
+            }
+            descriptions.add(state.getStateId() + " " + state.isInitial() + " " + new TreeSet<>(state.getConcreteStateIds()) + " " + unvisitedActions);
+            Set<AbstractStateTransition> transitions = model.getOutgoingTransitionsForState(state.getStateId());
+            if (transitions != null) {
+                for (AbstractStateTransition transition : transitions) {
+                    descriptions.add(transition.getSourceStateId() + " " + transition.getActionId() + " " + transition.getTargetStateId());
+                }
+            }
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void abstractStateModelIsRestored() throws Exception {
+        LogManager logManager = createManager();
+        AbstractStateModel model = createModel(logManager);
+        AbstractState[] states = new AbstractState[4];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = createState("s" + i, 3);
+            states[i].setInitial(i == 0);
+            model.addState(states[i]);
+        }
+        model.addTransition(states[0], states[1], states[0].getAction("s0a0"));
+        model.addTransition(states[1], states[2], states[1].getAction("s1a0"));
+        model.addTransition(states[2], states[3], states[2].getAction("s2a1"));
+        assertTrue(logManager.modelIsDeterministic(model));
+
+        // the same action leads to another state
+        model.addTransition(states[0], states[2], states[0].getAction("s0a0"));
+        assertFalse(logManager.modelIsDeterministic(model));
+        assertEquals(2, logManager.getNrOfNondeterministicActions(model));
+        logManager.shutdown();
+
+        LogManager restoringManager = createManager();
+        AbstractStateModel restored = createModel(restoringManager);
+        assertEquals(describe(model), describe(restored));
+        assertTrue(restored.getState("s0").isInitial());
+        assertEquals(2, restoringManager.getNrOfNondeterministicActions(restored));
+
+        // a model with another identifier does not see the states
+        AbstractStateModel otherModel = new AbstractStateModel("other", "application", "2", new HashSet<>(), restoringManager);
+        assertEquals(0, otherModel.getNrOfStates());
+        assertTrue(restoringManager.modelIsDeterministic(otherModel));
+        restoringManager.shutdown();
+    }
+
+    @Test
+    public void badTransitionRecordsAreSkipped() throws Exception {
+        LogManager logManager = createManager();
+        AbstractStateModel model = createModel(logManager);
+        AbstractState s0 = createState("s0", 2);
+        AbstractState s1 = createState("s1", 1);
+        model.addState(s0);
+        model.addState(s1);
+        model.addTransition(s0, s1, s0.getAction("s0a0"));
+        model.addTransition(s1, s0, s1.getAction("s1a0"));
+        logManager.shutdown();
+
+        // a transition of an action the state does not have, and one with a malformed key
+        try (SegmentLog log = new SegmentLog(directory)) {
+            log.put(LogRecords.ABSTRACT_STATE_TRANSITION, LogRecords.key("model", "s0", "unknown", "s1"), new byte[0]);
+            log.put(LogRecords.ABSTRACT_STATE_TRANSITION, LogRecords.key("model", "s0"), new byte[0]);
+        }
+
+        LogManager restoringManager = createManager();
+        AbstractStateModel restored = createModel(restoringManager);
+        assertEquals(describe(model), describe(restored));
+        restoringManager.shutdown();
+    }
+
+    @Test
+    public void logIsExportedToAnotherPersistenceManager() throws Exception {
+        LogManager logManager = createManager();
+        AbstractStateModel model = createModel(logManager);
+        AbstractState abstractState = createState("s0", 2);
+        abstractState.setInitial(true);
+        model.addState(abstractState);
+        model.addTransition(abstractState, abstractState, abstractState.getAction("s0a0"));
+
+        Tag<Rectangle> boundsTag = Tag.from("Bounds", Rectangle.class);
+        ConcreteState[] concreteStates = new ConcreteState[2];
+        for (int i = 0; i < concreteStates.length; i++) {
+            concreteStates[i] = new ConcreteState("c" + i, new HashSet<>(), abstractState);
+            concreteStates[i].addAttribute(Tags.Title, "state " + i);
+            concreteStates[i].addAttribute(Tags.OracleVerdict, new Verdict(Verdict.SEVERITY_FAIL, "failure " + i));
+            concreteStates[i].addAttribute(boundsTag, new Rectangle(i, i, 10, 10));
+            concreteStates[i].setScreenshot(new byte[]{1, 2, (byte) i});
+            Widget widget = new Widget("w" + i);
+            widget.setRootWidget(concreteStates[i]);
+            widget.addAttribute(Tags.Title, "widget " + i);
+            concreteStates[i].addChild(widget);
+        }
+        ConcreteAction concreteAction = new ConcreteAction("ca0", abstractState.getAction("s0a0"));
+        concreteAction.addAttribute(Tags.Desc, "click");
+        logManager.persistConcreteStateTransition(new ConcreteStateTransition(concreteStates[0], concreteStates[1], concreteAction));
+
+        Set<StateModelEventListener> listeners = new HashSet<>(Collections.singletonList(logManager));
+        Sequence sequence = new Sequence(1, listeners, "model");
+        sequence.start();
+        sequence.addNode(concreteStates[0], null);
+        sequence.addNode(concreteStates[1], concreteAction, SequenceError.NON_DETERMINISTIC_ACTION);
+        sequence.getLastNode().addErrorMessage("error");
+        sequence.setSequenceVerdict(SequenceVerdict.COMPLETED_SUCCESFULLY);
+        sequence.stop();
+        logManager.shutdown();
+
+        RecordingManager recordingManager = new RecordingManager();
+        int nrOfRecords = new LogExporter(recordingManager).export(directory);
+        assertEquals(Arrays.asList(
+                "model model application 1 [Title]",
+                "abstract state s0 model initial",
+                "abstract state transition s0 s0a0 s0",
+                "concrete state c0 s0 Bounds=java.awt.Rectangle[x=0,y=0,width=10,height=10] OracleVerdict=failure 0 Title=state 0 screenshot=3 widgets=[w0 widget 0]",
+                "concrete state c1 s0 Bounds=java.awt.Rectangle[x=1,y=1,width=10,height=10] OracleVerdict=failure 1 Title=state 1 screenshot=3 widgets=[w1 widget 1]",
+                "concrete state transition c0 ca0 c1 s0a0 click",
+                "sequence 1 COMPLETED_SUCCESFULLY",
+                "sequence node 1 c0 first ",
+                "sequence node 2 c1 error",
+                "sequence step 1 2 ca0 click non-deterministic"),
+                recordingManager.records);
+        assertEquals(10, nrOfRecords);
+        assertEquals(sequence.getCurrentSequenceId(), recordingManager.sequenceId);
+    }
+
+    @Test
+    public void onlyTheNewRecordsAreExportedAgain() throws Exception {
+        LogManager logManager = createManager();
+        AbstractStateModel model = createModel(logManager);
+        AbstractState abstractState = createState("s0", 2);
+        model.addState(abstractState);
+        logManager.persistConcreteState(new ConcreteState("c0", new HashSet<>(), abstractState));
+        logManager.shutdown();
+
+        LogExporter.Checkpoint checkpoint = new LogExporter.Checkpoint();
+        assertEquals(3, new LogExporter(new RecordingManager(), checkpoint).export(directory));
+        RecordingManager recordingManager = new RecordingManager();
+        assertEquals(0, new LogExporter(recordingManager, checkpoint).export(directory));
+
+        LogManager appendingManager = createManager();
+        AbstractStateModel appendedModel = createModel(appendingManager);
+        AbstractState appendedState = appendedModel.getState("s0");
+        appendedModel.addTransition(appendedState, appendedState, appendedState.getAction("s0a1"));
+        appendingManager.persistConcreteState(new ConcreteState("c1", new HashSet<>(), appendedState));
+        appendingManager.shutdown();
+
+        recordingManager = new RecordingManager();
+        int nrOfRecords = new LogExporter(recordingManager, checkpoint).export(directory);
+        // the model is initialised on every export, the abstract state changed because one of its actions was visited
+        assertEquals(Arrays.asList(
+                "model model application 1 [Title]",
+                "abstract state s0 model",
+                "abstract state transition s0 s0a1 s0",
+                "concrete state c1 s0 screenshot=0 widgets=[]"),
+                recordingManager.records);
+        assertEquals(3, nrOfRecords);
+    }
+
+    /**
+     * Benchmark: storing concrete states with attributes and a small widget tree, and their transitions.
+     */
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkWriteThroughput() throws Exception {
+        LogManager logManager = createManager();
+        AbstractStateModel model = createModel(logManager);
+        AbstractState abstractState = createState("s0", 1);
+        model.addState(abstractState);
+        AbstractAction abstractAction = abstractState.getAction("s0a0");
+
+        int nrOfStates = 20000;
+        ConcreteState[] concreteStates = new ConcreteState[nrOfStates];
+        for (int i = 0; i < nrOfStates; i++) {
+            concreteStates[i] = new ConcreteState("c" + i, new HashSet<>(), abstractState);
+            concreteStates[i].addAttribute(Tags.Title, "state " + i);
+            concreteStates[i].addAttribute(Tags.OracleVerdict, Verdict.OK);
+            for (int j = 0; j < 5; j++) {
+                Widget widget = new Widget("c" + i + "w" + j);
+                widget.setRootWidget(concreteStates[i]);
+                widget.addAttribute(Tags.Title, "widget " + j);
+                concreteStates[i].addChild(widget);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < nrOfStates; i++) {
+            logManager.persistConcreteState(concreteStates[i]);
+            if (i > 0) {
+                ConcreteAction action = new ConcreteAction("a" + i, abstractAction);
+                action.addAttribute(Tags.Desc, "action " + i);
+                logManager.persistConcreteStateTransition(new ConcreteStateTransition(concreteStates[i - 1], concreteStates[i], action));
+            }
+        }
+        logManager.shutdown();
+        long time = System.nanoTime() - start;
+
+        int nrOfEntities = 2 * nrOfStates - 1;
+        System.out.println("Stored " + nrOfEntities + " concrete states and transitions in " + time / 1_000_000 + " ms ("
+                + (long) (nrOfEntities / (time / 1e9)) + " entities per second)");
+
+        start = System.nanoTime();
+        RecordingManager recordingManager = new RecordingManager();
+        new LogExporter(recordingManager).export(directory);
+        System.out.println("Read them back in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        assertEquals(nrOfStates, recordingManager.nrOfConcreteStates);
+    }
+
+    /**
+     * Persistence manager that describes what is persisted.
+     */
+    private static class RecordingManager implements PersistenceManager {
+
+        private final List<String> records = new ArrayList<>();
+
+        private int nrOfConcreteStates = 0;
+
+        private String sequenceId;
+
+        private static String describeAttributes(Widget widget) {
+            Map<String, Object> attributes = new TreeMap<>();
+            for (Tag<?> tag : widget.getAttributes().tags()) {
+                Object value = widget.getAttributes().get(tag, null);
+                attributes.put(tag.name(), value instanceof Verdict ? ((Verdict) value).info() : value);
+            }
+            StringBuilder description = new StringBuilder();
+            attributes.forEach((name, value) -> description.append(' ').append(name).append('=').append(value));
+            return description.toString();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void persistAbstractState(AbstractState abstractState) {
+            records.add("abstract state " + abstractState.getStateId() + " " + abstractState.getModelIdentifier() + (abstractState.isInitial() ? " initial" : ""));
+        }
+
+        @Override
+        public void persistAbstractAction(AbstractAction abstractAction) {
+        }
+
+        @Override
+        public void persistAbstractStateTransition(AbstractStateTransition abstractStateTransition) {
+            records.add("abstract state transition " + abstractStateTransition.getSourceStateId() + " " + abstractStateTransition.getActionId()
+                    + " " + abstractStateTransition.getTargetStateId());
+        }
+
+        @Override
+        public void persistConcreteState(ConcreteState concreteState) {
+            nrOfConcreteStates++;
+            if (nrOfConcreteStates > 10) {
+                return;
+            }
+            List<String> widgets = new ArrayList<>();
+            for (Widget widget : concreteState.getChildren()) {
+                assertSame(concreteState, widget.getRootWidget());
+                widgets.add(widget.getId() + " " + widget.getAttributes().get(Tags.Title, null));
+            }
+            records.add("concrete state " + concreteState.getId() + " " + concreteState.getAbstractState().getStateId()
+                    + describeAttributes(concreteState) + " screenshot=" + (concreteState.getScreenshot() == null ? 0 : concreteState.getScreenshot().length) + " widgets=" + widgets);
+        }
+
+        @Override
+        public void persistConcreteStateTransition(ConcreteStateTransition concreteStateTransition) {
+            if (nrOfConcreteStates > 10) {
+                return;
+            }
+            records.add("concrete state transition " + concreteStateTransition.getSourceStateId() + " " + concreteStateTransition.getActionId()
+                    + " " + concreteStateTransition.getTargetStateId() + " " + concreteStateTransition.getAction().getAbstractAction().getActionId()
+                    + " " + concreteStateTransition.getAction().getAttributes().get(Tags.Desc, null));
+        }
+
+        @Override
+        public void initAbstractStateModel(AbstractStateModel abstractStateModel) {
+            List<String> tags = new ArrayList<>();
+            for (Tag<?> tag : abstractStateModel.getTags()) {
+                tags.add(tag.name());
+            }
+            records.add("model " + abstractStateModel.getModelIdentifier() + " " + abstractStateModel.getApplicationName() + " "
+                    + abstractStateModel.getApplicationVersion() + " " + tags);
+        }
+
+        @Override
+        public void persistSequence(Sequence sequence) {
+            sequenceId = sequence.getCurrentSequenceId();
+            assertNotNull(sequence.getStartDateTime());
+            records.add("sequence " + sequence.getCurrentSequenceNr() + " " + sequence.getSequenceVerdict());
+        }
+
+        @Override
+        public void initSequenceManager(SequenceManager sequenceManager) {
+        }
+
+        @Override
+        public void persistSequenceNode(SequenceNode sequenceNode) {
+            records.add("sequence node " + sequenceNode.getNodeNr() + " " + sequenceNode.getConcreteState().getId()
+                    + (sequenceNode.isFirstNode() && sequenceNode.getSequence() != null ? " first " : " ") + sequenceNode.getErrorMessage());
+        }
+
+        @Override
+        public void persistSequenceStep(SequenceStep sequenceStep) {
+            records.add("sequence step " + sequenceStep.getSourceNode().getNodeNr() + " " + sequenceStep.getTargetNode().getNodeNr() + " "
+                    + sequenceStep.getConcreteAction().getActionId() + " " + sequenceStep.getActionDescription()
+                    + (sequenceStep.isNonDeterministic() ? " non-deterministic" : ""));
+        }
+
+        @Override
+        public boolean modelIsDeterministic(AbstractStateModel abstractStateModel) {
+            return true;
+        }
+
+        @Override
+        public int getNrOfNondeterministicActions(AbstractStateModel abstractStateModel) {
+            return 0;
+        }
+    }
+}
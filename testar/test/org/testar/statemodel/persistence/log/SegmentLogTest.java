@@ -0,0 +1,159 @@
+package org.testar.statemodel.persistence.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing records in segments, reopening the log from the segment footers, recovering from a crash and compacting.
+ */
+public class SegmentLogTest {
+
+    private static final int KIND = 3;
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("segmentlog");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        delete(directory);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static byte[] value(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String get(SegmentLog log, String key) throws IOException {
+        byte[] value = log.get(KIND, key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.segment")) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    @Test
+    public void recordsAreReadBackAfterReopening() throws Exception {
+        // small segments, so that the records are spread over many of them
+        try (SegmentLog log = new SegmentLog(directory, 1024, 1000)) {
+            for (int i = 0; i < 500; i++) {
+                log.put(KIND, "key" + i, value("value" + i));
+            }
+            for (int i = 0; i < 100; i++) {
+                log.put(KIND, "key" + i, value("updated" + i));
+            }
+            log.delete(KIND, "key499");
+            log.put(KIND + 1, "key0", value("other kind"));
+
+            assertTrue(log.getNrOfSegments() > 10);
+            assertEquals("updated5", get(log, "key5"));
+            assertEquals("value250", get(log, "key250"));
+            assertNull(get(log, "key499"));
+        }
+
+        try (SegmentLog log = new SegmentLog(directory, 1024, 1000)) {
+            assertEquals(499, log.size(KIND));
+            assertEquals("updated5", get(log, "key5"));
+            assertEquals("value250", get(log, "key250"));
+            assertNull(get(log, "key499"));
+            assertFalse(log.contains(KIND, "key499"));
+            assertEquals("other kind", new String(log.get(KIND + 1, "key0"), StandardCharsets.UTF_8));
+
+            // the records are passed on in the order in which they were stored
+            List<String> keys = new ArrayList<>();
+            log.forEach(KIND, (key, value) -> keys.add(key));
+            assertEquals("key100", keys.get(0));
+            assertEquals("key99", keys.get(keys.size() - 1));
+        }
+    }
+
+    @Test
+    public void completeRecordsSurviveACrash() throws Exception {
+        SegmentLog log = new SegmentLog(directory);
+        for (int i = 0; i < 100; i++) {
+            log.put(KIND, "key" + i, value("value" + i));
+        }
+        log.flush(true);
+
+        // a crash while the last record was written: the segment has no footer, and the last record is incomplete
+        Path crashed = Files.createTempDirectory("segmentlog");
+        try {
+            Path segment = segmentFiles(directory).get(0);
+            Files.copy(segment, crashed.resolve(segment.getFileName()));
+            try (RandomAccessFile file = new RandomAccessFile(crashed.resolve(segment.getFileName()).toFile(), "rw")) {
+                file.setLength(file.length() - 3);
+            }
+
+            try (SegmentLog recovered = new SegmentLog(crashed)) {
+                assertEquals(99, recovered.size(KIND));
+                assertEquals("value98", get(recovered, "key98"));
+                assertNull(get(recovered, "key99"));
+                recovered.put(KIND, "key99", value("again"));
+            }
+            // the recovered segment was sealed, and the log opens from the footers again
+            try (SegmentLog reopened = new SegmentLog(crashed)) {
+                assertEquals(100, reopened.size(KIND));
+                assertEquals("again", get(reopened, "key99"));
+            }
+        } finally {
+            delete(crashed);
+            log.close();
+        }
+    }
+
+    @Test
+    public void compactionKeepsTheLatestRecords() throws Exception {
+        int nrOfSegmentsWritten;
+        try (SegmentLog log = new SegmentLog(directory, 2048, 3)) {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 100; i++) {
+                    log.put(KIND, "key" + i, value("round" + round + "value" + i));
+                }
+            }
+            for (int i = 0; i < 10; i++) {
+                log.delete(KIND, "key" + i);
+            }
+            nrOfSegmentsWritten = Integer.parseInt(segmentFiles(directory).get(segmentFiles(directory).size() - 1)
+                    .getFileName().toString().replace(".segment", ""));
+            assertEquals("round19value50", get(log, "key50"));
+        }
+
+        // closing waits for the compaction, which merged the sealed segments
+        assertTrue(segmentFiles(directory).size() < nrOfSegmentsWritten / 2);
+        try (SegmentLog log = new SegmentLog(directory, 2048, 3)) {
+            assertEquals(90, log.size(KIND));
+            assertNull("Deleted records stay deleted after the compaction", get(log, "key5"));
+            for (int i = 10; i < 100; i++) {
+                assertEquals("round19value" + i, get(log, "key" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.testar.statemodel.persistence.orientdb.entity;
+
+import com.orientechnologies.orient.core.db.ODatabaseSession;
+import com.orientechnologies.orient.core.sql.executor.OResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.testar.monkey.alayer.Tags;
+import org.testar.statemodel.AbstractAction;
+import org.testar.statemodel.AbstractState;
+import org.testar.statemodel.AbstractStateModel;
+import org.testar.statemodel.ConcreteAction;
+import org.testar.statemodel.ConcreteState;
+import org.testar.statemodel.Widget;
+import org.testar.statemodel.exceptions.HydrationException;
+import org.testar.statemodel.persistence.orientdb.OrientDBManager;
+import org.testar.statemodel.persistence.orientdb.hydrator.HydratorFactory;
+import org.testar.statemodel.sequence.Sequence;
+import org.testar.statemodel.sequence.SequenceNode;
+import org.testar.statemodel.sequence.SequenceStep;
+import org.testar.statemodel.util.EventHelper;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing concrete states and their widget trees in an OrientDB memory database.
+ */
+public class EntityManagerTest {
+
+    private static final int NR_OF_WIDGETS = 3000;
+
+    private EntityManager entityManager;
+    private OrientDBManager manager;
+    private AbstractState abstractState;
+
+    private static EntityManager memoryEntityManager() {
+        return memoryEntityManager(EntityManager.MAX_CACHED_VERTEX_IDS);
+    }
+
+    private static EntityManager memoryEntityManager(int maxCachedVertexIds) {
+        Config config = new Config();
+        config.setConnectionType(Config.CONNECTION_TYPE_MEMORY);
+        config.setDatabase("testar" + System.nanoTime());
+        config.setUser("admin");
+        config.setPassword("admin");
+        config.setResetDataStore(false);
+        return new EntityManager(config, maxCachedVertexIds);
+    }
+
+    @Before
+    public void createDatabase() {
+        createDatabase(memoryEntityManager());
+    }
+
+    private void createDatabase(EntityManager entityManager) {
+        this.entityManager = entityManager;
+        manager = new OrientDBManager(new EventHelper(), entityManager);
+        manager.initAbstractStateModel(new AbstractStateModel("model", "synthetic", "1", new HashSet<>()));
+        abstractState = new AbstractState("a1", new HashSet<>(Collections.singleton(new AbstractAction("a1a1"))));
+        abstractState.setModelIdentifier("model");
+        manager.persistAbstractState(abstractState);
+    }
+
+    @After
+    public void releaseDatabase() {
+        entityManager.releaseConnection();
+    }
+
+    /**
+     * Builds a concrete state with a widget tree of the given size, in which every widget has up to eight children.
+     */
+    private static ConcreteState buildState(String stateId, AbstractState abstractState, int nrOfWidgets) {
+        ConcreteState state = new ConcreteState(stateId, new HashSet<>(), abstractState);
+        state.addAttribute(Tags.ConcreteID, stateId);
+        state.setRootWidget(state);
+        Deque<Widget> parents = new ArrayDeque<>();
+        parents.add(state);
+        int created = 0;
+        while (created < nrOfWidgets) {
+            Widget parent = parents.poll();
+            for (int i = 0; i < 8 && created < nrOfWidgets; i++, created++) {
+                Widget widget = new Widget(stateId + "w" + created);
+                widget.addAttribute(Tags.ConcreteID, stateId + "w" + created);
+                widget.addAttribute(Tags.Title, "widget " + created);
+                widget.setRootWidget(state);
+                widget.setParent(parent);
+                parent.addChild(widget);
+                parents.add(widget);
+            }
+        }
+        return state;
+    }
+
+    private long count(String query) {
+        try (ODatabaseSession db = entityManager.getConnection().getDatabaseSession();
+             OResultSet resultSet = db.query(query)) {
+            return ((Number) resultSet.next().getProperty("c")).longValue();
+        }
+    }
+
+    private long countWidgets() {
+        return count("select count(*) as c from Widget where @class = 'Widget'");
+    }
+
+    private long countStates() {
+        return count("select count(*) as c from ConcreteState");
+    }
+
+    private long countChildEdges() {
+        return count("select count(*) as c from isChildOf");
+    }
+
+    private long countAbstractedByEdges() {
+        return count("select count(*) as c from isAbstractedBy");
+    }
+
+    @Test
+    public void aWidgetTreeIsStoredOnce() {
+        ConcreteState state = buildState("c1", abstractState, NR_OF_WIDGETS);
+        manager.persistConcreteState(state);
+
+        assertEquals(1, countStates());
+        assertEquals(NR_OF_WIDGETS, countWidgets());
+        assertEquals(NR_OF_WIDGETS, countChildEdges());
+        assertEquals(1, countAbstractedByEdges());
+        assertEquals("Every widget has one parent", 0,
+                count("select count(*) as c from Widget where @class = 'Widget' and out('isChildOf').size() != 1"));
+
+        // a revisit finds the stored tree and writes nothing
+        manager.persistConcreteState(buildState("c1", abstractState, NR_OF_WIDGETS));
+        assertEquals(1, countStates());
+        assertEquals(NR_OF_WIDGETS, countWidgets());
+        assertEquals(NR_OF_WIDGETS, countChildEdges());
+        assertEquals(1, countAbstractedByEdges());
+
+        manager.persistConcreteState(buildState("c2", abstractState, NR_OF_WIDGETS));
+        assertEquals(2, countStates());
+        assertEquals(2 * NR_OF_WIDGETS, countWidgets());
+        assertEquals(2 * NR_OF_WIDGETS, countChildEdges());
+        assertEquals(2, countAbstractedByEdges());
+    }
+
+    @Test
+    public void theTreeOfAStateStoredWithoutItIsCompleted() {
+        ConcreteState state = buildState("c1", abstractState, NR_OF_WIDGETS);
+        Sequence sequence = new Sequence(1, new HashSet<>(), "model");
+        sequence.start();
+        manager.persistSequence(sequence);
+        // the node is written before its concrete state, so only the vertex of the state is created
+        manager.persistSequenceNode(new SequenceNode(sequence.getCurrentSequenceId(), 1, state, sequence, new HashSet<>()));
+        assertEquals(1, countStates());
+        assertEquals(0, countWidgets());
+
+        manager.persistConcreteState(state);
+        assertEquals(1, countStates());
+        assertEquals(NR_OF_WIDGETS, countWidgets());
+        assertEquals(NR_OF_WIDGETS, countChildEdges());
+        assertEquals(1, countAbstractedByEdges());
+
+        manager.persistConcreteState(state);
+        assertEquals(NR_OF_WIDGETS, countWidgets());
+        assertEquals(NR_OF_WIDGETS, countChildEdges());
+        assertEquals(1, countAbstractedByEdges());
+        assertEquals(1, count("select count(*) as c from Accessed"));
+    }
+
+    private Sequence startSequence() {
+        Sequence sequence = new Sequence(1, new HashSet<>(), "model");
+        sequence.start();
+        manager.persistSequence(sequence);
+        return sequence;
+    }
+
+    /**
+     * Persists a sequence that visits the given states one after the other.
+     */
+    private void persistSequence(Sequence sequence, ConcreteState... states) {
+        SequenceNode source = new SequenceNode(sequence.getCurrentSequenceId(), 1, states[0], sequence, new HashSet<>());
+        manager.persistSequenceNode(source);
+        for (int i = 1; i < states.length; i++) {
+            SequenceNode target = new SequenceNode(sequence.getCurrentSequenceId(), i + 1, states[i], sequence, new HashSet<>());
+            manager.persistSequenceStep(new SequenceStep(new ConcreteAction("ca" + i, new AbstractAction("a1a1")), source, target, "step " + i));
+            source = target;
+        }
+    }
+
+    private void assertSequenceIsStored(int nrOfNodes, int nrOfStates) {
+        assertEquals(nrOfStates, countStates());
+        assertEquals(nrOfNodes, count("select count(*) as c from SequenceNode"));
+        assertEquals(nrOfNodes, count("select count(*) as c from Accessed"));
+        assertEquals(nrOfNodes - 1, count("select count(*) as c from SequenceStep"));
+        assertEquals(1, count("select count(*) as c from FirstNode"));
+        assertEquals("Every node accessed a state", 0,
+                count("select count(*) as c from SequenceNode where out('Accessed').size() != 1"));
+        assertEquals("Every node but the last one is followed by a step", 1,
+                count("select count(*) as c from SequenceNode where out('SequenceStep').size() = 0"));
+    }
+
+    @Test
+    public void sequenceNodesAndStepsReferToStoredStates() {
+        ConcreteState first = buildState("c1", abstractState, 10);
+        ConcreteState second = buildState("c2", abstractState, 10);
+        manager.persistConcreteState(first);
+        manager.persistConcreteState(second);
+
+        persistSequence(startSequence(), first, second, first);
+        assertSequenceIsStored(3, 2);
+        assertEquals(20, countWidgets());
+    }
+
+    @Test
+    public void sequenceNodesAndStepsCreateStatesThatAreNotStoredYet() {
+        ConcreteState first = buildState("c1", abstractState, 10);
+        ConcreteState second = buildState("c2", abstractState, 10);
+
+        persistSequence(startSequence(), first, second, first);
+        assertSequenceIsStored(3, 2);
+        assertEquals(0, countWidgets());
+        assertEquals("The states are created from their hydrated entities", 2,
+                count("select count(*) as c from ConcreteState where stateId is not null"));
+
+        // storing the states afterwards completes them instead of creating them again
+        manager.persistConcreteState(first);
+        manager.persistConcreteState(second);
+        assertSequenceIsStored(3, 2);
+        assertEquals(20, countWidgets());
+    }
+
+    @Test
+    public void theVertexIdCacheIsBounded() {
+        entityManager.releaseConnection();
+        createDatabase(memoryEntityManager(4));
+
+        ConcreteState[] states = new ConcreteState[10];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = buildState("c" + i, abstractState, 10);
+            manager.persistConcreteState(states[i]);
+        }
+        persistSequence(startSequence(), states);
+        assertTrue(entityManager.getNrOfCachedVertexIds() <= 4);
+        assertSequenceIsStored(10, 10);
+        assertEquals(100, countWidgets());
+    }
+
+    /**
+     * Saves a concrete state the way it was saved before the tree was written in one transaction:
+     * every widget and every edge through its own saveEntity call.
+     */
+    private static void saveEntityByEntity(EntityManager entityManager, ConcreteState state, AbstractState abstractState) throws HydrationException {
+        VertexEntity stateEntity = new VertexEntity(EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.ConcreteState));
+        HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_CONCRETE_STATE).hydrate(stateEntity, state);
+        stateEntity.enableUpdate(false);
+        entityManager.saveEntity(stateEntity);
+        saveChildrenEntityByEntity(entityManager, state, stateEntity);
+
+        VertexEntity abstractStateEntity = new VertexEntity(EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.AbstractState));
+        HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_ABSTRACT_STATE).hydrate(abstractStateEntity, abstractState);
+        abstractStateEntity.enableUpdate(false);
+        EdgeEntity abstractedBy = new EdgeEntity(EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.isAbstractedBy), stateEntity, abstractStateEntity);
+        HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_ABSTRACTED_BY).hydrate(abstractedBy, null);
+        abstractedBy.enableUpdate(false);
+        entityManager.saveEntity(abstractedBy);
+    }
+
+    private static void saveChildrenEntityByEntity(EntityManager entityManager, Widget widget, VertexEntity widgetEntity) throws HydrationException {
+        for (Widget child : widget.getChildren()) {
+            VertexEntity childEntity = new VertexEntity(EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.Widget));
+            HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_WIDGET).hydrate(childEntity, child);
+            childEntity.enableUpdate(false);
+            entityManager.saveEntity(childEntity);
+            EdgeEntity isChildOf = new EdgeEntity(EntityClassFactory.createEntityClass(EntityClassFactory.EntityClassName.isChildOf), childEntity, widgetEntity);
+            HydratorFactory.getHydrator(HydratorFactory.HYDRATOR_WIDGET_RELATION).hydrate(isChildOf, null);
+            isChildOf.enableUpdate(false);
+            entityManager.saveEntity(isChildOf);
+            saveChildrenEntityByEntity(entityManager, child, childEntity);
+        }
+    }
+
+    @Ignore("Benchmark, run on demand")
+    @Test
+    public void benchmarkSaveVertexTree() throws HydrationException {
+        int nrOfStates = 5;
+        for (int nrOfWidgets : new int[] {500, 3000}) {
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < nrOfStates; i++) {
+                    saveEntityByEntity(entityManager, buildState("e" + round + "_" + nrOfWidgets + "_" + i, abstractState, nrOfWidgets), abstractState);
+                }
+                long entityByEntity = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < nrOfStates; i++) {
+                    manager.persistConcreteState(buildState("t" + round + "_" + nrOfWidgets + "_" + i, abstractState, nrOfWidgets));
+                }
+                long tree = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < nrOfStates; i++) {
+                    manager.persistConcreteState(buildState("t" + round + "_" + nrOfWidgets + "_" + i, abstractState, nrOfWidgets));
+                }
+                long revisit = System.nanoTime() - start;
+
+                System.out.printf("%d widgets: entity by entity %.1f ms, tree %.1f ms (%.1fx), revisit %.1f ms per state%n",
+                        nrOfWidgets, entityByEntity / 1e6 / nrOfStates, tree / 1e6 / nrOfStates,
+                        (double) entityByEntity / tree, revisit / 1e6 / nrOfStates);
+            }
+        }
+    }
+}
@@ -14,6 +14,10 @@ var actualCode = '(' + function () {
         if (!this.eventListenerList[a])
             this.eventListenerList[a] = [];
         this.eventListenerList[a].push({listener: b, useCapture: c});
+        // A new click listener makes the element clickable
+        if (a === 'click' && this.nodeType === 1 && window.testarDirtyTestar !== undefined) {
+            window.testarDirtyTestar.elements.add(this);
+        }
     };
 
     EventTarget.prototype.getEventListeners = function (a) {
@@ -61,6 +65,134 @@ var actualCode = '(' + function () {
             delete this.eventListenerList[a];
     };
 
+    /*
+     * Keep track of the parts of the page that changed since the last state capture
+     * getStateColumnsTestar (testar.state.js) captures only the subtrees of these elements,
+     * or the whole tree when a change affects the whole page
+     */
+    var isTestarCanvas = function (node) {
+        return node !== null && node.id === 'testar_canvas';
+    };
+    var affectsStyle = function (node) {
+        return node.nodeName === 'STYLE' || node.nodeName === 'LINK';
+    };
+    var markMutations = function (mutations) {
+        var dirty = window.testarDirtyTestar;
+        for (var i = 0; i < mutations.length && !dirty.full; i++) {
+            var mutation = mutations[i];
+            var target = mutation.target;
+            if (mutation.type === 'childList') {
+                var changed = Array.from(mutation.addedNodes).concat(Array.from(mutation.removedNodes));
+                if (changed.length > 0 && changed.every(isTestarCanvas)) {
+                    continue;
+                }
+                if (changed.some(affectsStyle)) {
+                    dirty.full = true;
+                    continue;
+                }
+            }
+            else if (mutation.type === 'characterData') {
+                target = target.parentNode;
+            }
+            else if (isTestarCanvas(target)) {
+                continue;
+            }
+            else if (affectsStyle(target)) {
+                dirty.full = true;
+                continue;
+            }
+            else if (mutation.attributeName === 'class' || mutation.attributeName === 'style') {
+                // The layout of the siblings may change as well
+                target = target.parentNode;
+            }
+
+            if (target !== null && target.nodeType === 1) {
+                dirty.elements.add(target);
+            }
+            else if (target === document) {
+                dirty.full = true;
+            }
+        }
+    };
+    /*
+     * Keep track of what keeps the page from settling after an action
+     * getSettleStateTestar is polled by the settle detector of TESTAR (WebSettleSignal)
+     */
+    var settle = {pendingRequests: 0, lastMutation: performance.now()};
+    var isCanvasMutation = function (mutation) {
+        if (isTestarCanvas(mutation.target)) {
+            return true;
+        }
+        var changed = Array.from(mutation.addedNodes || []).concat(Array.from(mutation.removedNodes || []));
+        return changed.length > 0 && changed.every(isTestarCanvas);
+    };
+    var requestDone = function () {
+        settle.pendingRequests = Math.max(0, settle.pendingRequests - 1);
+    };
+    var _send = XMLHttpRequest.prototype.send;
+    XMLHttpRequest.prototype.send = function () {
+        settle.pendingRequests++;
+        this._addEventListener('loadend', requestDone);
+        try {
+            return _send.apply(this, arguments);
+        } catch (e) {
+            requestDone();
+            throw e;
+        }
+    };
+    if (window.fetch) {
+        var _fetch = window.fetch;
+        window.fetch = function () {
+            settle.pendingRequests++;
+            var pending = _fetch.apply(this, arguments);
+            pending.then(requestDone, requestDone);
+            return pending;
+        };
+    }
+    window.getSettleStateTestar = function () {
+        // animations that run forever, such as spinners, never settle and are left out
+        var runningAnimations = document.getAnimations ? document.getAnimations().filter(function (animation) {
+            return animation.playState === 'running' && animation.effect !== null
+                && animation.effect.getComputedTiming().iterations !== Infinity;
+        }).length : 0;
+        return {
+            readyState: document.readyState,
+            pendingRequests: settle.pendingRequests,
+            runningAnimations: runningAnimations,
+            quietMillis: Math.round(performance.now() - settle.lastMutation)
+        };
+    };
+
+    var observer = new MutationObserver(function (mutations) {
+        if (!mutations.every(isCanvasMutation)) {
+            settle.lastMutation = performance.now();
+        }
+        markMutations(mutations);
+    });
+    window.testarDirtyTestar = {
+        full: true,
+        elements: new Set(),
+        // Process the mutations that were not delivered yet
+        flush: function () {
+            markMutations(observer.takeRecords());
+        }
+    };
+    observer.observe(document, {subtree: true, childList: true, attributes: true, characterData: true});
+
+    // Scrolling and resizing move all the elements, focus changes and click listeners are no mutations
+    var markFull = function () {
+        window.testarDirtyTestar.full = true;
+    };
+    var markTarget = function (event) {
+        if (event.target.nodeType === 1) {
+            window.testarDirtyTestar.elements.add(event.target);
+        }
+    };
+    window._addEventListener('scroll', markFull, true);
+    window._addEventListener('resize', markFull, true);
+    document._addEventListener('focusin', markTarget, true);
+    document._addEventListener('focusout', markTarget, true);
+
     // Disallow browser dialogs
     window.alert = function () {};
     window.confirm = function () {};
@@ -29,6 +29,292 @@ var getStateTreeTestar = function (ignoredTags) {
     }
 };
 
+/*
+ * Bits of the flags column of the columnar widget tree
+ */
+var FLAG_BLOCKED_TESTAR = 1;
+var FLAG_CLICKABLE_TESTAR = 2;
+var FLAG_SHADOW_TESTAR = 4;
+var FLAG_KEYBOARD_FOCUS_TESTAR = 8;
+
+/*
+ * Bookkeeping of the incremental state capture
+ * Every captured element keeps its id, iFrame offsets and rect, so a changed subtree can be captured on its own
+ * The session and generation identify the last capture, WdStateFetcher passes them back as 'since'
+ */
+var captureTestar = {
+    session: Math.random().toString(36).substring(2),
+    generation: 0,
+    nextId: 0,
+    size: 0,
+    elements: new WeakMap()
+};
+
+/*
+ * When the changed subtrees hold more than this fraction of the elements, capture the whole tree instead
+ */
+var MAX_DIRTY_FRACTION_TESTAR = 0.5;
+
+/*
+ * Get the widget tree in a columnar format, decoded by WdColumnarTree
+ * The elements are listed in document order, so a parent always precedes its children
+ * Every property is kept in its own array, strings are interned in the strings array
+ * The traversal uses an explicit stack, so the depth of the tree is not limited by the recursion depth
+ *
+ * When 'since' identifies the previous capture, and the MutationObserver of testar.init.start.js saw no
+ * changes that affect the whole page, only the changed subtrees are captured (full is false)
+ * Every subtree then starts with an element of the previous capture, with parent -1, that it replaces
+ * @param {Array} array of tags that can be skipped, like <style>, <script> etc.
+ * @param {string} since, the 'since' of the previous capture, or null for a full capture
+ * @return {Object} the columns
+ */
+var getStateColumnsTestar = function (ignoredTags, since) {
+    // Find all labels on the page
+    getLabelMapTestar();
+
+    var dirty = window.testarDirtyTestar;
+    var roots = null;
+    if (dirty !== undefined) {
+        dirty.flush();
+        if (!dirty.full && since === captureTestar.session + ':' + captureTestar.generation) {
+            roots = getDirtyRootsTestar(dirty.elements);
+        }
+        dirty.full = false;
+        dirty.elements.clear();
+    }
+
+    var builder;
+    if (roots !== null) {
+        builder = newColumnsBuilderTestar(false);
+        for (var i = 0; i < roots.length; i++) {
+            var captured = captureTestar.elements.get(roots[i]);
+            traverseColumnsTestar(builder, {element: roots[i], parentId: -1, xOffset: captured.xOffset, yOffset: captured.yOffset}, ignoredTags);
+        }
+        if (builder.columns.parent.length > MAX_DIRTY_FRACTION_TESTAR * captureTestar.size) {
+            roots = null;
+        }
+    }
+    if (roots === null) {
+        builder = newColumnsBuilderTestar(true);
+        traverseColumnsTestar(builder, {element: document.body, parentId: -1, xOffset: 0, yOffset: 0}, ignoredTags);
+        captureTestar.size = builder.columns.parent.length;
+    }
+
+    captureTestar.generation++;
+    builder.columns.since = captureTestar.session + ':' + captureTestar.generation;
+    return builder.columns;
+};
+
+/*
+ * Create empty columns, with the function that interns the strings
+ * @param {bool} full, whether the columns will hold the whole tree
+ * @return {Object} the columns and the intern function
+ */
+function newColumnsBuilderTestar(full) {
+    var columns = {
+        full: full,
+        documentHasFocus: document.hasFocus(),
+        documentTitle: document.title,
+        strings: [],
+        // id of the element, stable over the captures of the page
+        id: [],
+        // index of the parent element, -1 for the body or the root of a changed subtree
+        parent: [],
+        // indices in the strings array
+        tagName: [],
+        name: [],
+        textContent: [],
+        display: [],
+        zIndex: [],
+        // x, y, width and height per element
+        rect: [],
+        // overflowX and overflowY as indices in the strings array, followed by the numbers of getDimensionsTestar
+        dimensions: [],
+        flags: [],
+        // per element the number of attributes, followed by the name and value index of every attribute
+        attributes: []
+    };
+
+    var stringIndices = new Map();
+    var intern = function (string) {
+        if (string === undefined || string === null) {
+            string = "";
+        }
+        var index = stringIndices.get(string);
+        if (index === undefined) {
+            index = columns.strings.length;
+            columns.strings.push(string);
+            stringIndices.set(string, index);
+        }
+        return index;
+    };
+
+    return {columns: columns, intern: intern};
+}
+
+/*
+ * Add an element and all its descendants to the columns
+ * @param {Object} builder, the columns and the intern function
+ * @param {Object} rootEntry, the element, the index of its parent and its iFrame offsets
+ * @param {Array} array of tags that can be skipped, like <style>, <script> etc.
+ */
+function traverseColumnsTestar(builder, rootEntry, ignoredTags) {
+    var columns = builder.columns;
+    var intern = builder.intern;
+
+    var stack = [rootEntry];
+    while (stack.length > 0) {
+        var entry = stack.pop();
+        var element = entry.element;
+        var index = columns.parent.length;
+
+        var rect = getRectTestar(element, entry.xOffset, entry.yOffset);
+        var captured = captureTestar.elements.get(element);
+        var elementId = captured === undefined ? captureTestar.nextId++ : captured.id;
+        captureTestar.elements.set(element, {id: elementId, xOffset: entry.xOffset, yOffset: entry.yOffset, rect: rect});
+
+        var dimensions = getDimensionsTestar(element);
+        var flags = 0;
+        if (getIsBlockedTestar(element, entry.xOffset, entry.yOffset)) flags |= FLAG_BLOCKED_TESTAR;
+        if (isClickableTestar(element)) flags |= FLAG_CLICKABLE_TESTAR;
+        if (element.shadowRoot !== null) flags |= FLAG_SHADOW_TESTAR;
+        if (document.activeElement === element) flags |= FLAG_KEYBOARD_FOCUS_TESTAR;
+
+        columns.id.push(elementId);
+        columns.parent.push(entry.parentId);
+        columns.tagName.push(intern(element.tagName.toLowerCase()));
+        columns.name.push(intern(getNameTestar(element)));
+        columns.display.push(intern(getComputedStyle(element).getPropertyValue('display')));
+        columns.zIndex.push(getZIndexTestar(element));
+        columns.rect.push(rect[0], rect[1], rect[2], rect[3]);
+        columns.dimensions.push(intern(dimensions.overflowX), intern(dimensions.overflowY),
+            dimensions.clientWidth, dimensions.clientHeight, dimensions.offsetWidth, dimensions.offsetHeight,
+            dimensions.scrollWidth, dimensions.scrollHeight, dimensions.scrollLeft, dimensions.scrollTop,
+            dimensions.borderWidth, dimensions.borderHeight);
+        columns.flags.push(flags);
+        var attributes = element.attributes;
+        columns.attributes.push(attributes.length);
+        for (var a = 0; a < attributes.length; a++) {
+            columns.attributes.push(intern(attributes[a].name), intern(attributes[a].nodeValue));
+        }
+
+        // Collect the children, the text nodes make up the text content of this element
+        var wrapped = {element: element, rect: rect, xOffset: entry.xOffset, yOffset: entry.yOffset};
+        var childNodes = Array.from(getChildNodesTestar(wrapped));
+        if (element.shadowRoot !== null) {
+            childNodes = childNodes.concat(Array.from(element.shadowRoot.childNodes));
+        }
+        var textContent = "";
+        var children = [];
+        for (var i = 0; i < childNodes.length; i++) {
+            var childNode = childNodes[i];
+            if (childNode.nodeType === 3) {
+                textContent = (textContent + childNode.textContent).trim();
+                continue;
+            }
+            if (childNode.nodeType !== 1 ||
+                ignoredTags.includes(childNode.nodeName.toLowerCase())) {
+                continue;
+            }
+            children.push({element: childNode, parentId: index, xOffset: wrapped.xOffset, yOffset: wrapped.yOffset});
+        }
+        columns.textContent.push(intern(textContent));
+
+        // Push in reverse, so the children are visited in document order
+        for (var c = children.length - 1; c >= 0; c--) {
+            stack.push(children[c]);
+        }
+    }
+}
+
+/*
+ * Determine the subtrees that have to be captured again, given the elements the MutationObserver marked
+ * @param {Set} elements, the changed elements
+ * @return {Array} the roots of the changed subtrees, or null if the whole tree has to be captured
+ */
+function getDirtyRootsTestar(elements) {
+    var roots = new Set();
+    var body = document.body;
+    if (!captureTestar.elements.has(body)) {
+        // The body itself was replaced
+        return null;
+    }
+    elements.forEach(function (element) {
+        // Removed elements are covered by the change of their parent
+        if (!body.contains(element)) {
+            return;
+        }
+        // Elements that were not captured before are part of the subtree of a captured ancestor
+        while (!captureTestar.elements.has(element)) {
+            element = element.parentNode;
+        }
+        // When the box of the subtree moved or changed size, the layout of its surroundings changed as well
+        while (element !== body && hasMovedTestar(element)) {
+            do {
+                element = element.parentNode;
+            } while (!captureTestar.elements.has(element));
+        }
+        roots.add(element);
+    });
+    if (roots.has(body)) {
+        return null;
+    }
+
+    // Drop the subtrees that are contained in other subtrees
+    var result = [];
+    roots.forEach(function (root) {
+        for (var ancestor = root.parentNode; ancestor !== null; ancestor = ancestor.parentNode) {
+            if (roots.has(ancestor)) {
+                return;
+            }
+        }
+        result.push(root);
+    });
+    return result;
+}
+
+/*
+ * Determine if the box of a captured element differs from the one of the last capture
+ * @param {node} element, the captured HTML element
+ * @return {bool} true if the element moved or changed size
+ */
+function hasMovedTestar(element) {
+    var captured = captureTestar.elements.get(element);
+    var rect = getRectTestar(element, captured.xOffset, captured.yOffset);
+    for (var i = 0; i < rect.length; i++) {
+        if (rect[i] !== captured.rect[i]) {
+            return true;
+        }
+    }
+    return false;
+}
+
+/*
+ * Asynchronous version of getStateColumnsTestar, that gzips the columns when the browser supports it
+ * @param {Array} array of tags that can be skipped, like <style>, <script> etc.
+ * @param {string} since, the 'since' of the previous capture, or null for a full capture
+ * @param {function} callback of the asynchronous webdriver script
+ */
+var getStateColumnsCompressedTestar = function (ignoredTags, since, callback) {
+    var columns = getStateColumnsTestar(ignoredTags, since);
+    if (typeof CompressionStream === 'undefined') {
+        callback(columns);
+        return;
+    }
+
+    var stream = new Blob([JSON.stringify(columns)]).stream().pipeThrough(new CompressionStream('gzip'));
+    new Response(stream).arrayBuffer().then(function (buffer) {
+        var bytes = new Uint8Array(buffer);
+        var binary = "";
+        for (var i = 0; i < bytes.length; i += 0x8000) {
+            binary += String.fromCharCode.apply(null, bytes.subarray(i, i + 0x8000));
+        }
+        callback({encoding: 'gzip', payload: btoa(binary)});
+    }).catch(function () {
+        callback(columns);
+    });
+};
+
 /*
  * Traverse the children from the parent element
  * @param {object} parentWrapped, the (wrapped) parent object
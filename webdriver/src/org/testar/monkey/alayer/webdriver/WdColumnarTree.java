@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2018, 2019 Open Universiteit - www.ou.nl
+ * Copyright (c) 2019 Universitat Politecnica de Valencia - www.upv.es
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.testar.monkey.alayer.webdriver;
+
+import org.openqa.selenium.json.Json;
+import org.testar.monkey.alayer.Rect;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The widget tree as produced by getStateColumnsTestar in testar.state.js.
+ * Every property of the elements is kept in its own array, with the elements in document order,
+ * so the tree is decoded into WdElements in a single pass.
+ * An incremental capture only holds the subtrees that changed since the previous capture,
+ * these are patched into a copy of the previous tree.
+ */
+final class WdColumnarTree {
+  // bits of the flags column
+  static final int FLAG_BLOCKED = 1;
+  static final int FLAG_CLICKABLE = 2;
+  static final int FLAG_SHADOW = 4;
+  static final int FLAG_KEYBOARD_FOCUS = 8;
+
+  private static final int RECT_SIZE = 4;
+  private static final int DIMENSIONS_SIZE = 12;
+
+  final boolean full;
+  final String since;
+  final boolean documentHasFocus;
+  final String documentTitle;
+
+  private final List<Object> strings;
+  private final List<Object> ids;
+  private final List<Object> parents;
+  private final List<Object> tagNames;
+  private final List<Object> names;
+  private final List<Object> textContents;
+  private final List<Object> displays;
+  private final List<Object> zIndices;
+  private final List<Object> rects;
+  private final List<Object> dimensions;
+  private final List<Object> flags;
+  private final List<Object> attributes;
+  // start of the attributes of every element in the attributes column
+  private final int[] attributeOffsets;
+
+  @SuppressWarnings("unchecked")
+  private WdColumnarTree(Map<String, Object> columns) {
+    full = !Boolean.FALSE.equals(columns.get("full"));
+    since = (String) columns.get("since");
+    documentHasFocus = Boolean.TRUE.equals(columns.get("documentHasFocus"));
+    documentTitle = (String) columns.get("documentTitle");
+    strings = (List<Object>) columns.get("strings");
+    ids = (List<Object>) columns.get("id");
+    parents = (List<Object>) columns.get("parent");
+    tagNames = (List<Object>) columns.get("tagName");
+    names = (List<Object>) columns.get("name");
+    textContents = (List<Object>) columns.get("textContent");
+    displays = (List<Object>) columns.get("display");
+    zIndices = (List<Object>) columns.get("zIndex");
+    rects = (List<Object>) columns.get("rect");
+    dimensions = (List<Object>) columns.get("dimensions");
+    flags = (List<Object>) columns.get("flags");
+    attributes = (List<Object>) columns.get("attributes");
+
+    attributeOffsets = new int[size()];
+    for (int i = 0, offset = 0; i < attributeOffsets.length; i++) {
+      attributeOffsets[i] = offset;
+      offset += 1 + 2 * (int) number(attributes, offset);
+    }
+  }
+
+  /**
+   * Read the result of getStateColumnsTestar or getStateColumnsCompressedTestar.
+   * @return the tree, or null if the result is not a columnar tree
+   */
+  @SuppressWarnings("unchecked")
+  static WdColumnarTree from(Object result) {
+    if (!(result instanceof Map)) {
+      return null;
+    }
+    Map<String, Object> columns = (Map<String, Object>) result;
+    if ("gzip".equals(columns.get("encoding"))) {
+      columns = decompress((String) columns.get("payload"));
+    }
+    if (!(columns.get("parent") instanceof List)) {
+      return null;
+    }
+    // a full capture holds at least the body, an incremental one may hold no changes at all
+    if (((List<Object>) columns.get("parent")).isEmpty() && !Boolean.FALSE.equals(columns.get("full"))) {
+      return null;
+    }
+    return new WdColumnarTree(columns);
+  }
+
+  private static Map<String, Object> decompress(String payload) {
+    byte[] compressed = Base64.getDecoder().decode(payload);
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed), 65536)) {
+      String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      return new Json().toType(json, Json.MAP_TYPE);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  int size() {
+    return parents.size();
+  }
+
+  int id(int element) {
+    return ids == null ? -1 : (int) number(ids, element);
+  }
+
+  int parent(int element) {
+    return (int) number(parents, element);
+  }
+
+  String tagName(int element) {
+    return string(tagNames, element);
+  }
+
+  String name(int element) {
+    return string(names, element);
+  }
+
+  String textContent(int element) {
+    return string(textContents, element);
+  }
+
+  String display(int element) {
+    return string(displays, element);
+  }
+
+  double zIndex(int element) {
+    Object value = zIndices.get(element);
+    return value instanceof Number ? ((Number) value).doubleValue() : 0;
+  }
+
+  Rect rect(int element) {
+    int offset = element * RECT_SIZE;
+    return Rect.from(number(rects, offset), number(rects, offset + 1),
+                     number(rects, offset + 2), number(rects, offset + 3));
+  }
+
+  String overflowX(int element) {
+    return string(dimensions, element * DIMENSIONS_SIZE);
+  }
+
+  String overflowY(int element) {
+    return string(dimensions, element * DIMENSIONS_SIZE + 1);
+  }
+
+  /**
+   * @param index index of the dimension, in the order of getDimensionsTestar:
+   *              clientWidth, clientHeight, offsetWidth, offsetHeight, scrollWidth, scrollHeight,
+   *              scrollLeft, scrollTop, borderWidth and borderHeight
+   */
+  long dimension(int element, int index) {
+    return number(dimensions, element * DIMENSIONS_SIZE + 2 + index);
+  }
+
+  boolean flag(int element, int flag) {
+    return (number(flags, element) & flag) != 0;
+  }
+
+  Map<String, String> attributeMap(int element) {
+    int offset = attributeOffsets[element];
+    int count = (int) number(attributes, offset);
+    Map<String, String> attributeMap = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      attributeMap.put(string(attributes, offset + 1 + 2 * i), string(attributes, offset + 2 + 2 * i));
+    }
+    return attributeMap;
+  }
+
+  /**
+   * Decode the tree in one pass: every parent is created before its children.
+   */
+  WdRootElement buildRoot() {
+    WdElement[] elements = new WdElement[size()];
+    WdRootElement root = new WdRootElement(this);
+    elements[0] = root;
+    decode(1, elements.length, elements);
+    return root;
+  }
+
+  /**
+   * Apply an incremental capture to the tree of the previous capture.
+   * The previous tree is left untouched, as it still belongs to the previous state:
+   * its elements are copied, except for the changed subtrees, which are decoded.
+   * @return the patched tree, or null if the changes do not match the previous tree
+   */
+  WdRootElement patch(WdRootElement previous) {
+    // the start of every changed subtree, by the id of the element it replaces
+    Map<Integer, Integer> subtrees = new HashMap<>();
+    for (int i = 0; i < size(); i++) {
+      if (parent(i) == -1) {
+        subtrees.put(id(i), i);
+      }
+    }
+    if (previous == null || subtrees.containsKey(previous.domId)) {
+      return null;
+    }
+
+    WdElement[] elements = new WdElement[size()];
+    WdRootElement root = new WdRootElement(previous, this);
+    int nrOfPatchedSubtrees = 0;
+
+    Deque<WdElement[]> stack = new ArrayDeque<>();
+    stack.push(new WdElement[]{previous, root});
+    while (!stack.isEmpty()) {
+      WdElement[] copy = stack.pop();
+      for (WdElement child : copy[0].children) {
+        Integer start = subtrees.get(child.domId);
+        if (start != null) {
+          int end = start + 1;
+          while (end < size() && parent(end) != -1) {
+            end++;
+          }
+          elements[start] = new WdElement(this, start, null, copy[1]);
+          copy[1].children.add(elements[start]);
+          decode(start + 1, end, elements);
+          nrOfPatchedSubtrees++;
+        }
+        else {
+          WdElement childCopy = new WdElement(child, null, copy[1]);
+          copy[1].children.add(childCopy);
+          stack.push(new WdElement[]{child, childCopy});
+        }
+      }
+    }
+
+    return nrOfPatchedSubtrees == subtrees.size() ? root : null;
+  }
+
+  private void decode(int from, int to, WdElement[] elements) {
+    for (int i = from; i < to; i++) {
+      WdElement parent = elements[parent(i)];
+      // like the nested decoding, only the body refers to the root
+      WdElement element = new WdElement(this, i, null, parent);
+      elements[i] = element;
+      if (!Constants.hiddenTags.contains(element.tagName) &&
+          !Constants.ignoredTags.contains(element.tagName)) {
+        parent.children.add(element);
+      }
+    }
+  }
+
+  private String string(List<Object> column, int index) {
+    return (String) strings.get((int) number(column, index));
+  }
+
+  // the browser returns whole numbers as Long and others as Double, NaN becomes null
+  private static long number(List<Object> column, int index) {
+    Object value = column.get(index);
+    return value instanceof Number ? ((Number) value).longValue() : 0L;
+  }
+}
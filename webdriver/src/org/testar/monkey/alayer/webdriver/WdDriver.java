@@ -479,6 +479,21 @@ public class WdDriver extends SUTBase {
     }
   }
 
+  public static Object executeAsyncScript(String script, Object... args) {
+    try {
+      // Choose first or last tab, depending on user prefs
+      activate();
+
+      // Wait until document is ready for script
+      waitDocumentReady();
+
+      return remoteWebDriver.executeAsyncScript(script, args);
+    }
+    catch (NullPointerException | WebDriverException ignored) {
+      return null;
+    }
+  }
+
   public static void waitDocumentReady() {
     WebDriverWait wait = new WebDriverWait((WebDriver)remoteWebDriver, Duration.ofSeconds(60));
     ExpectedCondition<Boolean> documentReady = (WebDriver driver) -> {
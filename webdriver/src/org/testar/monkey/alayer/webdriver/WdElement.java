@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class WdElement extends TaggableBase implements Serializable {
   private static final long serialVersionUID = 2695983969893321255L;
@@ -47,6 +48,7 @@ public class WdElement extends TaggableBase implements Serializable {
       "block", "run-in", "flow", "flow-root", "table", "flex", "grid",
       "list-item", "table-row", "table-cell", "table-caption", "inline-block",
       "inline-table", "inline-flex", "inline-grid");
+  private static final Pattern whitespace = Pattern.compile("\\s+");
   private static final List<String> focusableTags = Arrays.asList(
       "input", "select", "textarea", "a", "button", "area");
 
@@ -87,6 +89,9 @@ public class WdElement extends TaggableBase implements Serializable {
 
   public transient Map<String, String> attributeMap;
 
+  // id of the DOM element over the captures of the page, -1 if unknown
+  int domId = -1;
+
   public WdElement(WdRootElement root, WdElement parent) {
 	  this.root = root;
 	  this.parent = parent;
@@ -109,24 +114,10 @@ public class WdElement extends TaggableBase implements Serializable {
     	throw e;
     }
     
-    id = attributeMap.getOrDefault("id", "");
-    name = attributeMap.getOrDefault("name", "");
     genericTitle = (String) packedElement.get("name");
     tagName = (String) packedElement.get("tagName");
-    textContent = ((String) packedElement.get("textContent")).replaceAll("\\s+", " ").trim();
-    title = attributeMap.getOrDefault("title","");
-    href = attributeMap.getOrDefault("href", "");
-    value = attributeMap.getOrDefault("value", "");
-    style = attributeMap.getOrDefault("style", "");
-    target = attributeMap.getOrDefault("target", "");
-    alt = attributeMap.getOrDefault("alt", "");
-    type = attributeMap.getOrDefault("type", "");
-    src = attributeMap.getOrDefault("src", "");
-
-    String classesString = attributeMap.getOrDefault("class", "");
-    if (classesString != null) {
-      cssClasses = Arrays.asList(classesString.split(" "));
-    }
+    textContent = whitespace.matcher((String) packedElement.get("textContent")).replaceAll(" ").trim();
+    fillAttributes();
     display = (String) packedElement.get("display");
 
     zindex = (double) (long) packedElement.get("zIndex");
@@ -141,10 +132,7 @@ public class WdElement extends TaggableBase implements Serializable {
     isKeyboardFocusable = getIsFocusable();
     hasKeyboardFocus = (Boolean) packedElement.get("hasKeyboardFocus");
 
-    enabled = !Constants.hiddenTags.contains(tagName);
-    if (display != null && display.toLowerCase().equals("none")) {
-      enabled = false;
-    }
+    fillEnabled();
 
     List<Map<String, Object>> wrappedChildren =
         (List<Map<String, Object>>) packedElement.get("wrappedChildren");
@@ -169,6 +157,113 @@ public class WdElement extends TaggableBase implements Serializable {
     }*/
   }
 
+  /**
+   * Create the element from a columnar tree, without its children.
+   * The children are added by WdColumnarTree, that creates the elements in document order.
+   */
+  WdElement(WdColumnarTree tree, int element, WdRootElement root, WdElement parent) {
+    this.root = root;
+    this.parent = parent;
+
+    domId = tree.id(element);
+    attributeMap = tree.attributeMap(element);
+    genericTitle = tree.name(element);
+    tagName = tree.tagName(element);
+    textContent = whitespace.matcher(tree.textContent(element)).replaceAll(" ").trim();
+    fillAttributes();
+    display = tree.display(element);
+
+    zindex = tree.zIndex(element);
+    rect = tree.rect(element);
+    overflowX = tree.overflowX(element);
+    overflowY = tree.overflowY(element);
+    clientWidth = tree.dimension(element, 0);
+    clientHeight = tree.dimension(element, 1);
+    offsetWidth = tree.dimension(element, 2);
+    offsetHeight = tree.dimension(element, 3);
+    scrollWidth = tree.dimension(element, 4);
+    scrollHeight = tree.dimension(element, 5);
+    scrollLeft = tree.dimension(element, 6);
+    scrollTop = tree.dimension(element, 7);
+    borderWidth = tree.dimension(element, 8);
+    borderHeight = tree.dimension(element, 9);
+
+    isFullVisibleOnScreen = isFullVisibleAtCanvasBrowser();
+
+    blocked = tree.flag(element, WdColumnarTree.FLAG_BLOCKED);
+    isClickable = tree.flag(element, WdColumnarTree.FLAG_CLICKABLE);
+    isShadow = (parent != null && parent.isShadow) || tree.flag(element, WdColumnarTree.FLAG_SHADOW);
+    isKeyboardFocusable = getIsFocusable();
+    hasKeyboardFocus = tree.flag(element, WdColumnarTree.FLAG_KEYBOARD_FOCUS);
+
+    fillEnabled();
+
+    setName();
+    fillScrollValues();
+  }
+
+  /**
+   * Copy an element of a previous capture, without its children.
+   */
+  WdElement(WdElement other, WdRootElement root, WdElement parent) {
+    this.root = root;
+    this.parent = parent;
+
+    domId = other.domId;
+    attributeMap = other.attributeMap;
+    blocked = other.blocked;
+    isModal = other.isModal;
+    id = other.id;
+    name = other.name;
+    genericTitle = other.genericTitle;
+    tagName = other.tagName;
+    textContent = other.textContent;
+    helpText = other.helpText;
+    title = other.title;
+    cssClasses = other.cssClasses;
+    display = other.display;
+    type = other.type;
+    enabled = other.enabled;
+    ignore = other.ignore;
+    isClickable = other.isClickable;
+    isShadow = other.isShadow;
+    isContentElement = other.isContentElement;
+    isControlElement = other.isControlElement;
+    hasKeyboardFocus = other.hasKeyboardFocus;
+    isKeyboardFocusable = other.isKeyboardFocusable;
+    acceleratorKey = other.acceleratorKey;
+    accessKey = other.accessKey;
+    valuePattern = other.valuePattern;
+    href = other.href;
+    value = other.value;
+    style = other.style;
+    target = other.target;
+    alt = other.alt;
+    src = other.src;
+    zindex = other.zindex;
+    rect = other.rect;
+    scrollPattern = other.scrollPattern;
+    hScroll = other.hScroll;
+    vScroll = other.vScroll;
+    hScrollViewSize = other.hScrollViewSize;
+    vScrollViewSize = other.vScrollViewSize;
+    hScrollPercent = other.hScrollPercent;
+    vScrollPercent = other.vScrollPercent;
+    isFullVisibleOnScreen = other.isFullVisibleOnScreen;
+    overflowX = other.overflowX;
+    overflowY = other.overflowY;
+    clientWidth = other.clientWidth;
+    clientHeight = other.clientHeight;
+    offsetWidth = other.offsetWidth;
+    offsetHeight = other.offsetHeight;
+    scrollWidth = other.scrollWidth;
+    scrollHeight = other.scrollHeight;
+    scrollLeft = other.scrollLeft;
+    scrollTop = other.scrollTop;
+    borderWidth = other.borderWidth;
+    borderHeight = other.borderHeight;
+  }
+
   private void writeObject(ObjectOutputStream oos) throws IOException {
     oos.defaultWriteObject();
   }
@@ -207,6 +302,31 @@ public class WdElement extends TaggableBase implements Serializable {
 	  return String.join(",", cssClasses);
   }
 
+  private void fillAttributes() {
+    id = attributeMap.getOrDefault("id", "");
+    name = attributeMap.getOrDefault("name", "");
+    title = attributeMap.getOrDefault("title","");
+    href = attributeMap.getOrDefault("href", "");
+    value = attributeMap.getOrDefault("value", "");
+    style = attributeMap.getOrDefault("style", "");
+    target = attributeMap.getOrDefault("target", "");
+    alt = attributeMap.getOrDefault("alt", "");
+    type = attributeMap.getOrDefault("type", "");
+    src = attributeMap.getOrDefault("src", "");
+
+    String classesString = attributeMap.getOrDefault("class", "");
+    if (classesString != null) {
+      cssClasses = Arrays.asList(classesString.split(" "));
+    }
+  }
+
+  private void fillEnabled() {
+    enabled = !Constants.hiddenTags.contains(tagName);
+    if (display != null && display.toLowerCase().equals("none")) {
+      enabled = false;
+    }
+  }
+
   private void setName() {
     if (name == null || name.equals("null") || name.isEmpty()) {
       name = textContent;
@@ -61,6 +61,27 @@ public class WdRootElement extends WdElement {
     blocked = false;
   }
 
+  WdRootElement(WdColumnarTree tree) {
+    super(tree, 0, null, null);
+    root = this;
+    parent = this;
+    isForeground = tree.documentHasFocus;
+    documentTitle = tree.documentTitle;
+    blocked = false;
+  }
+
+  /**
+   * Copy the root of a previous capture, with the document properties of an incremental capture.
+   */
+  WdRootElement(WdRootElement other, WdColumnarTree tree) {
+    super(other, null, null);
+    root = this;
+    parent = this;
+    isForeground = tree.documentHasFocus;
+    documentTitle = tree.documentTitle;
+    blocked = false;
+  }
+
   public WdElement at(double x, double y) {
     throw new UnsupportedOperationException();
   }
@@ -76,8 +97,9 @@ public class WdRootElement extends WdElement {
     vScrollViewSize = 100.0 * clientHeight / scrollHeight;
 
     // TESTAR script function that compares document body height with browser height
-    if (WdDriver.executeScript("return isPageVerticalScrollable()") instanceof Boolean) {
-      vScroll = (Boolean)WdDriver.executeScript("return isPageVerticalScrollable()");
+    Object verticalScrollable = WdDriver.executeScript("return isPageVerticalScrollable()");
+    if (verticalScrollable instanceof Boolean) {
+      vScroll = (Boolean) verticalScrollable;
       vScrollViewSize = 100.0 * rect.height() / clientHeight;
     }
 
@@ -89,8 +111,9 @@ public class WdRootElement extends WdElement {
     hScrollViewSize = 100.0 * clientWidth / scrollWidth;
 
     // TESTAR script function that compares document body width with browser width
-    if (WdDriver.executeScript("return isPageHorizontalScrollable()") instanceof Boolean) {
-      hScroll = (Boolean) WdDriver.executeScript("return isPageHorizontalScrollable()");
+    Object horizontalScrollable = WdDriver.executeScript("return isPageHorizontalScrollable()");
+    if (horizontalScrollable instanceof Boolean) {
+      hScroll = (Boolean) horizontalScrollable;
       hScrollViewSize = 100.0 * rect.width() / clientWidth;
     }
 
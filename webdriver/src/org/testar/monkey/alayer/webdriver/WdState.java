@@ -38,34 +38,43 @@ import org.testar.monkey.alayer.webdriver.enums.WdRoles;
 import org.testar.monkey.alayer.webdriver.enums.WdTags;
 import org.testar.monkey.alayer.*;
 
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.List;
 
 public final class WdState extends WdWidget implements State {
 	private static final long serialVersionUID = 661696260972010052L;
 
+	// the tags defined in Tags and WdTags
+	private static final TagDomain TAG_DOMAIN = new TagDomain(Tags.tagSet(), WdTags.tagSet());
+
 	public WdState(WdElement root) {
 		super(null, null, root);
 		this.root = this;
 	}
 
+	// the flattened widget tree, until the tree changes
+	private transient volatile WidgetArray widgets;
+
 	public Iterator<Widget> iterator() {
-		Iterator<Widget> iterator = new WidgetIterator(this);
+		return widgets().iterator();
+	}
 
-		// If root element is null, disable iterating
-		if (this.element == null) {
-			iterator.next();
+	@Override
+	public WidgetArray widgets() {
+		WidgetArray ret = widgets;
+		if (ret == null) {
+			// If root element is null, disable iterating
+			ret = this.element == null ? WidgetArray.EMPTY : WidgetArray.of(this);
+			widgets = ret;
 		}
-
-		return iterator;
+		return ret;
 	}
 
 	public void remove(WdWidget w) {
 		Assert.isTrue(this != w, "You cannot remove the root!");
 		assert (w.parent != null);
 		w.parent.children.remove(w);
+		widgets = null;
 		invalidate(w);
 	}
 
@@ -92,6 +101,7 @@ public final class WdState extends WdWidget implements State {
 		w.parent.children.remove(w);
 		webParent.children.add(idx, w);
 		w.parent = webParent;
+		widgets = null;
 	}
 
 	WdWidget addChild(WdWidget parent, WdElement element) {
@@ -101,6 +111,7 @@ public final class WdState extends WdWidget implements State {
 
 	void connect(WdWidget parent, WdWidget child) {
 		parent.children.add(child);
+		widgets = null;
 	}
 
 	public <T> T get(WdWidget w, Tag<T> t) {
@@ -129,6 +140,8 @@ public final class WdState extends WdWidget implements State {
 			return defaultValue;
 		}
 
+		TagFetchCounter.count(t);
+
 		if (t.equals(Tags.Desc)) {
 			ret = w.element.getElementDescription();
 		}
@@ -314,6 +327,10 @@ public final class WdState extends WdWidget implements State {
 
 	@SuppressWarnings("unchecked")
 	public <T> T cacheTag(WdWidget w, Tag<T> t, Object value) {
+		// the listed tags already account for the tags of the domain
+		if (!w.tags.containsKey(t) && !TAG_DOMAIN.contains(t)) {
+			w.listedTags = null;
+		}
 		w.tags.put(t, value);
 		return (T) value;
 	}
@@ -321,11 +338,13 @@ public final class WdState extends WdWidget implements State {
 	public <T> void setTag(WdWidget w, Tag<T> t, T value) {
 		Assert.notNull(value);
 		w.tags.put(t, value);
+		w.listedTags = null;
 	}
 
 	public <T> void remove(WdWidget w, Tag<T> t) {
 		Assert.notNull(w, t);
 		w.tags.put(t, null);
+		w.listedTags = null;
 	}
 
 	public WdWidget getChild(WdWidget w, int idx) {
@@ -340,54 +359,18 @@ public final class WdState extends WdWidget implements State {
 		return w.parent;
 	}
 
-	Iterable<Tag<?>> tags(final WdWidget w) {
-		Assert.notNull(w);
-
-		// compile a query set
-		final Set<Tag<?>> queryTags = new HashSet<Tag<?>>();
-		queryTags.addAll(tags.keySet());
-		queryTags.addAll(Tags.tagSet());
-		queryTags.addAll(WdTags.tagSet());
-
-		Iterable<Tag<?>> ret = new Iterable<Tag<?>>() {
-			public Iterator<Tag<?>> iterator() {
-				return new Iterator<Tag<?>>() {
-					Iterator<Tag<?>> i = queryTags.iterator();
-					WdWidget target = w;
-					Tag<?> next;
-
-					private Tag<?> fetchNext() {
-						if (next == null) {
-							while (i.hasNext()) {
-								next = i.next();
-								if (target.get(next, null) != null) {
-									return next;
-								}
-							}
-							next = null;
-						}
-						return next;
-					}
-
-					public boolean hasNext() {
-						return fetchNext() != null;
-					}
-
-					public Tag<?> next() {
-						Tag<?> ret = fetchNext();
-						if (ret == null) {
-							throw new NoSuchElementException();
-						}
-						next = null;
-						return ret;
-					}
-
-					public void remove() {
-						throw new UnsupportedOperationException();
-					}
-				};
+	@SuppressWarnings("unchecked")
+	Iterable<Tag<?>> tags(final WdWidget w, Tag.Cost maxCost) {
+		Assert.notNull(w, maxCost);
+		List<Tag<?>> ret = w.listedTags == null ? null : w.listedTags[maxCost.ordinal()];
+		if (ret == null) {
+			ret = TAG_DOMAIN.list(w, w.tags, maxCost);
+			// listing may have cached a new tag and dropped the listed tags
+			if (w.listedTags == null) {
+				w.listedTags = new List[Tag.Cost.values().length];
 			}
-		};
+			w.listedTags[maxCost.ordinal()] = ret;
+		}
 		return ret;
 	}
 
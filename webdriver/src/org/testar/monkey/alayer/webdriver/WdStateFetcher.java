@@ -37,38 +37,61 @@ import org.testar.monkey.alayer.Tags;
 import org.testar.monkey.alayer.Widget;
 import org.testar.monkey.alayer.exceptions.StateBuildException;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
 
 public class WdStateFetcher implements Callable<WdState> {
+  // Let the browser gzip the widget tree before it is transferred, set by the CompressStateTransfer setting
+  public static boolean compressStateTransfer = false;
+  // Only capture the parts of the page that changed since the previous state, set by the IncrementalCapture setting
+  public static boolean incrementalCapture = false;
+  // Number of incremental captures after which the whole page is captured again, set by the FullCaptureInterval setting
+  public static int fullCaptureInterval = 10;
+
+  // The previous capture, the incremental captures are applied to
+  private static WdRootElement previousRoot;
+  private static String previousSince;
+  private static int capturesSinceFullCapture;
+
   private final SUT system;
 
   public WdStateFetcher(SUT system) {
     this.system = system;
   }
 
-  @SuppressWarnings("unchecked")
   public static WdRootElement buildRoot(SUT system) throws StateBuildException {
-    Object result = WdDriver.executeScript(
-        "return getStateTreeTestar(arguments[0])", Constants.ignoredTags);
-
-    // TODO As Edge limits its recursion to 20, we need to flatten the tree in JS
-    // And unflatten the list here into a nested Map (as produced by Chrome / FF)
-    // https://developer.microsoft.com/en-us/microsoft-edge/platform/issues/18531786/
-    Map<String, Object> packedBody;
-    if (result instanceof List) {
-      packedBody = unflattenTree((List<Map<String, Object>>) result);
+    // Only ask for the changes since the previous capture when incremental capture is enabled,
+    // with a full capture every fullCaptureInterval states as a safety net
+    String since = null;
+    if (incrementalCapture && previousRoot != null && capturesSinceFullCapture < fullCaptureInterval) {
+      since = previousSince;
     }
-    else if (result instanceof Map) {
-      packedBody = (Map<String, Object>) result;
+
+    WdColumnarTree tree = WdColumnarTree.from(fetchColumns(since));
+    WdRootElement wdRoot = null;
+    if (tree != null && !tree.full) {
+      wdRoot = tree.patch(previousRoot);
+      if (wdRoot == null) {
+        // The changes do not match the previous capture
+        tree = WdColumnarTree.from(fetchColumns(null));
+      }
     }
-    else {
+    if (tree == null) {
+      previousRoot = null;
     	return emptyRootState(system);
     }
+    if (wdRoot == null) {
+      wdRoot = tree.buildRoot();
+      capturesSinceFullCapture = 0;
+    }
+    else {
+      capturesSinceFullCapture++;
+    }
+
+    if (incrementalCapture) {
+      previousRoot = wdRoot;
+      previousSince = tree.since;
+    }
 
-    WdRootElement wdRoot = new WdRootElement(packedBody);
     wdRoot.isRunning = system.isRunning();
     wdRoot.timeStamp = System.currentTimeMillis();
     wdRoot.hasStandardKeyboard = system.get(Tags.StandardKeyboard, null) != null;
@@ -78,6 +101,14 @@ public class WdStateFetcher implements Callable<WdState> {
     return wdRoot;
   }
 
+  private static Object fetchColumns(String since) {
+    // The tree is transferred in a columnar format, that is decoded in one pass
+    // Optionally the browser gzips it, this makes the transfer asynchronous
+    return compressStateTransfer
+        ? WdDriver.executeAsyncScript("getStateColumnsCompressedTestar(arguments[0], arguments[1], arguments[2])", Constants.ignoredTags, since)
+        : WdDriver.executeScript("return getStateColumnsTestar(arguments[0], arguments[1])", Constants.ignoredTags, since);
+  }
+
   /**
    * Create and return an empty state
    */
@@ -91,31 +122,6 @@ public class WdStateFetcher implements Callable<WdState> {
 	  return emptyRootState;
   }
 
-  @SuppressWarnings("unchecked")
-  private static Map<String, Object> unflattenTree(List<Map<String, Object>> flatTree) {
-    for (int idx = flatTree.size() - 1; idx > 0; idx--) {
-      Map<String, Object> node = flatTree.remove(idx);
-
-      Long parentId = (Long) node.get("parentId");
-      Map<String, Object> parent = getParent(parentId.intValue(), flatTree);
-      List<Map<String, Object>> wrappedChildren = (List<Map<String, Object>>) parent.get("wrappedChildren");
-      wrappedChildren.add(node);
-    }
-
-    return flatTree.get(0);
-  }
-
-  private static Map<String, Object> getParent(int parentId,
-                                               List<Map<String, Object>> flatTree) {
-    Map<String, Object> parent = flatTree.remove(parentId);
-    Map<String, Object> newParent = new HashMap<>();
-    for (String key : parent.keySet()) {
-      newParent.put(key, parent.get(key));
-    }
-    flatTree.add(parentId, newParent);
-    return newParent;
-  }
-
   public WdState call() {
     WdRootElement rootElement = buildRoot(system);
 
@@ -47,6 +47,8 @@ public class WdWidget implements Widget, Serializable {
   WdState root;
   WdWidget parent;
   Map<Tag<?>, Object> tags = new HashMap<>();
+  // per cost, the tags listed by tags(Tag.Cost), until a tag is set or removed
+  transient List<Tag<?>>[] listedTags;
   List<WdWidget> children = new ArrayList<>();
   public WdElement element;
 
@@ -105,7 +107,11 @@ public class WdWidget implements Widget, Serializable {
   }
 
   public final Iterable<Tag<?>> tags() {
-    return root.tags(this);
+    return root.tags(this, Tag.Cost.CHEAP);
+  }
+
+  public final Iterable<Tag<?>> tags(Tag.Cost maxCost) {
+    return root.tags(this, maxCost);
   }
 
   public final void remove(Tag<?> tag) {
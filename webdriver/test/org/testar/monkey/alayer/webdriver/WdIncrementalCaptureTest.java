@@ -0,0 +1,187 @@
+package org.testar.monkey.alayer.webdriver;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assume;
+import org.junit.Test;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test to validate that patching the previous widget tree with an incremental capture
+ * gives the same tree as a full capture.
+ */
+public class WdIncrementalCaptureTest {
+
+   private static final String FIXTURE = "test/org/testar/monkey/alayer/webdriver/incremental_capture_fixture.html";
+   private static final String EXTENSION = "resources/web-extension";
+
+   /**
+    * Columns in the format of getStateColumnsTestar, for elements without attributes or dimensions.
+    */
+   private static Map<String, Object> columns(boolean full, long[] ids, long[] parents, String[] tagNames, String[] texts) {
+      List<Object> strings = new ArrayList<>();
+      Map<String, Object> columns = new HashMap<>();
+      columns.put("full", full);
+      columns.put("since", "session:1");
+      columns.put("documentHasFocus", true);
+      columns.put("documentTitle", "title");
+      columns.put("strings", strings);
+      String[] names = {"id", "parent", "tagName", "name", "textContent", "display", "zIndex", "rect", "dimensions", "flags", "attributes"};
+      for (String name : names) {
+         columns.put(name, new ArrayList<>());
+      }
+      strings.add("");
+      for (int i = 0; i < ids.length; i++) {
+         add(columns, "id", ids[i]);
+         add(columns, "parent", parents[i]);
+         strings.add(tagNames[i]);
+         add(columns, "tagName", (long) strings.size() - 1);
+         add(columns, "name", 0L);
+         strings.add(texts[i]);
+         add(columns, "textContent", (long) strings.size() - 1);
+         add(columns, "display", 0L);
+         add(columns, "zIndex", 0L);
+         for (int j = 0; j < 4; j++) {
+            add(columns, "rect", 10L * i);
+         }
+         add(columns, "dimensions", 0L);
+         add(columns, "dimensions", 0L);
+         for (int j = 0; j < 10; j++) {
+            add(columns, "dimensions", 1L);
+         }
+         add(columns, "flags", 0L);
+         add(columns, "attributes", 0L);
+      }
+      return columns;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static void add(Map<String, Object> columns, String column, Object value) {
+      ((List<Object>) columns.get(column)).add(value);
+   }
+
+   private static String dump(WdElement root) {
+      StringBuilder dump = new StringBuilder();
+      Deque<WdElement> stack = new ArrayDeque<>();
+      stack.push(root);
+      while (!stack.isEmpty()) {
+         WdElement element = stack.pop();
+         dump.append(element.domId).append(' ')
+             .append(element.parent == null || element.parent == element ? -1 : element.parent.domId).append(' ')
+             .append(element.tagName).append(' ').append(element.name).append(' ').append(element.textContent).append(' ')
+             .append(element.rect).append(' ').append(element.display).append(' ').append(element.zindex).append(' ')
+             .append(element.blocked).append(' ').append(element.isClickable).append(' ').append(element.hasKeyboardFocus).append(' ')
+             .append(element.enabled).append(' ').append(element.hScroll).append(' ').append(element.vScroll).append(' ')
+             .append(new TreeMap<>(element.attributeMap)).append('\n');
+         for (int i = element.children.size() - 1; i >= 0; i--) {
+            stack.push(element.children.get(i));
+         }
+      }
+      return dump.toString();
+   }
+
+   @Test
+   public void patchReplacesOnlyTheChangedSubtrees() {
+      WdRootElement previous = WdColumnarTree.from(columns(true,
+         new long[]{0, 1, 2, 3, 4},
+         new long[]{-1, 0, 1, 1, 0},
+         new String[]{"body", "div", "span", "span", "p"},
+         new String[]{"", "", "first", "second", "third"})).buildRoot();
+      String previousDump = dump(previous);
+
+      WdColumnarTree changes = WdColumnarTree.from(columns(false,
+         new long[]{3, 5},
+         new long[]{-1, 0},
+         new String[]{"span", "b"},
+         new String[]{"changed", "new"}));
+      WdRootElement patched = changes.patch(previous);
+
+      assertNotNull(patched);
+      assertEquals("The previous tree belongs to the previous state", previousDump, dump(previous));
+      WdElement div = patched.children.get(0);
+      assertNotSame(previous.children.get(0), div);
+      assertEquals("first", div.children.get(0).textContent);
+      assertEquals("changed", div.children.get(1).textContent);
+      assertEquals("new", div.children.get(1).children.get(0).textContent);
+      assertSame(div, div.children.get(1).parent);
+      assertEquals("third", patched.children.get(1).textContent);
+
+      WdColumnarTree unknown = WdColumnarTree.from(columns(false,
+         new long[]{42}, new long[]{-1}, new String[]{"span"}, new String[]{""}));
+      assertNull("Changes to elements that are not in the tree cannot be applied", unknown.patch(previous));
+
+      WdColumnarTree body = WdColumnarTree.from(columns(false,
+         new long[]{0}, new long[]{-1}, new String[]{"body"}, new String[]{""}));
+      assertNull("The body is only captured in full", body.patch(previous));
+   }
+
+   /**
+    * Load a static fixture, served by an embedded server, in Chrome with the TESTAR extension.
+    * Skipped when Chrome or its driver is not available.
+    */
+   @Test
+   public void incrementalCaptureMatchesFullCapture() throws Exception {
+      byte[] fixture = Files.readAllBytes(new File(FIXTURE).toPath());
+      HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/", exchange -> {
+         exchange.getResponseHeaders().add("Content-Type", "text/html");
+         exchange.sendResponseHeaders(200, fixture.length);
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(fixture);
+         }
+      });
+      server.start();
+
+      RemoteWebDriver driver = null;
+      try {
+         ChromeOptions options = new ChromeOptions();
+         options.addArguments("--headless=new", "--load-extension=" + new File(EXTENSION).getAbsolutePath());
+         try {
+            driver = new ChromeDriver(options);
+         }
+         catch (Exception e) {
+            Assume.assumeNoException("Chrome is not available", e);
+         }
+
+         driver.get("http://localhost:" + server.getAddress().getPort() + "/");
+         for (int i = 0; i < 50 && !Boolean.TRUE.equals(driver.executeScript("return typeof getStateColumnsTestar === 'function'")); i++) {
+            Thread.sleep(100);
+         }
+
+         String script = "return getStateColumnsTestar(arguments[0], arguments[1])";
+         WdColumnarTree first = WdColumnarTree.from(driver.executeScript(script, Constants.ignoredTags, null));
+         WdRootElement previous = first.buildRoot();
+
+         // changes that keep the layout of their surroundings
+         driver.executeScript(
+            "document.querySelector('#s3 h2').textContent = 'Section three';" +
+            "document.getElementById('i5_5').setAttribute('data-state', 'visited');" +
+            "document.getElementById('name').setAttribute('value', 'TESTAR');" +
+            "document.querySelector('#i7_2 a').addEventListener('click', function () {});");
+
+         WdColumnarTree changes = WdColumnarTree.from(driver.executeScript(script, Constants.ignoredTags, first.since));
+         assertFalse("Only the changed subtrees should be captured", changes.full);
+         assertTrue(changes.size() < first.size() / 2);
+         WdRootElement patched = changes.patch(previous);
+         assertNotNull(patched);
+
+         WdRootElement full = WdColumnarTree.from(driver.executeScript(script, Constants.ignoredTags, null)).buildRoot();
+         assertEquals(dump(full), dump(patched));
+      }
+      finally {
+         if (driver != null) {
+            driver.quit();
+         }
+         server.stop(0);
+      }
+   }
+}
@@ -40,10 +40,13 @@ import java.util.List;
 
 import org.testar.monkey.Assert;
 import org.testar.monkey.alayer.Rect;
+import org.testar.monkey.alayer.SpatialIndex;
 
 public final class ElementMap implements Serializable {
 	private static final long serialVersionUID = 8336577831205889395L;
 	final List<UIAElement> elements;
+	// the elements from the top down, for the hit tests. It is not serialized, but built again when it is needed
+	private transient volatile SpatialIndex<UIAElement> index;
 
 	private static class ElementComp implements Comparator<UIAElement>{
 		final static int WORSE = 1, BETTER = -1, EVEN = 0;
@@ -89,23 +92,33 @@ public final class ElementMap implements Serializable {
 
 	private ElementMap(Builder builder){
 		this.elements = builder.elements;
+		this.index = buildIndex(elements);
 	}
 
-	public UIAElement at(double x, double y){
-		for(UIAElement element : elements){
-			if(element.rect.contains(x, y))
-				return element;
+	private static SpatialIndex<UIAElement> buildIndex(List<UIAElement> elements){
+		SpatialIndex.Builder<UIAElement> indexBuilder = SpatialIndex.newBuilder();
+		for(UIAElement element : elements)
+			indexBuilder.add(element, element.rect);
+		return indexBuilder.build();
+	}
+
+	// a deserialized map has no index yet
+	private SpatialIndex<UIAElement> index(){
+		SpatialIndex<UIAElement> current = index;
+		if(current == null){
+			current = buildIndex(elements);
+			index = current;
 		}
-		return null;
+		return current;
+	}
+
+	public UIAElement at(double x, double y){
+		return index().at(x, y);
 	}
 
 	public boolean obstructed(UIAElement element, double x, double y){
-		for(UIAElement obstacle : elements){
-			if(obstacle.zindex <= element.zindex || obstacle == element)
-				break;
-			if(obstacle.rect.contains(x, y))
-				return true;
-		}
-		return false;
+		// the elements are sorted by z-index, so the topmost element at the point has the highest z-index
+		UIAElement obstacle = index().at(x, y);
+		return obstacle != null && obstacle != element && obstacle.zindex > element.zindex;
 	}
 }
@@ -61,6 +61,9 @@ public class StateFetcher implements Callable<UIAState>{
 	
 	private static Pattern sutProcessesMatcher;
 
+	// the tree of the last fetched state, its automation elements are released when the next state is fetched
+	private static UIARootElement lastRoot;
+
 	private List<Map<String , String>> mappedValues;
 
 	
@@ -98,6 +101,7 @@ public class StateFetcher implements Callable<UIAState>{
 		// first build the UIAElement skeleton.
 		// this means fetching information from the Windows Automation API about all the elements in the Automation Tree
 		UIARootElement uiaRoot = buildSkeleton(system);
+		replaceLastRoot(uiaRoot);
 //		writeToCSV(mappedValues);
 
 		// next we use the created Automation tree, with the uiaRoot as its base, to create the Testar widget tree
@@ -115,6 +119,16 @@ public class StateFetcher implements Callable<UIAState>{
 		return root;
 	}
 	
+	/**
+	 * Releases the automation elements of the previous state, whose lazy properties can no longer be read.
+	 * @param uiaRoot The tree of the state that was fetched, or null when the state builder is released.
+	 */
+	static synchronized void replaceLastRoot(UIARootElement uiaRoot){
+		if (lastRoot != null)
+			lastRoot.releaseElements();
+		lastRoot = uiaRoot;
+	}
+
 	/**
 	 * Checks whether a window conforms to the SUT.
 	 * @param hwnd A window.
@@ -436,44 +450,11 @@ public class StateFetcher implements Callable<UIAState>{
 		uiaElement.set(UIATags.UIAItemType, Windows.IUIAutomationElement_get_ItemType(uiaCachePointer, true));
 //		System.out.println("Item type: " + uiaElement.get(UIATags.UIAItemType));
 		uiaElement.set(UIATags.UIAItemStatus, Windows.IUIAutomationElement_get_ItemStatus(uiaCachePointer, true));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_FullDescriptionPropertyId, true);
-		uiaElement.set(UIATags.UIAFullDescription, obj instanceof String ? (String)obj : "");
-//		System.out.println(uiaElement.get(UIATags.UIAFullDescription));
 		uiaElement.set(UIATags.UIACulture, Windows.IUIAutomationElement_get_Culture(uiaCachePointer, true));
 		uiaElement.set(UIATags.UIAProcessId, Windows.IUIAutomationElement_get_ProcessId(uiaCachePointer, true));
 		uiaElement.set(UIATags.UIAIsOffscreen, Windows.IUIAutomationElement_get_IsOffscreen(uiaCachePointer, true));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_AriaPropertiesPropertyId, true);
-		uiaElement.set(UIATags.UIAAriaProperties, obj instanceof String ? (String)obj : "");
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_AriaRolePropertyId, true);
-		uiaElement.set(UIATags.UIAAriaRole, obj instanceof String ? (String) obj : "");
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_IsDataValidForFormPropertyId, true);
-		uiaElement.set(UIATags.UIAIsDataValidForForm, obj instanceof Boolean && ((Boolean) obj));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_IsDialogPropertyId, true);
-		uiaElement.set(UIATags.UIAIsDialog, obj instanceof Boolean && ((Boolean) obj));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_IsPasswordPropertyId, true);
-		uiaElement.set(UIATags.UIAIsPassword, obj instanceof Boolean && ((Boolean) obj));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_IsPeripheralPropertyId, true);
-		uiaElement.set(UIATags.UIAIsPeripheral, obj instanceof Boolean && ((Boolean) obj));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_IsRequiredForFormPropertyId, true);
-		uiaElement.set(UIATags.UIAIsRequiredForForm, obj instanceof Boolean && ((Boolean) obj));
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_LabeledByPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIALabeledBy, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_LandmarkTypePropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIALandmarkType, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_LocalizedLandmarkTypePropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIALocalizedLandmarkType, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_LevelPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIALevel, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_LiveSettingPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIALiveSetting, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_PositionInSetPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIAPositionInSet, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_SizeOfSetPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIASizeOfSet, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_RotationPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIARotation, obj, uiaElement);
-		obj = Windows.IUIAutomationElement_GetCurrentPropertyValue(uiaCachePointer, Windows.UIA_VisualEffectsPropertyId, true);
-		setObjectValueIfNotNull(UIATags.UIAVisualEffects, obj, uiaElement);
+		// the properties that are rarely used are read from the automation element when they are requested
+		parent.root.retain(uiaElement, uiaCachePointer);
 
 
 
@@ -652,13 +633,6 @@ public class StateFetcher implements Callable<UIAState>{
 			createWidgetTree(w, child);
 	}
 
-	@SuppressWarnings("unchecked")
-	private <T> void setObjectValueIfNotNull(Tag<T> tag, Object object, UIAElement uiaElement) {
-		if (object != null) {
-			uiaElement.set(tag, (T) object);
-		}
-	}
-
 	@SuppressWarnings("unchecked")
 	private <T> void setConvertedObjectValue(Tag<T> tag, Object object, UIAElement uiaElement) {
 		Stream<Tag<?>> tagsToWatch = Stream.of(
@@ -34,6 +34,7 @@
 package org.testar.monkey.alayer.windows;
 
 import org.testar.monkey.alayer.Rect;
+import org.testar.monkey.alayer.Tag;
 import org.testar.monkey.alayer.TaggableBase;
 
 import java.io.IOException;
@@ -63,6 +64,9 @@ class UIAElement extends TaggableBase implements Serializable {
 	double zindex,
 		hScrollViewSize, vScrollViewSize, hScrollPercent, vScrollPercent; // by urueda
 
+	// the automation element this element was fetched from, 0 once it has been released
+	transient long uiaPointer;
+
 	public UIAElement(){ this(null); }
 
 	public UIAElement(UIAElement parent){
@@ -72,6 +76,14 @@ class UIAElement extends TaggableBase implements Serializable {
 		enabled = true;
 	}
 
+	/**
+	 * Reads the properties that are not part of the cache request from the automation element, when they are requested.
+	 */
+	@Override
+	protected <T> T fetch(Tag<T> tag){
+		return root == null ? null : root.readProperty(this, tag);
+	}
+
 	private void writeObject(ObjectOutputStream oos) throws IOException{
 		oos.defaultWriteObject();
 	}
@@ -36,9 +36,13 @@ package org.testar.monkey.alayer.windows;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.testar.monkey.Util;
+import org.testar.monkey.alayer.Tag;
 
 final class UIARootElement extends UIAElement {
 	private static final long serialVersionUID = -2561441199642411403L;
@@ -47,6 +51,31 @@ final class UIARootElement extends UIAElement {
 	transient Map<Long, UIAElement> windowHandleMap;
 	ElementMap elementMap;
 
+	// the properties that are not part of the cache request, they are read when they are requested
+	private static final Map<Tag<?>, Long> LAZY_PROPERTIES = new HashMap<>();
+	static {
+		LAZY_PROPERTIES.put(UIATags.UIAFullDescription, Windows.UIA_FullDescriptionPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAAriaProperties, Windows.UIA_AriaPropertiesPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAAriaRole, Windows.UIA_AriaRolePropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAIsDataValidForForm, Windows.UIA_IsDataValidForFormPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAIsDialog, Windows.UIA_IsDialogPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAIsPassword, Windows.UIA_IsPasswordPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAIsPeripheral, Windows.UIA_IsPeripheralPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAIsRequiredForForm, Windows.UIA_IsRequiredForFormPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIALabeledBy, Windows.UIA_LabeledByPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIALandmarkType, Windows.UIA_LandmarkTypePropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIALocalizedLandmarkType, Windows.UIA_LocalizedLandmarkTypePropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIALevel, Windows.UIA_LevelPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIALiveSetting, Windows.UIA_LiveSettingPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAPositionInSet, Windows.UIA_PositionInSetPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIASizeOfSet, Windows.UIA_SizeOfSetPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIARotation, Windows.UIA_RotationPropertyId);
+		LAZY_PROPERTIES.put(UIATags.UIAVisualEffects, Windows.UIA_VisualEffectsPropertyId);
+	}
+
+	// the automation elements of the tree, kept until the next state is fetched to read the lazy properties
+	private transient List<UIAElement> retainedElements = new ArrayList<>();
+
 	public UIARootElement(){
 		super(null);
 		root = this;
@@ -55,6 +84,51 @@ final class UIARootElement extends UIAElement {
 		isForeground = false; // by urueda
 	}
 
+	/**
+	 * Keeps a reference to the automation element an element of this tree was fetched from.
+	 */
+	synchronized void retain(UIAElement element, long uiaPointer){
+		Windows.IUnknown_AddRef(uiaPointer);
+		element.uiaPointer = uiaPointer;
+		retainedElements.add(element);
+	}
+
+	/**
+	 * Releases the automation elements of this tree. The lazy properties that were not read by then stay unknown.
+	 */
+	synchronized void releaseElements(){
+		if(retainedElements == null)
+			return;
+		for(UIAElement element : retainedElements){
+			Windows.IUnknown_Release(element.uiaPointer);
+			element.uiaPointer = 0;
+		}
+		retainedElements.clear();
+	}
+
+	/**
+	 * Reads a lazy property of an element of this tree from its automation element.
+	 * @return the value, or null if the tag is not a lazy property or the automation element has been released
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T readProperty(UIAElement element, Tag<T> tag){
+		Long propertyId = LAZY_PROPERTIES.get(tag);
+		if(propertyId == null)
+			return null;
+		Object value;
+		synchronized(this){
+			if(element.uiaPointer == 0)
+				return null;
+			value = Windows.IUIAutomationElement_GetCurrentPropertyValue(element.uiaPointer, propertyId, false);
+		}
+		// as the bulk fetch did, missing text and flags are empty and false
+		if(tag.type() == String.class)
+			return (T) (value instanceof String ? value : "");
+		if(tag.type() == Boolean.class)
+			return (T) (value instanceof Boolean ? value : Boolean.FALSE);
+		return tag.type().isInstance(value) ? (T) value : null;
+	}
+
 	public UIAElement at(double x, double y){
 		throw new UnsupportedOperationException();
 	}
@@ -36,34 +36,51 @@ package org.testar.monkey.alayer.windows;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.List;
 
 import org.testar.monkey.Assert;
 import org.testar.monkey.Util;
 import org.testar.monkey.alayer.State;
 import org.testar.monkey.alayer.Tag;
+import org.testar.monkey.alayer.TagDomain;
+import org.testar.monkey.alayer.TagFetchCounter;
 import org.testar.monkey.alayer.Tags;
 import org.testar.monkey.alayer.Widget;
-import org.testar.monkey.alayer.WidgetIterator;
+import org.testar.monkey.alayer.WidgetArray;
 import org.testar.monkey.alayer.exceptions.NoSuchTagException;
 
 final class UIAState extends UIAWidget implements State {
 	private static final long serialVersionUID = 7823095941981151363L;
 
+	// the tags defined in Tags and UIATags
+	private static final TagDomain TAG_DOMAIN = new TagDomain(Tags.tagSet(), UIATags.tagSet());
+
 	public UIAState(UIAElement root){
 		super(null, null, root);
 		this.root = this;
 	}
 
-	public Iterator<Widget> iterator() { return new WidgetIterator(this); }
+	// the flattened widget tree, until the tree changes
+	private transient volatile WidgetArray widgets;
+
+	public Iterator<Widget> iterator() { return widgets().iterator(); }
+
+	@Override
+	public WidgetArray widgets(){
+		WidgetArray ret = widgets;
+		if(ret == null){
+			ret = WidgetArray.of(this);
+			widgets = ret;
+		}
+		return ret;
+	}
 
 	void remove(UIAWidget w){
 		Assert.isTrue(this != w, "You cannot remove the root!");
 		assert(w.parent != null);
 		w.parent.children.remove(w);
+		widgets = null;
 		invalidate(w);
 	}
 
@@ -88,6 +105,7 @@ final class UIAState extends UIAWidget implements State {
 		w.parent.children.remove(w);
 		uiaParent.children.add(idx, w);
 		w.parent = uiaParent;
+		widgets = null;
 	}
 
 	UIAWidget addChild(UIAWidget parent, UIAElement element){
@@ -97,6 +115,7 @@ final class UIAState extends UIAWidget implements State {
 
 	void connect(UIAWidget parent, UIAWidget child){
 		parent.children.add(child);
+		widgets = null;
 	}
 
 	<T> T get(UIAWidget w, Tag<T> t){
@@ -122,6 +141,8 @@ final class UIAState extends UIAWidget implements State {
 			return defaultValue;
 		}
 
+		TagFetchCounter.count(tag);
+
 		// check the automation element for the tag
 		returnObject = widget.uiaElement.get(tag, null);
 		if (returnObject != null) {
@@ -229,6 +250,9 @@ final class UIAState extends UIAWidget implements State {
 
 	@SuppressWarnings("unchecked")
 	<T> T cacheTag(UIAWidget w, Tag<T> t, Object value){
+		// the listed tags already account for the tags of the domain
+		if(!w.tags.containsKey(t) && !TAG_DOMAIN.contains(t))
+			w.listedTags = null;
 		w.tags.put(t, value);
 		return (T)value;
 	}
@@ -236,11 +260,13 @@ final class UIAState extends UIAWidget implements State {
 	<T> void setTag(UIAWidget w, Tag<T> t, T value){
 		Assert.notNull(value);
 		w.tags.put(t, value);
+		w.listedTags = null;
 	}
 
 	<T> void remove(UIAWidget w, Tag<T> t){
 		Assert.notNull(w, t);
 		w.tags.put(t, null);
+		w.listedTags = null;
 	}
 
 	UIAWidget getChild(UIAWidget w, int idx){ return w.children.get(idx); }
@@ -248,51 +274,18 @@ final class UIAState extends UIAWidget implements State {
 	UIAWidget getParent(UIAWidget w){ return w.parent; }
 
 
-	Iterable<Tag<?>> tags(final UIAWidget widget){
-		Assert.notNull(widget);
-
-		// compile a query set
-		final Set<Tag<?>> queryTags = new HashSet<Tag<?>>();
-		queryTags.addAll(tags.keySet());  // the tags that have been set on this widget (state is also a widget)
-		queryTags.addAll(Tags.tagSet()); // the tags defined in org.fruit.alayer.Tags
-		queryTags.addAll(UIATags.tagSet()); // the tags defined in org.fruit.alayer.windows.UIATags
-
-		Iterable<Tag<?>> returnTags = new Iterable<Tag<?>>(){
-			public Iterator<Tag<?>> iterator() {
-				return new Iterator<Tag<?>>(){
-					Iterator<Tag<?>> tagIterator = queryTags.iterator();
-					UIAWidget targetWidget = widget;
-					Tag<?> nextTag;
-
-					private Tag<?> fetchNext(){
-						if(nextTag == null){
-							while(tagIterator.hasNext()){
-								nextTag = tagIterator.next();
-								if(targetWidget.get(nextTag, null) != null)
-									return nextTag;
-							}
-							nextTag = null;
-						}
-						return nextTag;
-					}
-
-					public boolean hasNext() {
-						return fetchNext() != null;
-					}
-
-					public Tag<?> next() {
-						Tag<?> returnTag = fetchNext();
-						if(returnTag == null)
-							throw new NoSuchElementException();
-						nextTag = null;
-						return returnTag;
-					}
-
-					public void remove() { throw new UnsupportedOperationException(); }
-				};
-			}
-		};
-		return returnTags;
+	@SuppressWarnings("unchecked")
+	Iterable<Tag<?>> tags(final UIAWidget widget, Tag.Cost maxCost){
+		Assert.notNull(widget, maxCost);
+		List<Tag<?>> ret = widget.listedTags == null ? null : widget.listedTags[maxCost.ordinal()];
+		if(ret == null){
+			ret = TAG_DOMAIN.list(widget, widget.tags, maxCost);
+			// listing may have cached a new tag and dropped the listed tags
+			if(widget.listedTags == null)
+				widget.listedTags = new List[Tag.Cost.values().length];
+			widget.listedTags[maxCost.ordinal()] = ret;
+		}
+		return ret;
 	}
 
 	//public String toString(){ return Util.treeDesc(this, 2, Tags.Desc); }
@@ -104,7 +104,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BSTR
 	 * Default value: empty string
 	 */
-	public static final Tag<String> UIAFullDescription = from("UIAFullDescription", String.class);
+	public static final Tag<String> UIAFullDescription = from("UIAFullDescription", String.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Win32 API ClassName of a widget/UIAelement. From the UIA documentation:
@@ -348,7 +348,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BSTR
 	 * Default value: empty string
 	 */
-	public static final Tag<String> UIAAriaProperties = from ("UIAAriaProperties", String.class);
+	public static final Tag<String> UIAAriaProperties = from ("UIAAriaProperties", String.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Aria role of a UIA element. From the UIA documentation:
@@ -361,7 +361,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BSTR
 	 * Default value: empty string
 	 */
-	public static final Tag<String> UIAAriaRole = from ("UIAAriaRole", String.class);
+	public static final Tag<String> UIAAriaRole = from ("UIAAriaRole", String.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Indicates whether input data is correct for the form rules for the UIA element/widget.
@@ -371,7 +371,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BOOL
 	 * Default value: FALSE
 	 */
-	public static final Tag<Boolean> UIAIsDataValidForForm = from("UIAIsDataValidForForm", Boolean.class);
+	public static final Tag<Boolean> UIAIsDataValidForForm = from("UIAIsDataValidForForm", Boolean.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Is the UIAElement/Widget a dialog window? From theUIA documenation:
@@ -380,7 +380,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BOOL
 	 * Default value: FALSE
 	 */
-	public static final Tag<Boolean> UIAIsDialog = from("UIAIsDialog", Boolean.class);
+	public static final Tag<Boolean> UIAIsDialog = from("UIAIsDialog", Boolean.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Does the Widget/UIAelement contain password information. From the UIA documentation:
@@ -390,7 +390,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BOOL
 	 * Default value: FALSE
 	 */
-	public static final Tag<Boolean> UIAIsPassword = from("UIAIsPassword", Boolean.class);
+	public static final Tag<Boolean> UIAIsPassword = from("UIAIsPassword", Boolean.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Indicated whether the Widget/UIA element represents peripheral UI.
@@ -409,7 +409,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BOOL
 	 * Default value: FALSE
 	 */
-	public static final Tag<Boolean> UIAIsPeripheral = from("UIAIsPeripheral", Boolean.class);
+	public static final Tag<Boolean> UIAIsPeripheral = from("UIAIsPeripheral", Boolean.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Is the widget/uiaelement required for a form? From the UIA documentation:
@@ -418,7 +418,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BOOL
 	 * Default value: FALSE
 	 */
-	public static final Tag<Boolean> UIAIsRequiredForForm = from("UIAIsRequiredForForm", Boolean.class);
+	public static final Tag<Boolean> UIAIsRequiredForForm = from("UIAIsRequiredForForm", Boolean.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * The identifier of the uiaelement that labels this uiaelement. From the UIA documentation:
@@ -428,7 +428,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_UNKNOWN
 	 * Default value: NULL
 	 */
-	public static final Tag<Object> UIALabeledBy = from("UIALabeledBy", Object.class);
+	public static final Tag<Object> UIALabeledBy = from("UIALabeledBy", Object.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * Is the widget/uiaelement part of a landmark/group?
@@ -440,7 +440,7 @@ public final class UIATags extends TagsBase {
 	 * Variant Type: VT_I4
 	 * Default Value: 0
 	 */
-	public static final Tag<Long> UIALandmarkType = from("UIALandmarkType", Long.class);
+	public static final Tag<Long> UIALandmarkType = from("UIALandmarkType", Long.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * A localized string representing the type of landmark this UIA element represents.
@@ -452,7 +452,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_BSTR
 	 * Default value: empty string
 	 */
-	public static final Tag<String> UIALocalizedLandmarkType = from ("UIALocalizedLandmarkType", String.class);
+	public static final Tag<String> UIALocalizedLandmarkType = from ("UIALocalizedLandmarkType", String.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * The level of the uiaelement in an hierarchical structure.
@@ -464,7 +464,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_I4
 	 * Default value: 0
 	 */
-	public static final Tag<Long> UIALevel = from("UIALevel", Long.class);
+	public static final Tag<Long> UIALevel = from("UIALevel", Long.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * From the UIA documentation:
@@ -473,7 +473,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_I4
 	 * Default value: 0
 	 */
-	public static final Tag<Long> UIALiveSetting = from("UIALiveSetting", Long.class);
+	public static final Tag<Long> UIALiveSetting = from("UIALiveSetting", Long.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * The position of this UIAelement with regards to its siblings.
@@ -484,7 +484,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_I4
 	 * Default value: 0
 	 */
-	public static final Tag<Long> UIAPositionInSet = from("UIAPositionInSet", Long.class);
+	public static final Tag<Long> UIAPositionInSet = from("UIAPositionInSet", Long.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * From the UIA documentation:
@@ -494,7 +494,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_I4
 	 * Default value: 0
 	 */
-	public static final Tag<Long> UIASizeOfSet = from("UIASizeOfSet", Long.class);
+	public static final Tag<Long> UIASizeOfSet = from("UIASizeOfSet", Long.class, Tag.Cost.NATIVE_CALL);
 
 
 	/**
@@ -505,7 +505,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_R8
 	 * Default value: 0
 	 */
-	public static final Tag<Long> UIARotation = from("UIARotation", Long.class);
+	public static final Tag<Long> UIARotation = from("UIARotation", Long.class, Tag.Cost.NATIVE_CALL);
 
 	/**
 	 * From the UIA documentation:
@@ -520,7 +520,7 @@ public final class UIATags extends TagsBase {
 	 * Variant type: VT_I4
 	 * Default value: 0
 	 */
-	public static final Tag<Long> UIAVisualEffects = from("UIAVisualEffects", Long.class);
+	public static final Tag<Long> UIAVisualEffects = from("UIAVisualEffects", Long.class, Tag.Cost.NATIVE_CALL);
 
 
 
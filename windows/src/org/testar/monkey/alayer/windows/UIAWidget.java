@@ -54,6 +54,8 @@ class UIAWidget implements Widget, Serializable {
 	UIAState root;
 	UIAWidget parent;
 	Map<Tag<?>, Object> tags = Util.newHashMap();
+	// per cost, the tags listed by tags(Tag.Cost), until a tag is set or removed
+	transient List<Tag<?>>[] listedTags;
 	List<UIAWidget> children = new ArrayList<UIAWidget>();
 	UIAElement uiaElement;
 		
@@ -89,7 +91,8 @@ class UIAWidget implements Widget, Serializable {
 	public final <T> T get(Tag<T> tag) { /*check;*/ return root.get(this, tag); }
 	public final <T> void set(Tag<T> tag, T value) { /*check;*/ root.setTag(this, tag, value); }
 	public final <T> T get(Tag<T> tag, T defaultValue) { /*check;*/ return root.get(this, tag, defaultValue); }
-	public final Iterable<Tag<?>> tags() { /*check;*/ return root.tags(this); }
+	public final Iterable<Tag<?>> tags() { /*check;*/ return root.tags(this, Tag.Cost.CHEAP); }
+	public final Iterable<Tag<?>> tags(Tag.Cost maxCost) { /*check;*/ return root.tags(this, maxCost); }
 	public final void remove(Tag<?> tag) { /*check;*/ root.remove(this, tag); }
 
 	// by urueda (scrolls helper)